@@ -37,24 +37,69 @@ import com.wayfinder.core.shared.internal.UTF8CStringBufferParser;
 
 public class BitBuffer {
     private byte[] buffer;
+    /** The first byte and the byte after the last byte of the buffer. */
+    private final int start;
+    private final int end;
+    /** True for a part of an array, which may be shared with other data. */
+    private final boolean readOnly;
     private int index;
     private int bitMask;
+    /** Number of bits already consumed in buffer[index], 0-7. Always
+     *  kept in sync with bitMask. */
+    private int bitOffset;
     private UTF8CStringBufferParser csparser;
     
     public BitBuffer(byte[] buffer) {
+        this(buffer, 0, buffer.length, false);
+    }
+    
+    /**
+     * Creates a read-only buffer for a part of an array, e.g. a chunk of a 
+     * slab in the memory cache. All offsets and sizes are relative to the
+     * start of the part, but {@link #getByteArray()} returns the whole 
+     * array. Reading outside the part throws an 
+     * ArrayIndexOutOfBoundsException and the write methods throw an 
+     * IllegalStateException, since the rest of the array may belong to 
+     * someone else. 
+     * 
+     * @param buffer the array
+     * @param offset the offset of the first byte of the buffer
+     * @param length the number of bytes in the buffer
+     */
+    public BitBuffer(byte[] buffer, int offset, int length) {
+        this(buffer, offset, length, true);
+    }
+    
+    private BitBuffer(byte[] buffer, int offset, int length, boolean readOnly) {
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new ArrayIndexOutOfBoundsException(offset + length);
+        }
         this.buffer = buffer;
+        this.start = offset;
+        this.end = offset + length;
+        this.readOnly = readOnly;
         reset();
     }
     
     public BitBuffer(int size){
-        this.buffer = new byte[size];
-        reset();
+        this(new byte[size]);
     }
     
+    /**
+     * @return the array of the buffer, see {@link #getArrayOffset()}
+     */
     public byte[] getByteArray(){
         return buffer;
     }
     
+    /**
+     * @return the offset of the buffer in the array returned by 
+     * {@link #getByteArray()}, 0 unless the buffer is a part of the array
+     */
+    public int getArrayOffset(){
+        return start;
+    }
+    
     public void alignToByte(){
         if ( bitMask != 0x80 ) {
             // Not done writing bits to this byte.
@@ -62,6 +107,7 @@ public class BitBuffer {
             index++;
         }
         bitMask = 0x80;
+        bitOffset = 0;
     }
     
     
@@ -84,72 +130,117 @@ public class BitBuffer {
     }
     
     public void writeNextBit(boolean value) {
+        checkWritable();
         if (value) {
             buffer[index] |= bitMask;
         } else {
             buffer[index] &= (0xff ^ bitMask);
         }
         bitMask >>= 1;
+        bitOffset++;
         if ( bitMask == 0x00 ) {
             bitMask = 0x80;
+            bitOffset = 0;
             index++;
         }
     }
     
     
     public int getCurrentBitOffset(){
-        int nbrBits = index << 3;
-        switch ( bitMask ) {
-//          case ( 0x80 ) :
-//              return nbrBits;
-            case ( 0x40 ) :
-                return nbrBits + 1;
-            case ( 0x20 ) :
-                return nbrBits + 2;
-            case ( 0x10 ) :
-                return nbrBits + 3;
-            case ( 0x08 ) :
-                return nbrBits + 4;
-            case ( 0x04 ) :
-                return nbrBits + 5;
-            case ( 0x02 ) :
-                return nbrBits + 6;
-            case ( 0x01 ) :
-                return nbrBits + 7;
-            default:                
-                return nbrBits;
-        }
+        return ((index - start) << 3) + bitOffset;
     }
     
     public int getCurrentByteOffset(){
-        return index;
+        return index - start;
     }
     
     public void reset(){
-        index  = 0;
+        index  = start;
         bitMask = 0x80;
-        csparser = new UTF8CStringBufferParser(buffer);
+        bitOffset = 0;
+        csparser = new UTF8CStringBufferParser(buffer, end);
     }
     
     public void softReset() {   
-        index  = 0;
+        checkWritable();
+        index  = start;
         bitMask = 0x80;
-        for(int i=0; i<buffer.length; i++) {
+        bitOffset = 0;
+        for(int i=start; i<end; i++) {
             buffer[i] = 0;
         }
     }
     
     public int nextBit(){   // Try to avoid using this
+        checkRead(1);
         boolean retVal =  ((buffer[index] & bitMask) != 0);
         bitMask >>= 1;
+        bitOffset++;
         if ( bitMask == 0x00 ) {
             bitMask = 0x80;
+            bitOffset = 0;
             index++;
         }
         return retVal ? 1 : 0;
     }
     
+    /**
+     * Reads the next nbrOfBits bits as an unsigned value, most significant
+     * bit first.
+     * <p>
+     * Instead of stepping through the bits one by one, the bytes covering
+     * the requested bits are loaded into a 64 bit window and the value is
+     * extracted with a shift and a mask. At most 32 + 7 bits are needed so
+     * the window always fits. Close to the end of the buffer only the bytes
+     * actually covered are read, so reading past the end still fails with
+     * the same ArrayIndexOutOfBoundsException as before.
+     * 
+     * @param nbrOfBits the number of bits to read, 0 - 32
+     * @return the value
+     */
     public int nextBits(int nbrOfBits){
+        if (nbrOfBits <= 0 || nbrOfBits > 32) {
+            return nextBitsSlow(nbrOfBits);
+        }
+        final byte[] buf = buffer;
+        final int pos = index;
+        final int endBit = bitOffset + nbrOfBits; // 1 - 39
+        long window;
+        int windowBits;
+        if (pos + 8 <= end) {
+            window = ((long)(buf[pos]     & 0xFF) << 56)
+                   | ((long)(buf[pos + 1] & 0xFF) << 48)
+                   | ((long)(buf[pos + 2] & 0xFF) << 40)
+                   | ((long)(buf[pos + 3] & 0xFF) << 32)
+                   | ((long)(buf[pos + 4] & 0xFF) << 24)
+                   | ((buf[pos + 5] & 0xFF) << 16)
+                   | ((buf[pos + 6] & 0xFF) << 8)
+                   |  (buf[pos + 7] & 0xFF);
+            windowBits = 64;
+        } else {
+            // tail of the buffer, only touch the bytes we need
+            final int nbrBytes = (endBit + 7) >> 3;
+            if (pos + nbrBytes > end) {
+                throw new ArrayIndexOutOfBoundsException(pos + nbrBytes - 1);
+            }
+            window = 0;
+            for (int i = 0; i < nbrBytes; i++) {
+                window = (window << 8) | (buf[pos + i] & 0xFF);
+            }
+            windowBits = nbrBytes << 3;
+        }
+        index = pos + (endBit >> 3);
+        bitOffset = endBit & 7;
+        bitMask = 0x80 >> bitOffset;
+        return (int)((window >>> (windowBits - endBit)) 
+                & ((1L << nbrOfBits) - 1));
+    }
+    
+    /**
+     * The original bit by bit reader. Only used for bit counts outside 
+     * 0 - 32 where the fast path in {@link #nextBits(int)} does not apply.
+     */
+    private int nextBitsSlow(int nbrOfBits){
         int value = 0;
         for (int i = 0; i < nbrOfBits; i++) {
             value <<= 1;
@@ -159,6 +250,7 @@ public class BitBuffer {
     }
     
     public byte[]nextByteArray(int nbrOfBytes){
+        checkRead(nbrOfBytes);
         byte[]toReturn = new byte[nbrOfBytes];
         System.arraycopy(buffer,index,toReturn,0,nbrOfBytes);
         index+=nbrOfBytes;
@@ -168,6 +260,7 @@ public class BitBuffer {
     
     
     public long nextInt(){
+        checkRead(4);
         int firstByte = (0x000000FF & ((int)buffer[index]));
         int secondByte = (0x000000FF & ((int)buffer[index+1]));
         int thirdByte = (0x000000FF & ((int)buffer[index+2]));
@@ -182,6 +275,7 @@ public class BitBuffer {
     }
     
     public char nextShort(){
+        checkRead(2);
         int firstByte = (0x000000FF & ((int)buffer[index]));
         int secondByte = (0x000000FF & ((int)buffer[index+1]));
         index = index+2;
@@ -190,6 +284,7 @@ public class BitBuffer {
     }
     
     public short nextByte(){
+        checkRead(1);
         int firstByte = (0x000000FF & ((int)buffer[index]));
         index++;
         short anUnsignedByte = (short)firstByte;
@@ -197,7 +292,18 @@ public class BitBuffer {
     }
     
 
+    /**
+     * Reads the next nbrOfBits bits as a two's complement value, most 
+     * significant bit first.
+     * 
+     * @param nbrOfBits the number of bits to read, 1 - 32
+     * @return the sign extended value
+     */
     public int nextSignedBits(int nbrOfBits){
+        if (nbrOfBits >= 1 && nbrOfBits <= 32) {
+            final int shift = 32 - nbrOfBits;
+            return (nextBits(nbrOfBits) << shift) >> shift;
+        }
         int value = 0;
         if(nextBit() == 1) {
             // mark all bits as 1
@@ -210,6 +316,7 @@ public class BitBuffer {
     
     
     public int nextSignedByte(){
+        checkRead(1);
         int value =0;
         value = buffer[index];
         index++;
@@ -217,6 +324,7 @@ public class BitBuffer {
     }
         
     public int checkNextByte(){
+        checkRead(1);
         int value =0;
         value = buffer[index];
         return value;
@@ -244,25 +352,42 @@ public class BitBuffer {
 
     
     public void skip(int nbrOfBytes){
-        for(int i=0;i<nbrOfBytes;i++){
-            index++;
+        if (nbrOfBytes > 0) {
+            checkRead(nbrOfBytes);
+            index += nbrOfBytes;
+        }
+    }
+    
+    /*
+     * Throws an ArrayIndexOutOfBoundsException if there are less than 
+     * nbrOfBytes bytes left from the current byte
+     */
+    private void checkRead(int nbrOfBytes) {
+        if (index + nbrOfBytes > end) {
+            throw new ArrayIndexOutOfBoundsException(index + nbrOfBytes - 1);
+        }
+    }
+    
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("Read-only part of an array");
         }
     }
     
     public int getNbrBytesLeft() {
-        return buffer.length - index;
+        return end - index;
     }
     
     public int getCurrentOffset(){
-        return index;
+        return index - start;
     }
     
     public int getBufferSize(){
-        return buffer.length;
+        return end - start;
     }
     
     public int size(){
-        return buffer.length;
+        return end - start;
     }
 
 }
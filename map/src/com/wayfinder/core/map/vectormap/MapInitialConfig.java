@@ -35,6 +35,9 @@
 package com.wayfinder.core.map.vectormap;
 
 import com.wayfinder.core.map.vectormap.internal.cache.CacheConfiguration;
+import com.wayfinder.core.map.vectormap.internal.cache.MemCache;
+import com.wayfinder.core.map.vectormap.internal.cache.WriteBehindCache;
+import com.wayfinder.core.map.vectormap.internal.control.TileMapNetworkHandler;
 import com.wayfinder.core.shared.util.LinkedList;
 import com.wayfinder.pal.persistence.PersistenceLayer;
 
@@ -59,6 +62,48 @@ public final class MapInitialConfig {
      */
     public static final int CACHE_PRIORITY_SECONDARY    = 1;
     
+    /**
+     * Triangulate polygons by splitting them into monotone pieces, 
+     * O(n log n) in the number of vertices. Used by default. 
+     */
+    public static final int TRIANGULATOR_MONOTONE       = 0;
+    
+    /**
+     * Triangulate polygons with ear clipping, O(n^2) in the number of
+     * vertices. 
+     */
+    public static final int TRIANGULATOR_EAR_CLIPPING   = 1;
+    
+    /**
+     * The ID of the map layer, i.e. streets, water, parks etc. 
+     */
+    public static final int LAYER_ID_MAP            = 0;
+    
+    /**
+     * The ID of the route layer. 
+     */
+    public static final int LAYER_ID_ROUTE          = 1;
+    
+    /**
+     * The ID of the POI layer. 
+     */
+    public static final int LAYER_ID_POI            = 2;
+    
+    /**
+     * The ID of the traffic info layer. 
+     */
+    public static final int LAYER_ID_TRAFFIC_INFO   = 3;
+    
+    /**
+     * The ID of the ACP layer. 
+     */
+    public static final int LAYER_ID_ACP            = 4;
+    
+    /**
+     * The max layer ID, the layer ID is sent as 4 bits to the server. 
+     */
+    public static final int MAX_LAYER_ID            = 15;
+    
     private LinkedList m_CacheConfigurations = new LinkedList();
 
     // start x, start y, width and height of the screen.
@@ -88,6 +133,21 @@ public final class MapInitialConfig {
     
     private boolean m_EnableRouteTileDownloader = true;
     
+    private int m_NbrOfExtractionThreads = 1;
+    
+    private int m_MemoryCacheSize = MemCache.DEFAULT_MAX_SIZE;
+    
+    private boolean m_MemoryCacheSlabStorage;
+    
+    private int m_CacheWriteBehindSize = WriteBehindCache.DEFAULT_MAX_PENDING_SIZE;
+    
+    private int m_NbrOfTileRequests = TileMapNetworkHandler.DEFAULT_NBR_OF_REQUESTS;
+    private int m_MaxTilesPerRequest;
+    private int m_MaxBytesPerRequest;
+    
+    // the triangulator for each layer ID
+    private int []m_PolygonTriangulators = new int[MAX_LAYER_ID+1];
+    
     /**
      * 
      * 
@@ -212,6 +272,160 @@ public final class MapInitialConfig {
         return m_EnableRouteTileDownloader;
     }
     
+    /**
+     * Set the number of threads that may extract map tiles in parallel. 
+     * <p>
+     * Extraction is done by one thread by default. On platforms without a
+     * strict thread limit, increasing this will make the map fill in faster
+     * after a zoom when many tiles are extracted at once. The value will be
+     * ignored on platforms that only guarantee a small number of threads,
+     * see {@link com.wayfinder.pal.concurrency.ConcurrencyLayer#getMaxNumberOfThreadsForPlatform()}.
+     * 
+     * @param nbrOfThreads the number of extraction threads, at least 1
+     */
+    public void setNbrOfExtractionThreads(int nbrOfThreads) {
+        if(nbrOfThreads < 1)
+            throw new IllegalArgumentException("At least one extraction thread is needed!");
+        m_NbrOfExtractionThreads = nbrOfThreads;
+    }
+    
+    public int getNbrOfExtractionThreads() {
+        return m_NbrOfExtractionThreads;
+    }
+    
+    /**
+     * Set the number of bytes of tile data that is kept in the memory. 
+     * <p>
+     * Tiles that has been loaded from the server or the caches are kept in 
+     * the memory, so they can be shown again without reading them from the 
+     * caches, e.g. when the map is panned back and forth. The memory cache 
+     * is {@link MemCache#DEFAULT_MAX_SIZE} bytes by default. 
+     * 
+     * @param nbrOfBytes the size of the memory cache in bytes, 0 to disable 
+     * the memory cache
+     */
+    public void setMemoryCacheSize(int nbrOfBytes) {
+        if(nbrOfBytes < 0)
+            throw new IllegalArgumentException("Negative memory cache size " + nbrOfBytes);
+        m_MemoryCacheSize = nbrOfBytes;
+    }
+    
+    public int getMemoryCacheSize() {
+        return m_MemoryCacheSize;
+    }
+    
+    /**
+     * Set if the tile data in the memory cache should be stored in a few 
+     * large arrays, slabs, instead of one array per tile. 
+     * <p>
+     * With a large memory cache, e.g. when the map is rendered on a server,
+     * the many tile arrays adds to the work of the garbage collector. The 
+     * slabs are allocated once and kept, and the tiles are read directly 
+     * from them. Each tile uses a power of two bytes so the memory cache 
+     * holds fewer tiles for the same size. Off by default. 
+     * 
+     * @param slabStorage true to store the data in slabs
+     */
+    public void setMemoryCacheSlabStorage(boolean slabStorage) {
+        m_MemoryCacheSlabStorage = slabStorage;
+    }
+    
+    public boolean isMemoryCacheSlabStorage() {
+        return m_MemoryCacheSlabStorage;
+    }
+    
+    /**
+     * Set the number of bytes of tile data that can be waiting to be 
+     * written to the file cache or the secondary cache. 
+     * <p>
+     * The data is written to the persistent cache by a low priority thread 
+     * so the loading of other tiles isn't blocked by slow writes. When 
+     * this many bytes are waiting the tile loading waits for the writes. 
+     * Data that hasn't been written yet is lost if the application is 
+     * killed before {@link VectorMapInterface#closeMapComponent()} or 
+     * {@link MapDetailedConfigInterface#saveCache()} has been called. 
+     * The default is {@link WriteBehindCache#DEFAULT_MAX_PENDING_SIZE}
+     * bytes. On platforms with a small number of threads the data is 
+     * always written directly. 
+     * 
+     * @param nbrOfBytes the maximal number of bytes waiting to be written, 
+     * 0 to write the data directly 
+     */
+    public void setCacheWriteBehindSize(int nbrOfBytes) {
+        if(nbrOfBytes < 0)
+            throw new IllegalArgumentException("Negative write behind size " + nbrOfBytes);
+        m_CacheWriteBehindSize = nbrOfBytes;
+    }
+    
+    public int getCacheWriteBehindSize() {
+        return m_CacheWriteBehindSize;
+    }
+    
+    /**
+     * Set the number of tile requests that can be sent to the server at 
+     * the same time and how large each request may be. 
+     * <p>
+     * Tiles that are needed while a request is in flight are sent in the 
+     * next free request instead of waiting for the whole reply, which makes
+     * the map fill in faster on links with a long round trip time. A failed 
+     * request only delays the next request sent in its place. By default
+     * {@link TileMapNetworkHandler#DEFAULT_NBR_OF_REQUESTS} requests without
+     * limits are used. With limits the tiles needed at once are spread over
+     * several requests. 
+     * 
+     * @param nbrOfRequests the number of concurrent requests, at least 1
+     * @param maxTilesPerRequest the maximal number of tiles in one request, 
+     * 0 for no limit
+     * @param maxBytesPerRequest the maximal size of the tile names in one 
+     * request in bytes, 0 for no limit
+     */
+    public void setTileRequestLimits(int nbrOfRequests, int maxTilesPerRequest, 
+            int maxBytesPerRequest) {
+        if(nbrOfRequests < 1)
+            throw new IllegalArgumentException("At least one tile request is needed!");
+        if(maxTilesPerRequest < 0 || maxBytesPerRequest < 0)
+            throw new IllegalArgumentException("Negative tile request limit");
+        m_NbrOfTileRequests = nbrOfRequests;
+        m_MaxTilesPerRequest = maxTilesPerRequest;
+        m_MaxBytesPerRequest = maxBytesPerRequest;
+    }
+    
+    public int getNbrOfTileRequests() {
+        return m_NbrOfTileRequests;
+    }
+    
+    public int getMaxTilesPerRequest() {
+        return m_MaxTilesPerRequest;
+    }
+    
+    public int getMaxBytesPerRequest() {
+        return m_MaxBytesPerRequest;
+    }
+    
+    /**
+     * Set the algorithm used to triangulate the polygons of a layer on 
+     * platforms that draw polygons as triangles. 
+     * <p>
+     * {@link #TRIANGULATOR_MONOTONE} is used for all layers by default. 
+     * Polygons that it can't triangulate, e.g. self intersecting polygons, 
+     * will always be triangulated with ear clipping. 
+     * 
+     * @param layerID the ID of the layer, e.g. {@link #LAYER_ID_MAP}
+     * @param triangulator {@link #TRIANGULATOR_MONOTONE} or 
+     * {@link #TRIANGULATOR_EAR_CLIPPING}
+     */
+    public void setPolygonTriangulator(int layerID, int triangulator) {
+        if(layerID < 0 || layerID > MAX_LAYER_ID)
+            throw new IllegalArgumentException("Invalid layer ID " + layerID);
+        if(triangulator != TRIANGULATOR_MONOTONE && triangulator != TRIANGULATOR_EAR_CLIPPING)
+            throw new IllegalArgumentException("Unknown triangulator " + triangulator);
+        m_PolygonTriangulators[layerID] = triangulator;
+    }
+    
+    public int getPolygonTriangulator(int layerID) {
+        return m_PolygonTriangulators[layerID];
+    }
+    
     /**
      * The background and line color of the grid will be set to the ARGB value specified. 
      * <i>Note that alpha value only will be used if the device support it</i>. 
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap;
+
+/**
+ * A snapshot of the statistics of the map component, used to find out
+ * where the time goes when the map is slow to load, e.g. if the tiles 
+ * are downloaded or read from the caches and how long it takes to extract
+ * them. 
+ * <p>
+ * The tiles are looked for in the tiers {@link #TIER_MEMORY_CACHE}, 
+ * {@link #TIER_PRE_INSTALLED}, {@link #TIER_PERSISTENT_CACHE} and 
+ * {@link #TIER_NETWORK} in that order. A tile that is found in a tier 
+ * counts as a hit for that tier and as a miss for the tiers before it.  
+ * <p>
+ * All values are counted since the map component was started or since the 
+ * last call to {@link VectorMapInterface#resetStatistics()}, except for the 
+ * queue sizes that are the sizes when the snapshot was taken. 
+ * 
+ * @see VectorMapInterface#getStatistics()
+ */
+public final class MapStatistics {
+    
+    /**
+     * The tiles kept in memory. 
+     */
+    public static final int TIER_MEMORY_CACHE = 0;
+    
+    /**
+     * The pre-installed maps. 
+     */
+    public static final int TIER_PRE_INSTALLED = 1;
+    
+    /**
+     * The cache that is saved between the sessions. 
+     */
+    public static final int TIER_PERSISTENT_CACHE = 2;
+    
+    /**
+     * The map server. A miss is a tile that failed to be downloaded. 
+     */
+    public static final int TIER_NETWORK = 3;
+    
+    /**
+     * The number of tiers. 
+     */
+    public static final int NBR_OF_TIERS = 4;
+    
+    private final int[] m_NbrOfHits;
+    private final int[] m_NbrOfMisses;
+    private final long[] m_NbrOfBytesRead;
+    private final long m_NbrOfBytesWritten;
+    private final int m_NbrOfExtractedTiles;
+    private final long m_ExtractionTime;
+    private final int m_NbrOfTriangulatedTiles;
+    private final long m_TriangulationTime;
+    private final int m_ExtractionQueueSize;
+    private final int m_NetworkQueueSize;
+    
+    /**
+     * Create a new snapshot. <p>
+     * 
+     * <b>Note that</b> the snapshots are created by the map, use 
+     * {@link VectorMapInterface#getStatistics()} to get one. 
+     * 
+     * @param nbrOfHits the number of hits for each tier
+     * @param nbrOfMisses the number of misses for each tier
+     * @param nbrOfBytesRead the number of bytes read from each tier
+     * @param nbrOfBytesWritten the number of bytes written to the persistent 
+     * cache
+     * @param nbrOfExtractedTiles the number of extracted tiles
+     * @param extractionTime the time in ms spent extracting the tiles
+     * @param nbrOfTriangulatedTiles the number of triangulated tiles
+     * @param triangulationTime the time in ms spent triangulating the tiles
+     * @param extractionQueueSize the number of tiles waiting to be extracted
+     * @param networkQueueSize the number of tiles waiting to be requested 
+     * from the server
+     */
+    public MapStatistics(int[] nbrOfHits, int[] nbrOfMisses, long[] nbrOfBytesRead, 
+            long nbrOfBytesWritten, int nbrOfExtractedTiles, long extractionTime, 
+            int nbrOfTriangulatedTiles, long triangulationTime, 
+            int extractionQueueSize, int networkQueueSize) {
+        
+        m_NbrOfHits = nbrOfHits;
+        m_NbrOfMisses = nbrOfMisses;
+        m_NbrOfBytesRead = nbrOfBytesRead;
+        m_NbrOfBytesWritten = nbrOfBytesWritten;
+        m_NbrOfExtractedTiles = nbrOfExtractedTiles;
+        m_ExtractionTime = extractionTime;
+        m_NbrOfTriangulatedTiles = nbrOfTriangulatedTiles;
+        m_TriangulationTime = triangulationTime;
+        m_ExtractionQueueSize = extractionQueueSize;
+        m_NetworkQueueSize = networkQueueSize;
+    }
+    
+    /**
+     * Return the number of tiles that was found in a tier. 
+     * 
+     * @param tier one of the TIER constants
+     * @return the number of hits 
+     */
+    public int getNbrOfHits(int tier) {
+        return m_NbrOfHits[tier];
+    }
+    
+    /**
+     * Return the number of tiles that wasn't found in a tier. 
+     * 
+     * @param tier one of the TIER constants
+     * @return the number of misses 
+     */
+    public int getNbrOfMisses(int tier) {
+        return m_NbrOfMisses[tier];
+    }
+    
+    /**
+     * Return the hit ratio of a tier. 
+     * 
+     * @param tier one of the TIER constants
+     * @return the hits divided by the lookups, 0 if the tier hasn't been used
+     */
+    public float getHitRatio(int tier) {
+        final int lookups = m_NbrOfHits[tier] + m_NbrOfMisses[tier];
+        if(lookups == 0) {
+            return 0;
+        }
+        return (float)m_NbrOfHits[tier] / lookups;
+    }
+    
+    /**
+     * Return the number of bytes read from a tier. For the persistent cache 
+     * this is the number of bytes read from the files, which includes the 
+     * other importances of the tiles. 
+     * 
+     * @param tier one of the TIER constants
+     * @return the number of bytes 
+     */
+    public long getNbrOfBytesRead(int tier) {
+        return m_NbrOfBytesRead[tier];
+    }
+    
+    /**
+     * @return the number of bytes written to the persistent cache
+     */
+    public long getNbrOfBytesWritten() {
+        return m_NbrOfBytesWritten;
+    }
+    
+    /**
+     * @return the number of geometry and string tiles that has been extracted
+     */
+    public int getNbrOfExtractedTiles() {
+        return m_NbrOfExtractedTiles;
+    }
+    
+    /**
+     * @return the total time in ms spent extracting the tiles, including
+     * the triangulation
+     */
+    public long getExtractionTime() {
+        return m_ExtractionTime;
+    }
+    
+    /**
+     * @return the number of geometry tiles that has been triangulated
+     */
+    public int getNbrOfTriangulatedTiles() {
+        return m_NbrOfTriangulatedTiles;
+    }
+    
+    /**
+     * @return the total time in ms spent triangulating the polygons
+     */
+    public long getTriangulationTime() {
+        return m_TriangulationTime;
+    }
+    
+    /**
+     * @return the number of tiles that was waiting to be extracted when 
+     * the snapshot was taken
+     */
+    public int getExtractionQueueSize() {
+        return m_ExtractionQueueSize;
+    }
+    
+    /**
+     * @return the number of tiles that was waiting to be requested from 
+     * the server when the snapshot was taken
+     */
+    public int getNetworkQueueSize() {
+        return m_NetworkQueueSize;
+    }
+    
+    public String toString() {
+        StringBuffer sb = new StringBuffer("MapStatistics[");
+        for(int i=0; i<NBR_OF_TIERS; i++) {
+            sb.append("tier").append(i).append(": hits= ").append(m_NbrOfHits[i])
+              .append(" misses= ").append(m_NbrOfMisses[i])
+              .append(" read= ").append(m_NbrOfBytesRead[i]).append(", ");
+        }
+        sb.append("written= ").append(m_NbrOfBytesWritten)
+          .append(", extracted= ").append(m_NbrOfExtractedTiles)
+          .append(" (").append(m_ExtractionTime).append(" ms)")
+          .append(", triangulated= ").append(m_NbrOfTriangulatedTiles)
+          .append(" (").append(m_TriangulationTime).append(" ms)")
+          .append(", extraction queue= ").append(m_ExtractionQueueSize)
+          .append(", network queue= ").append(m_NetworkQueueSize)
+          .append(']');
+        return sb.toString();
+    }
+}
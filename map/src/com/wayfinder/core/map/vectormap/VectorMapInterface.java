@@ -415,6 +415,27 @@ public interface VectorMapInterface {
      * @return max(screenWidth, screenHeight) in meters. 
      */
     public long getSearchRadiusMeters();
+    
+    /**
+     * Return a snapshot of the statistics of the map. The statistics show
+     * where the tiles are loaded from (memory, pre-installed maps, the 
+     * persistent cache or the server), the number of bytes read and written
+     * and how long it takes to extract the tiles. 
+     * <p>
+     * The statistics are always collected, this method can be called at 
+     * any time. 
+     * 
+     * @return the statistics since the map was started or since the last 
+     * call to {@link #resetStatistics()}
+     */
+    public MapStatistics getStatistics();
+    
+    /**
+     * Set all counters of the statistics to 0. 
+     * 
+     * @see #getStatistics()
+     */
+    public void resetStatistics();
 
     // -----------------------------------------------------------------------
     // screen coordinate related stuff
@@ -46,6 +46,7 @@ import com.wayfinder.core.map.util.ScreenInfo;
 import com.wayfinder.core.map.vectormap.MapDetailedConfigInterface;
 import com.wayfinder.core.map.vectormap.MapDrawerInterface;
 import com.wayfinder.core.map.vectormap.MapInitialConfig;
+import com.wayfinder.core.map.vectormap.MapStatistics;
 import com.wayfinder.core.map.vectormap.PreInstalledMapsListener;
 import com.wayfinder.core.map.vectormap.VectorMapInterface;
 import com.wayfinder.core.map.vectormap.internal.control.TileMapControlThread;
@@ -170,7 +171,17 @@ public final class VectorMapModule implements VectorMapInterface, PersistenceReq
         m_Camera.init(initialConfig);        
         m_TileMapHolder.init(this, initialConfig.getWidth(), initialConfig.getHeight());        
         
-        m_TileMapControlThread.init(m_concurrencyLayer, false, lang);        
+        for(int layerID=0; layerID<=MapInitialConfig.MAX_LAYER_ID; layerID++) {
+            m_TileMapControlThread.setPolygonTriangulator(layerID, 
+                    initialConfig.getPolygonTriangulator(layerID));
+        }
+        m_TileMapControlThread.setMemCacheSize(initialConfig.getMemoryCacheSize(), 
+                initialConfig.isMemoryCacheSlabStorage());
+        m_TileMapControlThread.setCacheWriteBehindSize(initialConfig.getCacheWriteBehindSize());
+        m_TileMapControlThread.setTileRequestLimits(initialConfig.getNbrOfTileRequests(), 
+                initialConfig.getMaxTilesPerRequest(), initialConfig.getMaxBytesPerRequest());
+        m_TileMapControlThread.init(m_concurrencyLayer, false, lang, 
+                initialConfig.getNbrOfExtractionThreads());        
         m_TileMapControlThread.startCache(initialConfig.getCacheConfigurations());        
         m_TileMapControlThread.setTileMapExtractionListener(m_TileMapHolder);
         m_TileMapControlThread.setUpdateOverviewMaps(true);
@@ -558,6 +569,22 @@ public final class VectorMapModule implements VectorMapInterface, PersistenceReq
         return (long)(radiusMC2 * Utils.MC2SCALE_TO_METER);
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.wayfinder.core.map.vectormap.VectorMapInterface#getStatistics()
+     */
+    public MapStatistics getStatistics() {
+        return m_TileMapControlThread.getTileMapLoader().getStatistics();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.wayfinder.core.map.vectormap.VectorMapInterface#resetStatistics()
+     */
+    public void resetStatistics() {
+        m_TileMapControlThread.getTileMapLoader().resetStatistics();
+    }
+
     /*
      * (non-Javadoc)
      * @see com.wayfinder.core.map.vectormap.VectorMapInterface#hasEnoughMapPaintContent()
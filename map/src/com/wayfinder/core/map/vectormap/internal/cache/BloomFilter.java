@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+/**
+ * Bloom filter over the keys of a persistent cache, used to answer that a 
+ * tile isn't cached without taking the lock of the cache. 
+ * <p>
+ * {@link #mightContain(String)} never returns false for a key that has been 
+ * added, but returns true for about one percent of the keys that haven't 
+ * been added when the filter holds {@link #getMaxNbrOfEntries()} entries. 
+ * <p>
+ * Keys can't be removed from the filter. The cache calls 
+ * {@link #entryRemoved()} instead and builds a new filter from its index 
+ * when {@link #needsRebuild()} returns true, i.e. when the filter is full 
+ * or when half of the entries have been removed. 
+ * <p>
+ * All methods are synchronized since the filter is read without the lock 
+ * of the cache. 
+ */
+final class BloomFilter {
+    
+    /**
+     * The smallest number of entries a filter is created for. 
+     */
+    static final int MIN_NBR_OF_ENTRIES = 1024;
+    
+    /* 10 bits per entry and 5 hash functions gives ~1% false positives */
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int NBR_OF_HASHES = 5;
+    
+    private final int []m_Bits;
+    private final int m_NbrOfBits;
+    private final int m_MaxNbrOfEntries;
+    
+    private int m_NbrOfEntries;
+    private int m_NbrOfRemoved;
+    
+    private int m_NbrOfLookups;
+    private int m_NbrOfRejected;
+    
+    /**
+     * @param aMaxNbrOfEntries the number of entries the filter is sized for, 
+     * at least {@link #MIN_NBR_OF_ENTRIES} is used
+     */
+    BloomFilter(int aMaxNbrOfEntries) {
+        m_MaxNbrOfEntries = Math.max(aMaxNbrOfEntries, MIN_NBR_OF_ENTRIES);
+        m_Bits = new int[(m_MaxNbrOfEntries * BITS_PER_ENTRY + 31) >>> 5];
+        m_NbrOfBits = m_Bits.length << 5;
+    }
+    
+    /*
+     * The second hash for the double hashing, the first is the hash of the 
+     * key. Mixes the bits so keys that only differ in the low bits, e.g. 
+     * the tile index, don't end up close to each other. 
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+    
+    private static int hash(String aKey) {
+        return aKey.hashCode();
+    }
+    
+    private static int hash(long aKey) {
+        return (int)(aKey ^ (aKey >>> 32)) * 0x9E3779B9;
+    }
+    
+    private void add(int aHash) {
+        int h1 = mix(aHash);
+        // odd so all hashes differ
+        int h2 = mix(h1) | 1;
+        for(int i=0; i<NBR_OF_HASHES; i++) {
+            int bit = ((h1 + i * h2) & 0x7FFFFFFF) % m_NbrOfBits;
+            m_Bits[bit >>> 5] |= (1 << (bit & 31));
+        }
+        m_NbrOfEntries++;
+    }
+    
+    private boolean mightContain(int aHash) {
+        m_NbrOfLookups++;
+        int h1 = mix(aHash);
+        int h2 = mix(h1) | 1;
+        for(int i=0; i<NBR_OF_HASHES; i++) {
+            int bit = ((h1 + i * h2) & 0x7FFFFFFF) % m_NbrOfBits;
+            if((m_Bits[bit >>> 5] & (1 << (bit & 31))) == 0) {
+                m_NbrOfRejected++;
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    synchronized void add(String aKey) {
+        add(hash(aKey));
+    }
+    
+    /**
+     * @param aKey a {@link TileKey}
+     */
+    synchronized void add(long aKey) {
+        add(hash(aKey));
+    }
+    
+    /**
+     * @return false if the key has never been added, true if it might have 
+     * been added
+     */
+    synchronized boolean mightContain(String aKey) {
+        return mightContain(hash(aKey));
+    }
+    
+    /**
+     * @param aKey a {@link TileKey}
+     * @return false if the key has never been added, true if it might have 
+     * been added
+     */
+    synchronized boolean mightContain(long aKey) {
+        return mightContain(hash(aKey));
+    }
+    
+    /**
+     * Called when an entry has been removed from the cache. 
+     */
+    synchronized void entryRemoved() {
+        m_NbrOfRemoved++;
+    }
+    
+    /**
+     * @return true if the filter should be replaced by a new filter built 
+     * from the index of the cache
+     */
+    synchronized boolean needsRebuild() {
+        return m_NbrOfEntries > m_MaxNbrOfEntries 
+            || (m_NbrOfRemoved > MIN_NBR_OF_ENTRIES / 2 && m_NbrOfRemoved > m_NbrOfEntries / 2);
+    }
+    
+    synchronized int getNbrOfEntries() {
+        return m_NbrOfEntries;
+    }
+    
+    synchronized int getMaxNbrOfEntries() {
+        return m_MaxNbrOfEntries;
+    }
+    
+    synchronized int getNbrOfBits() {
+        return m_NbrOfBits;
+    }
+    
+    /**
+     * @return the number of calls to mightContain()
+     */
+    synchronized int getNbrOfLookups() {
+        return m_NbrOfLookups;
+    }
+    
+    /**
+     * @return the number of calls to mightContain() that returned false
+     */
+    synchronized int getNbrOfRejectedLookups() {
+        return m_NbrOfRejected;
+    }
+}
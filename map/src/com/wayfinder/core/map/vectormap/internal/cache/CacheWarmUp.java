@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+
+import com.wayfinder.core.map.vectormap.internal.control.TileMapLayerWrapper;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.core.shared.internal.debug.LogFactory;
+import com.wayfinder.core.shared.internal.debug.Logger;
+import com.wayfinder.core.shared.internal.settings.language.LangTypes;
+import com.wayfinder.pal.concurrency.ConcurrencyLayer;
+import com.wayfinder.pal.persistence.PersistenceLayer;
+import com.wayfinder.pal.persistence.SettingsConnection;
+
+/**
+ * Loads the tiles that were visible when the map was closed, and the tiles 
+ * around them, from the persistent cache into the memory cache when the 
+ * map is started. 
+ * <p>
+ * The tiles are saved by {@link #saveTiles(PersistenceLayer, Vector)} when 
+ * the map component is closed. When the cache has been opened 
+ * {@link #start(ConcurrencyLayer)} reads them on a low priority thread, 
+ * while the first TileMapFormatDesc is loaded, so the first requests of 
+ * the map view are answered by the memory cache instead of being read from 
+ * the persistent cache one by one. 
+ * <p>
+ * Reading a tile from the cache writes all its importances to the memory 
+ * cache, so only the id of each tile, i.e. the params of importance 0, is 
+ * saved. 
+ */
+public class CacheWarmUp implements Runnable {
+    
+    private static final Logger LOG = LogFactory
+            .getLoggerForClass(CacheWarmUp.class);
+    
+    /**
+     * The settings type used to save the tiles. 
+     */
+    static final String SETTINGS_TYPE = "mapwarmup";
+    
+    /**
+     * The maximal number of tiles that are saved. 
+     */
+    public static final int MAX_NBR_OF_TILES = 64;
+    
+    private static final int RECORD_ID = 0;
+    private static final int VERSION = 1;
+    
+    private final PersistenceLayer m_PersistenceLayer;
+    private final CacheInterface m_Cache;
+    
+    private volatile boolean m_Cancelled;
+    private int m_NbrOfLoadedTiles;
+    
+    /**
+     * @param persistenceLayer the layer that the tiles are saved in
+     * @param cache the opened cache to read the tiles from, it must have a 
+     * memory cache
+     */
+    public CacheWarmUp(PersistenceLayer persistenceLayer, CacheInterface cache) {
+        m_PersistenceLayer = persistenceLayer;
+        m_Cache = cache;
+    }
+    
+    /**
+     * Starts the thread that loads the saved tiles. 
+     * 
+     * @param currLayer the {@link ConcurrencyLayer} used to start the thread
+     */
+    public void start(ConcurrencyLayer currLayer) {
+        Thread t = currLayer.startNewDaemonThread(this, "TMCacheWarmUp");
+        t.setPriority(Thread.MIN_PRIORITY);
+    }
+    
+    /**
+     * Stops loading tiles, must be called before the cache is closed. The 
+     * tile that is read right now is still written to the memory cache. 
+     */
+    public void cancel() {
+        m_Cancelled = true;
+    }
+    
+    public void run() {
+        warmUp();
+    }
+    
+    /**
+     * Reads the saved tiles from the cache on the calling thread. 
+     * 
+     * @return the number of tiles that were found in the cache
+     */
+    public int warmUp() {
+        long time = System.currentTimeMillis();
+        Vector tiles = readTiles(m_PersistenceLayer);
+        
+        final int size = tiles.size();
+        for(int i=0; i<size && !m_Cancelled; i++) {
+            TileMapParams params = (TileMapParams)tiles.elementAt(i);
+            TileMapLayerWrapper wrapper = new TileMapLayerWrapper(params.getTileIndexLat(), 
+                    params.getTileIndexLon(), params.getLayerID(), params.getDetailLevel(), params);
+            
+            try {
+                if(m_Cache.getDataFromCache(wrapper, params.getTileID(), params.getTileID()) != null) {
+                    synchronized (this) {
+                        m_NbrOfLoadedTiles++;
+                    }
+                }
+            } catch (Exception e) {
+                // the cache might have been closed
+                if(LOG.isError()) {
+                    LOG.error("CacheWarmUp.warmUp()", e);
+                }
+                break;
+            }
+        }
+        
+        if(LOG.isInfo()) {
+            LOG.info("CacheWarmUp.warmUp()", "loaded "+getNbrOfLoadedTiles()+" of "+size+
+                    " tiles, time= "+(System.currentTimeMillis()-time)+" ms");
+        }
+        return getNbrOfLoadedTiles();
+    }
+    
+    /**
+     * @return the number of tiles that have been found in the cache
+     */
+    public synchronized int getNbrOfLoadedTiles() {
+        return m_NbrOfLoadedTiles;
+    }
+    
+    /**
+     * Saves the tiles that should be loaded the next time the map is 
+     * started. Only the first {@link #MAX_NBR_OF_TILES} tiles are saved, 
+     * the most important tiles should be first. 
+     * <p>
+     * Route tiles are skipped since the route will be gone. 
+     * 
+     * @param persistenceLayer the layer to save the tiles in
+     * @param tileIDParams the params of importance 0 for the tiles
+     */
+    public static void saveTiles(PersistenceLayer persistenceLayer, Vector tileIDParams) {
+        SettingsConnection conn = null;
+        try {
+            conn = persistenceLayer.openSettingsConnection(SETTINGS_TYPE);
+            DataOutputStream dout = conn.getOutputStream(RECORD_ID);
+            
+            int nbrOfTiles = 0;
+            final int size = tileIDParams.size();
+            for(int i=0; i<size; i++) {
+                if(shouldBeSaved((TileMapParams)tileIDParams.elementAt(i))) {
+                    nbrOfTiles++;
+                }
+            }
+            nbrOfTiles = Math.min(nbrOfTiles, MAX_NBR_OF_TILES);
+            final int nbrOfSavedTiles = nbrOfTiles;
+            
+            dout.writeInt(VERSION);
+            dout.writeInt(nbrOfTiles);
+            for(int i=0; i<size && nbrOfTiles > 0; i++) {
+                TileMapParams params = (TileMapParams)tileIDParams.elementAt(i);
+                if(shouldBeSaved(params)) {
+                    dout.writeByte(params.getServerPrefix());
+                    dout.writeBoolean(params.useGZip());
+                    dout.writeByte(params.getLayerID());
+                    dout.writeByte(params.getDetailLevel());
+                    dout.writeInt(params.getTileIndexLat());
+                    dout.writeInt(params.getTileIndexLon());
+                    nbrOfTiles--;
+                }
+            }
+            dout.close();
+            
+            if(LOG.isInfo()) {
+                LOG.info("CacheWarmUp.saveTiles()", "saved "+nbrOfSavedTiles+" tiles");
+            }
+        } catch (Exception e) {
+            if(LOG.isError()) {
+                LOG.error("CacheWarmUp.saveTiles()", e);
+            }
+        } finally {
+            close(conn);
+        }
+    }
+    
+    private static boolean shouldBeSaved(TileMapParams params) {
+        return !params.isOverviewMap() && params.getLayerID() != TileKey.ROUTE_LAYER_ID;
+    }
+    
+    /**
+     * Reads the saved tiles. 
+     * 
+     * @param persistenceLayer the layer that the tiles are saved in
+     * @return the params of importance 0 for the saved tiles, empty if no 
+     * tiles have been saved or if they can't be read
+     */
+    static Vector readTiles(PersistenceLayer persistenceLayer) {
+        Vector tiles = new Vector();
+        SettingsConnection conn = null;
+        try {
+            conn = persistenceLayer.openSettingsConnection(SETTINGS_TYPE);
+            DataInputStream din = conn.getDataInputStream(RECORD_ID);
+            if(din == null) {
+                return tiles;
+            }
+            try {
+                if(din.readInt() != VERSION) {
+                    return tiles;
+                }
+                final int nbrOfTiles = Math.min(din.readInt(), MAX_NBR_OF_TILES);
+                for(int i=0; i<nbrOfTiles; i++) {
+                    int serverPrefix = din.readUnsignedByte();
+                    boolean gzip = din.readBoolean();
+                    int layerID = din.readUnsignedByte();
+                    int detailLevel = din.readUnsignedByte();
+                    int lat = din.readInt();
+                    int lon = din.readInt();
+                    
+                    TileMapParams params = new TileMapParams();
+                    params.setParams(serverPrefix, gzip, layerID, TileMapParams.MAP, 0, 
+                            LangTypes.SWEDISH, lat, lon, detailLevel, null, "");
+                    params.setTileID(params.getAsString());
+                    tiles.addElement(params);
+                }
+            } finally {
+                din.close();
+            }
+        } catch (IOException e) {
+            // nothing saved yet, or the record is broken, use the tiles 
+            // that have been read
+            if(LOG.isInfo()) {
+                LOG.info("CacheWarmUp.readTiles()", "read "+tiles.size()+" tiles, "+e);
+            }
+        } catch (Exception e) {
+            if(LOG.isError()) {
+                LOG.error("CacheWarmUp.readTiles()", e);
+            }
+        } finally {
+            close(conn);
+        }
+        return tiles;
+    }
+    
+    private static void close(SettingsConnection conn) {
+        if(conn != null) {
+            try {
+                conn.close();
+            } catch (IOException e) {
+                if(LOG.isError()) {
+                    LOG.error("CacheWarmUp.close()", e);
+                }
+            }
+        }
+    }
+}
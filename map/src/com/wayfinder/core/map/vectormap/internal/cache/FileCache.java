@@ -34,6 +34,7 @@
 
 package com.wayfinder.core.map.vectormap.internal.cache;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -53,7 +54,6 @@ import com.wayfinder.core.shared.internal.debug.Logger;
 import com.wayfinder.core.shared.internal.settings.language.LangTypes;
 import com.wayfinder.core.shared.util.io.WFByteArrayOutputStream;
 import com.wayfinder.core.shared.util.qtree.QuadTree;
-import com.wayfinder.core.shared.util.qtree.QuadTreeEntry;
 import com.wayfinder.core.shared.util.qtree.QuadTreeNode;
 import com.wayfinder.pal.persistence.PersistenceLayer;
 
@@ -65,7 +65,12 @@ import com.wayfinder.pal.persistence.PersistenceLayer;
  * disc. To each entry in the page file a cache index are created. The index
  * holds information about where on disc the map data are saved. 
  * <p>
- * The cache indices are saved in a QuadTree. The quad tree has a limit
+ * The cache indices for the tiles are saved in a {@link TileIndex}, a hash table
+ * keyed by the {@link TileKey} of the tile that is always held in memory. The
+ * table is saved in one file and read with a single read when the cache is opened.
+ * <p>
+ * The tiles in the route layer can't be keyed by a {@link TileKey} and their
+ * cache indices are saved in a QuadTree. The quad tree has a limit
  * of 500 indices in each node. When we have exceed that number the node will
  * be split up into 2 or more sub-nodes. The nodes that currently contains loaded
  * tiles will be hold in memory. When no tiles from a node exist in memory the node
@@ -81,13 +86,25 @@ import com.wayfinder.pal.persistence.PersistenceLayer;
  * node when we need to load it. 
  * <p>
  * 
- * NOTE: All public methods are synchronized except {@link #setVisible(boolean)}
- * (see methods doc) and {@link #printQTDebug(boolean)}   
- * 
+ * The cache is guarded by a {@link ReadWriteLock}. {@link #getDataFromCache(TileMapLayerWrapper, String, String)}
+ * and {@link #existInCache(TileMapParams)} take the read lock so several threads
+ * can read from the cache at the same time. The reads only change the index 
+ * through the synchronized tile index, quad tree and hashtable, when a node is loaded
+ * or a entry to a removed page is found, and the buffers are allocated for
+ * each read. All other public methods take the write lock, except 
+ * {@link #setVisible(boolean)} (see methods doc) and {@link #printQTDebug(boolean)}.
+ * <p>
+ * The platform must allow the page files to be read from several threads, 
+ * both the streams and {@link com.wayfinder.pal.persistence.WFPageFile}. 
+ * <p>
+ * A {@link BloomFilter} over the keys of the tile index and the hashtable 
+ * answers that a tile isn't cached before the read lock is taken, so a 
+ * miss doesn't wait for a write to the disc. The filter is built from the 
+ * index when the cache is opened and rebuilt when it's full or when many 
+ * entries have been removed. The route tiles in the quad tree are always 
+ * looked up. 
  *
  */
-//TODO: Investigate the synchronization on this class, in order to not block
-//others calls because of time consuming methods are synchronized
 
 public class FileCache implements CacheInterface {
 
@@ -120,8 +137,9 @@ public class FileCache implements CacheInterface {
      * quad tree before we split it up into one or more sub nodes. */
     static final int MAX_NBR_ITEM_PER_NODE = 500;
     
-    /* The version of the cache. */
-    static final int CACHE_VERSION = 2;
+    /* The version of the cache. Version 3 moved the tiles from the quad tree
+     * to the tile index. */
+    static final int CACHE_VERSION = 3;
     
     
     /* Hashtable that holds the index table for all non map data */
@@ -136,7 +154,14 @@ public class FileCache implements CacheInterface {
     private int m_Language;
     private TileMapFormatDesc m_tmfd;
     
-    /* The QuadTree */
+    /* The index for all tiles that has a TileKey */
+    private final TileIndex m_TileIndex = new TileIndex();
+    
+    /* The keys of the tile index and the hashtable, replaced by 
+     * rebuildBloomFilter() */
+    private volatile BloomFilter m_BloomFilter = new BloomFilter(0);
+    
+    /* The QuadTree, for the tiles in the route layer */
     private QuadTree m_cacheQuadTree;
     
     private FileHandler m_CacheFileHandler;
@@ -160,10 +185,15 @@ public class FileCache implements CacheInterface {
     
     private volatile boolean m_IsVisible = false;
     
-    /* Buffer the is used when reading data from cache to avoid re-allocating if
-     * every time we read from disc. */
-    private byte []paramData = new byte[30];
-    private BitBuffer bitBuffer = new BitBuffer(new byte[30]);
+    /* Lets several threads read from the cache at the same time, see the 
+     * class documentation. */
+    private final ReadWriteLock m_Lock = new ReadWriteLock();
+
+    /* The number of bytes read from and written to the cache files. Guarded
+     * by m_IOStatsLock since several threads may read at the same time. */
+    private final Object m_IOStatsLock = new Object();
+    private long m_NbrOfBytesRead;
+    private long m_NbrOfBytesWritten;
     
     /* Buffers used to buffer the data that should be writed before writing it to disc. */
     private int m_CacheBufferSize = 32000;
@@ -199,12 +229,44 @@ public class FileCache implements CacheInterface {
                           Integer.MAX_VALUE,
                           MAX_NBR_ITEM_PER_NODE,
                           "root_");
-        m_CacheFileHandler = new FileHandler(NUMBER_OF_PAGES, persistenceLayer);          
+        m_CacheFileHandler = new FileHandler(NUMBER_OF_PAGES, MAX_PAGE_SIZE, persistenceLayer);          
         m_IndexTableHashtable = new Hashtable();
         m_MemCache = null;
         m_tmfd = null;
     }
     
+    /**
+     * @return the number of bytes that has been read from the cache files 
+     * since the cache was created
+     */
+    public long getNbrOfBytesRead() {
+        synchronized (m_IOStatsLock) {
+            return m_NbrOfBytesRead;
+        }
+    }
+    
+    /**
+     * @return the number of bytes that has been written to the cache files 
+     * since the cache was created
+     */
+    public long getNbrOfBytesWritten() {
+        synchronized (m_IOStatsLock) {
+            return m_NbrOfBytesWritten;
+        }
+    }
+    
+    private void addNbrOfBytesRead(int nbrOfBytes) {
+        synchronized (m_IOStatsLock) {
+            m_NbrOfBytesRead += nbrOfBytes;
+        }
+    }
+    
+    private void addNbrOfBytesWritten(int nbrOfBytes) {
+        synchronized (m_IOStatsLock) {
+            m_NbrOfBytesWritten += nbrOfBytes;
+        }
+    }
+    
     /**
      * Set the cache to visible or not visible when we enter and exit
      * the map view. 
@@ -221,8 +283,13 @@ public class FileCache implements CacheInterface {
     /**
      * Set the memory cache
      */
-    public synchronized void setMemCache(MemCache aMemCache) {
-        m_MemCache = aMemCache;
+    public void setMemCache(MemCache aMemCache) {
+        m_Lock.writeLock();
+        try {
+            m_MemCache = aMemCache;
+        } finally {
+            m_Lock.writeUnlock();
+        }
     }
     
     /**
@@ -230,23 +297,45 @@ public class FileCache implements CacheInterface {
      * 
      * @param aLanguage 
      */
-    public synchronized void setLanguage(int aLanguage) {
-        m_Language = aLanguage;
+    public void setLanguage(int aLanguage) {
+        m_Lock.writeLock();
+        try {
+            m_Language = aLanguage;
+        } finally {
+            m_Lock.writeUnlock();
+        }
     }
     
     /**
      * 
      * @param aTmfd
      */
-    public synchronized void setTileMapFormatDesc(TileMapFormatDesc aTmfd) {
-        m_tmfd = aTmfd;               
+    public void setTileMapFormatDesc(TileMapFormatDesc aTmfd) {
+        m_Lock.writeLock();
+        try {
+            m_tmfd = aTmfd;
+        } finally {
+            m_Lock.writeUnlock();
+        }
     }
     
     /**
      * Open the cache and read the loaded data. 
      * 
      */
-    public synchronized boolean openCache() {
+    public boolean openCache() {
+        m_Lock.writeLock();
+        try {
+            return internalOpenCache();
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private boolean internalOpenCache() {
                  
         m_IsCacheOpen = false;            
             
@@ -284,7 +373,9 @@ public class FileCache implements CacheInterface {
             /* Read the cache index file that contains the IndexTableEntrys for all 
              * non tilemaps (poi bitmap, tmfd etc.). */
             m_CacheFileHandler.readIndexTableFromFile(m_IndexTableHashtable);  
+            m_CacheFileHandler.readTileIndexFromFile(m_TileIndex);
             m_CacheFileHandler.readQuadTreeFromFile(m_cacheQuadTree,false);
+            rebuildBloomFilter();
             m_IsCacheOpen = true;
             
         } catch (Exception e) {
@@ -303,7 +394,31 @@ public class FileCache implements CacheInterface {
     /**
      * 
      */
-    public synchronized boolean writeDataToCache(byte [][]aCacheData, 
+    public boolean writeDataToCache(byte [][]aCacheData, 
+            TileMapParams []aParams, 
+            TileMapParams aTileIDParam, 
+            int aTotalSize, 
+            int aNbrOfImp, 
+            short aEmptyImp) {
+        m_Lock.writeLock();
+        try {
+            boolean written = internalWriteDataToCache(aCacheData, aParams, aTileIDParam, aTotalSize, aNbrOfImp, aEmptyImp);
+            if(written) {
+                addNbrOfBytesWritten(aTotalSize);
+            }
+            if(m_BloomFilter.needsRebuild()) {
+                rebuildBloomFilter();
+            }
+            return written;
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private boolean internalWriteDataToCache(byte [][]aCacheData, 
             TileMapParams []aParams, 
             TileMapParams aTileIDParam, 
             int aTotalSize, 
@@ -330,7 +445,7 @@ public class FileCache implements CacheInterface {
         }   
 
         try {
-            if(dout == null) {
+            if(dout == null && !m_CacheFileHandler.hasPageFiles()) {
                 dout = m_CacheFileHandler.getPageDataOutputStream(m_FilePageNumber, m_CurrentOffset);  
 
                 if(LOG.isInfo()) {
@@ -339,6 +454,7 @@ public class FileCache implements CacheInterface {
             }
 
             IndexTableEntry entry = null;
+            long tileKey = TileKey.NO_KEY;
             int mc2Lat = 0;
             int mc2Lon = 0;
 
@@ -348,11 +464,19 @@ public class FileCache implements CacheInterface {
              * tile, then more importance will be available. 
              */
             if(TileMapParamTypes.isMap(tileID)) {
-                final int layerNbr = m_tmfd.getLayerNbrFromID(aTileIDParam.getLayerID());
-                final int mc2unit = (int)m_tmfd.getMc2UnitsPerTile(layerNbr, aTileIDParam.getDetailLevel());                
-                mc2Lat = aTileIDParam.getTileIndexLat() * mc2unit;
-                mc2Lon = aTileIDParam.getTileIndexLon() * mc2unit;             
-                entry = (IndexTableEntry)m_cacheQuadTree.getEntry(mc2Lat, mc2Lon, tileID, m_CacheFileHandler);
+                /* The overview maps are saved in the index table hashtable. */
+                if(!aTileIDParam.isOverviewMap()) {
+                    tileKey = TileKey.getTileKey(aTileIDParam);
+                }
+                if(tileKey != TileKey.NO_KEY) {
+                    entry = getTileIndexEntry(tileKey, tileID);
+                } else {
+                    final int layerNbr = m_tmfd.getLayerNbrFromID(aTileIDParam.getLayerID());
+                    final int mc2unit = (int)m_tmfd.getMc2UnitsPerTile(layerNbr, aTileIDParam.getDetailLevel());                
+                    mc2Lat = aTileIDParam.getTileIndexLat() * mc2unit;
+                    mc2Lon = aTileIDParam.getTileIndexLon() * mc2unit;             
+                    entry = (IndexTableEntry)m_cacheQuadTree.getEntry(mc2Lat, mc2Lon, tileID, m_CacheFileHandler);
+                }
 
                 /* The entry already exist in the cache and more importance
                  * need to be added. */
@@ -363,7 +487,7 @@ public class FileCache implements CacheInterface {
                                 ", offset= "+entry.getOffset()+" page= "+entry.getPage()+" nbrNewImp= "+aNbrOfImp);
                     }
 
-                    extraData = getAlreadyCachedData(entry);
+                    extraData = getAlreadyCachedData(entry, tileKey);
                     if(extraData != null)
                         totalSize += extraData.length;                       
                 }
@@ -413,6 +537,7 @@ public class FileCache implements CacheInterface {
                 internalWriteTileMapData(aCacheData, 
                         aParams, 
                         entry, 
+                        tileKey, 
                         tileID, 
                         aTileIDParam, 
                         mc2Lat, 
@@ -485,24 +610,25 @@ public class FileCache implements CacheInterface {
      * Write tile maps to the cache file in the format specified 
      * by the table below. 
      * 
-     * Add a index table entry to the quad tree after writing to 
-     * the cache. 
+     * Add a index table entry to the tile index, or the quad tree if the 
+     * tile has no {@link TileKey}, after writing to the cache. 
      * 
      * 
      * |--------------------------------------------------|
      * | Cache data table           | SIZE                |
      * |--------------------------------------------------|
      * | Importance number          | 1 byte              |
-     * | TileMap type (map/string)  | 1 byte              |
+     * | TileMap type (map/str/tri) | 1 byte              |
      * | Cache data size            | 2 bytes             |
      * | Cached data                | #Cached data size   |
      * |--------------------------------------------------|
      * 
-     * NOTE: This method should be only called from synchronize context
+     * NOTE: This method should be only called with the write lock held
     */
     private void internalWriteTileMapData(byte [][]aCacheData, 
                                           TileMapParams []aParams,
                                           IndexTableEntry entry, 
+                                          long tileKey, 
                                           String tileID,
                                           TileMapParams aTileIDParam,
                                           int mc2Lat, 
@@ -515,7 +641,7 @@ public class FileCache implements CacheInterface {
             if(aParams[i] != null && aCacheData[i] != null) {
                 /* Write importance number*/                    
                 daout.writeByte(aParams[i].getImportance());
-                /* Write the map type (MAP or STRING)*/
+                /* Write the map type (MAP, STRINGS or TRIANGLES)*/
                 daout.writeByte(aParams[i].getTileMapType());
                 /* Write data */                
                 daout.writeShort(aCacheData[i].length);
@@ -525,9 +651,14 @@ public class FileCache implements CacheInterface {
             }
         }
         
-        daout.flush();
-        dout.write(wfout.getByteArray(), 0, totalSize);
-        dout.flush();
+        writeBlock(totalSize);
+        
+        if(tileKey != TileKey.NO_KEY) {
+            /* Add or update the location of the tile in the tile index. */
+            m_TileIndex.put(tileKey, TileIndex.createLocation(m_CurrentPageNumber, m_CurrentOffset));
+            m_BloomFilter.add(tileKey);
+            return;
+        }
         
         /* Create a indexEntry for where the data are cached and save it. */
         if(entry == null) {                        
@@ -541,6 +672,7 @@ public class FileCache implements CacheInterface {
                 }                
             } else {
                 m_IndexTableHashtable.put(tileID, entry);
+                m_BloomFilter.add(tileID);
             }
         } else {
             /* Update a already saved entry with the new location of the cached data. */
@@ -565,7 +697,7 @@ public class FileCache implements CacheInterface {
      * | Cached data                | #Cached data size    |
      * |---------------------------------------------------|
      * 
-     *  NOTE: This method should be only called from synchronize context
+     *  NOTE: This method should be only called with the write lock held
     */
     private void internalWriteNonTileMapData(byte [][]aCacheData, 
                                              TileMapParams []aParams, 
@@ -581,11 +713,9 @@ public class FileCache implements CacheInterface {
             /* Write data */                
             daout.writeShort(aCacheData[0].length);
             daout.write(aCacheData[0]);
-            daout.flush();
             
             /* Write to file. */
-            dout.write(wfout.getByteArray(), 0, totalSize);
-            dout.flush();
+            writeBlock(totalSize);
             
             /* Add the new block to the index table */
             IndexTableEntry entry = new IndexTableEntry(m_CurrentPageNumber, m_CurrentOffset, tileID);     
@@ -595,28 +725,93 @@ public class FileCache implements CacheInterface {
                     LOG.error("FileCache.internalWriteNonTileMapData()", "tileID= "+tileID+" added 2 times!");
                 }
             }
+            m_BloomFilter.add(tileID);
             
         }
     }
     
+    /**
+     * Writes a block from the temporary buffer at the current offset of 
+     * the current page. 
+     * 
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void writeBlock(int totalSize) throws IOException {
+        daout.flush();
+        if(m_CacheFileHandler.hasPageFiles()) {
+            m_CacheFileHandler.writePage(m_FilePageNumber, m_CurrentOffset, wfout.getByteArray(), 0, totalSize);
+        } else {
+            dout.write(wfout.getByteArray(), 0, totalSize);
+            dout.flush();
+        }
+    }
+    
+    /**
+     * Opens a stream for reading a cached block, starting with the total 
+     * size of the block. 
+     * <p>
+     * With page files only the block is read, into a new buffer since 
+     * several threads may read at the same time. Otherwise a stream for the 
+     * page file is opened and skipped to the block.  
+     * 
+     * NOTE: This method should be only called with the read or write lock held
+     * 
+     * @param entry the index of the block
+     * @return the stream, that must be closed by the caller
+     * @throws CorruptCacheException if the size of the block is invalid
+     */
+    private DataInputStream openBlockInputStream(IndexTableEntry entry) throws IOException {
+        final int page = entry.getPage()%NUMBER_OF_PAGES;
+        final int offset = entry.getOffset();
+        
+        if(m_CacheFileHandler.hasPageFiles()) {
+            byte []header = new byte[4];
+            m_CacheFileHandler.readPage(page, offset, header, 0, 4);
+            final int size = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16) 
+                           | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+            if(size <= CACHE_HEADER_OFFSET || offset + size > m_CacheFileHandler.getPageSize(page)) {
+                throw new CorruptCacheException("Invalid size " + size + " for page " + entry.getPage());
+            }
+            byte []block = new byte[size];
+            m_CacheFileHandler.readPage(page, offset, block, 0, size);
+            return new DataInputStream(new ByteArrayInputStream(block));
+        }
+        
+        DataInputStream din = m_CacheFileHandler.getPageDataInputStream(page);
+        if(din == null) {
+            throw new IOException("page "+entry.getPage()+" doesn't exist");
+        }
+        /* Skip data to the correct position in the cache file. */
+        if(din.skipBytes(offset) != offset) {
+            din.close();
+            throw new EOFException("Unable to skip "+offset+" bytes");
+        }
+        return din;
+    }
+    
     /**
      * Called when more importance for a tile needs to be added. This will happen if
      * a user zoom inside a already cached tile since more importance will be available. 
      * 
      * Return the map data for the cached importance for the tile. 
      * 
-     * NOTE: This method should be only called from synchronize context
+     * NOTE: This method should be only called with the write lock held
+     * 
+     * @param entry the index of the cached data
+     * @param tileKey the key of the tile in the tile index, or {@link TileKey#NO_KEY}
+     * if the entry is in the quad tree
      */
-    private byte[]getAlreadyCachedData(IndexTableEntry entry) throws IOException, CorruptCacheException {
+    private byte[]getAlreadyCachedData(IndexTableEntry entry, long tileKey) throws IOException, CorruptCacheException {
         
         byte []extraData = null;
         if(TileMapParamTypes.isMap(entry.getName())) {
             DataInputStream din = null;
             try {
-                din = m_CacheFileHandler.getPageDataInputStream(entry.getPage()%NUMBER_OF_PAGES);
-    
-                if(din.skip(entry.getOffset()) != entry.getOffset()) {                    
-                    throw new EOFException("Unable to skip "+entry.getOffset()+" bytes");
+                try {
+                    din = openBlockInputStream(entry);
+                } catch (CorruptCacheException e) {
+                    removeEntry(entry, tileKey);
+                    throw e;
                 }
 
                 // Read the total size of the buffer
@@ -624,7 +819,7 @@ public class FileCache implements CacheInterface {
                 
                 if (size <= CACHE_HEADER_OFFSET || size > 400000) {
                     // The offset into the file has been corrupt when reading already cached data
-                    m_cacheQuadTree.removeEntry(entry);
+                    removeEntry(entry, tileKey);
                     if (LOG.isError()) {
                         LOG.error("FileCache.getAlreadyCachedData()", "Invalid size: "+size+
                                 ". Throwing CorruptCacheException");             
@@ -657,7 +852,19 @@ public class FileCache implements CacheInterface {
      * No data will be unloaded from the memory, if you want to save and free
      * memory use the {@link FileCache#purgeData()} method.  
      */
-    public synchronized void saveCache() {
+    public void saveCache() {
+        m_Lock.writeLock();
+        try {
+            internalSaveCache();
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void internalSaveCache() {
         
         long tot_time = System.currentTimeMillis();
         long time = tot_time;
@@ -690,10 +897,14 @@ public class FileCache implements CacheInterface {
                 m_CacheFileHandler.writeQuadTreeToFile(m_cacheQuadTree);
             t3 = System.currentTimeMillis()-time;
             time = System.currentTimeMillis();
+            m_CacheFileHandler.flushPageFiles();
             m_CacheFileHandler.writeCacheInfoToFile(m_CurrentPageNumber, CACHE_VERSION);
             t4 = System.currentTimeMillis()-time;
             time = System.currentTimeMillis();
             m_CacheFileHandler.writeIndexTableToFile(m_IndexTableHashtable);
+            if(m_TileIndex.hasBeenChanged()) {
+                m_CacheFileHandler.writeTileIndexToFile(m_TileIndex);
+            }
             t5 = System.currentTimeMillis()-time;
             
         } catch (Exception e) {
@@ -711,9 +922,31 @@ public class FileCache implements CacheInterface {
     // -------------------------------------------------------------------------------------------------
     // Read data from cache 
     
-    public synchronized byte[] getDataFromCache(TileMapLayerWrapper aTileMapWrapper, 
-                                                String aParamString, 
-                                                String aTileID) {
+    public byte[] getDataFromCache(TileMapLayerWrapper aTileMapWrapper, 
+                                   String aParamString, 
+                                   String aTileID) {
+        if(aTileMapWrapper == null || aTileMapWrapper.isOverviewMap()) {
+            if(!m_BloomFilter.mightContain(aTileID)) {
+                return null;
+            }
+        } else if(!mightBeCached(aTileMapWrapper.getTileIDParam())) {
+            return null;
+        }
+        
+        m_Lock.readLock();
+        try {
+            return internalGetDataFromCache(aTileMapWrapper, aParamString, aTileID);
+        } finally {
+            m_Lock.readUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the read or write lock held
+     */
+    private byte[] internalGetDataFromCache(TileMapLayerWrapper aTileMapWrapper, 
+                                            String aParamString, 
+                                            String aTileID) {
         
         byte d[] = null;
         /* Return if the cache isn't open. */
@@ -731,14 +964,11 @@ public class FileCache implements CacheInterface {
                             " iCurrentPageNumber= "+m_CurrentPageNumber+" name: "+aTileID);
                 }
                 m_IndexTableHashtable.remove(aTileID);
+                m_BloomFilter.entryRemoved();
                 return d;
             }
         } else {
-            int mc2Unit = (int)m_tmfd.getMc2UnitsPerTile(m_tmfd.getLayerNbrFromID(aTileMapWrapper.getLayerID()), 
-                    aTileMapWrapper.getDetailLevel());
-            int mc2Lat = aTileMapWrapper.getTileIndexLat() * mc2Unit;
-            int mc2Lon = aTileMapWrapper.getTileIndexLon() * mc2Unit;                
-            entry = (IndexTableEntry)m_cacheQuadTree.getEntry(mc2Lat, mc2Lon, aTileID, m_CacheFileHandler);   
+            entry = getTileEntry(aTileMapWrapper.getTileIDParam(), aTileID);
 
             /* Remove the entry if it's saved in a page that isn't active anymore. See documentation in
              * the moveToNextPage() method. */
@@ -748,7 +978,7 @@ public class FileCache implements CacheInterface {
                     LOG.info("FileCache.getDataFromCache()","Page= "+entry.getPage()+
                             " iCurrentPageNumber= "+m_CurrentPageNumber+" name: "+aTileID);
                 }
-                m_cacheQuadTree.removeEntry(mc2Lat, mc2Lon, aTileID);
+                removeTileEntry(aTileMapWrapper.getTileIDParam(), aTileID);
                 return d;
             }
         }
@@ -768,7 +998,7 @@ public class FileCache implements CacheInterface {
      * @param aTileID
      * @return
      * 
-     * NOTE: This method should be only called from synchronize context
+     * NOTE: This method should be only called with the read or write lock held
      */
     private byte[] loadDataFromFile(IndexTableEntry entry, 
                                   TileMapLayerWrapper aTileMapWrapper, 
@@ -780,20 +1010,15 @@ public class FileCache implements CacheInterface {
         DataInputStream din = null;
         byte []data = null;
         
+        /* The buffers are allocated for each read since several threads
+         * may read at the same time. */
+        byte []paramData = new byte[30];
+        BitBuffer bitBuffer = new BitBuffer(new byte[30]);
+        
         try {
         
             /* Read the cached data. */
-            din = m_CacheFileHandler.getPageDataInputStream(entry.getPage()%NUMBER_OF_PAGES);
-            
-            if(din == null) {
-                throw new IOException("Cache.getDataFromCache(): page "+entry.getPage()+" doesn't exist");
-            }
-            
-            /* Skip data to the correct position in the cache file. */
-            if(din.skipBytes(entry.getOffset()) != entry.getOffset()) {
-                din.close();
-                throw new IOException("Unable to skip "+entry.getOffset()+" number of bytes");
-            }
+            din = openBlockInputStream(entry);
             
             TileMapParams tileIDParams = null;
             String paramString;
@@ -850,7 +1075,9 @@ public class FileCache implements CacheInterface {
                 din.readFully(b);
                 currentOffset += (2 + dataSize);
                 
-                /* Write all importance to the memory cache. */
+                /* Write all importance to the memory cache. The triangles 
+                 * records are read from the memory cache when the geometry
+                 * tile is extracted. */
                 m_MemCache.writeToCache(paramString, b);
                 
                 /* Return the byte buffer if the parameter string are
@@ -859,6 +1086,7 @@ public class FileCache implements CacheInterface {
                     data = b;
                 }
             }
+            addNbrOfBytesRead(totalSize);
         } catch (Exception e) {
 
             if(LOG.isError()) {
@@ -869,13 +1097,10 @@ public class FileCache implements CacheInterface {
             try {
                 if(TileMapParamTypes.isMap(aTileID)) {
                     TileMapParams params = aTileMapWrapper.getTileIDParam();
-                    final int mc2unit = 
-                        (int)m_tmfd.getMc2UnitsPerTile(m_tmfd.getLayerNbrFromID(params.getLayerID()), params.getDetailLevel());
-                    final int lat = params.getTileIndexLat() * mc2unit;
-                    final int lon = params.getTileIndexLon() * mc2unit;
-                    m_cacheQuadTree.removeEntry(lat, lon, params.getTileID());
+                    removeTileEntry(params, params.getTileID());
                 } else {
                     m_IndexTableHashtable.remove(aTileID);                        
+                    m_BloomFilter.entryRemoved();
                 }
             } catch (Exception ex) {
                 if(LOG.isError()) {
@@ -905,7 +1130,19 @@ public class FileCache implements CacheInterface {
     /**
      * Clean up the memory.
      */
-    public synchronized void purgeData() {
+    public void purgeData() {
+        m_Lock.writeLock();
+        try {
+            internalPurgeData();
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void internalPurgeData() {
         try {                
             m_QtNodeVector.removeAllElements();
             m_cacheQuadTree.getAllNodesThatContainsLoadedEntrys(m_QtNodeVector);
@@ -925,6 +1162,9 @@ public class FileCache implements CacheInterface {
             m_CacheFileHandler.writeQuadTreeToFile(m_cacheQuadTree);
             m_CacheFileHandler.writeCacheInfoToFile(m_CurrentPageNumber, CACHE_VERSION);
             m_CacheFileHandler.writeIndexTableToFile(m_IndexTableHashtable);
+            if(m_TileIndex.hasBeenChanged()) {
+                m_CacheFileHandler.writeTileIndexToFile(m_TileIndex);
+            }
             
         } catch (Exception e) {
             if(LOG.isError()) {
@@ -937,7 +1177,19 @@ public class FileCache implements CacheInterface {
      * Called when a tile has been removed from the screen. This method check if there
      * exit any other tiles in the node, if not the node is unloaded from the memory.
      */    
-    public synchronized boolean updateLoadedNodes(TileMapLayerWrapperInterface wrapper, Hashtable aRequestedWrappers) {
+    public boolean updateLoadedNodes(TileMapLayerWrapperInterface wrapper, Hashtable aRequestedWrappers) {
+        m_Lock.writeLock();
+        try {
+            return internalUpdateLoadedNodes(wrapper, aRequestedWrappers);
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private boolean internalUpdateLoadedNodes(TileMapLayerWrapperInterface wrapper, Hashtable aRequestedWrappers) {
             long time = System.currentTimeMillis();
             int layerNbr = m_tmfd.getLayerNbrFromID(wrapper.getLayerID());
             int mc2UnitPerTile = (int)m_tmfd.getMc2UnitsPerTile(layerNbr, wrapper.getDetailLevel());
@@ -1020,7 +1272,7 @@ public class FileCache implements CacheInterface {
      * 
      * @param aRequestedWrappers the hashtable that contains the current loaded wrappers.
      * 
-     * NOTE: This method should be only called from synchronize context
+     * NOTE: This method should be only called with the write lock held
      */
     private void removeNodesFromLoadedVector(Hashtable aRequestedWrappers) {
         
@@ -1101,20 +1353,43 @@ public class FileCache implements CacheInterface {
      * @param aTileID the id for the tile map.
      * @return true if the tile id exist in the cache, false if not.
      */
-    public synchronized boolean existInCache(TileMapParams aParams) {
-            final int layerNbr = m_tmfd.getLayerNbrFromID(aParams.getLayerID());
-            final int mc2Unit = (int)m_tmfd.getMc2UnitsPerTile(layerNbr, aParams.getDetailLevel());
-            final int lat = aParams.getTileIndexLat() * mc2Unit;
-            final int lon = aParams.getTileIndexLon() * mc2Unit;
-            QuadTreeEntry entry = m_cacheQuadTree.getEntry(lat, lon, aParams.getTileID(), m_CacheFileHandler);
-            return (entry != null);
+    public boolean existInCache(TileMapParams aParams) {
+        if(!mightBeCached(aParams)) {
+            return false;
+        }
+        
+        m_Lock.readLock();
+        try {
+            return internalExistInCache(aParams);
+        } finally {
+            m_Lock.readUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the read or write lock held
+     */
+    private boolean internalExistInCache(TileMapParams aParams) {
+            return (getTileEntry(aParams, aParams.getTileID()) != null);
     }
     
     /**
      * Remove the cache entry with the id specified by the parameter
      * from the cache. The index file will be updated on disc. 
      */
-    public synchronized void removeFromCache(TileMapParams aParams) {
+    public void removeFromCache(TileMapParams aParams) {
+        m_Lock.writeLock();
+        try {
+            internalRemoveFromCache(aParams);
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void internalRemoveFromCache(TileMapParams aParams) {
         
         if(LOG.isInfo()) {
             LOG.info("FileCache.removeFromCache()", "aTileID= "+aParams.getTileID()+" isOpen= "+m_IsCacheOpen);
@@ -1126,13 +1401,10 @@ public class FileCache implements CacheInterface {
 
         try {
             if(TileMapParamTypes.isMap(aParams.getTileID())) {
-                final int mc2unit = 
-                    (int)m_tmfd.getMc2UnitsPerTile(m_tmfd.getLayerNbrFromID(aParams.getLayerID()), aParams.getDetailLevel());
-                final int lat = aParams.getTileIndexLat() * mc2unit;
-                final int lon = aParams.getTileIndexLon() * mc2unit;
-                m_cacheQuadTree.removeEntry(lat, lon, aParams.getTileID());
+                removeTileEntry(aParams, aParams.getTileID());
             } else {
                 m_IndexTableHashtable.remove(aParams.getTileID());                    
+                m_BloomFilter.entryRemoved();
             }
         } catch (Exception e) {
             if(LOG.isError()) {
@@ -1141,11 +1413,161 @@ public class FileCache implements CacheInterface {
         }
     }
     
+    /**
+     * Returns the ids of all tiles and other data in the cache, e.g. to copy 
+     * the cache into a pre-installed map file. Route tiles in the quad tree 
+     * are skipped. 
+     * <p>
+     * The data of an id is read with 
+     * {@link #getDataFromCache(TileMapLayerWrapper, String, String)}, with a 
+     * wrapper created from the params for map tiles. Map tiles in the 
+     * hashtable are marked as overview maps. 
+     * 
+     * @return a Vector of TileMapParams with the tile ID set, empty if the 
+     * cache isn't open
+     */
+    public Vector getTileIDs() {
+        m_Lock.writeLock();
+        try {
+            Vector tileIDs = new Vector();
+            if(!m_IsCacheOpen) {
+                return tileIDs;
+            }
+            
+            long []keys = m_TileIndex.getKeys();
+            for(int i=0; i<keys.length; i++) {
+                tileIDs.addElement(TileKey.getTileIDParams(keys[i]));
+            }
+            Enumeration e = m_IndexTableHashtable.keys();
+            while(e.hasMoreElements()) {
+                TileMapParams params = TileKey.getTileIDParams((String)e.nextElement(), true);
+                if(params != null) {
+                    tileIDs.addElement(params);
+                }
+            }
+            return tileIDs;
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /**
+     * Returns the index entry of a tile, from the tile index or from the quad 
+     * tree if the tile has no {@link TileKey}. 
+     * 
+     * NOTE: This method should be only called with the read or write lock held
+     * 
+     * @param aParams the params of the tile
+     * @param aTileID the tile ID of the params
+     * @return the entry, or null if the tile isn't cached
+     */
+    private IndexTableEntry getTileEntry(TileMapParams aParams, String aTileID) {
+        final long tileKey = TileKey.getTileKey(aParams);
+        if(tileKey != TileKey.NO_KEY) {
+            return getTileIndexEntry(tileKey, aTileID);
+        }
+        
+        final int mc2unit = 
+            (int)m_tmfd.getMc2UnitsPerTile(m_tmfd.getLayerNbrFromID(aParams.getLayerID()), aParams.getDetailLevel());
+        final int lat = aParams.getTileIndexLat() * mc2unit;
+        final int lon = aParams.getTileIndexLon() * mc2unit;
+        return (IndexTableEntry)m_cacheQuadTree.getEntry(lat, lon, aTileID, m_CacheFileHandler);
+    }
+    
+    /**
+     * Returns a new entry for the location of the tile in the tile index, 
+     * changes to the entry doesn't change the tile index. 
+     * 
+     * NOTE: This method should be only called with the read or write lock held
+     */
+    private IndexTableEntry getTileIndexEntry(long aTileKey, String aTileID) {
+        final int location = m_TileIndex.get(aTileKey);
+        if(location == TileIndex.NO_ENTRY) {
+            return null;
+        }
+        return new IndexTableEntry(TileIndex.getPage(location), TileIndex.getOffset(location), aTileID);
+    }
+    
+    /**
+     * Removes the index entry of a tile, see {@link #getTileEntry(TileMapParams, String)}. 
+     * 
+     * NOTE: This method should be only called with the read or write lock held
+     */
+    private void removeTileEntry(TileMapParams aParams, String aTileID) {
+        final long tileKey = TileKey.getTileKey(aParams);
+        if(tileKey != TileKey.NO_KEY) {
+            if(m_TileIndex.remove(tileKey)) {
+                m_BloomFilter.entryRemoved();
+            }
+        } else {
+            final int mc2unit = 
+                (int)m_tmfd.getMc2UnitsPerTile(m_tmfd.getLayerNbrFromID(aParams.getLayerID()), aParams.getDetailLevel());
+            final int lat = aParams.getTileIndexLat() * mc2unit;
+            final int lon = aParams.getTileIndexLon() * mc2unit;
+            m_cacheQuadTree.removeEntry(lat, lon, aTileID);
+        }
+    }
+    
+    /**
+     * Removes an entry returned by {@link #getTileIndexEntry(long, String)} or 
+     * from the quad tree. 
+     * 
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void removeEntry(IndexTableEntry entry, long tileKey) {
+        if(tileKey != TileKey.NO_KEY) {
+            if(m_TileIndex.remove(tileKey)) {
+                m_BloomFilter.entryRemoved();
+            }
+        } else {
+            m_cacheQuadTree.removeEntry(entry);
+        }
+    }
+    
+    /**
+     * Returns false if the tile certainly isn't in the tile index, without 
+     * taking the lock. Route tiles might always be cached. 
+     * 
+     * @param aParams the params of the tile
+     */
+    private boolean mightBeCached(TileMapParams aParams) {
+        final long tileKey = TileKey.getTileKey(aParams);
+        return tileKey == TileKey.NO_KEY || m_BloomFilter.mightContain(tileKey);
+    }
+    
+    /**
+     * Replaces the Bloom filter with a filter built from the tile index and 
+     * the hashtable, sized for twice the number of entries. 
+     * 
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void rebuildBloomFilter() {
+        BloomFilter filter = new BloomFilter(2 * (m_TileIndex.size() + m_IndexTableHashtable.size()));
+        m_TileIndex.addKeysTo(filter);
+        Enumeration keys = m_IndexTableHashtable.keys();
+        while(keys.hasMoreElements()) {
+            filter.add((String)keys.nextElement());
+        }
+        m_BloomFilter = filter;
+        
+        if(LOG.isDebug()) {
+            LOG.debug("FileCache.rebuildBloomFilter()", "entries= "+filter.getNbrOfEntries()+
+                    " bits= "+filter.getNbrOfBits());
+        }
+    }
+    
+    /**
+     * @return the filter in front of the tile index and the hashtable
+     */
+    BloomFilter getBloomFilter() {
+        return m_BloomFilter;
+    }
+    
     /**
      * @return
      * @throws IOException
      * 
-     * NOTE: This method should be only called from synchronize context
+     * NOTE: This method should be only called with the write lock held
      */
     private boolean moveToNextPage() throws IOException {
         
@@ -1177,7 +1599,9 @@ public class FileCache implements CacheInterface {
             dout.close();
         
         m_CacheFileHandler.clearPageFile(m_FilePageNumber);        
-        dout = m_CacheFileHandler.getPageDataOutputStream(m_FilePageNumber, m_CurrentOffset);  
+        if(!m_CacheFileHandler.hasPageFiles()) {
+            dout = m_CacheFileHandler.getPageDataOutputStream(m_FilePageNumber, m_CurrentOffset);  
+        }
         
         m_CacheFileHandler.writeQuadTreeToFile(m_cacheQuadTree);
         m_CacheFileHandler.writeCacheInfoToFile(m_CurrentPageNumber, CACHE_VERSION);
@@ -1202,6 +1626,13 @@ public class FileCache implements CacheInterface {
     //XXX: Fix this, the size of the node are wrong! see node.setData(...)
     private void removeInactiveItemsFromNodes() {
         int pageLimit = (m_CurrentPageNumber-NUMBER_OF_PAGES);
+        
+        int nbrRemoved = m_TileIndex.removePagesUpTo(pageLimit);
+        if(LOG.isInfo()) {
+            LOG.info("FileCache.removeInactiveItemsFromNodes()", "removed "+nbrRemoved+" tiles from the tile index");
+        }
+        rebuildBloomFilter();
+        
         Vector v = new Vector();
         m_cacheQuadTree.getAllNodes(v);
         final int size = v.size();
@@ -1260,7 +1691,19 @@ public class FileCache implements CacheInterface {
     /**
      * Close the cache. 
      */
-    public synchronized void closeCache() {
+    public void closeCache() {
+        m_Lock.writeLock();
+        try {
+            internalCloseCache();
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void internalCloseCache() {
         try {            
             /* Save any loaded nodes that has need modified to file before we 
              * close the cache. */
@@ -1281,9 +1724,13 @@ public class FileCache implements CacheInterface {
                 }
             }
             
-            /* Write the index hash to file when we exit the application. The nodes and quad tree
+            /* Write the index hash and tile index to file when we exit the application. The nodes and quad tree
              * file has been saved when we unload the maps from memory and doesn't have to be done here. */
             m_CacheFileHandler.writeIndexTableToFile(m_IndexTableHashtable);                        
+            if(m_TileIndex.hasBeenChanged()) {
+                m_CacheFileHandler.writeTileIndexToFile(m_TileIndex);
+            }
+            m_CacheFileHandler.flushPageFiles();
         } catch (Exception e) {
             if(LOG.isError()) {
                 LOG.error("FileCache.closeCache()", e);
@@ -1299,6 +1746,10 @@ public class FileCache implements CacheInterface {
         return m_cacheQuadTree;
     }
 
+    TileIndex getTileIndex() {
+        return m_TileIndex;
+    }
+
     FileHandler getCacheFileHandler() {
         return m_CacheFileHandler;
     }
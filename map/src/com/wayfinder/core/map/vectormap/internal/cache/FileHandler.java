@@ -34,6 +34,7 @@
 
 package com.wayfinder.core.map.vectormap.internal.cache;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -50,6 +51,7 @@ import com.wayfinder.core.shared.util.qtree.QuadTreeNode;
 import com.wayfinder.pal.error.PermissionsException;
 import com.wayfinder.pal.persistence.PersistenceLayer;
 import com.wayfinder.pal.persistence.WFFileConnection;
+import com.wayfinder.pal.persistence.WFPageFile;
 
 public class FileHandler implements QTFileInterface {
     
@@ -60,21 +62,33 @@ public class FileHandler implements QTFileInterface {
     private static final String FNAME_INDEX = "FIndex.dvf";
     private static final String FNAME_PAGE_FILE = "FPage.dvf";
     private static final String FNAME_QT_FILE = "FQTFile.dvf";
+    private static final String FNAME_TILE_INDEX = "FTileIndex.dvf";
     
     private WFFileConnection m_QuadTreeFile;
     private WFFileConnection []m_PageConnections;
+    // the page files if the platform supports them, otherwise null and the 
+    // pages are read and written through m_PageConnections
+    private WFPageFile []m_PageFiles;
     private WFFileConnection m_InfoFile;
     private WFFileConnection m_IndexFile;
+    private WFFileConnection m_TileIndexFile;
     
     private int m_NbrOfPages;
+    private int m_MaxPageSize;
     private String m_FileBasePath;
     private PersistenceLayer m_PersistenceLayer; 
     
     private byte m_CurrentPageNumber = 0;
     private int m_VersionNumber = -1;
     
-    public FileHandler(int nbrOfPages, PersistenceLayer persistenceLayer) {
+    /**
+     * @param nbrOfPages the number of page files
+     * @param maxPageSize the maximum number of bytes in a page file
+     * @param persistenceLayer the persistence layer
+     */
+    public FileHandler(int nbrOfPages, int maxPageSize, PersistenceLayer persistenceLayer) {
         m_NbrOfPages = nbrOfPages;        
+        m_MaxPageSize = maxPageSize;
         m_PersistenceLayer = persistenceLayer;        
     }
     
@@ -341,7 +355,9 @@ public class FileHandler implements QTFileInterface {
      */
     public void clearPageFile(byte pageNbr) {        
         try {            
-            if(m_PageConnections[pageNbr].fileSize() > 0) {
+            if(m_PageFiles != null) {
+                m_PageFiles[pageNbr].clear();
+            } else if(m_PageConnections[pageNbr].fileSize() > 0) {
                 m_PageConnections[pageNbr].delete();
                 m_PageConnections[pageNbr] = m_PersistenceLayer.openFile(m_FileBasePath+FNAME_PAGE_FILE+pageNbr);
             }
@@ -365,19 +381,129 @@ public class FileHandler implements QTFileInterface {
             return false;
         
         m_FileBasePath = m_PersistenceLayer.getBaseFileDirectory()+"/mapcache/";        
-        m_PageConnections = new WFFileConnection[aNbrOfPages];
+        closePageFiles();
+        m_PageFiles = new WFPageFile[aNbrOfPages];
         for(int i=0; i<aNbrOfPages; i++) {
-            m_PageConnections[i] = m_PersistenceLayer.openFile(m_FileBasePath+FNAME_PAGE_FILE+i);
+            m_PageFiles[i] = m_PersistenceLayer.openPageFile(m_FileBasePath+FNAME_PAGE_FILE+i, m_MaxPageSize);
+            if(m_PageFiles[i] == null) {
+                // not supported by the platform, use streams
+                closePageFiles();
+                break;
+            }
+        }
+        
+        if(m_PageFiles == null) {
+            m_PageConnections = new WFFileConnection[aNbrOfPages];
+            for(int i=0; i<aNbrOfPages; i++) {
+                m_PageConnections[i] = m_PersistenceLayer.openFile(m_FileBasePath+FNAME_PAGE_FILE+i);
+            }
+        }
+        
+        if(LOG.isInfo()) {
+            LOG.info("FileHandler.openCacheFiles()", "page files= "+(m_PageFiles != null));
         }
 
         m_InfoFile = m_PersistenceLayer.openFile(m_FileBasePath+FNAME_INFO);
         m_IndexFile = m_PersistenceLayer.openFile(m_FileBasePath+FNAME_INDEX);
         m_QuadTreeFile = m_PersistenceLayer.openFile(m_FileBasePath+FNAME_QT_FILE);
+        m_TileIndexFile = m_PersistenceLayer.openFile(m_FileBasePath+FNAME_TILE_INDEX);
         
         return true;
     }
     
+    /**
+     * @return true if the pages are read and written with 
+     * {@link #readPage(int, int, byte[], int, int)} and 
+     * {@link #writePage(int, int, byte[], int, int)}, false if the streams 
+     * must be used
+     */
+    boolean hasPageFiles() {
+        return m_PageFiles != null;
+    }
+    
+    /**
+     * Reads bytes from a page file, see {@link #hasPageFiles()}. 
+     * 
+     * @param aPage the page
+     * @param aOffset the offset in the page of the first byte
+     * @param aData the buffer to read to
+     * @param aDataOffset the offset in the buffer
+     * @param aLength the number of bytes to read
+     * @throws IOException if the bytes are outside the page or the page 
+     * couldn't be read
+     */
+    void readPage(int aPage, int aOffset, byte []aData, int aDataOffset, int aLength) throws IOException {
+        m_PageFiles[aPage].read(aOffset, aData, aDataOffset, aLength);
+    }
+    
+    /**
+     * Writes bytes to a page file, see {@link #hasPageFiles()}. 
+     * 
+     * @param aPage the page
+     * @param aOffset the offset in the page of the first byte, at most the 
+     * size of the page
+     * @param aData the buffer with the bytes
+     * @param aDataOffset the offset in the buffer
+     * @param aLength the number of bytes to write
+     * @throws IOException if the page would be too large or the page 
+     * couldn't be written
+     */
+    void writePage(int aPage, int aOffset, byte []aData, int aDataOffset, int aLength) throws IOException {
+        m_PageFiles[aPage].write(aOffset, aData, aDataOffset, aLength);
+    }
+    
+    /**
+     * @param aPage the page 
+     * @return the number of bytes in the page 
+     */
+    int getPageSize(int aPage) {
+        if(m_PageFiles != null) {
+            return m_PageFiles[aPage].size();
+        }
+        return m_PageConnections[aPage].fileSize();
+    }
+    
+    /**
+     * Writes the changes of the page files to disc. 
+     */
+    void flushPageFiles() {
+        if(m_PageFiles != null) {
+            for(int i=0; i<m_PageFiles.length; i++) {
+                try {
+                    m_PageFiles[i].flush();
+                } catch (IOException e) {
+                    if(LOG.isError()) {
+                        LOG.error("FileHandler.flushPageFiles()", e);
+                    }
+                }
+            }
+        }
+    }
+    
+    private void closePageFiles() {
+        if(m_PageFiles != null) {
+            for(int i=0; i<m_PageFiles.length; i++) {
+                try {
+                    if(m_PageFiles[i] != null) {
+                        m_PageFiles[i].close();
+                    }
+                } catch (IOException e) {
+                    if(LOG.isError()) {
+                        LOG.error("FileHandler.closePageFiles()", e);
+                    }
+                }
+            }
+            m_PageFiles = null;
+        }
+    }
+    
     public DataInputStream getPageDataInputStream(int aPage) throws IOException {
+        if(m_PageFiles != null) {
+            final int size = m_PageFiles[aPage].size();
+            byte []data = new byte[size];
+            m_PageFiles[aPage].read(0, data, 0, size);
+            return new DataInputStream(new ByteArrayInputStream(data));
+        }
         return m_PageConnections[aPage].openDataInputStream();
     }
     
@@ -438,7 +564,7 @@ public class FileHandler implements QTFileInterface {
      * Return the offset in to the page file where to start write new data. 
      */
     int getOffset(int pageNbr) {
-        return m_PageConnections[pageNbr].fileSize();
+        return getPageSize(pageNbr);
     }
     
     int getVersionNumber() {
@@ -510,6 +636,54 @@ public class FileHandler implements QTFileInterface {
         }        
     }
     
+    /**
+     * Write the index of the cached tiles to file. 
+     * 
+     * @param aTileIndex
+     * @throws IOException
+     */
+    public void writeTileIndexToFile(TileIndex aTileIndex) throws IOException {
+        DataOutputStream dout = m_TileIndexFile.openDataOutputStream();
+        try {
+            aTileIndex.write(dout);
+        } finally {
+            dout.close();
+        }
+        
+        if(LOG.isInfo()) {
+            LOG.info("FileHandler.writeTileIndexToFile()", "writing "+aTileIndex.size()+" item to the tile index file. ");
+        }
+    }
+    
+    /**
+     * Read the index of the cached tiles from file. The whole file is read 
+     * at once. If the file can't be read the index will be empty. 
+     * 
+     * @param aTileIndex
+     */
+    public void readTileIndexFromFile(TileIndex aTileIndex) {
+        try {
+            final int size = m_TileIndexFile.fileSize();
+            if(size > 0) {
+                byte []data = new byte[size];
+                DataInputStream din = m_TileIndexFile.openDataInputStream();
+                try {
+                    din.readFully(data);
+                } finally {
+                    din.close();
+                }
+                aTileIndex.read(data);
+            } else {
+                aTileIndex.clear();
+            }
+        } catch (Exception e) {
+            if(LOG.isError()) {
+                LOG.error("FileHandler.readTileIndexFromFile()", e);
+            }
+            aTileIndex.clear();
+        }
+    }
+    
     // --------------------------------------------------------------------------------------------
     // Reboot the cache
     public void rebootCache() {
@@ -534,6 +708,12 @@ public class FileHandler implements QTFileInterface {
                 m_IndexFile = m_PersistenceLayer.openFile(m_FileBasePath+FNAME_INDEX);
             }
             
+            /* Clear the tile index file. */
+            if(m_TileIndexFile.fileSize() > 0) {
+                m_TileIndexFile.delete();
+                m_TileIndexFile = m_PersistenceLayer.openFile(m_FileBasePath+FNAME_TILE_INDEX);
+            }
+            
             /* Clear the cache info file. */
             if(m_InfoFile.fileSize() > 0) {
                 m_InfoFile.delete();
@@ -567,6 +747,10 @@ public class FileHandler implements QTFileInterface {
         return m_IndexFile;
     }
 
+    WFFileConnection getTileIndexFile() {
+        return m_TileIndexFile;
+    }
+
     int getNbrOfPages() {
         return m_NbrOfPages;
     }
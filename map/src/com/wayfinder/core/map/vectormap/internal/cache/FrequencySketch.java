@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+/**
+ * A count-min sketch of how often keys has been requested recently, used 
+ * by the {@link MemCache} to decide which entries to keep. 
+ * <p>
+ * Each key is counted in one counter in each of the {@link #DEPTH} rows, 
+ * saturating at 15, and the frequency of a key is the smallest of its 
+ * counters. When 
+ * the number of increments reaches ten times the width of the sketch all 
+ * counters are halved, so the sketch forgets keys that are no longer 
+ * requested.
+ */
+final class FrequencySketch {
+    
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int []SEEDS = {
+        0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+    
+    private final byte []m_Counters;
+    private final int m_Mask;
+    private final int m_SampleSize;
+    private int m_NbrOfIncrements;
+    
+    /**
+     * @param width the minimum number of counters per row, rounded up to a 
+     * power of two of at least 16
+     */
+    FrequencySketch(int width) {
+        int w = 16;
+        while(w < width && w < (1 << 24)) {
+            w <<= 1;
+        }
+        m_Counters = new byte[DEPTH * w];
+        m_Mask = w - 1;
+        m_SampleSize = 10 * w;
+    }
+    
+    /**
+     * Counts a request of a key. 
+     * 
+     * @param hash the hash code of the key
+     */
+    void increment(int hash) {
+        final byte []counters = m_Counters;
+        boolean added = false;
+        for(int i=0; i<DEPTH; i++) {
+            final int index = index(hash, i);
+            if(counters[index] < MAX_COUNT) {
+                counters[index]++;
+                added = true;
+            }
+        }
+        if(added && ++m_NbrOfIncrements >= m_SampleSize) {
+            age();
+        }
+    }
+    
+    /**
+     * @param hash the hash code of the key
+     * @return the estimated number of recent requests of the key, at most 15
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for(int i=0; i<DEPTH; i++) {
+            frequency = Math.min(frequency, m_Counters[index(hash, i)]);
+        }
+        return frequency;
+    }
+    
+    /**
+     * Resets all counters.
+     */
+    void clear() {
+        final byte []counters = m_Counters;
+        for(int i=0; i<counters.length; i++) {
+            counters[i] = 0;
+        }
+        m_NbrOfIncrements = 0;
+    }
+    
+    /*
+     * Halves all counters.
+     */
+    private void age() {
+        final byte []counters = m_Counters;
+        for(int i=0; i<counters.length; i++) {
+            counters[i] >>= 1;
+        }
+        m_NbrOfIncrements >>= 1;
+    }
+    
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return row * (m_Mask + 1) + (h & m_Mask);
+    }
+}
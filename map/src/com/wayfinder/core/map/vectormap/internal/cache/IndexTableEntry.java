@@ -44,11 +44,17 @@ import com.wayfinder.core.shared.util.qtree.QuadTreeEntry;
  * The page where the map data are saved. <br> 
  * The offset into the page file. <br>
  * The key of the entry. <br>
+ * The number of times the entry has been read. <br>
  * 
  * 
  *
  */
 public class IndexTableEntry implements QuadTreeEntry {
+    
+    /**
+     * The maximal access count, the count is saved in one byte. 
+     */
+    public static final int MAX_ACCESS_COUNT = 255;
 	
 	private byte iPage;
 	private int iOffset;
@@ -56,6 +62,10 @@ public class IndexTableEntry implements QuadTreeEntry {
 	private String iName;
 	private QuadTreeEntry iNextEntry = null;
 	
+	/* The access count is updated by threads that only hold the read lock
+	 * of the cache, a lost update only makes the count a bit too low. */
+	private int iAccessCount;
+	
 	public IndexTableEntry(byte aPage, int aOffset, String aTileID) {
 	    this(aPage, aOffset, aTileID, 0, 0);
 	}
@@ -96,6 +106,27 @@ public class IndexTableEntry implements QuadTreeEntry {
         return iLongitude;
     }
 
+    /**
+     * @return the number of times the entry has been read, at most 
+     * {@link #MAX_ACCESS_COUNT}
+     */
+    public int getAccessCount() {
+        return iAccessCount;
+    }
+    
+    public void setAccessCount(int aAccessCount) {
+        iAccessCount = Math.min(aAccessCount, MAX_ACCESS_COUNT);
+    }
+    
+    /**
+     * Increases the access count by one, up to {@link #MAX_ACCESS_COUNT}. 
+     */
+    public void recordAccess() {
+        if(iAccessCount < MAX_ACCESS_COUNT) {
+            iAccessCount++;
+        }
+    }
+
     public QuadTreeEntry getNext() {
         return iNextEntry;
     }
@@ -34,8 +34,10 @@
 
 package com.wayfinder.core.map.vectormap.internal.cache;
 
+import java.util.Enumeration;
 import java.util.Hashtable;
 
+import com.wayfinder.core.map.util.BitBuffer;
 import com.wayfinder.core.shared.internal.debug.LogFactory;
 import com.wayfinder.core.shared.internal.debug.Logger;
 
@@ -47,88 +49,547 @@ import com.wayfinder.core.shared.internal.debug.Logger;
  * 2. It has been loaded from the cache / pre-installed map files. 
  * <p>
  * 
- * The memory cache holds each data buffer in a hashtable with the parameter 
- * string as the key and the byte buffer as the value. 
+ * The memory cache holds each data buffer with the parameter string as the 
+ * key, within a budget of bytes of data that can be set with 
+ * {@link #setMaxSize(int)}. 
  * <p>
  * 
- * The number of pages in the memory cache is specified by N_PAGES <br>
- * The size of each page (in bytes) is specified by MAX_PAGE_SIZE <br>
- * 
+ * Entries are evicted one by one with a W-TinyLFU policy: 
+ * <ul>
+ * <li>New entries are added to a small LRU window, 
+ * {@link #WINDOW_PERCENT} of the budget.</li>
+ * <li>An entry evicted from the window is only admitted to the main part of 
+ * the cache if it has been requested more often than the entry it would 
+ * evict there, according to a {@link FrequencySketch} of the recent 
+ * requests. So a pan over a new area doesn't flush the tiles that are 
+ * requested over and over, e.g. when panning back and forth.</li>
+ * <li>The main part is a segmented LRU, entries requested again while in the
+ * probation segment are moved to the protected segment, 
+ * {@link #PROTECTED_PERCENT} of the main part.</li>
+ * </ul>
+ * <p>
+ * The number of hits, misses and evictions are counted, see 
+ * {@link #getNbrOfHits()}. 
+ * <p>
  * 
- *
+ * With slab storage, see {@link #setSlabStorage(boolean)}, the data is 
+ * copied into chunks of a few large arrays from a {@link SlabAllocator} 
+ * instead of keeping the buffers, so a large cache doesn't add to the work 
+ * of the garbage collector. The tiles can then be read in place through 
+ * {@link #getBufferFromCache(String)}. 
+ * <p>
+ * All methods are synchronized, the cache is used by the control, 
+ * extraction and cache threads. 
  */
 public class MemCache {
 
     private static final Logger LOG = LogFactory
             .getLoggerForClass(MemCache.class);
     
-    // Number of pages in the memory cache. 
-    private static final int N_PAGES = 2;
-    // The size (in bytes) of each page
-    private static final int MAX_PAGE_SIZE = 32000;
+    /**
+     * The default number of bytes of data in the memory cache. 
+     */
+    public static final int DEFAULT_MAX_SIZE = 256000;
+    
+    // The share (in percent) of the budget used by the window
+    private static final int WINDOW_PERCENT = 10;
+    // The share (in percent) of the main part used by the protected segment
+    private static final int PROTECTED_PERCENT = 80;
+    
+    private static final int QUEUE_WINDOW = 0;
+    private static final int QUEUE_PROBATION = 1;
+    private static final int QUEUE_PROTECTED = 2;
+    
+    private final Hashtable m_Entries = new Hashtable();
+    // BitBuffer -> Entry, the views of the slabs that hasn't been released
+    private final Hashtable m_Pinned = new Hashtable();
     
-    private Hashtable []m_MemCacheBuffers;
-    private int m_CurrentPage;
-    private int m_BufferSize;
+    // Circular lists with a sentinel per queue, the head is the LRU entry
+    private final Entry []m_Queues = new Entry[3];
+    private final int []m_QueueSizes = new int[3];
     
+    private int m_MaxSize;
+    private int m_MaxWindowSize;
+    private int m_MaxProtectedSize;
+    private int m_MaxMainSize;
+    
+    private FrequencySketch m_Sketch;
+    
+    private SlabAllocator m_Slabs;
+    
+    private int m_NbrOfHits;
+    private int m_NbrOfMisses;
+    private int m_NbrOfEvictions;
+    
+    /**
+     * Creates a memory cache of {@link #DEFAULT_MAX_SIZE} bytes. 
+     */
     public MemCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+    
+    /**
+     * Creates a memory cache. 
+     * 
+     * @param maxSize the maximum number of bytes of data in the cache
+     */
+    public MemCache(int maxSize) {
+        this(maxSize, false);
+    }
+    
+    /**
+     * Creates a memory cache. 
+     * 
+     * @param maxSize the maximum number of bytes of data in the cache
+     * @param slabStorage true to copy the data into slabs, see 
+     * {@link #setSlabStorage(boolean)}
+     */
+    public MemCache(int maxSize, boolean slabStorage) {
+        for(int i=0; i<m_Queues.length; i++) {
+            Entry sentinel = new Entry(null);
+            sentinel.m_Prev = sentinel;
+            sentinel.m_Next = sentinel;
+            m_Queues[i] = sentinel;
+        }
+        if(slabStorage) {
+            m_Slabs = new SlabAllocator(maxSize);
+        }
+        setMaxSize(maxSize);
+    }
+    
+    /**
+     * Sets the maximum number of bytes of data in the cache. Entries are 
+     * evicted if the cache is larger than the new size. With slab storage
+     * the cache is cleared if the slabs doesn't match the new size.
+     * 
+     * @param maxSize the maximum number of bytes of data in the cache
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if(maxSize < 0) {
+            throw new IllegalArgumentException("Negative size " + maxSize);
+        }
+        if(m_Slabs != null && 
+                m_Slabs.getCapacity() != SlabAllocator.getCapacity(maxSize)) {
+            clearMemCache();
+            m_Slabs = new SlabAllocator(maxSize);
+        }
+        m_MaxSize = maxSize;
+        m_MaxWindowSize = (int)((long)maxSize * WINDOW_PERCENT / 100);
+        m_MaxMainSize = maxSize - m_MaxWindowSize;
+        m_MaxProtectedSize = (int)((long)m_MaxMainSize * PROTECTED_PERCENT / 100);
+        
+        // One counter per 256 bytes of data, the tiles are about a kilobyte 
+        // so the sketch remembers a few times more tiles than the cache holds
+        m_Sketch = new FrequencySketch(maxSize >> 8);
         
-        m_CurrentPage = 0;
-        m_BufferSize = 0;
+        while(m_QueueSizes[QUEUE_PROTECTED] > m_MaxProtectedSize) {
+            demoteProtected();
+        }
+        evictFromWindow();
+        evictFromMain(null);
         
-        m_MemCacheBuffers = new Hashtable[N_PAGES];
-        for(int i=0; i<m_MemCacheBuffers.length; i++) {
-            m_MemCacheBuffers[i] = new Hashtable();
-        }       
+        if(LOG.isInfo()) {
+            LOG.info("MemCache.setMaxSize()", "maxSize= "+maxSize);
+        }
     }
     
-    public void clearMemCache() {
-        synchronized (m_MemCacheBuffers) {
-            for(int i=0; i<m_MemCacheBuffers.length; i++) {
-                m_MemCacheBuffers[i].clear();
+    /**
+     * Sets if the data should be copied into slabs of a 
+     * {@link SlabAllocator}, instead of keeping the buffers that are written
+     * to the cache. The cache is cleared if the storage is changed. 
+     * <p>
+     * The slabs are allocated when they are needed, up to the size of the 
+     * cache rounded up to {@link SlabAllocator#SLAB_SIZE} and kept until 
+     * the slab storage is turned off. Each entry uses a chunk of a power of
+     * two bytes, and the chunks are counted in the size of the cache. 
+     * Buffers larger than a slab are kept as they are. 
+     * 
+     * @param slabStorage true to copy the data into slabs
+     */
+    public synchronized void setSlabStorage(boolean slabStorage) {
+        if(slabStorage != (m_Slabs != null)) {
+            clearMemCache();
+            m_Slabs = slabStorage ? new SlabAllocator(m_MaxSize) : null;
+            
+            if(LOG.isInfo()) {
+                LOG.info("MemCache.setSlabStorage()", "slabStorage= "+slabStorage);
             }
         }
+    }
+    
+    /**
+     * @return true if the data is copied into slabs
+     */
+    public synchronized boolean hasSlabStorage() {
+        return m_Slabs != null;
+    }
+    
+    /**
+     * @return the maximum number of bytes of data in the cache
+     */
+    public synchronized int getMaxSize() {
+        return m_MaxSize;
+    }
+    
+    /**
+     * @return the number of bytes of data in the cache
+     */
+    public synchronized int getSize() {
+        return m_QueueSizes[QUEUE_WINDOW] + m_QueueSizes[QUEUE_PROBATION] + m_QueueSizes[QUEUE_PROTECTED];
+    }
+    
+    /**
+     * @return the number of bytes that can be allocated in the slabs, 0 
+     * without slab storage. The chunk of a removed entry isn't freed until
+     * all buffers read from it has been released. 
+     */
+    public synchronized int getNbrOfFreeSlabBytes() {
+        return (m_Slabs != null) ? m_Slabs.getNbrOfFreeBytes() : 0;
+    }
+    
+    /**
+     * @return the number of entries in the cache
+     */
+    public synchronized int getNbrOfEntries() {
+        return m_Entries.size();
+    }
+    
+    /**
+     * @return the number of calls to {@link #getDataFromCache(String)} and
+     * {@link #getBufferFromCache(String)} that returned data since the 
+     * counters was reset
+     */
+    public synchronized int getNbrOfHits() {
+        return m_NbrOfHits;
+    }
+    
+    /**
+     * @return the number of calls to {@link #getDataFromCache(String)} and
+     * {@link #getBufferFromCache(String)} that returned null since the 
+     * counters was reset
+     */
+    public synchronized int getNbrOfMisses() {
+        return m_NbrOfMisses;
+    }
+    
+    /**
+     * @return the number of entries evicted, or not admitted, to keep the 
+     * cache within its size since the counters was reset 
+     */
+    public synchronized int getNbrOfEvictions() {
+        return m_NbrOfEvictions;
+    }
+    
+    /**
+     * Resets the hit, miss and eviction counters. 
+     */
+    public synchronized void resetCounters() {
+        m_NbrOfHits = 0;
+        m_NbrOfMisses = 0;
+        m_NbrOfEvictions = 0;
+    }
+    
+    public synchronized void clearMemCache() {
+        Enumeration entries = m_Entries.elements();
+        while(entries.hasMoreElements()) {
+            Entry entry = (Entry)entries.nextElement();
+            entry.m_Removed = true;
+            freeChunk(entry);
+        }
+        m_Entries.clear();
+        for(int i=0; i<m_Queues.length; i++) {
+            m_Queues[i].m_Prev = m_Queues[i];
+            m_Queues[i].m_Next = m_Queues[i];
+            m_QueueSizes[i] = 0;
+        }
+        m_Sketch.clear();
         
         if(LOG.isInfo()) {
             LOG.info("MemCache.clearMemCache()", "");
         }
     }
     
-    public byte []getDataFromCache(String aParamString) {
-        byte []data = null;
-        for(int i=0; i<m_MemCacheBuffers.length; i++) {
-            data = (byte[])m_MemCacheBuffers[i].get(aParamString);
-            if(data != null) {
-                if(LOG.isTrace()) {
-                    LOG.trace("MemCache.getDataFromCache()", "paramString= "+aParamString+" data= "+data.length);
-                }             
-                return data;
-            }
+    public synchronized byte []getDataFromCache(String aParamString) {
+        m_Sketch.increment(aParamString.hashCode());
+        
+        Entry entry = (Entry)m_Entries.get(aParamString);
+        if(entry == null) {
+            m_NbrOfMisses++;
+            return null;
+        }
+        m_NbrOfHits++;
+        onAccess(entry);
+        
+        if(LOG.isTrace()) {
+            LOG.trace("MemCache.getDataFromCache()", "paramString= "+aParamString+" data= "+entry.m_Length);
+        }
+        if(entry.m_Data != null) {
+            return entry.m_Data;
         }
+        // a copy, the chunk can be reused when the entry is evicted
+        byte []data = new byte[entry.m_Length];
+        System.arraycopy(entry.m_Slab, SlabAllocator.getOffset(entry.m_Chunk), data, 0, entry.m_Length);
         return data;
     }
     
-    public void removeFromCache(String aParamString) {
-        for(int i=0; i<m_MemCacheBuffers.length; i++) {
-            if(m_MemCacheBuffers[i].remove(aParamString) != null)
-                return;
+    /**
+     * Returns a buffer for reading the data of an entry. With slab storage 
+     * the buffer is a view of the chunk in its slab, so the data isn't 
+     * copied. 
+     * <p>
+     * The buffer must only be read, and it must be released with 
+     * {@link #releaseBuffer(BitBuffer)} when it's no longer used. The chunk 
+     * isn't reused until then, even if the entry is evicted. 
+     * 
+     * @param aParamString the key of the entry
+     * @return a buffer with the data or null if the entry isn't in the cache
+     */
+    public synchronized BitBuffer getBufferFromCache(String aParamString) {
+        m_Sketch.increment(aParamString.hashCode());
+        
+        Entry entry = (Entry)m_Entries.get(aParamString);
+        if(entry == null) {
+            m_NbrOfMisses++;
+            return null;
+        }
+        m_NbrOfHits++;
+        onAccess(entry);
+        
+        if(entry.m_Data != null) {
+            return new BitBuffer(entry.m_Data);
         }
+        BitBuffer buffer = new BitBuffer(entry.m_Slab, SlabAllocator.getOffset(entry.m_Chunk), entry.m_Length);
+        entry.m_NbrOfPins++;
+        m_Pinned.put(buffer, entry);
+        return buffer;
     }
     
-    public void writeToCache(String aParamString, byte []aData) {
+    /**
+     * Releases a buffer returned by {@link #getBufferFromCache(String)}. 
+     * 
+     * @param aBuffer the buffer
+     */
+    public synchronized void releaseBuffer(BitBuffer aBuffer) {
+        Entry entry = (Entry)m_Pinned.remove(aBuffer);
+        if(entry != null) {
+            entry.m_NbrOfPins--;
+            freeChunk(entry);
+        }
+    }
+    
+    public synchronized void removeFromCache(String aParamString) {
+        Entry entry = (Entry)m_Entries.get(aParamString);
+        if(entry != null) {
+            remove(entry);
+        }
+    }
+    
+    public synchronized void writeToCache(String aParamString, byte []aData) {
+        m_Sketch.increment(aParamString.hashCode());
+        
+        Entry old = (Entry)m_Entries.get(aParamString);
+        int queue = QUEUE_WINDOW;
+        if(old != null) {
+            queue = old.m_Queue;
+            remove(old);
+        }
+        
+        final boolean inSlab = m_Slabs != null && aData.length <= SlabAllocator.SLAB_SIZE;
+        final int size = inSlab ? SlabAllocator.getChunkSize(aData.length) : aData.length;
+        if(size > m_MaxMainSize) {
+            // will never fit
+            m_NbrOfEvictions++;
+            return;
+        }
         
-        if(m_MemCacheBuffers[m_CurrentPage].put(aParamString, aData) == null) {
-            m_BufferSize += aData.length;
+        Entry entry = new Entry(aParamString);
+        entry.m_Length = aData.length;
+        entry.m_Size = size;
+        if(inSlab) {
+            int chunk;
+            // the slabs can be fragmented or used by evicted entries that 
+            // are still read, evict until there is a free chunk
+            while((chunk = m_Slabs.allocate(aData.length)) < 0 && evictAny()) {
+            }
+            if(chunk >= 0) {
+                entry.m_Chunk = chunk;
+                entry.m_Slab = m_Slabs.getSlab(chunk);
+                entry.m_Slabs = m_Slabs;
+                System.arraycopy(aData, 0, entry.m_Slab, SlabAllocator.getOffset(chunk), aData.length);
+            } else {
+                entry.m_Data = aData;
+            }
+        } else {
+            entry.m_Data = aData;
+        }
+        m_Entries.put(aParamString, entry);
+        link(entry, queue);
+        if(old != null) {
+            onAccess(entry);
         }
         
-        if(m_BufferSize > MAX_PAGE_SIZE) {
-            moveToNextPage();
-        }       
+        while(m_QueueSizes[QUEUE_PROTECTED] > m_MaxProtectedSize) {
+            demoteProtected();
+        }
+        evictFromWindow();
+        evictFromMain(null);
+    }
+    
+    /*
+     * Moves an accessed entry to the most recently used end of its queue, or 
+     * from the probation to the protected segment. 
+     */
+    private void onAccess(Entry entry) {
+        final int queue = entry.m_Queue;
+        unlink(entry);
+        if(queue == QUEUE_PROBATION) {
+            link(entry, QUEUE_PROTECTED);
+            while(m_QueueSizes[QUEUE_PROTECTED] > m_MaxProtectedSize) {
+                demoteProtected();
+            }
+        } else {
+            link(entry, queue);
+        }
+    }
+    
+    /*
+     * Moves the least recently used protected entry to the probation segment.
+     */
+    private void demoteProtected() {
+        Entry entry = m_Queues[QUEUE_PROTECTED].m_Next;
+        unlink(entry);
+        link(entry, QUEUE_PROBATION);
+    }
+    
+    /*
+     * Moves entries from the window to the main part until the window is 
+     * within its size.
+     */
+    private void evictFromWindow() {
+        final Entry window = m_Queues[QUEUE_WINDOW];
+        while(m_QueueSizes[QUEUE_WINDOW] > m_MaxWindowSize) {
+            Entry candidate = window.m_Next;
+            unlink(candidate);
+            link(candidate, QUEUE_PROBATION);
+            evictFromMain(candidate);
+        }
     }
     
-    private void moveToNextPage() {
-        m_CurrentPage = (byte)((m_CurrentPage + 1) % N_PAGES);
-        m_BufferSize = 0;
-        m_MemCacheBuffers[m_CurrentPage].clear();
+    /*
+     * Evicts entries from the main part until it's within its size. If a 
+     * candidate that was just moved from the window is specified, it's 
+     * evicted instead of a victim that has been requested at least as 
+     * often. 
+     */
+    private void evictFromMain(Entry candidate) {
+        while(m_QueueSizes[QUEUE_PROBATION] + m_QueueSizes[QUEUE_PROTECTED] > m_MaxMainSize) {
+            Entry victim = m_Queues[QUEUE_PROBATION].m_Next;
+            if(victim == candidate) {
+                // the candidate is the only probation entry  
+                victim = m_Queues[QUEUE_PROBATION].m_Next.m_Next;
+            }
+            if(victim == m_Queues[QUEUE_PROBATION]) {
+                victim = m_Queues[QUEUE_PROTECTED].m_Next;
+            }
+            if(victim == m_Queues[QUEUE_PROTECTED]) {
+                victim = candidate;
+            }
+            
+            if(candidate != null && victim != candidate) {
+                final int candidateFreq = m_Sketch.frequency(candidate.m_Key.hashCode());
+                final int victimFreq = m_Sketch.frequency(victim.m_Key.hashCode());
+                if(candidateFreq <= victimFreq) {
+                    victim = candidate;
+                }
+            }
+            
+            remove(victim);
+            m_NbrOfEvictions++;
+            if(victim == candidate) {
+                candidate = null;
+            }
+        }
+    }
+    
+    /*
+     * Evicts the least recently used entry, from the probation segment 
+     * first and the window last.
+     */
+    private boolean evictAny() {
+        final int []order = { QUEUE_PROBATION, QUEUE_PROTECTED, QUEUE_WINDOW };
+        for(int i=0; i<order.length; i++) {
+            Entry victim = m_Queues[order[i]].m_Next;
+            if(victim != m_Queues[order[i]]) {
+                remove(victim);
+                m_NbrOfEvictions++;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /*
+     * Removes an entry from the cache and frees its chunk unless it's read.
+     */
+    private void remove(Entry entry) {
+        m_Entries.remove(entry.m_Key);
+        unlink(entry);
+        entry.m_Removed = true;
+        freeChunk(entry);
+    }
+    
+    /*
+     * Frees the chunk of a removed entry when no buffer is reading it.
+     */
+    private void freeChunk(Entry entry) {
+        if(entry.m_Removed && entry.m_NbrOfPins == 0 && entry.m_Slab != null) {
+            // the slabs could have been replaced while the entry was read
+            if(entry.m_Slabs == m_Slabs) {
+                m_Slabs.free(entry.m_Chunk);
+            }
+            entry.m_Slab = null;
+        }
+    }
+    
+    private void link(Entry entry, int queue) {
+        final Entry sentinel = m_Queues[queue];
+        entry.m_Prev = sentinel.m_Prev;
+        entry.m_Next = sentinel;
+        sentinel.m_Prev.m_Next = entry;
+        sentinel.m_Prev = entry;
+        entry.m_Queue = queue;
+        m_QueueSizes[queue] += entry.m_Size;
+    }
+    
+    private void unlink(Entry entry) {
+        entry.m_Prev.m_Next = entry.m_Next;
+        entry.m_Next.m_Prev = entry.m_Prev;
+        entry.m_Prev = null;
+        entry.m_Next = null;
+        m_QueueSizes[entry.m_Queue] -= entry.m_Size;
+    }
+    
+    
+    private static final class Entry {
+        
+        private final String m_Key;
+        // the data if it isn't stored in a slab
+        private byte []m_Data;
+        // the slab, chunk and allocator if the data is stored in a slab
+        private byte []m_Slab;
+        private int m_Chunk;
+        private SlabAllocator m_Slabs;
+        private int m_Length;
+        // the number of bytes counted in the size of the cache
+        private int m_Size;
+        private int m_NbrOfPins;
+        private boolean m_Removed;
+        private int m_Queue;
+        private Entry m_Prev;
+        private Entry m_Next;
+        
+        Entry(String key) {
+            m_Key = key;
+        }
     }
 }
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+/**
+ * A lock that lets several threads read a cache at the same time while 
+ * writes are done by one thread at a time with no readers. 
+ * <p>
+ * Waiting writers are preferred, a thread that wants to read waits while 
+ * a writer is waiting so the writers aren't starved by a steady stream of
+ * reads. The write lock can be taken again by the thread that holds it, 
+ * and a thread that holds the write lock may also take the read lock. 
+ * The read lock can't be taken again by a thread that holds it, since 
+ * that would deadlock if a writer is waiting, and it can't be upgraded to
+ * the write lock. 
+ * <p>
+ * Every lock must be released in a finally block: 
+ * <pre>
+ * lock.readLock();
+ * try {
+ *     ...
+ * } finally {
+ *     lock.readUnlock();
+ * }
+ * </pre>
+ */
+final class ReadWriteLock {
+    
+    private int m_NbrOfReaders;
+    private int m_NbrOfWaitingWriters;
+    private Thread m_Writer;
+    private int m_NbrOfWriteHolds;
+    
+    /**
+     * Waits until there is no writer and no waiting writers and takes the 
+     * read lock. 
+     */
+    synchronized void readLock() {
+        if(m_Writer == Thread.currentThread()) {
+            m_NbrOfWriteHolds++;
+            return;
+        }
+        boolean interrupted = false;
+        while(m_Writer != null || m_NbrOfWaitingWriters > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        m_NbrOfReaders++;
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    synchronized void readUnlock() {
+        if(m_Writer == Thread.currentThread()) {
+            writeUnlock();
+            return;
+        }
+        if(m_NbrOfReaders <= 0) {
+            throw new IllegalStateException("The read lock isn't held");
+        }
+        m_NbrOfReaders--;
+        if(m_NbrOfReaders == 0) {
+            notifyAll();
+        }
+    }
+    
+    /**
+     * Waits until all readers and the writer have released the lock and 
+     * takes the write lock. 
+     */
+    synchronized void writeLock() {
+        final Thread current = Thread.currentThread();
+        if(m_Writer == current) {
+            m_NbrOfWriteHolds++;
+            return;
+        }
+        boolean interrupted = false;
+        m_NbrOfWaitingWriters++;
+        while(m_Writer != null || m_NbrOfReaders > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        m_NbrOfWaitingWriters--;
+        m_Writer = current;
+        m_NbrOfWriteHolds = 1;
+        if(interrupted) {
+            current.interrupt();
+        }
+    }
+    
+    synchronized void writeUnlock() {
+        if(m_Writer != Thread.currentThread()) {
+            throw new IllegalStateException("The write lock isn't held by " 
+                    + Thread.currentThread());
+        }
+        m_NbrOfWriteHolds--;
+        if(m_NbrOfWriteHolds == 0) {
+            m_Writer = null;
+            notifyAll();
+        }
+    }
+    
+    /**
+     * @return the number of threads that holds the read lock
+     */
+    synchronized int getNbrOfReaders() {
+        return m_NbrOfReaders;
+    }
+    
+    /**
+     * @return true if the calling thread holds the write lock
+     */
+    synchronized boolean isWriteLockedByCurrentThread() {
+        return m_Writer == Thread.currentThread();
+    }
+}
@@ -40,6 +40,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Vector;
 
 import com.wayfinder.core.map.util.BitBuffer;
 import com.wayfinder.core.map.vectormap.internal.control.TileMapLayerWrapper;
@@ -73,6 +74,25 @@ import com.wayfinder.pal.persistence.SecondaryCacheStorage;
  * <p>
  * The cache system also has a cache info file that contain the current active
  * page and the version of the cache. 
+ * <p>
+ * When all pages are full the oldest page is cleared and reused. With the
+ * {@link #EVICTION_CLOCK} policy the entries on the page that have been read
+ * at least {@link #HOT_ACCESS_COUNT} times are first moved to the start of
+ * the page, so tiles that are used often, e.g. around the home of the user,
+ * stay in the cache while tiles that was only used once are dropped. The 
+ * access count of a moved entry is halved, it will only be moved again if it's 
+ * read again. The access counts are saved in the index files. 
+ * <p>
+ * The cache is guarded by a {@link ReadWriteLock}. {@link #getDataFromCache(TileMapLayerWrapper, String, String)},
+ * {@link #existInCache(TileMapParams)} and {@link #isOpen()} take the read lock 
+ * so several threads can read from the cache at the same time, the other 
+ * methods take the write lock. A page that can't be read is cleared after 
+ * the read lock has been released. 
+ * <p>
+ * A {@link BloomFilter} over the tile ids in the index table answers that 
+ * a tile isn't cached before the read lock is taken. It's built from the 
+ * index table when the cache is opened and rebuilt when it's full or when 
+ * many entries have been removed, e.g. by clearing pages. 
  * 
  *
  */
@@ -84,8 +104,23 @@ public class SecondaryCache implements CacheInterface {
     /* The number of pages in the cache. */
     private static final int NUMBER_OF_PAGES = 10;
     
-    /* The version of the cache. */
-    private static final int CACHE_VERSION = 1;
+    /* The version of the cache. Version 2 added the access count to the 
+     * index files. */
+    private static final int CACHE_VERSION = 2;
+    
+    /**
+     * Pages are reused in order and all entries on the page are dropped. 
+     */
+    static final int EVICTION_FIFO = 0;
+    
+    /**
+     * Entries that are read often are moved from the page before it's 
+     * reused, see the class documentation. 
+     */
+    static final int EVICTION_CLOCK = 1;
+    
+    /* The number of reads needed for an entry to be moved instead of dropped. */
+    static final int HOT_ACCESS_COUNT = 2;
     
     /* 4 bytes for representing the total size of the cache block. 
      * 2 bytes for representing the empty importances for the tile 
@@ -112,9 +147,21 @@ public class SecondaryCache implements CacheInterface {
      * used when writing the index file to the persistent storage.*/
     private int []m_NbrOfEntrysPage;
     
+    /* True for the pages that has entries that has been read since the 
+     * index file of the page was written. Set with only the read lock held. */
+    private boolean []m_AccessCountChanged;
+    
+    private int m_EvictionPolicy = EVICTION_CLOCK;
+    
+    /* The number of entries that has been moved instead of dropped */
+    private int m_NbrOfRelocatedEntries;
+    
     /* Hashtable that holds the index-table */
     private Hashtable m_IndexTableHashtable;
     
+    /* The keys of the index table, replaced by rebuildBloomFilter() */
+    private volatile BloomFilter m_BloomFilter = new BloomFilter(0);
+    
     /* The output stream for the current page to write to */
     private DataOutputStream dout;  
     
@@ -126,10 +173,15 @@ public class SecondaryCache implements CacheInterface {
     
     private SecondaryCacheHandler m_CacheHandler;
     
-    /* Buffer the is used when reading data from cache to avoid re-allocating
-     * every time we read from disc. */
-    private byte []paramData = new byte[30];
-    private BitBuffer bitBuffer = new BitBuffer(new byte[30]);
+    /* Lets several threads read from the cache at the same time, see the 
+     * class documentation. */
+    private final ReadWriteLock m_Lock = new ReadWriteLock();
+
+    /* The number of bytes read from and written to the cache files. Guarded
+     * by m_IOStatsLock since several threads may read at the same time. */
+    private final Object m_IOStatsLock = new Object();
+    private long m_NbrOfBytesRead;
+    private long m_NbrOfBytesWritten;
     
     /* Sets to true if the cache is ready to be used. */
     private boolean m_IsCacheOpen = false;
@@ -153,6 +205,7 @@ public class SecondaryCache implements CacheInterface {
         for(int i=0; i<m_NbrOfEntrysPage.length; i++) {
             m_NbrOfEntrysPage[i] = 0;
         }
+        m_AccessCountChanged = new boolean[NUMBER_OF_PAGES];
         
         m_CurrentPageNumber = m_StartPage = 0; 
         m_CurrentOffset = 0;
@@ -162,12 +215,79 @@ public class SecondaryCache implements CacheInterface {
         m_MemCache = null;
     }
     
-    public synchronized void setMemCache(MemCache memCache) {
-        m_MemCache = memCache;
+    public void setMemCache(MemCache memCache) {
+        m_Lock.writeLock();
+        try {
+            m_MemCache = memCache;
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /**
+     * @param evictionPolicy {@link #EVICTION_CLOCK} or {@link #EVICTION_FIFO}
+     */
+    void setEvictionPolicy(int evictionPolicy) {
+        m_Lock.writeLock();
+        try {
+            m_EvictionPolicy = evictionPolicy;
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /**
+     * @return the number of bytes that has been read from the cache files 
+     * since the cache was created
+     */
+    public long getNbrOfBytesRead() {
+        synchronized (m_IOStatsLock) {
+            return m_NbrOfBytesRead;
+        }
+    }
+    
+    /**
+     * @return the number of bytes that has been written to the cache files 
+     * since the cache was created
+     */
+    public long getNbrOfBytesWritten() {
+        synchronized (m_IOStatsLock) {
+            return m_NbrOfBytesWritten;
+        }
+    }
+    
+    private void addNbrOfBytesRead(int nbrOfBytes) {
+        synchronized (m_IOStatsLock) {
+            m_NbrOfBytesRead += nbrOfBytes;
+        }
+    }
+    
+    private void addNbrOfBytesWritten(int nbrOfBytes) {
+        synchronized (m_IOStatsLock) {
+            m_NbrOfBytesWritten += nbrOfBytes;
+        }
+    }
+    
+    /**
+     * @return the number of entries that has been moved to a new page
+     * instead of being dropped
+     */
+    int getNbrOfRelocatedEntries() {
+        m_Lock.readLock();
+        try {
+            return m_NbrOfRelocatedEntries;
+        } finally {
+            m_Lock.readUnlock();
+        }
     }
     
-    public synchronized void setLanguage(int language) {
-        m_Language = language;
+    public void setLanguage(int language) {
+        m_Lock.writeLock();
+        try {
+            m_Language = language;
+        } finally {
+            m_Lock.writeUnlock();
+        }
     }
     
     // ----------------------------------------------------------------------------------------------
@@ -178,7 +298,19 @@ public class SecondaryCache implements CacheInterface {
      * Open the cache. 
      * 
      */
-    public synchronized boolean openCache() {
+    public boolean openCache() {
+        m_Lock.writeLock();
+        try {
+            return internalOpenCache();
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private boolean internalOpenCache() {
         
         m_IsCacheOpen = false;
         
@@ -223,6 +355,7 @@ public class SecondaryCache implements CacheInterface {
                 m_CurrentOffset = 0;
             }
             
+            rebuildBloomFilter();
             m_IsCacheOpen = true;
         } else {
             
@@ -264,6 +397,7 @@ public class SecondaryCache implements CacheInterface {
                         String tileId = new String(b);
                         
                         IndexTableEntry entry = new IndexTableEntry(page, offset, tileId);
+                        entry.setAccessCount(din.readUnsignedByte());
                         if(m_IndexTableHashtable.put(tileId, entry) != null) {                                   
                             if(LOG.isError()) {
                                 LOG.error("SecondaryCache.openCache()", "tileID= "+tileId+" already exist in one index file!");
@@ -313,8 +447,13 @@ public class SecondaryCache implements CacheInterface {
      * 
      * @return true if the cache has been open without any problems, false if not. 
      */
-    public synchronized boolean isOpen() {
-        return m_IsCacheOpen;
+    public boolean isOpen() {
+        m_Lock.readLock();
+        try {
+            return m_IsCacheOpen;
+        } finally {
+            m_Lock.readUnlock();
+        }
     }
     
     // ------------------------------------------------------------------------------------
@@ -373,8 +512,28 @@ public class SecondaryCache implements CacheInterface {
      *   at the current active page. All other pages that contains data will be 
      *   intact the next time we start the application.         
      */ 
-    public synchronized boolean writeDataToCache(byte [][]cacheData, TileMapParams []params, TileMapParams tmp, 
-                                                 int totSize, int nbrOfImp, short emptyImp) {
+    public boolean writeDataToCache(byte [][]cacheData, TileMapParams []params, TileMapParams tmp, 
+                                    int totSize, int nbrOfImp, short emptyImp) {
+        m_Lock.writeLock();
+        try {
+            boolean written = internalWriteDataToCache(cacheData, params, tmp, totSize, nbrOfImp, emptyImp);
+            if(written) {
+                addNbrOfBytesWritten(totSize);
+            }
+            if(m_BloomFilter.needsRebuild()) {
+                rebuildBloomFilter();
+            }
+            return written;
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private boolean internalWriteDataToCache(byte [][]cacheData, TileMapParams []params, TileMapParams tmp, 
+                                             int totSize, int nbrOfImp, short emptyImp) {
         
         /* Return if the cache isn't open or if we try to save a null buffer. */
         if(!m_IsCacheOpen || cacheData == null) {
@@ -437,7 +596,7 @@ public class SecondaryCache implements CacheInterface {
             
             /* Check to see if there are enough bytes left on the current page to cache the data. */
             if((m_CurrentOffset + totalSize) > m_MaxPageSize) {              
-                if(!moveToNextPage()) {
+                if(!moveToNextPage(totalSize)) {
                     m_ErrorCount++;
                     if(m_ErrorCount >= MAX_NUMBER_OF_ERRORS) {
                         m_IsCacheOpen = false;    
@@ -469,6 +628,11 @@ public class SecondaryCache implements CacheInterface {
             }
             m_CurrentOffset += totalSize;
             
+            /* Keep the access count when more importances are added. */
+            if(entry != null) {
+                ((IndexTableEntry)m_IndexTableHashtable.get(aTileID)).setAccessCount(entry.getAccessCount());
+            }
+            
         } catch (Exception e) {
             
             m_ErrorCount++;
@@ -499,7 +663,7 @@ public class SecondaryCache implements CacheInterface {
      *  | Cache data table           | SIZE                |
      *  |--------------------------------------------------|
      *  | Importance number          | 1 byte              |
-     *  | TileMap type (map/string)  | 1 byte              |
+     *  | TileMap type (map/str/tri) | 1 byte              |
      *  | Cache data size            | 2 bytes             |
      *  | Cached data                | #Cached data size   |
      *  |--------------------------------------------------|
@@ -520,7 +684,7 @@ public class SecondaryCache implements CacheInterface {
                 
                 /* Write importance number*/                    
                 dout.writeByte(param.getImportance());
-                /* Write the map type (MAP or STRING)*/
+                /* Write the map type (MAP, STRINGS or TRIANGLES)*/
                 dout.writeByte(param.getTileMapType());
                 
                 /* Write data */                
@@ -534,6 +698,7 @@ public class SecondaryCache implements CacheInterface {
         /* Add the new block to the index table */
         IndexTableEntry entry = new IndexTableEntry(m_CurrentPageNumber, m_CurrentOffset, tileID);       
         m_IndexTableHashtable.put(tileID, entry);
+        m_BloomFilter.add(tileID);
     }
     
     /*
@@ -566,6 +731,7 @@ public class SecondaryCache implements CacheInterface {
         /* Add the new block to the index table */
         IndexTableEntry entry = new IndexTableEntry(m_CurrentPageNumber, m_CurrentOffset, tileID);       
         m_IndexTableHashtable.put(tileID, entry);
+        m_BloomFilter.add(tileID);
     }
     
     /**
@@ -574,7 +740,7 @@ public class SecondaryCache implements CacheInterface {
      * 
      * Return the map data for the cached importance for the tile. 
      * 
-     * NOTE: This method should be only called from synchronize context
+     * NOTE: This method should be only called with the write lock held
      */
     private byte[]getAlreadyCachedData(IndexTableEntry entry) throws IOException {
         
@@ -614,8 +780,17 @@ public class SecondaryCache implements CacheInterface {
      * @param aTileID the id for the tile map. 
      * @return true if the tile id exist in the cache, false if not. 
      */
-    public synchronized boolean existInCache(TileMapParams params) {
-        return m_IndexTableHashtable.containsKey(params.getTileID());
+    public boolean existInCache(TileMapParams params) {
+        if(!m_BloomFilter.mightContain(params.getTileID())) {
+            return false;
+        }
+        
+        m_Lock.readLock();
+        try {
+            return m_IndexTableHashtable.containsKey(params.getTileID());
+        } finally {
+            m_Lock.readUnlock();
+        }
     }
     
     // --------------------------------------------------------------------------------------------------------------
@@ -635,22 +810,54 @@ public class SecondaryCache implements CacheInterface {
      * 
      * @see The writeDataToCache method for information about how data are cached. 
      */
-    public synchronized byte []getDataFromCache(TileMapLayerWrapper tileMapWrapper, String paramStr, String tileID) {
+    public byte []getDataFromCache(TileMapLayerWrapper tileMapWrapper, String paramStr, String tileID) {
         
-        byte []data = null;
-        
-        /* Return if the cache isn't open. */
-        if(!m_IsCacheOpen)
+        if(!m_BloomFilter.mightContain(tileID)) {
             return null;
+        }
         
-        long time = System.currentTimeMillis();        
-        IndexTableEntry entry = (IndexTableEntry)m_IndexTableHashtable.get(tileID);
-        
-        if(entry == null) {
-            /* The tile isn't in the cache. */
-            return null;
+        IndexTableEntry entry = null;
+        m_Lock.readLock();
+        try {
+            /* Return if the cache isn't open. */
+            if(!m_IsCacheOpen)
+                return null;
+            
+            entry = (IndexTableEntry)m_IndexTableHashtable.get(tileID);
+            if(entry == null) {
+                /* The tile isn't in the cache. */
+                return null;
+            }
+            entry.recordAccess();
+            m_AccessCountChanged[entry.getPage()] = true;
+            return readDataFromCache(entry, tileMapWrapper, paramStr, tileID);
+            
+        } catch (Exception e) {
+            if(LOG.isError()) {
+                LOG.error("SecondaryCache.getDataFromCache()", e);
+                LOG.error("SecondaryCache.getDataFromCache()", "tileID= "+tileID+" iPageNumber= "+m_CurrentPageNumber+
+                        " offset= "+entry.getOffset()+" parameterPage= "+entry.getPage());
+            }
+        } finally {
+            m_Lock.readUnlock();
         }
         
+        /* If a exception occur when reading the data from disc. Reset the page. */
+        clearCorruptPage(entry);
+        return null;
+    }
+    
+    /*
+     * Reads the data of a entry. 
+     * 
+     * NOTE: This method should be only called with the read or write lock held
+     */
+    private byte []readDataFromCache(IndexTableEntry entry, TileMapLayerWrapper tileMapWrapper, 
+                                     String paramStr, String tileID) throws IOException {
+        
+        byte []data = null;
+        long time = System.currentTimeMillis();        
+        
         /* Internal variables*/
         int parameterPage = entry.getPage();            
         DataInputStream din = null;
@@ -662,6 +869,11 @@ public class SecondaryCache implements CacheInterface {
         byte paramSize;         
         TileMapParams tileIDParams = null;
         
+        /* The buffers are allocated for each read since several threads
+         * may read at the same time. */
+        byte []paramData = new byte[30];
+        BitBuffer bitBuffer = new BitBuffer(new byte[30]);
+        
         /* Make a copy of the TileMapParams object, this object is used
          * when creating the parameter string from the cached data*/
         if(tileMapWrapper != null) {
@@ -733,24 +945,7 @@ public class SecondaryCache implements CacheInterface {
                     data = b;
                 }
             }                           
-        } catch (Exception e) {
-            if(LOG.isError()) {
-                LOG.error("SecondaryCache.getDataFromCache()", e);
-                LOG.error("SecondaryCache.getDataFromCache()", "tileID= "+tileID+" iPageNumber= "+m_CurrentPageNumber+" offset= "+entry.getOffset()+
-                        " parameterPage= "+parameterPage+" totalSize= "+totalSize);
-            }
-            
-            /* If a exception occur when reading the data from disc. Reset the current used page. */                
-            try {
-                clearPage(parameterPage);
-                m_CacheHandler.writeIndexTableToCache(parameterPage, m_NbrOfEntrysPage[parameterPage], m_IndexTableHashtable);
-                if(m_StartPage == parameterPage)
-                    m_CacheHandler.updateCacheInfoFile(m_CurrentPageNumber, CACHE_VERSION);
-            } catch (Exception e2) {
-                if(LOG.isError()) {
-                    LOG.error("SecondaryCache.getDataFromCache()", e);
-                }
-            }               
+            addNbrOfBytesRead(totalSize);
         } finally {
             try {
                 if(din != null)
@@ -773,13 +968,43 @@ public class SecondaryCache implements CacheInterface {
         return data;
     }
     
+    /*
+     * Clears the page of a entry that couldn't be read. Nothing is done if 
+     * the entry has been replaced or removed by another thread since it 
+     * was read. 
+     */
+    private void clearCorruptPage(IndexTableEntry entry) {
+        m_Lock.writeLock();
+        try {
+            if(!m_IsCacheOpen || m_IndexTableHashtable.get(entry.getName()) != entry) {
+                return;
+            }
+            final int parameterPage = entry.getPage();
+            clearPage(parameterPage);
+            m_CacheHandler.writeIndexTableToCache(parameterPage, m_NbrOfEntrysPage[parameterPage], m_IndexTableHashtable);
+            if(m_StartPage == parameterPage)
+                m_CacheHandler.updateCacheInfoFile(m_CurrentPageNumber, CACHE_VERSION);
+        } catch (Exception e) {
+            if(LOG.isError()) {
+                LOG.error("SecondaryCache.getDataFromCache()", e);
+            }
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
     // ---------------------------------------------------------------------------------------------------
     // Index table and change cache page methods
     
     /*
      * Move the the next page in the cache.  
+     * 
+     * NOTE: This method should be only called with the write lock held
+     * 
+     * @param neededSize the number of bytes that will be written to the new 
+     * page, hot entries are only moved to the page if there is room left 
      */
-    private boolean moveToNextPage() {
+    private boolean moveToNextPage(int neededSize) {
         
         long time = System.currentTimeMillis();
         
@@ -793,9 +1018,20 @@ public class SecondaryCache implements CacheInterface {
             /* Write the index table for the current page to disc. */             
             if(!m_CacheHandler.writeIndexTableToCache(m_CurrentPageNumber, m_NbrOfEntrysPage[m_CurrentPageNumber], m_IndexTableHashtable))
                 return false;
+            m_AccessCountChanged[m_CurrentPageNumber] = false;
+            
+            final byte nextPage = (byte)((m_CurrentPageNumber + 1) % NUMBER_OF_PAGES);
+            
+            /* Read the hot entries before the page is cleared. At least half
+             * the page is left for new data. */
+            Vector hotBlocks = null;
+            if(m_EvictionPolicy == EVICTION_CLOCK) {
+                final int maxSize = Math.min(m_MaxPageSize / 2, m_MaxPageSize - neededSize);
+                hotBlocks = readHotBlocks(nextPage, maxSize);
+            }
             
             /* Move to the new page. */
-            m_CurrentPageNumber = (byte)((m_CurrentPageNumber + 1) % NUMBER_OF_PAGES);
+            m_CurrentPageNumber = nextPage;
             m_CurrentOffset = 0;
             
             /* Update the info file with information about the current active
@@ -811,6 +1047,10 @@ public class SecondaryCache implements CacheInterface {
                 dout.close();
             dout = m_CacheHandler.getActivePageDataOutputStream();
             
+            if(hotBlocks != null) {
+                writeHotBlocks(hotBlocks);
+            }
+            
         } catch (Exception e) {
             if(LOG.isError()) {
                 LOG.error("SecondaryCache.moveToNextPage()", e);
@@ -826,7 +1066,119 @@ public class SecondaryCache implements CacheInterface {
     }
     
     /*
-     * NOTE: This method should be only called from synchronize context
+     * Reads the blocks of the entries on a page that has been read at least 
+     * HOT_ACCESS_COUNT times, in the order they are saved on the page. 
+     * Entries that doesn't fit in maxSize bytes are skipped. 
+     * 
+     * Returns a vector with the entry followed by the block for each entry. 
+     * If the page can't be read the blocks read so far are returned. 
+     * 
+     * NOTE: This method should be only called with the write lock held
+     */
+    private Vector readHotBlocks(int pageNbr, int maxSize) {
+        
+        /* Collect the hot entries sorted by offset. */
+        Vector hotEntries = new Vector();
+        Enumeration iEnum = m_IndexTableHashtable.elements();
+        while(iEnum.hasMoreElements()) {
+            IndexTableEntry entry = (IndexTableEntry)iEnum.nextElement();
+            if(entry.getPage() == pageNbr && entry.getAccessCount() >= HOT_ACCESS_COUNT) {
+                int i = hotEntries.size();
+                while(i > 0 && ((IndexTableEntry)hotEntries.elementAt(i-1)).getOffset() > entry.getOffset()) {
+                    i--;
+                }
+                hotEntries.insertElementAt(entry, i);
+            }
+        }
+        
+        Vector hotBlocks = new Vector();
+        if(hotEntries.size() == 0) {
+            return hotBlocks;
+        }
+        
+        DataInputStream din = null;
+        try {
+            din = m_CacheHandler.getDataInputStream(pageNbr, m_CurrentPageNumber);
+            if(din == null) {
+                return hotBlocks;
+            }
+            
+            int position = 0;
+            int size = 0;
+            for(int i=0; i<hotEntries.size(); i++) {
+                IndexTableEntry entry = (IndexTableEntry)hotEntries.elementAt(i);
+                final int skip = entry.getOffset() - position;
+                if(skip < 0 || din.skipBytes(skip) != skip) {
+                    throw new IOException("Unable to skip to offset "+entry.getOffset());
+                }
+                final int blockSize = din.readInt();
+                position = entry.getOffset() + 4;
+                if(blockSize <= CACHE_HEADER_OFFSET || blockSize > m_MaxPageSize) {
+                    throw new IOException("Invalid block size "+blockSize);
+                }
+                if(size + blockSize > maxSize) {
+                    continue;
+                }
+                
+                byte []block = new byte[blockSize];
+                block[0] = (byte)(blockSize >> 24);
+                block[1] = (byte)(blockSize >> 16);
+                block[2] = (byte)(blockSize >> 8);
+                block[3] = (byte)blockSize;
+                din.readFully(block, 4, blockSize - 4);
+                position += blockSize - 4;
+                size += blockSize;
+                
+                hotBlocks.addElement(entry);
+                hotBlocks.addElement(block);
+            }
+        } catch (IOException e) {
+            if(LOG.isError()) {
+                LOG.error("SecondaryCache.readHotBlocks()", e);
+            }
+        } finally {
+            try {
+                if(din != null)
+                    din.close();
+            } catch (IOException e) {
+                if(LOG.isError()) {
+                    LOG.error("SecondaryCache.readHotBlocks()", e);
+                }
+            }
+        }
+        return hotBlocks;
+    }
+    
+    /*
+     * Writes the blocks read by readHotBlocks() to the current page and 
+     * adds new entries for them with half the access count. 
+     * 
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void writeHotBlocks(Vector hotBlocks) throws IOException {
+        for(int i=0; i<hotBlocks.size(); i+=2) {
+            IndexTableEntry oldEntry = (IndexTableEntry)hotBlocks.elementAt(i);
+            byte []block = (byte[])hotBlocks.elementAt(i+1);
+            
+            dout.write(block);
+            IndexTableEntry entry = new IndexTableEntry(m_CurrentPageNumber, m_CurrentOffset, oldEntry.getName());
+            entry.setAccessCount(oldEntry.getAccessCount() / 2);
+            m_IndexTableHashtable.put(entry.getName(), entry);
+            m_BloomFilter.add(entry.getName());
+            m_NbrOfEntrysPage[m_CurrentPageNumber]++;
+            m_CurrentOffset += block.length;
+            m_NbrOfRelocatedEntries++;
+        }
+        dout.flush();
+        
+        if(LOG.isDebug()) {
+            LOG.debug("SecondaryCache.writeHotBlocks()", "moved "+(hotBlocks.size()/2)+
+                    " entries, offset= "+m_CurrentOffset);
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
      */
     private void clearPage(int pageNbr) {
         
@@ -837,6 +1189,7 @@ public class SecondaryCache implements CacheInterface {
             entry = (IndexTableEntry)iEnum.nextElement();
             if(entry.getPage() == pageNbr) {
                 m_IndexTableHashtable.remove(entry.getName());
+                m_BloomFilter.entryRemoved();
                 m_MemCache.removeFromCache(entry.getName());
             }
         }
@@ -852,7 +1205,19 @@ public class SecondaryCache implements CacheInterface {
     /**
      * Save any unsaved data and close the cache.
      */
-    public synchronized void closeCache() {
+    public void closeCache() {
+        m_Lock.writeLock();
+        try {
+            internalCloseCache();
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void internalCloseCache() {
         
         /* Return if the cache isn't open. */
         if(!m_IsCacheOpen)
@@ -873,6 +1238,15 @@ public class SecondaryCache implements CacheInterface {
             
             /* Write the index table to cache. */           
             m_CacheHandler.writeIndexTableToCache(m_CurrentPageNumber, m_NbrOfEntrysPage[m_CurrentPageNumber], m_IndexTableHashtable);
+            m_AccessCountChanged[m_CurrentPageNumber] = false;
+            
+            /* Write the index tables of the pages with entries that has been read to save the access counts. */
+            for(int i=0; i<NUMBER_OF_PAGES; i++) {
+                if(m_AccessCountChanged[i]) {
+                    m_CacheHandler.writeIndexTableToCache(i, m_NbrOfEntrysPage[i], m_IndexTableHashtable);
+                    m_AccessCountChanged[i] = false;
+                }
+            }
             
             /* Update the info file with information about the current active
              * page and offset*/
@@ -899,7 +1273,19 @@ public class SecondaryCache implements CacheInterface {
      * Remove the cache entry with the id specified by the parameter
      * from the cache. The index file will be updated on disc. 
      */
-    public synchronized void removeFromCache(TileMapParams params) {
+    public void removeFromCache(TileMapParams params) {
+        m_Lock.writeLock();
+        try {
+            internalRemoveFromCache(params);
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    /*
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void internalRemoveFromCache(TileMapParams params) {
         
         if(LOG.isInfo()) {
             LOG.info("SecondaryCache.removeFromCache()", "aTileID= "+params.getTileID()+" isOpen= "+m_IsCacheOpen);
@@ -912,6 +1298,7 @@ public class SecondaryCache implements CacheInterface {
         try {                
             IndexTableEntry entry = (IndexTableEntry)m_IndexTableHashtable.remove(params.getTileID());
             if(entry != null) {
+                m_BloomFilter.entryRemoved();
                 m_NbrOfEntrysPage[entry.getPage()]--;
                 if(entry.getPage() != m_CurrentPageNumber) {
                     final int pageNbr = entry.getPage();
@@ -950,5 +1337,59 @@ public class SecondaryCache implements CacheInterface {
         // 
         
     }
+
+    /**
+     * Replaces the Bloom filter with a filter built from the index table, 
+     * sized for twice the number of entries. 
+     * 
+     * NOTE: This method should be only called with the write lock held
+     */
+    private void rebuildBloomFilter() {
+        BloomFilter filter = new BloomFilter(2 * m_IndexTableHashtable.size());
+        Enumeration keys = m_IndexTableHashtable.keys();
+        while(keys.hasMoreElements()) {
+            filter.add((String)keys.nextElement());
+        }
+        m_BloomFilter = filter;
+    }
+    
+    /**
+     * Returns the ids of all tiles and other data in the cache, e.g. to copy 
+     * the cache into a pre-installed map file. Route tiles are skipped. 
+     * 
+     * @return a Vector of TileMapParams with the tile ID set, read the data 
+     * of each with {@link #getDataFromCache(TileMapLayerWrapper, String, String)}
+     */
+    public Vector getTileIDs() {
+        m_Lock.writeLock();
+        try {
+            Vector tileIDs = new Vector();
+            if(!m_IsCacheOpen) {
+                return tileIDs;
+            }
+            
+            Enumeration e = m_IndexTableHashtable.keys();
+            while(e.hasMoreElements()) {
+                TileMapParams params = TileKey.getTileIDParams((String)e.nextElement(), false);
+                if(params != null) {
+                    tileIDs.addElement(params);
+                }
+            }
+            return tileIDs;
+        } finally {
+            m_Lock.writeUnlock();
+        }
+    }
+    
+    Hashtable getIndexTableHashtable() {
+        return m_IndexTableHashtable;
+    }
+    
+    /**
+     * @return the filter in front of the index table
+     */
+    BloomFilter getBloomFilter() {
+        return m_BloomFilter;
+    }
     
 }
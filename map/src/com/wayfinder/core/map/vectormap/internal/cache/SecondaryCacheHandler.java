@@ -34,6 +34,7 @@
 
 package com.wayfinder.core.map.vectormap.internal.cache;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -42,7 +43,6 @@ import java.util.Hashtable;
 
 import com.wayfinder.core.shared.internal.debug.LogFactory;
 import com.wayfinder.core.shared.internal.debug.Logger;
-import com.wayfinder.core.shared.util.io.WFByteArrayInputStream;
 import com.wayfinder.core.shared.util.io.WFByteArrayOutputStream;
 import com.wayfinder.pal.error.PermissionsException;
 import com.wayfinder.pal.persistence.PersistenceLayer;
@@ -73,9 +73,6 @@ public class SecondaryCacheHandler {
     private static final String CACHE_INFO     = "cacheInfo";
     private SecondaryCacheStorage cacheInfo;
    
-    private WFByteArrayInputStream m_PageBAIS;
-    private DataInputStream m_Page_din;
-    
     private WFByteArrayOutputStream m_PageBAOS;
     private DataOutputStream m_Page_dout;
     
@@ -84,7 +81,6 @@ public class SecondaryCacheHandler {
     
     
     private final int m_NumberOfPages;
-    private int lastPage = -1;
     
     private byte m_StartPage = 0;
     private int m_StartOffset = 0;
@@ -97,12 +93,10 @@ public class SecondaryCacheHandler {
         cachePage = null;
         cacheIndex = null;
         cacheInfo = null;
-        m_Page_din = null;
         m_PageBAOS = null;
         m_Page_dout = null;
         iIndexBAOS = null;
         iIndexTabledout = null;
-        m_PageBAIS = null;
     }
     
     /* Index table methods */
@@ -117,6 +111,8 @@ public class SecondaryCacheHandler {
     }
     
     /**
+     * Write the index file for a page. Each entry is written as the page, 
+     * offset, tile ID and access count. 
      * 
      * @param currentPage
      * @param nbrOfTiles
@@ -145,6 +141,7 @@ public class SecondaryCacheHandler {
                 iIndexTabledout.writeInt(entry.getOffset());
                 iIndexTabledout.writeByte(entry.getName().getBytes().length);
                 iIndexTabledout.write(entry.getName().getBytes());
+                iIndexTabledout.writeByte(entry.getAccessCount());
             }
         }
         
@@ -169,22 +166,13 @@ public class SecondaryCacheHandler {
      */
     DataInputStream getDataInputStream(int page, int currentPageNumber) throws IOException {
         
-        // If the page is the current active page
+        // If the page is the current active page read directly from the 
+        // buffer of the page, it's only changed when the cache is written 
+        // and the cache doesn't read at the same time. Each call gets its 
+        // own stream since several threads may read. 
         if(page == currentPageNumber) {
-            m_PageBAIS.reset();
-            // Check if din has changed since the last time we read data from it. 
-            if(page != lastPage || (m_PageBAOS.size() != m_PageBAIS.available() && page == lastPage)) {       
-                lastPage = page;
-                
-                if(LOG.isInfo()) {
-                    LOG.info("SecondaryCacheHandler.getDataInputStream()", "SAME PAGE... copy "+m_PageBAOS.size()+" bytes into iBAIS!");
-                }
-                
-                m_PageBAIS.reset();          
-                System.arraycopy(m_PageBAOS.getByteArray(), 0, m_PageBAIS.getByteArray(), 0, m_PageBAOS.size());
-                m_PageBAIS.setCount(m_PageBAOS.size());
-            }
-            return m_Page_din;
+            return new DataInputStream(
+                    new ByteArrayInputStream(m_PageBAOS.getByteArray(), 0, m_PageBAOS.size()));
         } else if(cachePage[page].size() > 0){            
             return cachePage[page].getDataInputStream();
         }
@@ -282,9 +270,6 @@ public class SecondaryCacheHandler {
         iIndexBAOS = new WFByteArrayOutputStream(32000);
         iIndexTabledout = new DataOutputStream(iIndexBAOS);
         
-        m_PageBAIS = new WFByteArrayInputStream(new byte[m_MaxPageSize]);
-        m_Page_din = new DataInputStream(m_PageBAIS);
-        
         return true;
     }   
     
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+/**
+ * Allocates chunks of a few large byte arrays, slabs, for the 
+ * {@link MemCache}. 
+ * <p>
+ * With a large memory cache the many small data buffers of the tiles are 
+ * copied around by the garbage collector again and again. The slabs are 
+ * allocated once and kept, and the data is copied into chunks of them. 
+ * <p>
+ * The chunks are allocated with a buddy system. Each slab is 
+ * {@link #SLAB_SIZE} bytes and split in halves until the chunk is the 
+ * smallest power of two that fits the data, but at least 
+ * {@link #MIN_CHUNK_SIZE} bytes. Freed chunks are merged with their buddy 
+ * when it's free, so a freed slab can be used for chunks of any size. 
+ * There is one free list per chunk size, linked through arrays with one 
+ * element per {@link #MIN_CHUNK_SIZE} bytes of the slabs. 
+ * <p>
+ * A chunk is identified by a handle, the index of its first 
+ * {@link #MIN_CHUNK_SIZE} unit. 
+ * <p>
+ * The class is not thread safe, it's guarded by the {@link MemCache}. 
+ */
+final class SlabAllocator {
+    
+    private static final int MIN_CHUNK_SHIFT = 7;
+    private static final int SLAB_SHIFT = 16;
+    private static final int MAX_ORDER = SLAB_SHIFT - MIN_CHUNK_SHIFT;
+    private static final int UNITS_PER_SLAB = 1 << MAX_ORDER;
+    
+    /**
+     * The smallest chunk that is allocated. 
+     */
+    static final int MIN_CHUNK_SIZE = 1 << MIN_CHUNK_SHIFT;
+    
+    /**
+     * The size of a slab and the largest chunk that can be allocated. 
+     */
+    static final int SLAB_SIZE = 1 << SLAB_SHIFT;
+    
+    private static final int NONE = -1;
+    private static final byte FREE = (byte)0x80;
+    private static final byte ORDER_MASK = 0x7F;
+    
+    private final byte [][]m_Slabs;
+    private int m_NbrOfSlabs;
+    
+    // the order and free flag of the chunk starting at each unit
+    private final byte []m_State;
+    // the free list links of free chunks, by the first unit of the chunk
+    private final int []m_Next;
+    private final int []m_Prev;
+    private final int []m_FreeLists = new int[MAX_ORDER + 1];
+    
+    private int m_NbrOfFreeBytes;
+    
+    /**
+     * @param capacity the number of bytes that can be allocated, rounded up
+     * to a multiple of {@link #SLAB_SIZE}
+     */
+    SlabAllocator(int capacity) {
+        final int nbrOfSlabs = getCapacity(capacity) >> SLAB_SHIFT;
+        m_Slabs = new byte[nbrOfSlabs][];
+        m_State = new byte[nbrOfSlabs * UNITS_PER_SLAB];
+        m_Next = new int[m_State.length];
+        m_Prev = new int[m_State.length];
+        for(int i=0; i<m_FreeLists.length; i++) {
+            m_FreeLists[i] = NONE;
+        }
+        m_NbrOfFreeBytes = nbrOfSlabs << SLAB_SHIFT;
+    }
+    
+    /**
+     * @return the number of bytes that can be allocated
+     */
+    int getCapacity() {
+        return m_Slabs.length << SLAB_SHIFT;
+    }
+    
+    /**
+     * @param capacity a number of bytes
+     * @return the number of bytes that can be allocated by an allocator 
+     * created for capacity bytes
+     */
+    static int getCapacity(int capacity) {
+        return (int)(((long)capacity + SLAB_SIZE - 1) >> SLAB_SHIFT) << SLAB_SHIFT;
+    }
+    
+    /**
+     * @return the number of bytes in free chunks and slabs that hasn't been
+     * used yet
+     */
+    int getNbrOfFreeBytes() {
+        return m_NbrOfFreeBytes;
+    }
+    
+    /**
+     * @param size the number of bytes, at most {@link #SLAB_SIZE}
+     * @return the size of the chunk that is allocated for size bytes 
+     */
+    static int getChunkSize(int size) {
+        return MIN_CHUNK_SIZE << getOrder(size);
+    }
+    
+    /**
+     * Allocates a chunk. The slabs are created when they are first needed. 
+     * 
+     * @param size the number of bytes, at most {@link #SLAB_SIZE}
+     * @return the handle of the chunk or -1 if there is no free chunk that 
+     * is large enough
+     */
+    int allocate(int size) {
+        final int order = getOrder(size);
+        int freeOrder = order;
+        while(freeOrder <= MAX_ORDER && m_FreeLists[freeOrder] == NONE) {
+            freeOrder++;
+        }
+        if(freeOrder > MAX_ORDER) {
+            if(m_NbrOfSlabs == m_Slabs.length) {
+                return NONE;
+            }
+            final int slab = m_NbrOfSlabs++;
+            m_Slabs[slab] = new byte[SLAB_SIZE];
+            freeOrder = MAX_ORDER;
+            addFree(slab * UNITS_PER_SLAB, MAX_ORDER);
+        }
+        
+        final int unit = m_FreeLists[freeOrder];
+        removeFree(unit);
+        // split the chunk and free the upper halves
+        while(freeOrder > order) {
+            freeOrder--;
+            addFree(unit + (1 << freeOrder), freeOrder);
+        }
+        m_State[unit] = (byte)order;
+        m_NbrOfFreeBytes -= MIN_CHUNK_SIZE << order;
+        return unit;
+    }
+    
+    /**
+     * Frees a chunk and merges it with its buddies. 
+     * 
+     * @param handle the handle of the chunk
+     */
+    void free(int handle) {
+        int unit = handle;
+        int order = m_State[unit] & ORDER_MASK;
+        m_NbrOfFreeBytes += MIN_CHUNK_SIZE << order;
+        while(order < MAX_ORDER) {
+            // slabs are aligned to UNITS_PER_SLAB so the buddy is in the same slab
+            final int buddy = unit ^ (1 << order);
+            if(m_State[buddy] != (byte)(FREE | order)) {
+                break;
+            }
+            removeFree(buddy);
+            m_State[buddy] = 0;
+            unit = Math.min(unit, buddy);
+            order++;
+        }
+        addFree(unit, order);
+    }
+    
+    /**
+     * @param handle the handle of a chunk
+     * @return the slab of the chunk
+     */
+    byte []getSlab(int handle) {
+        return m_Slabs[handle >> MAX_ORDER];
+    }
+    
+    /**
+     * @param handle the handle of a chunk
+     * @return the offset of the chunk in its slab
+     */
+    static int getOffset(int handle) {
+        return (handle & (UNITS_PER_SLAB - 1)) << MIN_CHUNK_SHIFT;
+    }
+    
+    private static int getOrder(int size) {
+        int order = 0;
+        while((MIN_CHUNK_SIZE << order) < size) {
+            order++;
+        }
+        return order;
+    }
+    
+    private void addFree(int unit, int order) {
+        final int head = m_FreeLists[order];
+        m_State[unit] = (byte)(FREE | order);
+        m_Prev[unit] = NONE;
+        m_Next[unit] = head;
+        if(head != NONE) {
+            m_Prev[head] = unit;
+        }
+        m_FreeLists[order] = unit;
+    }
+    
+    private void removeFree(int unit) {
+        final int prev = m_Prev[unit];
+        final int next = m_Next[unit];
+        if(prev != NONE) {
+            m_Next[prev] = next;
+        } else {
+            m_FreeLists[m_State[unit] & ORDER_MASK] = next;
+        }
+        if(next != NONE) {
+            m_Prev[next] = prev;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Hash table from the {@link TileKey} of a tile to where the tile is saved 
+ * in the {@link FileCache}, i.e. the page and the offset into the page. 
+ * <p>
+ * The table uses open addressing with linear probing in two arrays, so no
+ * objects are created for the entries and a lookup doesn't compare any 
+ * strings. The table is grown when it's half full. 
+ * <p>
+ * The table is saved as a list of keys and locations, see 
+ * {@link #write(DataOutputStream)}, and is read from one byte array, see 
+ * {@link #read(byte[])}. 
+ * <p>
+ * All methods are synchronized since the cache removes entries while 
+ * reading, with only the read lock held. 
+ */
+final class TileIndex {
+    
+    /**
+     * Returned by {@link #get(long)} when the key doesn't exist. 
+     */
+    static final int NO_ENTRY = -1;
+    
+    private static final int FILE_VERSION = 1;
+    
+    /* The number of bytes in the file before the entries, the version and 
+     * the number of entries. */
+    private static final int FILE_HEADER_SIZE = 8;
+    
+    /* The number of bytes for each entry in the file, the key and the location */
+    private static final int FILE_ENTRY_SIZE = 12;
+    
+    private static final int MIN_CAPACITY = 64;
+    
+    private long []m_Keys;
+    
+    /* The location of the key at the same index, or NO_ENTRY if the slot 
+     * is empty. */
+    private int []m_Locations;
+    
+    private int m_Size;
+    
+    private boolean m_HasBeenChanged;
+    
+    TileIndex() {
+        init(MIN_CAPACITY);
+    }
+    
+    private void init(int aCapacity) {
+        m_Keys = new long[aCapacity];
+        m_Locations = new int[aCapacity];
+        for(int i=0; i<aCapacity; i++) {
+            m_Locations[i] = NO_ENTRY;
+        }
+        m_Size = 0;
+    }
+    
+    /**
+     * Packs a page and an offset into a location. 
+     * 
+     * @param aPage the page number, 0 - 127
+     * @param aOffset the offset into the page, less than 2^24
+     */
+    static int createLocation(byte aPage, int aOffset) {
+        return (aPage << 24) | aOffset;
+    }
+    
+    static byte getPage(int aLocation) {
+        return (byte)(aLocation >>> 24);
+    }
+    
+    static int getOffset(int aLocation) {
+        return aLocation & 0xFFFFFF;
+    }
+    
+    private static int hash(long aKey) {
+        int h = (int)(aKey ^ (aKey >>> 32));
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    /*
+     * Returns the slot of the key or the empty slot where it should be added.
+     */
+    private int findSlot(long aKey) {
+        final int mask = m_Keys.length - 1;
+        int i = hash(aKey) & mask;
+        while(m_Locations[i] != NO_ENTRY && m_Keys[i] != aKey) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+    
+    /**
+     * @param aKey the key of the tile
+     * @return the location of the tile, or {@link #NO_ENTRY}
+     */
+    synchronized int get(long aKey) {
+        return m_Locations[findSlot(aKey)];
+    }
+    
+    /**
+     * Adds the key or updates its location.
+     * 
+     * @param aKey the key of the tile
+     * @param aLocation the location, see {@link #createLocation(byte, int)}
+     */
+    synchronized void put(long aKey, int aLocation) {
+        if((m_Size + 1) * 2 > m_Keys.length) {
+            grow(m_Keys.length * 2);
+        }
+        int i = findSlot(aKey);
+        if(m_Locations[i] == NO_ENTRY) {
+            m_Keys[i] = aKey;
+            m_Size++;
+        }
+        m_Locations[i] = aLocation;
+        m_HasBeenChanged = true;
+    }
+    
+    /**
+     * @param aKey the key of the tile
+     * @return true if the key existed
+     */
+    synchronized boolean remove(long aKey) {
+        int i = findSlot(aKey);
+        if(m_Locations[i] == NO_ENTRY) {
+            return false;
+        }
+        
+        /* Move back the following entries that can't be found without the 
+         * removed one, instead of marking the slot as deleted. */
+        final int mask = m_Keys.length - 1;
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(m_Locations[j] == NO_ENTRY) {
+                break;
+            }
+            int home = hash(m_Keys[j]) & mask;
+            boolean between = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+            if(!between) {
+                m_Keys[i] = m_Keys[j];
+                m_Locations[i] = m_Locations[j];
+                i = j;
+            }
+        }
+        m_Locations[i] = NO_ENTRY;
+        m_Size--;
+        m_HasBeenChanged = true;
+        return true;
+    }
+    
+    /**
+     * Removes all entries saved in a page less than or equal to aPageLimit. 
+     * 
+     * @return the number of removed entries
+     */
+    synchronized int removePagesUpTo(int aPageLimit) {
+        long []keys = m_Keys;
+        int []locations = m_Locations;
+        init(keys.length);
+        int removed = 0;
+        for(int i=0; i<keys.length; i++) {
+            if(locations[i] != NO_ENTRY) {
+                if(getPage(locations[i]) <= aPageLimit) {
+                    removed++;
+                } else {
+                    int slot = findSlot(keys[i]);
+                    m_Keys[slot] = keys[i];
+                    m_Locations[slot] = locations[i];
+                    m_Size++;
+                }
+            }
+        }
+        if(removed > 0) {
+            m_HasBeenChanged = true;
+        }
+        return removed;
+    }
+    
+    private void grow(int aCapacity) {
+        long []keys = m_Keys;
+        int []locations = m_Locations;
+        init(aCapacity);
+        for(int i=0; i<keys.length; i++) {
+            if(locations[i] != NO_ENTRY) {
+                int slot = findSlot(keys[i]);
+                m_Keys[slot] = keys[i];
+                m_Locations[slot] = locations[i];
+                m_Size++;
+            }
+        }
+    }
+    
+    /**
+     * Adds the keys of all entries to a filter. 
+     */
+    synchronized void addKeysTo(BloomFilter aFilter) {
+        for(int i=0; i<m_Keys.length; i++) {
+            if(m_Locations[i] != NO_ENTRY) {
+                aFilter.add(m_Keys[i]);
+            }
+        }
+    }
+    
+    /**
+     * @return the keys of all entries, in no particular order
+     */
+    synchronized long[] getKeys() {
+        long []keys = new long[m_Size];
+        int n = 0;
+        for(int i=0; i<m_Keys.length; i++) {
+            if(m_Locations[i] != NO_ENTRY) {
+                keys[n++] = m_Keys[i];
+            }
+        }
+        return keys;
+    }
+    
+    synchronized void clear() {
+        init(MIN_CAPACITY);
+        m_HasBeenChanged = true;
+    }
+    
+    synchronized int size() {
+        return m_Size;
+    }
+    
+    synchronized int getCapacity() {
+        return m_Keys.length;
+    }
+    
+    /**
+     * @return true if the index has been changed since it was written 
+     * or read
+     */
+    synchronized boolean hasBeenChanged() {
+        return m_HasBeenChanged;
+    }
+    
+    /**
+     * Writes the index. 
+     * <p>
+     * |--------------------------------------------------|
+     * | Tile index file            | SIZE                |
+     * |--------------------------------------------------|
+     * | Version                    | 4 bytes             |
+     * | Number of entries          | 4 bytes             |
+     * | Key                        | 8 bytes             |
+     * | Location                   | 4 bytes             |
+     * | ... key and location for all entries             |
+     * |--------------------------------------------------|
+     */
+    synchronized void write(DataOutputStream aDout) throws IOException {
+        aDout.writeInt(FILE_VERSION);
+        aDout.writeInt(m_Size);
+        for(int i=0; i<m_Keys.length; i++) {
+            if(m_Locations[i] != NO_ENTRY) {
+                aDout.writeLong(m_Keys[i]);
+                aDout.writeInt(m_Locations[i]);
+            }
+        }
+        m_HasBeenChanged = false;
+    }
+    
+    /**
+     * Replaces the content of the index with an index written by 
+     * {@link #write(DataOutputStream)}. 
+     * 
+     * @param aData the whole file
+     * @throws IOException if the data isn't a valid index, the index is 
+     * empty in that case
+     */
+    synchronized void read(byte []aData) throws IOException {
+        init(MIN_CAPACITY);
+        m_HasBeenChanged = false;
+        
+        if(aData.length < FILE_HEADER_SIZE || readInt(aData, 0) != FILE_VERSION) {
+            throw new IOException("Invalid tile index");
+        }
+        final int size = readInt(aData, 4);
+        if(size < 0 || size > (aData.length - FILE_HEADER_SIZE) / FILE_ENTRY_SIZE
+                || aData.length != FILE_HEADER_SIZE + size * FILE_ENTRY_SIZE) {
+            throw new IOException("Invalid tile index size " + size);
+        }
+        
+        int capacity = MIN_CAPACITY;
+        while(capacity < size * 2) {
+            capacity *= 2;
+        }
+        init(capacity);
+        
+        int pos = FILE_HEADER_SIZE;
+        for(int i=0; i<size; i++) {
+            long key = ((long)readInt(aData, pos) << 32) | (readInt(aData, pos + 4) & 0xFFFFFFFFL);
+            int location = readInt(aData, pos + 8);
+            pos += FILE_ENTRY_SIZE;
+            if(location < 0) {
+                init(MIN_CAPACITY);
+                throw new IOException("Invalid tile index location " + location);
+            }
+            
+            int slot = findSlot(key);
+            if(m_Locations[slot] == NO_ENTRY) {
+                m_Size++;
+            }
+            m_Keys[slot] = key;
+            m_Locations[slot] = location;
+        }
+    }
+    
+    private static int readInt(byte []aData, int aPos) {
+        return ((aData[aPos] & 0xFF) << 24) | ((aData[aPos + 1] & 0xFF) << 16)
+             | ((aData[aPos + 2] & 0xFF) << 8) | (aData[aPos + 3] & 0xFF);
+    }
+}
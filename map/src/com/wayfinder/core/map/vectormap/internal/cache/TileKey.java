@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParamTypes;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.core.shared.internal.settings.language.LangTypes;
+
+/**
+ * Packs the fields that identifies a tile into a long, to be used as key 
+ * instead of the parameter string. 
+ * <p>
+ * From the lowest bit the key contains:<br>
+ * 15 bits tile index longitude <br>
+ * 15 bits tile index latitude <br>
+ * 13 bits language <br>
+ * 5 bits importance <br>
+ * 4 bits detail level <br>
+ * 4 bits layer ID <br>
+ * 6 bits server prefix <br>
+ * <p>
+ * The fields have the same number of bits as in the parameter string, the 
+ * tile indices are signed and written with at most 15 bits. The two highest 
+ * bits are always zero so a key is never {@link #NO_KEY}. 
+ * <p>
+ * Tiles in the route layer can't be packed since their parameter strings 
+ * also contains the route ID. 
+ */
+final class TileKey {
+    
+    /**
+     * Returned when the fields of a tile can't be packed. 
+     */
+    static final long NO_KEY = -1;
+    
+    static final int ROUTE_LAYER_ID = 1;
+    
+    private static final int LON_SHIFT = 0;
+    private static final int LAT_SHIFT = 15;
+    private static final int LANGUAGE_SHIFT = 30;
+    private static final int IMPORTANCE_SHIFT = 43;
+    private static final int DETAIL_SHIFT = 48;
+    private static final int LAYER_SHIFT = 52;
+    private static final int PREFIX_SHIFT = 56;
+    
+    private static final int INDEX_BITS = 15;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int MIN_INDEX = -(1 << (INDEX_BITS - 1));
+    private static final int MAX_INDEX = (1 << (INDEX_BITS - 1)) - 1;
+    private static final int LANGUAGE_MASK = 0x1FFF;
+    private static final int IMPORTANCE_MASK = 0x1F;
+    private static final int DETAIL_MASK = 0xF;
+    private static final int LAYER_MASK = 0xF;
+    private static final int PREFIX_MASK = 0x3F;
+    
+    private TileKey() {
+    }
+    
+    /**
+     * Packs the fields of a tile. 
+     * 
+     * @return the key, or {@link #NO_KEY} if a field is out of range or the 
+     * tile is in the route layer
+     */
+    static long pack(int aServerPrefix, int aLayerID, int aDetailLevel, 
+            int aImportance, int aLanguage, int aTileIndexLat, int aTileIndexLon) {
+        
+        if(aLayerID == ROUTE_LAYER_ID 
+                || (aServerPrefix & ~PREFIX_MASK) != 0
+                || (aLayerID & ~LAYER_MASK) != 0
+                || (aDetailLevel & ~DETAIL_MASK) != 0
+                || (aImportance & ~IMPORTANCE_MASK) != 0
+                || (aLanguage & ~LANGUAGE_MASK) != 0
+                || aTileIndexLat < MIN_INDEX || aTileIndexLat > MAX_INDEX
+                || aTileIndexLon < MIN_INDEX || aTileIndexLon > MAX_INDEX) {
+            return NO_KEY;
+        }
+        
+        return ((long)aServerPrefix << PREFIX_SHIFT)
+             | ((long)aLayerID << LAYER_SHIFT)
+             | ((long)aDetailLevel << DETAIL_SHIFT)
+             | ((long)aImportance << IMPORTANCE_SHIFT)
+             | ((long)aLanguage << LANGUAGE_SHIFT)
+             | ((long)(aTileIndexLat & INDEX_MASK) << LAT_SHIFT)
+             | ((long)(aTileIndexLon & INDEX_MASK) << LON_SHIFT);
+    }
+    
+    /**
+     * Returns the key of the tile ID of the params, i.e. with importance 
+     * and language 0. All importances and languages of a tile are cached 
+     * together under this key. 
+     * 
+     * @param aParams the params of any importance of the tile
+     * @return the key, or {@link #NO_KEY} if the tile can't be packed
+     */
+    static long getTileKey(TileMapParams aParams) {
+        return pack(aParams.getServerPrefix(), 
+                    aParams.getLayerID(), 
+                    aParams.getDetailLevel(), 
+                    0, 
+                    0, 
+                    aParams.getTileIndexLat(), 
+                    aParams.getTileIndexLon());
+    }
+    
+    static int getServerPrefix(long aKey) {
+        return (int)(aKey >>> PREFIX_SHIFT) & PREFIX_MASK;
+    }
+    
+    static int getLayerID(long aKey) {
+        return (int)(aKey >>> LAYER_SHIFT) & LAYER_MASK;
+    }
+    
+    static int getDetailLevel(long aKey) {
+        return (int)(aKey >>> DETAIL_SHIFT) & DETAIL_MASK;
+    }
+    
+    static int getImportance(long aKey) {
+        return (int)(aKey >>> IMPORTANCE_SHIFT) & IMPORTANCE_MASK;
+    }
+    
+    static int getLanguage(long aKey) {
+        return (int)(aKey >>> LANGUAGE_SHIFT) & LANGUAGE_MASK;
+    }
+    
+    static int getTileIndexLat(long aKey) {
+        return getIndex(aKey, LAT_SHIFT);
+    }
+    
+    static int getTileIndexLon(long aKey) {
+        return getIndex(aKey, LON_SHIFT);
+    }
+    
+    private static int getIndex(long aKey, int aShift) {
+        // sign extend the 15 bits
+        int index = (int)(aKey >>> aShift) & INDEX_MASK;
+        return (index << (32 - INDEX_BITS)) >> (32 - INDEX_BITS);
+    }
+    
+    /**
+     * Unpacks a key returned by {@link #getTileKey(TileMapParams)}. 
+     * 
+     * @return the params of importance 0 of the map tile, with the tile ID 
+     * set. The key doesn't contain the gzip flag, which is false. 
+     */
+    static TileMapParams getTileIDParams(long aKey) {
+        TileMapParams params = new TileMapParams();
+        params.setParams(getServerPrefix(aKey), 
+                         false, 
+                         getLayerID(aKey), 
+                         TileMapParams.MAP, 
+                         0, 
+                         LangTypes.SWEDISH, 
+                         getTileIndexLat(aKey), 
+                         getTileIndexLon(aKey), 
+                         getDetailLevel(aKey), 
+                         null, 
+                         "");
+        params.setTileID(params.getAsString());
+        return params;
+    }
+    
+    /**
+     * Returns the params of a tile ID that is used as key in a hashtable 
+     * instead of a {@link TileKey}. 
+     * 
+     * @param aTileID the param string of a map tile or of other data, 
+     * e.g. a bitmap
+     * @param aOverviewMap true if a map tile is an overview map
+     * @return the params with the tile ID set, or null if aTileID is a 
+     * route tile or a map tile that can't be parsed
+     */
+    static TileMapParams getTileIDParams(String aTileID, boolean aOverviewMap) {
+        if(!TileMapParamTypes.isMap(aTileID)) {
+            return new TileMapParams(aTileID, aTileID);
+        }
+        
+        final TileMapParams parsed;
+        try {
+            parsed = TileMapParams.parseParamString(aTileID);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if(parsed.getLayerID() == ROUTE_LAYER_ID) {
+            return null;
+        }
+        TileMapParams params = new TileMapParams();
+        params.setParams(parsed.getServerPrefix(), 
+                         parsed.useGZip(), 
+                         parsed.getLayerID(), 
+                         parsed.getTileMapType(), 
+                         parsed.getImportance(), 
+                         parsed.getLanguageType(), 
+                         parsed.getTileIndexLat(), 
+                         parsed.getTileIndexLon(), 
+                         parsed.getDetailLevel(), 
+                         null, 
+                         aTileID, 
+                         aOverviewMap);
+        return params;
+    }
+}
@@ -0,0 +1,481 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import com.wayfinder.core.map.vectormap.internal.control.TileMapLayerWrapper;
+import com.wayfinder.core.map.vectormap.internal.control.TileMapLayerWrapperInterface;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.core.shared.internal.debug.LogFactory;
+import com.wayfinder.core.shared.internal.debug.Logger;
+import com.wayfinder.pal.concurrency.ConcurrencyLayer;
+
+/**
+ * Writes the data to a persistent cache in the background. 
+ * <p>
+ * {@link FileCache#writeDataToCache(byte[][], TileMapParams[], TileMapParams, int, int, short)}
+ * and the same method of {@link SecondaryCache} write to the disc and 
+ * sometimes move to a new page or save the index. They are called by the 
+ * threads that load the tiles, and since the caches are synchronized a 
+ * slow write blocks all other tiles from being read from the cache. 
+ * <p>
+ * This class queues the writes and a low priority worker thread writes 
+ * them to the cache in the same order. While data is queued, and until 
+ * the write has completed, it's read from the queue. Data for a tile that 
+ * is already queued is added to the queued write, and data with the same 
+ * parameter string replaces the queued data, so each tile is written once. 
+ * <p>
+ * At most {@link #getMaxPendingSize()} bytes are queued, when the queue is 
+ * full the writing thread waits until the worker has caught up. 
+ * {@link #saveCache()} and {@link #closeCache()} write all queued data 
+ * before they are passed on to the cache. 
+ */
+public class WriteBehindCache implements CacheInterface, Runnable {
+    
+    private static final Logger LOG = LogFactory
+            .getLoggerForClass(WriteBehindCache.class);
+    
+    /**
+     * The default number of bytes that can be queued. 
+     */
+    public static final int DEFAULT_MAX_PENDING_SIZE = 128000;
+    
+    private final CacheInterface m_Cache;
+    private final int m_MaxPendingSize;
+    
+    // the writes in the order they should be written, the first one might 
+    // be written right now, see m_Writing
+    private final Vector m_Queue = new Vector();
+    
+    // tile ID -> the last PendingWrite for the tile 
+    private final Hashtable m_PendingTiles = new Hashtable();
+    
+    // param string -> the last PendingWrite with data for the param string
+    private final Hashtable m_PendingParams = new Hashtable();
+    
+    // the write that is passed to the cache right now, it's not changed  
+    // and stays in the queue until the cache has written it
+    private PendingWrite m_Writing;
+    
+    private int m_PendingSize;
+    private int m_NbrOfCoalescedWrites;
+    private boolean m_Started;
+    private boolean m_Closed;
+    
+    private MemCache m_MemCache;
+    
+    /**
+     * @param cache the opened cache to write to
+     * @param maxPendingSize the maximal number of bytes that can be queued
+     */
+    public WriteBehindCache(CacheInterface cache, int maxPendingSize) {
+        m_Cache = cache;
+        m_MaxPendingSize = maxPendingSize;
+    }
+    
+    /**
+     * Starts the worker thread that writes the queued data. Until the 
+     * thread is started the data is only written by {@link #flush()}. 
+     * 
+     * @param currLayer the {@link ConcurrencyLayer} used to start the thread
+     */
+    public void start(ConcurrencyLayer currLayer) {
+        synchronized (this) {
+            if(m_Started) {
+                return;
+            }
+            m_Started = true;
+        }
+        Thread t = currLayer.startNewDaemonThread(this, "TMCacheWriter");
+        t.setPriority(Thread.MIN_PRIORITY);
+    }
+    
+    /**
+     * @return the cache that the data is written to
+     */
+    public CacheInterface getCache() {
+        return m_Cache;
+    }
+    
+    public int getMaxPendingSize() {
+        return m_MaxPendingSize;
+    }
+    
+    /**
+     * @return the number of bytes that hasn't been written to the cache yet
+     */
+    public synchronized int getPendingSize() {
+        return m_PendingSize;
+    }
+    
+    /**
+     * @return the number of times queued data has been replaced by new 
+     * data with the same parameter string before it was written
+     */
+    public synchronized int getNbrOfCoalescedWrites() {
+        return m_NbrOfCoalescedWrites;
+    }
+    
+    public void run() {
+        while(true) {
+            synchronized (this) {
+                while(m_Queue.isEmpty() && !m_Closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        if(LOG.isError()) {
+                            LOG.error("WriteBehindCache.run()", e);
+                        }
+                    }
+                }
+                if(m_Queue.isEmpty()) {
+                    if(LOG.isInfo()) {
+                        LOG.info("WriteBehindCache.run()", "cache closed, stop writing");
+                    }
+                    return;
+                }
+            }
+            writeNext();
+        }
+    }
+    
+    /**
+     * Writes all queued data to the cache on the calling thread. 
+     */
+    public void flush() {
+        while(writeNext()) {
+            // write until the queue is empty
+        }
+    }
+    
+    /*
+     * Writes the first queued write to the cache. Returns false if the 
+     * queue was empty. 
+     */
+    private boolean writeNext() {
+        PendingWrite write;
+        synchronized (this) {
+            while(m_Writing != null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    if(LOG.isError()) {
+                        LOG.error("WriteBehindCache.writeNext()", e);
+                    }
+                    return false;
+                }
+            }
+            if(m_Queue.isEmpty()) {
+                return false;
+            }
+            write = (PendingWrite)m_Queue.firstElement();
+            m_Writing = write;
+        }
+        
+        try {
+            write.writeTo(m_Cache);
+        } catch (Exception e) {
+            if(LOG.isError()) {
+                LOG.error("WriteBehindCache.writeNext()", "failed for tileID= "+write.m_TileID);
+                LOG.error("WriteBehindCache.writeNext()", e);
+            }
+        } finally {
+            synchronized (this) {
+                removePending(write);
+                m_Writing = null;
+                notifyAll();
+            }
+        }
+        return true;
+    }
+    
+    /*
+     * Removes a write from the queue and the lookup tables. 
+     * 
+     * NOTE: This method should be only called from synchronize context
+     */
+    private void removePending(PendingWrite write) {
+        m_Queue.removeElement(write);
+        if(m_PendingTiles.get(write.m_TileID) == write) {
+            m_PendingTiles.remove(write.m_TileID);
+        }
+        final int size = write.m_Params.size();
+        for(int i=0; i<size; i++) {
+            String paramString = ((TileMapParams)write.m_Params.elementAt(i)).getAsString();
+            if(m_PendingParams.get(paramString) == write) {
+                m_PendingParams.remove(paramString);
+            }
+        }
+        m_PendingSize -= write.m_Size;
+    }
+    
+    /**
+     * Queues the data to be written to the cache. The non null elements 
+     * of aCacheData are set to null, as when the cache writes the data. 
+     * <p>
+     * Waits until there is room for the data if the queue is full. 
+     * 
+     * @return true if the data has been queued
+     */
+    public boolean writeDataToCache(byte [][]aCacheData, 
+                                    TileMapParams []aParams, 
+                                    TileMapParams aTileIDParam, 
+                                    int aTotalSize, 
+                                    int aNbrOfImp, 
+                                    short aEmptyImp) {
+        
+        if(aCacheData == null) {
+            return false;
+        }
+        
+        synchronized (this) {
+            while(!m_Closed && m_PendingSize > 0 && 
+                  m_PendingSize + aTotalSize > m_MaxPendingSize) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    if(LOG.isError()) {
+                        LOG.error("WriteBehindCache.writeDataToCache()", e);
+                    }
+                    break;
+                }
+            }
+            
+            if(!m_Closed) {
+                final String tileID = aTileIDParam.getTileID();
+                PendingWrite write = (PendingWrite)m_PendingTiles.get(tileID);
+                if(write == null || write == m_Writing) {
+                    write = new PendingWrite(tileID, aTileIDParam);
+                    m_Queue.addElement(write);
+                    m_PendingTiles.put(tileID, write);
+                }
+                write.m_EmptyImp = aEmptyImp;
+                
+                for(int i=0; i<aCacheData.length; i++) {
+                    if(aParams[i] != null && aCacheData[i] != null) {
+                        final String paramString = aParams[i].getAsString();
+                        PendingWrite old = (PendingWrite)m_PendingParams.get(paramString);
+                        if(old != null && old != m_Writing) {
+                            final int removed = old.remove(paramString);
+                            m_PendingSize -= removed;
+                            m_NbrOfCoalescedWrites++;
+                            if(old != write && old.m_Params.isEmpty()) {
+                                removePending(old);
+                            }
+                        }
+                        write.add(aParams[i], aCacheData[i]);
+                        m_PendingSize += aCacheData[i].length;
+                        m_PendingParams.put(paramString, write);
+                        aCacheData[i] = null;
+                    }
+                }
+                
+                if(write.m_Params.isEmpty()) {
+                    removePending(write);
+                    return false;
+                }
+                notifyAll();
+                return true;
+            }
+        }
+        
+        // the cache has been closed, write directly to the cache after the 
+        // queued data so older data of the tile doesn't replace this data
+        flush();
+        return m_Cache.writeDataToCache(aCacheData, aParams, aTileIDParam, 
+                aTotalSize, aNbrOfImp, aEmptyImp);
+    }
+    
+    public byte[] getDataFromCache(TileMapLayerWrapper aTileMapWrapper, 
+                                   String aParamString, 
+                                   String aTileID) {
+        
+        synchronized (this) {
+            PendingWrite write = (PendingWrite)m_PendingParams.get(aParamString);
+            if(write != null) {
+                if(aTileMapWrapper != null) {
+                    aTileMapWrapper.setAllEmptyImportances(write.m_EmptyImp);
+                }
+                
+                /* Add all queued data of the tile to the memory cache, as 
+                 * when the tile is read from the cache. */
+                byte []data = null;
+                final int size = write.m_Params.size();
+                for(int i=0; i<size; i++) {
+                    String paramString = ((TileMapParams)write.m_Params.elementAt(i)).getAsString();
+                    byte []b = (byte[])write.m_Data.elementAt(i);
+                    if(m_MemCache != null) {
+                        m_MemCache.writeToCache(paramString, b);
+                    }
+                    if(paramString.equals(aParamString)) {
+                        data = b;
+                    }
+                }
+                return data;
+            }
+        }
+        return m_Cache.getDataFromCache(aTileMapWrapper, aParamString, aTileID);
+    }
+    
+    public boolean existInCache(TileMapParams aParams) {
+        synchronized (this) {
+            if(m_PendingTiles.containsKey(aParams.getTileID())) {
+                return true;
+            }
+        }
+        return m_Cache.existInCache(aParams);
+    }
+    
+    public void removeFromCache(TileMapParams aParams) {
+        final String tileID = aParams.getTileID();
+        synchronized (this) {
+            /* Wait until the tile has been written, otherwise it could be 
+             * added again after it has been removed. */
+            while(m_Writing != null && m_Writing.m_TileID.equals(tileID)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    if(LOG.isError()) {
+                        LOG.error("WriteBehindCache.removeFromCache()", e);
+                    }
+                    break;
+                }
+            }
+            PendingWrite write = (PendingWrite)m_PendingTiles.get(tileID);
+            if(write != null && write != m_Writing) {
+                removePending(write);
+                notifyAll();
+            }
+        }
+        m_Cache.removeFromCache(aParams);
+    }
+    
+    public boolean openCache() {
+        return m_Cache.openCache();
+    }
+    
+    public void closeCache() {
+        // writes from now on go directly to the cache, before it is closed
+        synchronized (this) {
+            m_Closed = true;
+            notifyAll();
+        }
+        flush();
+        m_Cache.closeCache();
+    }
+    
+    public void saveCache() {
+        flush();
+        m_Cache.saveCache();
+    }
+    
+    public void setMemCache(MemCache aMemCache) {
+        synchronized (this) {
+            m_MemCache = aMemCache;
+        }
+        m_Cache.setMemCache(aMemCache);
+    }
+    
+    public boolean updateLoadedNodes(TileMapLayerWrapperInterface wrapper, 
+                                     Hashtable aLoadedWrapper) {
+        return m_Cache.updateLoadedNodes(wrapper, aLoadedWrapper);
+    }
+    
+    public void setTileMapFormatDesc(TileMapFormatDesc aTmfd) {
+        m_Cache.setTileMapFormatDesc(aTmfd);
+    }
+    
+    public void setVisible(boolean aVisible) {
+        m_Cache.setVisible(aVisible);
+    }
+    
+    public void purgeData() {
+        m_Cache.purgeData();
+    }
+    
+    
+    /**
+     * The queued data of a tile. 
+     */
+    private static final class PendingWrite {
+        
+        private final String m_TileID;
+        private final TileMapParams m_TileIDParam;
+        private final Vector m_Params = new Vector(4);
+        private final Vector m_Data = new Vector(4);
+        private int m_Size;
+        private short m_EmptyImp;
+        
+        PendingWrite(String tileID, TileMapParams tileIDParam) {
+            m_TileID = tileID;
+            m_TileIDParam = tileIDParam;
+        }
+        
+        void add(TileMapParams params, byte []data) {
+            m_Params.addElement(params);
+            m_Data.addElement(data);
+            m_Size += data.length;
+        }
+        
+        /*
+         * Removes the data with the param string, returns the number of 
+         * bytes that was removed. 
+         */
+        int remove(String paramString) {
+            final int size = m_Params.size();
+            for(int i=0; i<size; i++) {
+                if(((TileMapParams)m_Params.elementAt(i)).getAsString().equals(paramString)) {
+                    final int length = ((byte[])m_Data.elementAt(i)).length;
+                    m_Params.removeElementAt(i);
+                    m_Data.removeElementAt(i);
+                    m_Size -= length;
+                    return length;
+                }
+            }
+            return 0;
+        }
+        
+        void writeTo(CacheInterface cache) {
+            final int nbrOfImp = m_Params.size();
+            TileMapParams []params = new TileMapParams[nbrOfImp];
+            byte [][]data = new byte[nbrOfImp][];
+            m_Params.copyInto(params);
+            m_Data.copyInto(data);
+            cache.writeDataToCache(data, params, m_TileIDParam, m_Size, nbrOfImp, m_EmptyImp);
+        }
+    }
+}
@@ -42,8 +42,20 @@ import com.wayfinder.core.shared.internal.debug.LogFactory;
 import com.wayfinder.core.shared.internal.debug.Logger;
 import com.wayfinder.pal.persistence.PersistenceLayer;
 import com.wayfinder.pal.persistence.WFFileConnection;
+import com.wayfinder.pal.persistence.WFPageFile;
 
 
+/**
+ * Reads a pre-installed map file. 
+ * <p>
+ * If the platform can open the file as a {@link WFPageFile}, normally by 
+ * memory mapping it, the reads are copies from the page file at the 
+ * requested offset and several threads can read from the same or different 
+ * files at the same time. Otherwise the file is read with the stream of 
+ * its {@link WFFileConnection}, which is shared by all files since some 
+ * platforms don't allow several streams to be open, and the reads are 
+ * serialised. 
+ */
 public class FileHandler implements FileHandlerInterface {
 
     private static final Logger LOG = LogFactory
@@ -52,6 +64,12 @@ public class FileHandler implements FileHandlerInterface {
     private String m_FileName;
     WFFileConnection m_fconn;
     private int m_totalRead;
+    /// the file opened by the platform for random access, null if the 
+    /// streams are used
+    private WFPageFile m_pageFile;
+    
+    /// guards the streams and buffers that are shared by all files
+    private static final Object STREAM_LOCK = new Object();
 
     /**
      * Creates a new instance of FileHandler
@@ -78,7 +96,64 @@ public class FileHandler implements FileHandlerInterface {
             if(LOG.isError()) {
                 LOG.error("FileHandler.FileHandler()", "File not found: "+fileName);
             }
+        } else {
+            m_pageFile = openPageFile(perLayer, fileName, m_fconn.fileSize());
+            if(LOG.isInfo()) {
+                LOG.info("FileHandler.FileHandler()", fileName+" page file= "+(m_pageFile != null));
+            }
+        }
+    }
+    
+    /**
+     * Opens the file as a page file with the same size as the file. 
+     * 
+     * @return the page file or null if the platform doesn't support page 
+     * files or it couldn't be opened
+     */
+    private static WFPageFile openPageFile(PersistenceLayer perLayer, String fileName, 
+            int size) {
+        WFPageFile pageFile = null;
+        try {
+            pageFile = perLayer.openPageFile(fileName, size);
+            if (pageFile != null && pageFile.size() != size) {
+                // not the content of the file, read it with the stream
+                if(LOG.isWarn()) {
+                    LOG.warn("FileHandler.openPageFile()", fileName+" size "
+                            +pageFile.size()+" != "+size);
+                }
+                pageFile.close();
+                pageFile = null;
+            }
+        } catch (Exception ex) {
+            if(LOG.isError()) {
+                LOG.error("FileHandler.openPageFile()", ex);
+            }
+            pageFile = null;
+        }
+        return pageFile;
+    }
+    
+    /**
+     * @return true if the file is read from a page file, false if it's 
+     * read with the shared stream
+     */
+    boolean hasPageFile() {
+        return m_pageFile != null;
+    }
+    
+    /**
+     * Reads from the page file. 
+     * 
+     * @return the number of bytes read, less than size at the end of the 
+     * file
+     */
+    private int readFromPageFile(byte[] b, int size, int position) throws IOException {
+        int count = Math.min(size, m_pageFile.size() - position);
+        if (count <= 0) {
+            return 0;
         }
+        m_pageFile.read(position, b, 0, count);
+        return count;
     }
 
     public boolean fileConnectionOk() {
@@ -140,13 +215,20 @@ public class FileHandler implements FileHandlerInterface {
         
         int n = 0;
         try {
-            fillLoadBufferIfNeeded(m_fconn, m_totalRead + maxLength);
-            n = Math.min(maxLength, loadBufferSize - m_totalRead);
-            if (n > 0) {
-                System.arraycopy(loadBuffer, m_totalRead, bytes, 0, n);
+            if (m_pageFile != null) {
+                n = readFromPageFile(bytes, maxLength, m_totalRead);
                 m_totalRead += n;
             } else {
-                n = 0;
+                synchronized (STREAM_LOCK) {
+                    fillLoadBufferIfNeeded(m_fconn, m_totalRead + maxLength);
+                    n = Math.min(maxLength, loadBufferSize - m_totalRead);
+                    if (n > 0) {
+                        System.arraycopy(loadBuffer, m_totalRead, bytes, 0, n);
+                        m_totalRead += n;
+                    } else {
+                        n = 0;
+                    }
+                }
             }
         } catch (IOException ex) {
             if(LOG.isError()) {
@@ -192,6 +274,7 @@ public class FileHandler implements FileHandlerInterface {
             currentFileConn = fc;
             startPeriod();
             currentFileIs = fc.openDataInputStream();
+            currentPosition = 0;
             // we assume that read method will actually read the whole buffer
             // if the size of the file is big enough
             logPeriod("open", 0);
@@ -257,8 +340,10 @@ public class FileHandler implements FileHandlerInterface {
                 startPeriod();
                 int n = currentFileIs.read(b, count, size - count);
                 logPeriod("read", n);
-                count += n;
-                currentPosition += n;
+                if (n > 0) {
+                    count += n;
+                    currentPosition += n;
+                }
             } else {
                 if(LOG.isWarn()) {
                     LOG.warn("FileHandler.readFromCurrent()", "Could not seek the file is too small");
@@ -280,7 +365,13 @@ public class FileHandler implements FileHandlerInterface {
 
         int n = 0;
         try {
-             n = readFromCurrent(m_fconn, bytes, maxLength, skip);
+            if (m_pageFile != null) {
+                n = readFromPageFile(bytes, maxLength, skip);
+            } else {
+                synchronized (STREAM_LOCK) {
+                    n = readFromCurrent(m_fconn, bytes, maxLength, skip);
+                }
+            }
         } catch (IOException ex) {
             if(LOG.isError()) {
                 LOG.error("FileHandler.read()", "e= "+ex);
@@ -306,20 +397,26 @@ public class FileHandler implements FileHandlerInterface {
      */
     public void close() {
         try {
-            if (m_fconn == currentFileConn) {
-                //not very elegant but we need to state that the currentFileConn
-                //cannot be used anymore because has been closed
-                //also the currentFileIs should be closed.
-                closeCurrentFileIs();
-                currentFileConn = null;
-            } 
-            
-            if (m_fconn == currentLoadFileConn) {
-                //we need to state that the currentLoadFileConn cannot be used 
-                //anymore because has been closed 
-                currentLoadFileConn = null;
+            synchronized (STREAM_LOCK) {
+                if (m_fconn == currentFileConn) {
+                    //not very elegant but we need to state that the currentFileConn
+                    //cannot be used anymore because has been closed
+                    //also the currentFileIs should be closed.
+                    closeCurrentFileIs();
+                    currentFileConn = null;
+                } 
+                
+                if (m_fconn == currentLoadFileConn) {
+                    //we need to state that the currentLoadFileConn cannot be used 
+                    //anymore because has been closed 
+                    currentLoadFileConn = null;
+                }
             }
             
+            if (m_pageFile != null) {
+                m_pageFile.close();
+                m_pageFile = null;
+            }
             m_fconn.close();
         } catch (IOException ex) {
             if(LOG.isError()) {
@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache.precache;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParamTypes;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+
+/**
+ * Directory of the tiles and strings in a set of pre-installed map files. 
+ * <p>
+ * A request for a parameter string would otherwise try every file until 
+ * one of them may contain it, see 
+ * {@link SingleFileDBufRequester#request}, so a miss checks the headers of all files. The directory is built from 
+ * the headers when the files are added. It maps the layer and detail 
+ * level of the tiles to the tile index ranges of the files, and the first 
+ * character of the strings to the files with strings starting with it. 
+ * <p>
+ * {@link #getFiles(TileMapParams)} returns the files that may contain a 
+ * parameter string, normally none or one. It returns every file where 
+ * {@link SingleFileDBufRequester#existInPrecache(TileMapParams)} is true, 
+ * except the files with a {@link SFDStringIndex} that doesn't contain the 
+ * string when the tile isn't in the tile collections of the file. 
+ */
+public final class PreCacheDirectory {
+    
+    private static final SingleFileDBufRequester[] NO_FILES = new SingleFileDBufRequester[0];
+    
+    /* The indices of the columns of the tile ranges */
+    private static final int START_LAT = 0;
+    private static final int END_LAT = 1;
+    private static final int START_LON = 2;
+    private static final int END_LON = 3;
+    private static final int FILE = 4;
+    
+    private final SingleFileDBufRequester[] m_Files;
+    
+    /* layer and detail level -> int[][] of tile index ranges and files */
+    private final Hashtable m_TileRanges = new Hashtable();
+    
+    /* first character -> int[] of files */
+    private final Hashtable m_StringFiles = new Hashtable();
+    
+    /* the files where the header wasn't loaded, they may contain anything */
+    private final int[] m_UnknownFiles;
+    
+    /**
+     * Creates the directory. 
+     * 
+     * @param files the files, in the order they should be tried when 
+     * several files may contain a string
+     */
+    public PreCacheDirectory(SingleFileDBufRequester[] files) {
+        m_Files = new SingleFileDBufRequester[files.length];
+        System.arraycopy(files, 0, m_Files, 0, files.length);
+        
+        Vector unknownFiles = new Vector();
+        for (int file = 0; file < m_Files.length; file++) {
+            final int state = m_Files[file].getState();
+            if (state == SingleFileDBufRequester.PERMANENT_ERROR) {
+                // never returns anything
+                continue;
+            }
+            if (state == SingleFileDBufRequester.NOT_INITIALIZED 
+                    || state == SingleFileDBufRequester.READING_HEADER) {
+                unknownFiles.addElement(new Integer(file));
+                continue;
+            }
+            SFDLoadableHeader header = m_Files[file].getHeader();
+            addTileCollections(header.getTileCollections(), file);
+            addInitialCharacters(header.getInitialCharacters(), file);
+        }
+        
+        toArrays(m_TileRanges);
+        toArrays(m_StringFiles);
+        m_UnknownFiles = toIntArray(unknownFiles);
+    }
+    
+    private void addTileCollections(TileCollectionNotice[] collections, int file) {
+        if (collections == null) {
+            return;
+        }
+        for (int i = 0; i < collections.length; i++) {
+            TileCollectionNotice collection = collections[i];
+            for (int layer = 0; layer < collection.getNbrOfLayers(); layer++) {
+                final int layerID = collection.getLayerID(layer);
+                TilesForAllDetailsNotice details = collection.getTilesForLayer(layer);
+                final int startDetail = details.getStartDetail();
+                for (int detail = startDetail; 
+                        detail < startDetail + details.getNbrOfDetails(); detail++) {
+                    TilesNotice tiles = details.getTilesForDetail(detail);
+                    int[] range = new int[FILE + 1];
+                    range[START_LAT] = tiles.m_startLatIdx;
+                    range[END_LAT] = tiles.m_endLatIdx;
+                    range[START_LON] = tiles.m_startLonIdx;
+                    range[END_LON] = tiles.m_endLonIdx;
+                    range[FILE] = file;
+                    add(m_TileRanges, tileKey(layerID, detail), range);
+                }
+            }
+        }
+    }
+    
+    private void addInitialCharacters(short[] chars, int file) {
+        if (chars == null) {
+            return;
+        }
+        for (int i = 0; i < chars.length; i++) {
+            add(m_StringFiles, new Integer(chars[i]), new Integer(file));
+        }
+    }
+    
+    private static Integer tileKey(int layerID, int detail) {
+        return new Integer((layerID << 16) | (detail & 0xFFFF));
+    }
+    
+    private static void add(Hashtable table, Object key, Object value) {
+        Vector values = (Vector) table.get(key);
+        if (values == null) {
+            values = new Vector();
+            table.put(key, values);
+        }
+        if (!values.contains(value)) {
+            values.addElement(value);
+        }
+    }
+    
+    /**
+     * Replaces the vectors in the table with arrays, int[][] for vectors of 
+     * int[] and int[] for vectors of Integer. 
+     */
+    private static void toArrays(Hashtable table) {
+        for (Enumeration e = table.keys(); e.hasMoreElements();) {
+            Object key = e.nextElement();
+            Vector values = (Vector) table.get(key);
+            if (values.firstElement() instanceof Integer) {
+                table.put(key, toIntArray(values));
+            } else {
+                int[][] array = new int[values.size()][];
+                values.copyInto(array);
+                table.put(key, array);
+            }
+        }
+    }
+    
+    private static int[] toIntArray(Vector integers) {
+        int[] array = new int[integers.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ((Integer) integers.elementAt(i)).intValue();
+        }
+        return array;
+    }
+    
+    /**
+     * @return the number of files in the directory
+     */
+    public int getNbrOfFiles() {
+        return m_Files.length;
+    }
+    
+    /**
+     * Returns the files that may contain a parameter string. The files 
+     * with the tile in their tile collections come first, then the files 
+     * that may contain the string, in the order they were added. 
+     * 
+     * @param param the parameter string
+     * @return the files, an empty array if no file contains the string
+     */
+    public SingleFileDBufRequester[] getFiles(TileMapParams param) {
+        final String paramString = param.getAsString();
+        // normally at most one file is found
+        boolean[] found = null;
+        int nbrFound = 0;
+        
+        if (TileMapParamTypes.isMap(paramString)) {
+            int[][] ranges = (int[][]) m_TileRanges.get(
+                    tileKey(param.getLayerID(), param.getDetailLevel()));
+            if (ranges != null) {
+                final int lat = param.getTileIndexLat();
+                final int lon = param.getTileIndexLon();
+                for (int i = 0; i < ranges.length; i++) {
+                    int[] range = ranges[i];
+                    if (lat >= range[START_LAT] && lat <= range[END_LAT] 
+                            && lon >= range[START_LON] && lon <= range[END_LON]) {
+                        if (found == null) {
+                            found = new boolean[m_Files.length];
+                        }
+                        if (!found[range[FILE]]) {
+                            found[range[FILE]] = true;
+                            nbrFound++;
+                        }
+                    }
+                }
+            }
+        }
+        
+        // the tiles first, in the order of the files
+        SingleFileDBufRequester[] tileFiles = NO_FILES;
+        if (nbrFound > 0) {
+            tileFiles = new SingleFileDBufRequester[nbrFound];
+            int n = 0;
+            for (int file = 0; file < found.length; file++) {
+                if (found[file]) {
+                    tileFiles[n++] = m_Files[file];
+                }
+            }
+        }
+        
+        int[] stringFiles = null;
+        if (paramString.length() > 0) {
+            stringFiles = (int[]) m_StringFiles.get(new Integer(paramString.charAt(0)));
+        }
+        if (stringFiles == null && m_UnknownFiles.length == 0) {
+            return tileFiles;
+        }
+        
+        Vector files = new Vector(tileFiles.length + 1);
+        for (int i = 0; i < tileFiles.length; i++) {
+            files.addElement(tileFiles[i]);
+        }
+        if (stringFiles != null) {
+            for (int i = 0; i < stringFiles.length; i++) {
+                final int file = stringFiles[i];
+                if (found != null && found[file]) {
+                    continue;
+                }
+                SFDStringIndex index = m_Files[file].getStringIndex();
+                if (index == null || index.indexOf(paramString) >= 0) {
+                    files.addElement(m_Files[file]);
+                }
+            }
+        }
+        for (int i = 0; i < m_UnknownFiles.length; i++) {
+            SingleFileDBufRequester file = m_Files[m_UnknownFiles[i]];
+            if (!files.contains(file)) {
+                files.addElement(file);
+            }
+        }
+        
+        if (files.isEmpty()) {
+            return NO_FILES;
+        }
+        SingleFileDBufRequester[] array = new SingleFileDBufRequester[files.size()];
+        files.copyInto(array);
+        return array;
+    }
+}
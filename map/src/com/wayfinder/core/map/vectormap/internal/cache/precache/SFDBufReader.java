@@ -66,6 +66,8 @@ public class SFDBufReader implements FileHandlerListener{
     BitBuffer m_bufOffsetBuf;
 /// Buffer which is used to hold the map
     BitBuffer m_readBuffer;
+/// The buffer offsets of the strings, null if they are read from the file
+    private SFDStringIndex m_index;
     
     
     /**
@@ -74,6 +76,17 @@ public class SFDBufReader implements FileHandlerListener{
      *             not be used simultaneously with in other places.
      */
     public SFDBufReader(SFDLoadableHeader header, FileHandler fh, SFDBufReaderListener listener ) {
+        this(header, fh, listener, null);
+    }
+    
+    /**
+     *   Creates a new SFDBufReader.
+     *   @param index the buffer offsets of the strings, if not null the 
+     *                buffers of the strings are read with a single read
+     */
+    SFDBufReader(SFDLoadableHeader header, FileHandler fh, SFDBufReaderListener listener, 
+            SFDStringIndex index ) {
+        m_index = index;
         m_header = header;
         m_bufOffsetBuf = new BitBuffer(8);
         m_listener = listener;
@@ -87,6 +100,12 @@ public class SFDBufReader implements FileHandlerListener{
      * Starts the SFDBufReader using a strIdx
      */
     public void start( int strNbr ){
+        if ( m_index != null && m_state != PERMANENT_ERROR ) {
+            // The offset is already known, read the buffer directly.
+            m_state = READING_BUF;
+            readBuffer( m_index.getBufferOffset( strNbr ), m_index.getBufferLength( strNbr ) );
+            return;
+        }
         startAbsolute( strNbrToBufIdxOffset( strNbr ) );
     }
     
@@ -122,32 +141,39 @@ public class SFDBufReader implements FileHandlerListener{
             int bufOffset =(int) m_bufOffsetBuf.nextInt();
             // Find out the offset of the next buffer and calculate length
             int bufLength = (int)m_bufOffsetBuf.nextInt() - bufOffset;
-            // This should really not happen, but you never know
-            if ( bufLength == 0 ) {
-                m_state = IDLE;
-                m_listener.bufferRead( null );
-                return;
-            }
-            
-            // Create buffer
-            m_readBuffer = new BitBuffer( bufLength );
-            // And read
-            m_fileHandler.read(m_readBuffer.getByteArray(),m_readBuffer.getBufferSize(),this,bufOffset );
+            readBuffer( bufOffset, bufLength );
             
         } else if ( m_state == READING_BUF ) {
             // Done and done
             m_state = IDLE;
             // Cannot use the member variable anymore since we might
-            // get a callback from m_listener
-            byte[]tmp = new byte[m_readBuffer.getByteArray().length];
-            System.arraycopy(m_readBuffer.getByteArray() ,0, tmp, 0, m_readBuffer.getByteArray().length );
-            BitBuffer tmpBuf = new BitBuffer(tmp);
+            // get a callback from m_listener. The buffer is created for
+            // each read so it's handed over instead of copied.
+            BitBuffer tmpBuf = m_readBuffer;
+            m_readBuffer = null;
             // All is set - call listener.
             m_listener.bufferRead( tmpBuf );
         }
         
     }
     
+    /**
+     * Reads a buffer, called in the READING_BUF state.
+     */
+    private void readBuffer( int bufOffset, int bufLength ) {
+        // This should really not happen, but you never know
+        if ( bufLength == 0 ) {
+            m_state = IDLE;
+            m_listener.bufferRead( null );
+            return;
+        }
+        
+        // Create buffer
+        m_readBuffer = new BitBuffer( bufLength );
+        // And read
+        m_fileHandler.read(m_readBuffer.getByteArray(),m_readBuffer.getBufferSize(),this,bufOffset );
+    }
+    
     /// Called by fileListener when write is done.
     public void writeDone( int nbrWritten ) {
         // Should not happen.
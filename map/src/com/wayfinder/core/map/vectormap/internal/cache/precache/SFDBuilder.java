@@ -0,0 +1,807 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache.precache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import com.wayfinder.core.map.vectormap.internal.cache.CacheInterface;
+import com.wayfinder.core.map.vectormap.internal.cache.FileCache;
+import com.wayfinder.core.map.vectormap.internal.cache.MemCache;
+import com.wayfinder.core.map.vectormap.internal.cache.SecondaryCache;
+import com.wayfinder.core.map.vectormap.internal.control.TileMapLayerWrapper;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParamTypes;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.core.shared.internal.debug.LogFactory;
+import com.wayfinder.core.shared.internal.debug.Logger;
+
+/**
+ * Builds a pre-installed map file from cached tiles, e.g. to package a 
+ * region for devices that are offline or to create large test files. 
+ * <p>
+ * The data is added as param strings and buffers, from a {@link FileCache}
+ * or a {@link SecondaryCache}, or from a dump written with 
+ * {@link #writeDumpEntry(DataOutputStream, String, byte[])}. 
+ * {@link #write(OutputStream)} then writes the file in the format read by 
+ * {@link SFDLoadableHeader} and {@link SingleFileDBufRequester}:
+ * <ul>
+ * <li>the header, with one tile collection for all layers</li>
+ * <li>the sorted strings of the data that isn't map tiles, e.g. bitmaps 
+ * and TileMapFormatDesc, and their buffers</li>
+ * <li>the offset tables of the tiles, one for each layer and detail level
+ * covering the bounding box of the tiles</li>
+ * <li>a multi buffer with the maps and strings of all importances for 
+ * each tile in the offset tables</li>
+ * </ul>
+ * The map server writes several layers into one multi buffer, here each 
+ * multi buffer only holds the layer of its tile. Tile positions inside 
+ * the bounding boxes that have no tile get an empty multi buffer, which 
+ * is reported as an empty layer when it's requested. 
+ * <p>
+ * The server prefix, route ID and gzip flag of the param strings aren't 
+ * kept in the file, the requester answers with the values of the 
+ * request. Triangles records, route tiles, string tiles in other languages
+ * than the one of the builder and importances above 
+ * {@link #MAX_IMPORTANCE} are skipped. 
+ * <p>
+ * The builder is meant to be run offline and isn't thread safe. 
+ */
+public final class SFDBuilder {
+    
+    private static final Logger LOG = LogFactory
+            .getLoggerForClass(SFDBuilder.class);
+    
+    /**
+     * The highest importance that can be written, the importances of a 
+     * multi buffer are a 16 bit field. 
+     */
+    public static final int MAX_IMPORTANCE = 15;
+    
+    /**
+     * The longest string that can be written, the max string size in the 
+     * header is a byte and includes the null terminator. 
+     */
+    public static final int MAX_STRING_LENGTH = 254;
+    
+    private static final int INITIAL_HEADER_SIZE = 19;
+    
+    private static final int VERSION = 1;
+    
+    private static final int STRING_INDEX_ENTRY_SIZE_BITS = 32;
+    
+    /* The tile indices are at most 15 bits in a param string */
+    private static final int INDEX_MASK = 0xFFFFFF;
+    
+    private final String m_Name;
+    private final int m_Language;
+    
+    /* param string -> byte[] for the data that isn't map tiles */
+    private final Hashtable m_Strings = new Hashtable();
+    
+    /* Long packed by getTileKey() -> Tile */
+    private final Hashtable m_Tiles = new Hashtable();
+    
+    /**
+     * @param name the name written to the header of the file
+     * @param language the language of the string tiles, 
+     * see {@link TileMapParams#getLanguageType()}. The requester answers 
+     * with its preferred language, so it should be the same. 
+     */
+    public SFDBuilder(String name, int language) {
+        m_Name = name;
+        m_Language = language;
+    }
+    
+    //-------------------------------------------------------------------------
+    // adding
+    
+    /**
+     * Adds a buffer, replacing the buffer of the same param string if it 
+     * has already been added. 
+     * 
+     * @param paramString the param string of the buffer
+     * @param data the buffer
+     * @return true if the buffer was added, false if it's skipped since it 
+     * can't be written to the file
+     */
+    public boolean add(String paramString, byte[] data) {
+        if (data == null || !TileMapParamTypes.hasValidParamType(paramString)
+                || TileMapParamTypes.isTriangles(paramString)) {
+            return false;
+        }
+        
+        if (!TileMapParamTypes.isMap(paramString)) {
+            if (paramString.length() > MAX_STRING_LENGTH || !isAscii(paramString)) {
+                return false;
+            }
+            m_Strings.put(paramString, data);
+            return true;
+        }
+        
+        final TileMapParams params;
+        try {
+            params = TileMapParams.parseParamString(paramString);
+        } catch (IllegalArgumentException e) {
+            if (LOG.isWarn()) {
+                LOG.warn("SFDBuilder.add()", e.getMessage());
+            }
+            return false;
+        }
+        if (params.getRouteID() != null 
+                || params.getImportance() > MAX_IMPORTANCE
+                || (params.getTileMapType() == TileMapParams.STRINGS 
+                        && params.getLanguageType() != m_Language)) {
+            return false;
+        }
+        
+        Long key = new Long(getTileKey(params.getLayerID(), params.getDetailLevel(), 
+                params.getTileIndexLat(), params.getTileIndexLon()));
+        Tile tile = (Tile) m_Tiles.get(key);
+        if (tile == null) {
+            tile = new Tile(params);
+            m_Tiles.put(key, tile);
+        }
+        if (params.getTileMapType() == TileMapParams.MAP) {
+            tile.m_Maps[params.getImportance()] = data;
+        } else {
+            tile.m_StringMaps[params.getImportance()] = data;
+        }
+        return true;
+    }
+    
+    /**
+     * Adds the entries of a dump, see 
+     * {@link #writeDumpEntry(DataOutputStream, String, byte[])}, until the 
+     * end of the stream. 
+     * 
+     * @param in the dump, it's not closed
+     * @return the number of added entries
+     * @throws IOException if the stream can't be read or ends inside an 
+     * entry
+     */
+    public int addDump(InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        int nbrAdded = 0;
+        while (true) {
+            final String paramString;
+            try {
+                paramString = din.readUTF();
+            } catch (EOFException e) {
+                break;
+            }
+            byte[] data = new byte[din.readInt()];
+            din.readFully(data);
+            if (add(paramString, data)) {
+                nbrAdded++;
+            }
+        }
+        return nbrAdded;
+    }
+    
+    /**
+     * Writes an entry of a dump that can be read by 
+     * {@link #addDump(InputStream)}. A dump is the entries one after 
+     * another. 
+     * 
+     * @param out the dump
+     * @param paramString the param string
+     * @param data the buffer of the param string
+     */
+    public static void writeDumpEntry(DataOutputStream out, String paramString, byte[] data) 
+            throws IOException {
+        out.writeUTF(paramString);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+    
+    /**
+     * Adds all tiles and other data of a file cache. 
+     * 
+     * @see #addFromCache(CacheInterface, Vector)
+     */
+    public int addFromCache(FileCache cache) {
+        return addFromCache(cache, cache.getTileIDs());
+    }
+    
+    /**
+     * Adds all tiles and other data of a secondary cache. 
+     * 
+     * @see #addFromCache(CacheInterface, Vector)
+     */
+    public int addFromCache(SecondaryCache cache) {
+        return addFromCache(cache, cache.getTileIDs());
+    }
+    
+    /**
+     * Adds tiles and other data from an opened cache. 
+     * <p>
+     * Reading a tile from a cache writes all its importances to the memory 
+     * cache of the cache, so the memory cache is replaced by one that adds 
+     * them to this builder. The cache shouldn't be used by the map at the 
+     * same time, and its language should be the language of the builder. 
+     * 
+     * @param cache the cache
+     * @param tileIDs the TileMapParams of importance 0 of the tiles, or of 
+     * the other data, with the tile ID set
+     * @return the number of added buffers
+     */
+    public int addFromCache(CacheInterface cache, Vector tileIDs) {
+        CacheSink sink = new CacheSink();
+        cache.setMemCache(sink);
+        
+        final int size = tileIDs.size();
+        for (int i = 0; i < size; i++) {
+            TileMapParams params = (TileMapParams) tileIDs.elementAt(i);
+            final String tileID = params.getTileID();
+            TileMapLayerWrapper wrapper = null;
+            if (TileMapParamTypes.isMap(tileID)) {
+                wrapper = new TileMapLayerWrapper(params.getTileIndexLat(), 
+                        params.getTileIndexLon(), params.getLayerID(), 
+                        params.getDetailLevel(), params, params.isOverviewMap());
+            }
+            cache.getDataFromCache(wrapper, tileID, tileID);
+        }
+        
+        if (LOG.isInfo()) {
+            LOG.info("SFDBuilder.addFromCache()", "ids= " + size + " added= " + sink.m_NbrAdded);
+        }
+        return sink.m_NbrAdded;
+    }
+    
+    /**
+     * @return the number of tiles, each with maps and strings of all 
+     * importances
+     */
+    public int getNbrOfTiles() {
+        return m_Tiles.size();
+    }
+    
+    /**
+     * @return the number of buffers that aren't map tiles
+     */
+    public int getNbrOfStrings() {
+        return m_Strings.size();
+    }
+    
+    //-------------------------------------------------------------------------
+    // writing
+    
+    /**
+     * Writes the file. 
+     * 
+     * @param out the stream to write the file to, it's not closed
+     * @return the size of the file
+     * @throws IOException if the stream can't be written or the file would 
+     * be larger than 2 GB
+     */
+    public int write(OutputStream out) throws IOException {
+        final long time = System.currentTimeMillis();
+        
+        // the strings and their buffers
+        final String[] strings = new String[m_Strings.size()];
+        Enumeration e = m_Strings.keys();
+        for (int i = 0; e.hasMoreElements(); i++) {
+            strings[i] = (String) e.nextElement();
+        }
+        sort(strings);
+        
+        StringBuffer initialChars = new StringBuffer();
+        int maxStringSize = 0;
+        long strDataSize = 0;
+        long bufDataSize = 0;
+        for (int i = 0; i < strings.length; i++) {
+            final char first = strings[i].charAt(0);
+            if (initialChars.toString().indexOf(first) < 0) {
+                initialChars.append(first);
+            }
+            // null terminated
+            maxStringSize = Math.max(maxStringSize, strings[i].length() + 1);
+            strDataSize += strings[i].length() + 1;
+            bufDataSize += ((byte[]) m_Strings.get(strings[i])).length;
+        }
+        
+        // the tiles of each layer and detail level
+        final LayerTiles[] layers = getLayerTiles();
+        
+        final int headerSize = writeHeader(new DataOutputStream(new ByteArrayOutputStream()), 
+                0, initialChars.toString(), maxStringSize, strings.length, 0, 0, 0, layers);
+        final long strIdxStart = INITIAL_HEADER_SIZE + headerSize;
+        final long strDataStart = strIdxStart + (strings.length + 1) * 4L;
+        final long bufIdxStart = strDataStart + strDataSize;
+        final long bufDataStart = bufIdxStart + (strings.length + 1) * 4L;
+        
+        // the offset tables and the multi buffers
+        final long tableStart = bufDataStart + bufDataSize;
+        long tableEnd = tableStart;
+        for (int i = 0; i < layers.length; i++) {
+            tableEnd = layers[i].setOffsets(tableEnd);
+        }
+        final long nbrOfSlots = (tableEnd - tableStart) / 4;
+        final long multiStart = tableEnd + 4;
+        long multiDataSize = 0;
+        for (int i = 0; i < layers.length; i++) {
+            multiDataSize += layers[i].getMultiBufferSizes();
+        }
+        final long fileSize = multiStart + multiDataSize;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("The file would be " + fileSize + " bytes");
+        }
+        
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeBytes("storkafinger");
+        dout.writeByte(0);
+        dout.writeByte(VERSION);
+        dout.writeByte(0); // no encryption
+        dout.writeInt(headerSize);
+        writeHeader(dout, (int) fileSize, initialChars.toString(), maxStringSize, strings.length, 
+                (int) strIdxStart, (int) strDataStart, (int) bufIdxStart, layers);
+        
+        // string index, relative to the string data
+        int offset = 0;
+        for (int i = 0; i < strings.length; i++) {
+            dout.writeInt(offset);
+            offset += strings[i].length() + 1;
+        }
+        dout.writeInt(offset);
+        for (int i = 0; i < strings.length; i++) {
+            dout.writeBytes(strings[i]);
+            dout.writeByte(0);
+        }
+        
+        // buffer index, absolute offsets
+        offset = (int) bufDataStart;
+        for (int i = 0; i < strings.length; i++) {
+            dout.writeInt(offset);
+            offset += ((byte[]) m_Strings.get(strings[i])).length;
+        }
+        dout.writeInt(offset);
+        for (int i = 0; i < strings.length; i++) {
+            dout.write((byte[]) m_Strings.get(strings[i]));
+        }
+        
+        // offset tables, with an extra entry last for the size of the last 
+        // multi buffer
+        offset = (int) multiStart;
+        for (int i = 0; i < layers.length; i++) {
+            offset = layers[i].writeOffsetTables(dout, offset);
+        }
+        dout.writeInt(offset);
+        for (int i = 0; i < layers.length; i++) {
+            layers[i].writeMultiBuffers(dout);
+        }
+        dout.flush();
+        
+        if (dout.size() != fileSize) {
+            throw new IOException("Wrote " + dout.size() + " bytes instead of " + fileSize);
+        }
+        if (LOG.isInfo()) {
+            LOG.info("SFDBuilder.write()", m_Name + " strings= " + strings.length 
+                    + " tiles= " + m_Tiles.size() + " slots= " + nbrOfSlots 
+                    + " size= " + fileSize
+                    + " time= " + (System.currentTimeMillis() - time) + " ms");
+        }
+        return (int) fileSize;
+    }
+    
+    /**
+     * Writes the header after the initial header, see 
+     * {@link SFDLoadableHeader}. 
+     * 
+     * @return the size of the header
+     */
+    private int writeHeader(DataOutputStream out, int fileSize, String initialChars, 
+            int maxStringSize, int nbrOfStrings, int strIdxStart, int strDataStart, 
+            int bufIdxStart, LayerTiles[] layers) throws IOException {
+        final int start = out.size();
+        out.writeInt(fileSize);
+        out.write(m_Name.getBytes("UTF-8"));
+        out.writeByte(0);
+        out.writeInt((int) (System.currentTimeMillis() / 1000)); // creation time
+        out.writeByte(1); // null terminated strings
+        out.writeByte(maxStringSize);
+        out.writeByte(initialChars.length());
+        out.writeBytes(initialChars);
+        out.writeByte(0); // route IDs
+        out.writeInt(STRING_INDEX_ENTRY_SIZE_BITS);
+        out.writeInt(strIdxStart);
+        out.writeInt(nbrOfStrings);
+        out.writeInt(strDataStart);
+        out.writeInt(bufIdxStart);
+        out.writeInt(0); // buffer data start, not used
+        out.writeByte(0); // no debug param strings in the multi buffers
+        
+        if (layers.length == 0) {
+            out.writeShort(0);
+        } else {
+            // one collection, with one TilesForAllDetailsNotice per layer
+            out.writeShort(1);
+            out.writeShort(layers.length);
+            for (int i = 0; i < layers.length; i++) {
+                out.writeShort(layers[i].m_LayerID);
+                out.writeShort(i);
+            }
+            out.writeShort(layers.length);
+            for (int i = 0; i < layers.length; i++) {
+                layers[i].writeNotices(out);
+            }
+        }
+        out.flush();
+        return out.size() - start;
+    }
+    
+    /**
+     * @return the tiles grouped by layer, sorted by layer ID
+     */
+    private LayerTiles[] getLayerTiles() {
+        Hashtable byLayer = new Hashtable();
+        Enumeration e = m_Tiles.elements();
+        while (e.hasMoreElements()) {
+            Tile tile = (Tile) e.nextElement();
+            Integer layerID = new Integer(tile.m_LayerID);
+            LayerTiles layer = (LayerTiles) byLayer.get(layerID);
+            if (layer == null) {
+                layer = new LayerTiles(tile.m_LayerID);
+                byLayer.put(layerID, layer);
+            }
+            layer.add(tile);
+        }
+        
+        LayerTiles[] layers = new LayerTiles[byLayer.size()];
+        e = byLayer.elements();
+        for (int i = 0; e.hasMoreElements(); i++) {
+            // insertion sort, there are only a few layers
+            LayerTiles layer = (LayerTiles) e.nextElement();
+            int j = i;
+            while (j > 0 && layers[j - 1].m_LayerID > layer.m_LayerID) {
+                layers[j] = layers[j - 1];
+                j--;
+            }
+            layers[j] = layer;
+        }
+        return layers;
+    }
+    
+    private Tile getTile(int layerID, int detail, int lat, int lon) {
+        return (Tile) m_Tiles.get(new Long(getTileKey(layerID, detail, lat, lon)));
+    }
+    
+    private static long getTileKey(int layerID, int detail, int lat, int lon) {
+        return ((long) layerID << 56) | ((long) detail << 48) 
+                | ((long) (lat & INDEX_MASK) << 24) | (lon & INDEX_MASK);
+    }
+    
+    private static boolean isAscii(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Sorts strings in the order used by the searcher, a merge sort since 
+     * a file may contain a lot of strings. 
+     */
+    static void sort(String[] strings) {
+        if (strings.length > 1) {
+            String[] tmp = new String[strings.length];
+            mergeSort(strings, tmp, 0, strings.length);
+        }
+    }
+    
+    private static void mergeSort(String[] a, String[] tmp, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        final int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid);
+        mergeSort(a, tmp, mid, to);
+        if (a[mid - 1].compareTo(a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && tmp[i].compareTo(tmp[j]) <= 0)) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+    
+    //-------------------------------------------------------------------------
+    // tiles
+    
+    /**
+     * The maps and string maps of all importances of a tile. 
+     */
+    private static final class Tile {
+        
+        final int m_LayerID;
+        final int m_Detail;
+        final int m_Lat;
+        final int m_Lon;
+        final byte[][] m_Maps = new byte[MAX_IMPORTANCE + 1][];
+        final byte[][] m_StringMaps = new byte[MAX_IMPORTANCE + 1][];
+        
+        Tile(TileMapParams params) {
+            m_LayerID = params.getLayerID();
+            m_Detail = params.getDetailLevel();
+            m_Lat = params.getTileIndexLat();
+            m_Lon = params.getTileIndexLon();
+        }
+        
+        /**
+         * @return the highest importance with a map or string map
+         */
+        int getMaxImportance() {
+            for (int imp = MAX_IMPORTANCE; imp > 0; imp--) {
+                if (m_Maps[imp] != null || m_StringMaps[imp] != null) {
+                    return imp;
+                }
+            }
+            return 0;
+        }
+        
+        /**
+         * @return the importances with a map or a string map
+         */
+        int getExistingImportances() {
+            int existing = 0;
+            for (int imp = 0; imp <= MAX_IMPORTANCE; imp++) {
+                if (m_Maps[imp] != null || m_StringMaps[imp] != null) {
+                    existing |= 1 << imp;
+                }
+            }
+            return existing;
+        }
+    }
+    
+    /**
+     * The tiles of a layer and the bounding box of the tiles of each detail 
+     * level, written as a TilesForAllDetailsNotice. 
+     */
+    private final class LayerTiles {
+        
+        /* The detail level is 4 bits in a param string */
+        private static final int NBR_OF_DETAILS = 16;
+        
+        final int m_LayerID;
+        private int m_MaxImportance;
+        private int m_StartDetail = NBR_OF_DETAILS;
+        private int m_EndDetail = -1;
+        
+        /* start lat, end lat, start lon, end lon for each detail level, 
+         * null if there are no tiles at the level */
+        private final int[][] m_Boxes = new int[NBR_OF_DETAILS][];
+        
+        /* the offset of the offset table of each detail level */
+        private final long[] m_Offsets = new long[NBR_OF_DETAILS];
+        
+        LayerTiles(int layerID) {
+            m_LayerID = layerID;
+        }
+        
+        void add(Tile tile) {
+            m_MaxImportance = Math.max(m_MaxImportance, tile.getMaxImportance());
+            m_StartDetail = Math.min(m_StartDetail, tile.m_Detail);
+            m_EndDetail = Math.max(m_EndDetail, tile.m_Detail);
+            int[] box = m_Boxes[tile.m_Detail];
+            if (box == null) {
+                m_Boxes[tile.m_Detail] = new int[] { tile.m_Lat, tile.m_Lat, tile.m_Lon, tile.m_Lon };
+            } else {
+                box[0] = Math.min(box[0], tile.m_Lat);
+                box[1] = Math.max(box[1], tile.m_Lat);
+                box[2] = Math.min(box[2], tile.m_Lon);
+                box[3] = Math.max(box[3], tile.m_Lon);
+            }
+        }
+        
+        /**
+         * Sets the offsets of the offset tables. 
+         * 
+         * @param offset the offset of the first table
+         * @return the offset after the last table
+         */
+        long setOffsets(long offset) {
+            for (int detail = m_StartDetail; detail <= m_EndDetail; detail++) {
+                m_Offsets[detail] = offset;
+                offset += getNbrOfSlots(detail) * 4L;
+            }
+            return offset;
+        }
+        
+        private long getNbrOfSlots(int detail) {
+            int[] box = m_Boxes[detail];
+            if (box == null) {
+                return 0;
+            }
+            return (long) (box[1] - box[0] + 1) * (box[3] - box[2] + 1);
+        }
+        
+        void writeNotices(DataOutputStream out) throws IOException {
+            out.writeShort(m_StartDetail);
+            out.writeShort(m_EndDetail - m_StartDetail + 1);
+            for (int detail = m_StartDetail; detail <= m_EndDetail; detail++) {
+                out.writeInt((int) m_Offsets[detail]);
+                int[] box = m_Boxes[detail];
+                if (box == null) {
+                    // an empty range for a detail level without tiles
+                    box = new int[] { 0, -1, 0, -1 };
+                }
+                for (int i = 0; i < box.length; i++) {
+                    out.writeInt(box[i]);
+                }
+                // the importance range of the layer
+                out.writeShort(1);
+                out.writeShort(m_LayerID);
+                out.writeInt(0);
+                out.writeInt(m_MaxImportance);
+            }
+        }
+        
+        /**
+         * @return the total size of the multi buffers of all slots
+         */
+        long getMultiBufferSizes() {
+            long size = 0;
+            for (int detail = m_StartDetail; detail <= m_EndDetail; detail++) {
+                int[] box = m_Boxes[detail];
+                if (box == null) {
+                    continue;
+                }
+                for (int lat = box[0]; lat <= box[1]; lat++) {
+                    for (int lon = box[2]; lon <= box[3]; lon++) {
+                        size += getMultiBufferSize(getTile(m_LayerID, detail, lat, lon));
+                    }
+                }
+            }
+            return size;
+        }
+        
+        /**
+         * Writes the offset of the multi buffer of each slot. 
+         * 
+         * @param offset the offset of the first multi buffer
+         * @return the offset after the last multi buffer
+         */
+        int writeOffsetTables(DataOutputStream out, int offset) throws IOException {
+            for (int detail = m_StartDetail; detail <= m_EndDetail; detail++) {
+                int[] box = m_Boxes[detail];
+                if (box == null) {
+                    continue;
+                }
+                for (int lat = box[0]; lat <= box[1]; lat++) {
+                    for (int lon = box[2]; lon <= box[3]; lon++) {
+                        out.writeInt(offset);
+                        offset += getMultiBufferSize(getTile(m_LayerID, detail, lat, lon));
+                    }
+                }
+            }
+            return offset;
+        }
+        
+        void writeMultiBuffers(DataOutputStream out) throws IOException {
+            for (int detail = m_StartDetail; detail <= m_EndDetail; detail++) {
+                int[] box = m_Boxes[detail];
+                if (box == null) {
+                    continue;
+                }
+                for (int lat = box[0]; lat <= box[1]; lat++) {
+                    for (int lon = box[2]; lon <= box[3]; lon++) {
+                        writeMultiBuffer(out, getTile(m_LayerID, detail, lat, lon));
+                    }
+                }
+            }
+        }
+        
+        /**
+         * @param tile the tile, or null for a slot without tile
+         */
+        private int getMultiBufferSize(Tile tile) {
+            if (tile == null) {
+                // only the number of layers
+                return 1;
+            }
+            // number of layers, layer ID and existing importances
+            int size = 4;
+            for (int imp = 0; imp <= m_MaxImportance; imp++) {
+                if (tile.m_Maps[imp] != null || tile.m_StringMaps[imp] != null) {
+                    size += 8 + getLength(tile.m_Maps[imp]) + getLength(tile.m_StringMaps[imp]);
+                }
+            }
+            return size;
+        }
+        
+        /**
+         * Writes a multi buffer, see {@link SFDMultiBufferReader}. A missing 
+         * map or string map of an importance that exists is written as an 
+         * empty buffer. 
+         * 
+         * @param tile the tile, or null for a slot without tile
+         */
+        private void writeMultiBuffer(DataOutputStream out, Tile tile) throws IOException {
+            if (tile == null) {
+                out.writeByte(0);
+                return;
+            }
+            out.writeByte(1);
+            out.writeByte(m_LayerID);
+            out.writeShort(tile.getExistingImportances());
+            for (int imp = 0; imp <= m_MaxImportance; imp++) {
+                if (tile.m_Maps[imp] != null || tile.m_StringMaps[imp] != null) {
+                    writeBuffer(out, tile.m_Maps[imp]);
+                    writeBuffer(out, tile.m_StringMaps[imp]);
+                }
+            }
+        }
+    }
+    
+    private static int getLength(byte[] buffer) {
+        return buffer == null ? 0 : buffer.length;
+    }
+    
+    private static void writeBuffer(DataOutputStream out, byte[] buffer) throws IOException {
+        out.writeInt(getLength(buffer));
+        if (buffer != null) {
+            out.write(buffer);
+        }
+    }
+    
+    /**
+     * Memory cache that adds the buffers read from a cache to the builder 
+     * instead of keeping them. 
+     */
+    private final class CacheSink extends MemCache {
+        
+        private int m_NbrAdded;
+        
+        public synchronized void writeToCache(String paramString, byte[] data) {
+            if (add(paramString, data)) {
+                m_NbrAdded++;
+            }
+        }
+    }
+}
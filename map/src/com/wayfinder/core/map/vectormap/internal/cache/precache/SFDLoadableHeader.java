@@ -403,6 +403,22 @@ public class SFDLoadableHeader implements FileHandlerListener {
         return m_name;
     }
     
+    /**
+     * @return the tile collections of the file, null until the header 
+     * has been loaded
+     */
+    TileCollectionNotice[] getTileCollections() {
+        return m_tileCollection;
+    }
+    
+    /**
+     * @return the first characters of the strings in the file, null until 
+     * the header has been loaded
+     */
+    short[] getInitialCharacters() {
+        return m_initialCharacters;
+    }
+    
     public int[] getImportanceRange( TileMapParams param ){
         
         for ( int i = 0; i < m_tileCollection.length; i++ ) {
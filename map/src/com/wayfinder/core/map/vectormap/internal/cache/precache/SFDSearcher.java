@@ -64,9 +64,21 @@ public class SFDSearcher implements SFDFileIndexorListener {
     
     private SFDSearcherListener m_listener;
     
+    /// The strings of the file, null if they are searched in the file.
+    private SFDStringIndex m_index;
     
     
     public SFDSearcher(SFDLoadableHeader header, FileHandler fileHandler, SFDSearcherListener listener ){
+        this(header, fileHandler, listener, null);
+    }
+    
+    /**
+     * @param index the strings of the file, if not null the searches are 
+     * done in the index instead of reading from the file
+     */
+    SFDSearcher(SFDLoadableHeader header, FileHandler fileHandler, SFDSearcherListener listener, 
+            SFDStringIndex index ){
+        this.m_index = index;
         this.m_file = fileHandler;
         this.m_header = header;
         m_state = NOT_INITIALIZED;
@@ -201,6 +213,14 @@ public class SFDSearcher implements SFDFileIndexorListener {
         }
         // Save the search string.
         m_toSearchFor = str;
+        
+        // No reads are needed with the index.
+        if ( m_index != null ) {
+            int strNbr = m_index.indexOf( str );
+            m_state = READY;
+            m_listener.searcherDone( this, (strNbr >= 0) ? strNbr : Integer.MAX_VALUE );
+            return;
+        }
 
         // Check if the first string is read. If not we need to init.
         if ( m_state == NOT_INITIALIZED ) {
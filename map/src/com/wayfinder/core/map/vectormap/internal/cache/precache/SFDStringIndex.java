@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache.precache;
+
+import com.wayfinder.core.shared.internal.debug.LogFactory;
+import com.wayfinder.core.shared.internal.debug.Logger;
+
+/**
+ * In-memory index of the strings of a pre-installed map file and the 
+ * offsets of their buffers. 
+ * <p>
+ * Without the index each string search reads two entries from the file 
+ * for every step of the binary search, see {@link SFDSearcher}, and the 
+ * buffer reader reads the buffer offsets before it reads the buffer. With
+ * the index a search doesn't read anything and the buffer is read with a
+ * single read. 
+ * <p>
+ * The strings are sorted in the file so they are front coded in buckets of
+ * {@link #BUCKET_SIZE} strings. The first string of each bucket is stored
+ * in full and the others as the length of the prefix shared with the 
+ * string before it followed by the rest of the string. A search is a 
+ * binary search over the first strings of the buckets followed by a scan 
+ * of one bucket.
+ * <p>
+ * The index is loaded with three reads when the header has been loaded.
+ * Files where the index would use more than {@link #MAX_NBR_OF_BYTES} are
+ * searched in the file as before. 
+ */
+final class SFDStringIndex {
+    
+    private static final Logger LOG = LogFactory
+            .getLoggerForClass(SFDStringIndex.class);
+    
+    static final int BUCKET_SIZE = 16;
+    
+    /**
+     * The max size of the strings of a file that is indexed. 
+     */
+    static final int MAX_NBR_OF_BYTES = 512 * 1024;
+    
+    /* The only string index entry size that is supported, it's always used
+     * by the map server */
+    private static final int ENTRY_SIZE_BITS = 32;
+    
+    /* The front coded strings */
+    private final byte[] m_Strings;
+    
+    /* The offset in m_Strings of the first string of each bucket */
+    private final int[] m_BucketOffsets;
+    
+    /* The offsets of the buffers, the last one is the end of the last 
+     * buffer */
+    private final int[] m_BufferOffsets;
+    
+    private final int m_NbrOfStrings;
+    
+    private SFDStringIndex(int nbrOfStrings, byte[] strings, int[] bucketOffsets, int[] bufferOffsets) {
+        m_NbrOfStrings = nbrOfStrings;
+        m_Strings = strings;
+        m_BucketOffsets = bucketOffsets;
+        m_BufferOffsets = bufferOffsets;
+    }
+    
+    /**
+     * Loads the index of a pre-installed map file. 
+     * 
+     * @param header the loaded header of the file
+     * @param fileHandler the file
+     * @return the index or null if the file can't be indexed, in which case
+     * the strings should be searched in the file
+     */
+    static SFDStringIndex load(SFDLoadableHeader header, FileHandler fileHandler) {
+        final long time = System.currentTimeMillis();
+        final int nbrOfStrings = header.getNbrStrings();
+        if(nbrOfStrings <= 0 || header.getStrIdxEntrySizeBits() != ENTRY_SIZE_BITS) {
+            return null;
+        }
+        
+        /* The string and buffer indexes has an extra entry at the end so
+         * the size of the last entry can be calculated. */
+        final int indexSize = (nbrOfStrings + 1) * 4;
+        if(indexSize > MAX_NBR_OF_BYTES) {
+            return null;
+        }
+        
+        byte[] indexBytes = new byte[indexSize];
+        if(!readFully(fileHandler, indexBytes, header.getStrIdxStartOffset())) {
+            return null;
+        }
+        int[] strOffsets = toIntArray(indexBytes);
+        final int strDataSize = strOffsets[nbrOfStrings] - strOffsets[0];
+        if(strDataSize <= 0 || strDataSize > MAX_NBR_OF_BYTES) {
+            return null;
+        }
+        
+        byte[] strData = new byte[strDataSize];
+        if(!readFully(fileHandler, strData, header.getStrDataStartOffset() + strOffsets[0])) {
+            return null;
+        }
+        
+        if(!readFully(fileHandler, indexBytes, header.getBufIdxStartOffset())) {
+            return null;
+        }
+        
+        // the string offsets are made relative to the read string data
+        final int base = strOffsets[0];
+        for(int i=0; i<strOffsets.length; i++) {
+            strOffsets[i] -= base;
+        }
+        SFDStringIndex index = create(strData, strOffsets, toIntArray(indexBytes));
+        
+        if(LOG.isInfo()) {
+            LOG.info("SFDStringIndex.load()", fileHandler.getFileName()+
+                    " strings= "+nbrOfStrings+
+                    " size= "+((index != null) ? index.getNbrOfBytes() : 0)+
+                    " time= "+(System.currentTimeMillis()-time)+" ms");
+        }
+        return index;
+    }
+    
+    /**
+     * Creates the index from the strings of a file. 
+     * 
+     * @param strData the strings
+     * @param strOffsets the offsets of the strings in strData and the end of
+     * the last string, the strings can be padded with null characters
+     * @param bufferOffsets the offsets of the buffers of the strings in the 
+     * file and the end of the last buffer
+     * @return the index or null if the strings isn't sorted or too long
+     */
+    static SFDStringIndex create(byte[] strData, int[] strOffsets, int[] bufferOffsets) {
+        final int nbrOfStrings = strOffsets.length - 1;
+        final int nbrOfBuckets = (nbrOfStrings + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        int[] bucketOffsets = new int[nbrOfBuckets];
+        
+        // the front coded strings are never larger than the strings plus 
+        // the two length bytes
+        byte[] strings = new byte[strData.length + 2 * nbrOfStrings];
+        int pos = 0;
+        int prevStart = 0;
+        int prevLength = -1;
+        for(int i=0; i<nbrOfStrings; i++) {
+            // trim like SFDIndexor.getStr()
+            int start = strOffsets[i];
+            int end = strOffsets[i+1];
+            if(start < 0 || end > strData.length || start > end) {
+                return null;
+            }
+            while(start < end && (strData[start] & 0xFF) <= ' ') {
+                start++;
+            }
+            while(end > start && (strData[end-1] & 0xFF) <= ' ') {
+                end--;
+            }
+            final int length = end - start;
+            if(length > 0xFF) {
+                return null;
+            }
+            
+            int prefix = 0;
+            if(prevLength >= 0) {
+                final int max = Math.min(length, prevLength);
+                while(prefix < max && strData[start+prefix] == strData[prevStart+prefix]) {
+                    prefix++;
+                }
+                // must be sorted for the binary search
+                if(prefix == length || (prefix < prevLength && 
+                        (strData[start+prefix] & 0xFF) < (strData[prevStart+prefix] & 0xFF))) {
+                    if(LOG.isWarn()) {
+                        LOG.warn("SFDStringIndex.create()", "strings not sorted at "+i);
+                    }
+                    return null;
+                }
+            }
+            
+            if(i % BUCKET_SIZE == 0) {
+                bucketOffsets[i / BUCKET_SIZE] = pos;
+                strings[pos++] = (byte)length;
+                System.arraycopy(strData, start, strings, pos, length);
+                pos += length;
+            } else {
+                strings[pos++] = (byte)prefix;
+                strings[pos++] = (byte)(length - prefix);
+                System.arraycopy(strData, start + prefix, strings, pos, length - prefix);
+                pos += length - prefix;
+            }
+            prevStart = start;
+            prevLength = length;
+        }
+        
+        byte[] compact = new byte[pos];
+        System.arraycopy(strings, 0, compact, 0, pos);
+        return new SFDStringIndex(nbrOfStrings, compact, bucketOffsets, bufferOffsets);
+    }
+    
+    /**
+     * Searches for a string. 
+     * 
+     * @param str the string to search for
+     * @return the number of the string or -1 if the string isn't in the file 
+     */
+    int indexOf(String str) {
+        // find the last bucket where the first string isn't after str
+        int low = 0;
+        int high = m_BucketOffsets.length - 1;
+        while(low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int offset = m_BucketOffsets[mid];
+            final int cmp = compare(str, m_Strings, offset + 1, m_Strings[offset] & 0xFF);
+            if(cmp == 0) {
+                return mid * BUCKET_SIZE;
+            } else if(cmp < 0) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        final int bucket = high;
+        if(bucket < 0) {
+            return -1;
+        }
+        
+        // scan the bucket, the buffer is allocated for each search since
+        // the index is shared by the searcher and the buffer reader
+        byte[] current = new byte[0xFF];
+        int pos = m_BucketOffsets[bucket];
+        int length = m_Strings[pos++] & 0xFF;
+        System.arraycopy(m_Strings, pos, current, 0, length);
+        pos += length;
+        
+        final int end = Math.min(m_NbrOfStrings, (bucket + 1) * BUCKET_SIZE);
+        for(int i = bucket * BUCKET_SIZE + 1; i < end; i++) {
+            final int prefix = m_Strings[pos++] & 0xFF;
+            final int suffix = m_Strings[pos++] & 0xFF;
+            System.arraycopy(m_Strings, pos, current, prefix, suffix);
+            pos += suffix;
+            length = prefix + suffix;
+            
+            final int cmp = compare(str, current, 0, length);
+            if(cmp == 0) {
+                return i;
+            } else if(cmp < 0) {
+                // passed where it would have been
+                return -1;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @param strNbr the number of a string
+     * @return the offset in the file of the buffer of the string
+     */
+    int getBufferOffset(int strNbr) {
+        return m_BufferOffsets[strNbr];
+    }
+    
+    /**
+     * @param strNbr the number of a string
+     * @return the size of the buffer of the string
+     */
+    int getBufferLength(int strNbr) {
+        return m_BufferOffsets[strNbr + 1] - m_BufferOffsets[strNbr];
+    }
+    
+    /**
+     * @return the number of strings in the index
+     */
+    int getNbrOfStrings() {
+        return m_NbrOfStrings;
+    }
+    
+    /**
+     * @return the approximate number of bytes used by the index
+     */
+    int getNbrOfBytes() {
+        return m_Strings.length + 4 * (m_BucketOffsets.length + m_BufferOffsets.length);
+    }
+    
+    /**
+     * Compares a string with a string of ISO 8859-1 characters. 
+     * 
+     * @return less than 0 if str is before the bytes, 0 if they are equal 
+     * and greater than 0 if str is after the bytes 
+     */
+    private static int compare(String str, byte[] bytes, int offset, int length) {
+        final int max = Math.min(str.length(), length);
+        for(int i=0; i<max; i++) {
+            final int diff = str.charAt(i) - (bytes[offset+i] & 0xFF);
+            if(diff != 0) {
+                return diff;
+            }
+        }
+        return str.length() - length;
+    }
+    
+    private static int[] toIntArray(byte[] bytes) {
+        int[] ints = new int[bytes.length / 4];
+        for(int i=0, j=0; i<ints.length; i++, j+=4) {
+            ints[i] = ((bytes[j] & 0xFF) << 24) | ((bytes[j+1] & 0xFF) << 16) | 
+                      ((bytes[j+2] & 0xFF) << 8) | (bytes[j+3] & 0xFF);
+        }
+        return ints;
+    }
+    
+    /**
+     * Reads into the whole array, the file handler may read less than asked
+     * for from a stream. 
+     */
+    private static boolean readFully(FileHandler fileHandler, byte[] bytes, int offset) {
+        FileHandlerListener listener = new FileHandlerListener() {
+            public void readDone(int nbrRead) {
+            }
+            public void writeDone(int nbrWritten) {
+            }
+        };
+        int pos = 0;
+        while(pos < bytes.length) {
+            byte[] rest = (pos == 0) ? bytes : new byte[bytes.length - pos];
+            int n = fileHandler.read(rest, rest.length, listener, offset + pos);
+            if(n <= 0) {
+                return false;
+            }
+            if(rest != bytes) {
+                System.arraycopy(rest, 0, bytes, pos, n);
+            }
+            pos += n;
+        }
+        return true;
+    }
+}
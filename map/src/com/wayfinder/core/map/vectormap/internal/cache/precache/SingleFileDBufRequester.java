@@ -51,6 +51,7 @@ public class SingleFileDBufRequester extends CacheInfo implements SFDSearcherLis
     
     private SFDSearcher m_searcher;
     private SFDBufReader m_bufReader;
+    private SFDStringIndex m_stringIndex;
     
     private boolean m_ReadDone;
     private int m_state;
@@ -323,9 +324,11 @@ public class SingleFileDBufRequester extends CacheInfo implements SFDSearcherLis
             m_fileHandler = fileHandler;
             m_state = IDLE;
             
-            // Initialize the Searcher and buffer readers.
-            m_searcher  = new SFDSearcher( m_header, m_fileHandler, this );
-            m_bufReader = new SFDBufReader( m_header, m_fileHandler,this );
+            // Initialize the Searcher and buffer readers. The strings are
+            // searched in the file if the index can't be loaded.
+            m_stringIndex = SFDStringIndex.load( m_header, m_fileHandler );
+            m_searcher  = new SFDSearcher( m_header, m_fileHandler, this, m_stringIndex );
+            m_bufReader = new SFDBufReader( m_header, m_fileHandler, this, m_stringIndex );
 //            if(Utils.PRECACHE_TRACE)
 //                System.out.println("Created Searcher & Reader");
         }
@@ -560,6 +563,22 @@ public class SingleFileDBufRequester extends CacheInfo implements SFDSearcherLis
         }
     }
     
+    /**
+     * @return the header of the file, only loaded if the state is not 
+     * {@link #NOT_INITIALIZED} or {@link #READING_HEADER}
+     */
+    SFDLoadableHeader getHeader() {
+        return m_header;
+    }
+    
+    /**
+     * @return the index of the strings in the file, or null if the strings 
+     * are searched in the file
+     */
+    SFDStringIndex getStringIndex() {
+        return m_stringIndex;
+    }
+    
     public String getNameUTF8(){
         if ( ( m_state == NOT_INITIALIZED ) || ( m_state == READING_HEADER ) ) {
             return "Cache not yet loaded";
@@ -100,6 +100,29 @@ public class TileCollectionNotice {
         return null;
     }
     
+    /**
+     * @return the number of layers in the collection
+     */
+    int getNbrOfLayers() {
+        return m_indexByLayerID.length;
+    }
+    
+    /**
+     * @param i the index of the layer, less than {@link #getNbrOfLayers()}
+     * @return the layer ID
+     */
+    int getLayerID(int i) {
+        return m_indexByLayerID[i][1];
+    }
+    
+    /**
+     * @param i the index of the layer, less than {@link #getNbrOfLayers()}
+     * @return the tiles of the layer
+     */
+    TilesForAllDetailsNotice getTilesForLayer(int i) {
+        return m_tilesForAllDetails[m_indexByLayerID[i][0]];
+    }
+    
     public int getOffset(TileMapParams params){
         TilesNotice notice = getNotice( params );
         if ( notice == null ) {
@@ -75,6 +75,21 @@ public class TilesForAllDetailsNotice {
         return notice;
     }
     
+    /**
+     * @return the first detail level of the tiles
+     */
+    int getStartDetail() {
+        return m_startDetail;
+    }
+    
+    /**
+     * @return the number of detail levels, starting at 
+     * {@link #getStartDetail()}
+     */
+    int getNbrOfDetails() {
+        return m_tilesNotice.size();
+    }
+    
     public TilesNotice getTilesForDetail( int detail ){
         int offset = detail - m_startDetail;        
         if ( offset >= 0 && offset < (int) m_tilesNotice.size() ) {
@@ -69,21 +69,21 @@ public class ConcavePolygon {
      * @return true if clockwise
      */
     public boolean isClockwise(){
-        float crossSum = 0;
-        int[]startLine = {vbuff[this.startIndex + 2] - vbuff[this.startIndex + 0] , vbuff[this.startIndex + 3] - vbuff[this.startIndex + 1]};
-        float[] normStartLine = Utils.normalize(startLine);
-        float[] normLine1 = normStartLine;
-        float[] normLine2;
-        
-        for(int i=0;i<this.length-2;i+=2){
-            int[]line2 = {vbuff[this.startIndex + ((i+4)%this.length)] - vbuff[this.startIndex + ((i+2)%this.length)] , vbuff[this.startIndex + ((i+5)%this.length)] - vbuff[this.startIndex + ((i+3)%this.length)]};
-            normLine2 = Utils.normalize(line2);
-            float add = cross2D(normLine1,normLine2);
-            crossSum += add;
-            normLine1 = normLine2;
+        // the sign of the area, computed without any allocations
+        final int[] vbuff = this.vbuff;
+        final int start = this.startIndex;
+        final int end = start + this.length;
+        long area = 0;
+        int prevX = vbuff[end-2];
+        int prevY = vbuff[end-1];
+        for(int i=start; i<end; i+=2) {
+            final int x = vbuff[i];
+            final int y = vbuff[i+1];
+            area += (long)prevX * y - (long)x * prevY;
+            prevX = x;
+            prevY = y;
         }
-        crossSum += cross2D(normLine1,normStartLine);
-        return crossSum <= 0;
+        return area <= 0;
     }
     
     /**
@@ -251,6 +251,24 @@ public class ConcavePolygon {
         return true;
     }
     
+    /**
+     * Triangulates this polygon with the {@link MonotoneTriangulator} and
+     * falls back to ear clipping, see {@link #triangulate()}, if the 
+     * polygon isn't simple. 
+     * 
+     * @param triangulator the triangulator to use
+     * @return true if triangulation was successful
+     */
+    boolean triangulate(MonotoneTriangulator triangulator) {
+        if(triangulator.triangulate(vbuff, startIndex, length, ibuff)) {
+            return true;
+        }
+        for(int i=0; i<ibuff.length; i++) {
+            ibuff[i][0] = ibuff[i][1] = ibuff[i][2] = 0;
+        }
+        return triangulate();
+    }
+    
     /**
      * Returns the indexbuffer for this polygon
      *
@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+
+package com.wayfinder.core.map.vectormap.internal.control;
+
+import com.wayfinder.core.map.vectormap.internal.drawer.Utils;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeature;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStore;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
+
+/**
+ * Simplifies the lines of a tile with the Douglas-Peucker algorithm, once 
+ * for each scale index of the {@link TileMapFormatDesc}. 
+ * <p>
+ * The tolerance of a scale index is half a pixel at the lowest zoom level
+ * of the scale index, so the simplified line can't be told apart from the
+ * full line when drawn. The algorithm is only run once per line, each 
+ * vertex gets the largest tolerance it is kept at and the vertices of a 
+ * scale index are those with a higher value. This gives the same result 
+ * as running Douglas-Peucker once per tolerance and the subsets of the 
+ * higher scale indices are always part of the lower ones. 
+ * <p>
+ * Polygons are not simplified since the triangles of a 
+ * {@link ConcavePolygon} refers to all vertices of the polygon. 
+ * <p>
+ * The temporary arrays are reused between the lines, so an instance should
+ * be reused for all lines of a tile but it must not be shared between 
+ * threads. 
+ */
+final class LineSimplifier {
+    
+    // the max distance in pixels between a simplified and the full line  
+    private static final float TOLERANCE_PIXELS = 0.5f;
+    
+    // the squared distance in MC2 units at which each vertex is removed
+    private double[] m_Significance = new double[0];
+    // the ranges of vertices left to split, stored as pairs 
+    private int[] m_Stack = new int[0];
+    
+    // the simplified coordinates of the tile
+    private int[] m_Coords = new int[0];
+    private int m_CoordsSize;
+    
+    /**
+     * Simplifies all lines of the tile and sets the simplified coordinates 
+     * in the store, see 
+     * {@link TileFeatureStore#setScaleCoords(int, int[], int[], int[])}. 
+     * Nothing is set if no line could be simplified. 
+     * <p>
+     * Must be called after the coordinates have been scaled to MC2.
+     * 
+     * @param features the features of the tile
+     * @param tmfd the TileMapFormatDesc with the scale indices
+     * @return the number of coordinate values removed at the highest
+     * scale index 
+     */
+    int simplifyLines(TileFeatureStore features, TileMapFormatDesc tmfd) {
+        final int nbrScales = tmfd.getNbrOfScaleIndices();
+        final double[] tolerances = new double[nbrScales];
+        boolean hasTolerance = false;
+        for (int s = 0; s < nbrScales; s++) {
+            double tolerance = tmfd.getMinZoomLevelForScaleIndex(s) 
+                    * Utils.METER_TO_MC2SCALE * TOLERANCE_PIXELS;
+            tolerances[s] = tolerance * tolerance;
+            hasTolerance |= (tolerance > 0);
+        }
+        if (!hasTolerance) {
+            return 0;
+        }
+        
+        final int[] coords = features.getCoords();
+        final int nbrFeatures = features.getNbrFeatures();
+        int[] offsets = null;
+        int[] lengths = null;
+        int nbrRemoved = 0;
+        m_CoordsSize = 0;
+        
+        for (int i = 0; i < nbrFeatures; i++) {
+            final int length = features.getCoordsLength(i);
+            if (features.getPrimitiveType(i) != TileFeature.LINE || length < 6) {
+                continue;
+            }
+            final int offset = features.getCoordsOffset(i);
+            final int nbrVertices = length >> 1;
+            computeSignificance(coords, offset, nbrVertices);
+            final double[] significance = m_Significance;
+            
+            int prevLength = length;
+            int prevOffset = -1;
+            for (int s = 0; s < nbrScales; s++) {
+                final double tolerance = tolerances[s];
+                if (tolerance == 0) {
+                    // the full line is drawn
+                    continue;
+                }
+                int count = 0;
+                for (int v = 0; v < nbrVertices; v++) {
+                    if (significance[v] > tolerance) {
+                        count++;
+                    }
+                }
+                final int simplifiedLength = count << 1;
+                if (simplifiedLength != prevLength) {
+                    // fewer vertices than the previous scale index 
+                    if (offsets == null) {
+                        offsets = new int[nbrFeatures * nbrScales];
+                        lengths = new int[offsets.length];
+                        for (int j = 0; j < offsets.length; j++) {
+                            offsets[j] = -1;
+                        }
+                    }
+                    ensureCapacity(m_CoordsSize + simplifiedLength);
+                    prevOffset = m_CoordsSize;
+                    prevLength = simplifiedLength;
+                    for (int v = 0; v < nbrVertices; v++) {
+                        if (significance[v] > tolerance) {
+                            m_Coords[m_CoordsSize++] = coords[offset + (v << 1)];
+                            m_Coords[m_CoordsSize++] = coords[offset + (v << 1) + 1];
+                        }
+                    }
+                }
+                if (prevOffset >= 0) {
+                    final int pos = i * nbrScales + s;
+                    offsets[pos] = prevOffset;
+                    lengths[pos] = prevLength;
+                }
+            }
+            nbrRemoved += length - prevLength;
+        }
+        
+        if (offsets != null) {
+            int[] scaleCoords = new int[m_CoordsSize];
+            System.arraycopy(m_Coords, 0, scaleCoords, 0, m_CoordsSize);
+            features.setScaleCoords(nbrScales, scaleCoords, offsets, lengths);
+        }
+        return nbrRemoved;
+    }
+    
+    /**
+     * Runs Douglas-Peucker on the line and sets the squared tolerance at 
+     * which each vertex is removed. The end points are never removed.  
+     * 
+     * @param coords the coordinates (x1,y1,x2,y2,...,xn,yn)
+     * @param offset the index of the first coordinate of the line
+     * @param nbrVertices the number of vertices of the line
+     */
+    private void computeSignificance(int[] coords, int offset, int nbrVertices) {
+        if (m_Significance.length < nbrVertices) {
+            m_Significance = new double[nbrVertices];
+            m_Stack = new int[nbrVertices << 1];
+        }
+        final double[] significance = m_Significance;
+        final int[] stack = m_Stack;
+        
+        significance[0] = Double.MAX_VALUE;
+        significance[nbrVertices - 1] = Double.MAX_VALUE;
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = nbrVertices - 1;
+        
+        while (stackSize > 0) {
+            final int last = stack[--stackSize];
+            final int first = stack[--stackSize];
+            if (last - first < 2) {
+                continue;
+            }
+            
+            final double x1 = coords[offset + (first << 1)];
+            final double y1 = coords[offset + (first << 1) + 1];
+            final double x2 = coords[offset + (last << 1)];
+            final double y2 = coords[offset + (last << 1) + 1];
+            final double dx = x2 - x1;
+            final double dy = y2 - y1;
+            final double segmentLength = dx * dx + dy * dy;
+            
+            int farthest = first + 1;
+            double maxDistance = -1;
+            for (int v = first + 1; v < last; v++) {
+                final double px = coords[offset + (v << 1)] - x1;
+                final double py = coords[offset + (v << 1) + 1] - y1;
+                final double t = (segmentLength == 0) ? 0 : (px * dx + py * dy);
+                double distance;
+                if (t <= 0) {
+                    distance = px * px + py * py;
+                } else if (t >= segmentLength) {
+                    final double qx = px - dx;
+                    final double qy = py - dy;
+                    distance = qx * qx + qy * qy;
+                } else {
+                    final double cross = px * dy - py * dx;
+                    distance = cross * cross / segmentLength;
+                }
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = v;
+                }
+            }
+            
+            // a vertex can't be kept when the vertex it was split from is 
+            // removed, and the vertex with the lowest value of the range 
+            // is the one it was split from 
+            significance[farthest] = Math.min(maxDistance, 
+                    Math.min(significance[first], significance[last]));
+            
+            stack[stackSize++] = first;
+            stack[stackSize++] = farthest;
+            stack[stackSize++] = farthest;
+            stack[stackSize++] = last;
+        }
+    }
+    
+    private void ensureCapacity(int size) {
+        if (m_Coords.length < size) {
+            int[] coords = new int[Math.max(size, m_Coords.length << 1)];
+            System.arraycopy(m_Coords, 0, coords, 0, m_CoordsSize);
+            m_Coords = coords;
+        }
+    }
+}
@@ -0,0 +1,654 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+
+package com.wayfinder.core.map.vectormap.internal.control;
+
+/**
+ * Triangulates simple polygons by first splitting them into y-monotone 
+ * pieces with a sweep line and then triangulating each piece in linear 
+ * time, see de Berg et al. "Computational Geometry", chapter 3. 
+ * <p>
+ * The polygon is read directly from the vertex buffer of a 
+ * {@link ConcavePolygon} and the triangles are written to its index
+ * buffer. All temporary data is kept in int arrays that are reused
+ * between the polygons, so an instance should be reused for all polygons 
+ * of a tile but it must not be shared between threads. 
+ * <p>
+ * The triangles has the same winding as the polygon. Polygons that aren't 
+ * simple, e.g. self intersecting polygons or polygons that touches 
+ * themselves, can't be triangulated and 
+ * {@link #triangulate(int[], int, int, short[][])} will return false. 
+ */
+final class MonotoneTriangulator {
+    
+    private static final byte START     = 0;
+    private static final byte END       = 1;
+    private static final byte SPLIT     = 2;
+    private static final byte MERGE     = 3;
+    private static final byte REGULAR   = 4;
+    
+    // the polygon in counter clockwise order without duplicated vertices
+    private int m_N;
+    private int[] m_X = new int[0];
+    private int[] m_Y = new int[0];
+    // the vertex number in the vertex buffer for each vertex 
+    private int[] m_VertexNbr = new int[0];
+    // true if the vertex buffer is in clockwise order
+    private boolean m_IsClockwise;
+    private byte[] m_Type = new byte[0];
+    // the vertices sorted from the top to the bottom
+    private int[] m_Order = new int[0];
+    
+    // the sweep line status, edge i goes from vertex i to i+1. The edges
+    // are sorted from left to right 
+    private int[] m_Status = new int[0];
+    private int m_StatusSize;
+    private int[] m_Helper = new int[0];
+    
+    // the diagonals that splits the polygon into monotone pieces, 
+    // stored as pairs of vertices 
+    private int[] m_Diagonals = new int[0];
+    private int m_NbrDiagonals;
+    
+    // the half edges of the polygon and the diagonals 
+    private int[] m_HalfEdgeOrigin = new int[0];
+    private int[] m_HalfEdgeDest = new int[0];
+    private int[] m_NextOutgoing = new int[0];
+    private int[] m_FirstOutgoing = new int[0];
+    private boolean[] m_Visited = new boolean[0];
+    
+    // a monotone piece and the stack used when triangulating it 
+    private int[] m_Piece = new int[0];
+    private int[] m_Sorted = new int[0];
+    private boolean[] m_IsLeftChain = new boolean[0];
+    private int[] m_Stack = new int[0];
+    
+    private short[][] m_Triangles;
+    private int m_NbrTriangles;
+    // twice the area of the polygon and the sum of the triangles
+    private long m_DoubleArea;
+    private long m_DoubleTriangleArea;
+    
+    /**
+     * Triangulates a polygon. 
+     * 
+     * @param vbuff the vertex buffer (x1,y1,x2,y2,...,xn,yn)
+     * @param startIndex the index of the first coordinate in vbuff
+     * @param length the number of coordinate values of the polygon
+     * @param ibuff the index buffer with room for (length/2)-2 triangles, 
+     * the triangles are set as indices of the vertices from startIndex. 
+     * Triangles that aren't needed, e.g. due to duplicated vertices, are 
+     * left as they are.
+     * @return true if the polygon could be triangulated, false if the 
+     * polygon isn't simple. The content of ibuff is undefined if false is
+     * returned. 
+     */
+    boolean triangulate(int[] vbuff, int startIndex, int length, short[][] ibuff) {
+        m_Triangles = ibuff;
+        m_NbrTriangles = 0;
+        m_DoubleTriangleArea = 0;
+        try {
+            if(!initPolygon(vbuff, startIndex, length)) {
+                return false;
+            }
+            if(m_N < 3) {
+                return true;
+            }
+            // polygons that touches themselves may give overlapping triangles
+            return findDiagonals() 
+                && triangulatePieces() 
+                && m_NbrTriangles == m_N-2 
+                && m_DoubleTriangleArea == m_DoubleArea;
+        } catch(ArrayIndexOutOfBoundsException e) {
+            // inconsistent sweep, the polygon isn't simple
+            return false;
+        } finally {
+            m_Triangles = null;
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Setup
+    
+    /**
+     * Copies the polygon to the internal buffers in counter clockwise order
+     * and classifies the vertices. 
+     * 
+     * @return false if the polygon has no area 
+     */
+    private boolean initPolygon(int[] vbuff, int startIndex, int length) {
+        final int size = length >> 1;
+        ensureVertexCapacity(size);
+        
+        // copy the vertices and skip duplicates
+        int n = 0;
+        for(int i=0; i<size; i++) {
+            final int x = vbuff[startIndex + (i<<1)];
+            final int y = vbuff[startIndex + (i<<1) + 1];
+            if(n > 0 && m_X[n-1] == x && m_Y[n-1] == y) {
+                continue;
+            }
+            m_X[n] = x;
+            m_Y[n] = y;
+            m_VertexNbr[n] = i;
+            n++;
+        }
+        while(n > 1 && m_X[n-1] == m_X[0] && m_Y[n-1] == m_Y[0]) {
+            n--;
+        }
+        m_N = n;
+        if(n < 3) {
+            return true;
+        }
+        
+        long area = 0;
+        for(int i=0, j=n-1; i<n; j=i++) {
+            area += (long)m_X[j] * m_Y[i] - (long)m_X[i] * m_Y[j];
+        }
+        if(area == 0) {
+            return false;
+        }
+        m_IsClockwise = area < 0;
+        m_DoubleArea = m_IsClockwise ? -area : area;
+        if(m_IsClockwise) {
+            reverse(m_X, n);
+            reverse(m_Y, n);
+            reverse(m_VertexNbr, n);
+        }
+        
+        for(int i=0; i<n; i++) {
+            final int prev = (i == 0) ? n-1 : i-1;
+            final int next = (i == n-1) ? 0 : i+1;
+            final boolean prevBelow = isAbove(i, prev);
+            final boolean nextBelow = isAbove(i, next);
+            final boolean convex = cross(prev, i, next) > 0;
+            if(prevBelow && nextBelow) {
+                m_Type[i] = convex ? START : SPLIT;
+            } else if(!prevBelow && !nextBelow) {
+                m_Type[i] = convex ? END : MERGE;
+            } else {
+                m_Type[i] = REGULAR;
+            }
+            m_Order[i] = i;
+        }
+        sortOrder(n);
+        return true;
+    }
+    
+    private void ensureVertexCapacity(int size) {
+        if(m_X.length < size) {
+            m_X = new int[size];
+            m_Y = new int[size];
+            m_VertexNbr = new int[size];
+            m_Type = new byte[size];
+            m_Order = new int[size];
+            m_Status = new int[size];
+            m_Helper = new int[size];
+            m_Diagonals = new int[size<<1];
+            m_FirstOutgoing = new int[size];
+            m_Piece = new int[size];
+            m_Sorted = new int[size];
+            m_IsLeftChain = new boolean[size];
+            m_Stack = new int[size];
+            final int nbrHalfEdges = size * 3;
+            m_HalfEdgeOrigin = new int[nbrHalfEdges];
+            m_HalfEdgeDest = new int[nbrHalfEdges];
+            m_NextOutgoing = new int[nbrHalfEdges];
+            m_Visited = new boolean[nbrHalfEdges];
+        }
+    }
+    
+    private static void reverse(int[] a, int n) {
+        for(int i=0, j=n-1; i<j; i++, j--) {
+            final int tmp = a[i];
+            a[i] = a[j];
+            a[j] = tmp;
+        }
+    }
+    
+    /**
+     * @return true if vertex a is above vertex b, vertices on the same 
+     * y coordinate are ordered from left to right 
+     */
+    private boolean isAbove(int a, int b) {
+        return m_Y[a] > m_Y[b] || (m_Y[a] == m_Y[b] && m_X[a] < m_X[b]);
+    }
+    
+    /**
+     * @return the cross product of (b-a) and (c-b), positive if the path
+     * a, b, c turns left 
+     */
+    private long cross(int a, int b, int c) {
+        return (long)(m_X[b] - m_X[a]) * (m_Y[c] - m_Y[b]) 
+             - (long)(m_Y[b] - m_Y[a]) * (m_X[c] - m_X[b]);
+    }
+    
+    /**
+     * Heap sorts m_Order from the top vertex to the bottom vertex. 
+     */
+    private void sortOrder(int n) {
+        final int[] order = m_Order;
+        for(int i=(n>>1)-1; i>=0; i--) {
+            siftDown(order, i, n);
+        }
+        for(int end=n-1; end>0; end--) {
+            final int tmp = order[0];
+            order[0] = order[end];
+            order[end] = tmp;
+            siftDown(order, 0, end);
+        }
+    }
+    
+    private void siftDown(int[] order, int root, int n) {
+        while(true) {
+            int child = (root<<1)+1;
+            if(child >= n) {
+                return;
+            }
+            // the heap keeps the lowest vertex on top
+            if(child+1 < n && isAbove(order[child], order[child+1])) {
+                child++;
+            }
+            if(!isAbove(order[root], order[child])) {
+                return;
+            }
+            final int tmp = order[root];
+            order[root] = order[child];
+            order[child] = tmp;
+            root = child;
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Split into monotone pieces
+    
+    /**
+     * Sweeps the polygon from the top to the bottom and adds the diagonals
+     * that removes all split and merge vertices. 
+     * 
+     * @return false if the sweep became inconsistent 
+     */
+    private boolean findDiagonals() {
+        final int n = m_N;
+        m_StatusSize = 0;
+        m_NbrDiagonals = 0;
+        
+        for(int i=0; i<n; i++) {
+            final int v = m_Order[i];
+            final int prevEdge = (v == 0) ? n-1 : v-1;
+            int left;
+            
+            switch(m_Type[v]) {
+                case START:
+                    insertEdge(v, v);
+                    break;
+                    
+                case END:
+                    if(!removeEdge(prevEdge, v)) {
+                        return false;
+                    }
+                    break;
+                    
+                case SPLIT:
+                    left = findEdgeLeftOf(v);
+                    if(left < 0) {
+                        return false;
+                    }
+                    addDiagonal(v, m_Helper[m_Status[left]]);
+                    m_Helper[m_Status[left]] = v;
+                    insertEdge(v, v);
+                    break;
+                    
+                case MERGE:
+                    if(!removeEdge(prevEdge, v)) {
+                        return false;
+                    }
+                    left = findEdgeLeftOf(v);
+                    if(left < 0) {
+                        return false;
+                    }
+                    setHelper(m_Status[left], v);
+                    break;
+                    
+                default:
+                    // the interior is to the right if the polygon goes down
+                    if(isAbove(prevEdge, v)) {
+                        if(!removeEdge(prevEdge, v)) {
+                            return false;
+                        }
+                        insertEdge(v, v);
+                    } else {
+                        left = findEdgeLeftOf(v);
+                        if(left < 0) {
+                            return false;
+                        }
+                        setHelper(m_Status[left], v);
+                    }
+                    break;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Adds a diagonal to v if the current helper of the edge is a merge 
+     * vertex and sets v as the new helper.  
+     */
+    private void setHelper(int edge, int v) {
+        final int helper = m_Helper[edge];
+        if(m_Type[helper] == MERGE) {
+            addDiagonal(v, helper);
+        }
+        m_Helper[edge] = v;
+    }
+    
+    private void addDiagonal(int a, int b) {
+        final int pos = m_NbrDiagonals << 1;
+        m_Diagonals[pos] = a;
+        m_Diagonals[pos+1] = b;
+        m_NbrDiagonals++;
+    }
+    
+    /**
+     * @return true if vertex v is strictly to the right of the edge
+     */
+    private boolean isRightOf(int v, int edge) {
+        int upper = edge;
+        int lower = (edge == m_N-1) ? 0 : edge+1;
+        if(isAbove(lower, upper)) {
+            upper = lower;
+            lower = edge;
+        }
+        return (long)(m_X[lower] - m_X[upper]) * (m_Y[v] - m_Y[upper]) 
+             - (long)(m_Y[lower] - m_Y[upper]) * (m_X[v] - m_X[upper]) > 0;
+    }
+    
+    /**
+     * @return the position in the status of the closest edge to the left
+     * of vertex v or -1 if there is no edge to the left
+     */
+    private int findEdgeLeftOf(int v) {
+        int low = 0;
+        int high = m_StatusSize-1;
+        while(low <= high) {
+            final int mid = (low + high) >>> 1;
+            if(isRightOf(v, m_Status[mid])) {
+                low = mid+1;
+            } else {
+                high = mid-1;
+            }
+        }
+        return high;
+    }
+    
+    private void insertEdge(int edge, int helper) {
+        final int pos = findEdgeLeftOf(edge)+1;
+        System.arraycopy(m_Status, pos, m_Status, pos+1, m_StatusSize-pos);
+        m_Status[pos] = edge;
+        m_StatusSize++;
+        m_Helper[edge] = helper;
+    }
+    
+    /**
+     * Removes the edge that ends in vertex v from the status and adds a
+     * diagonal if the helper of the edge is a merge vertex. 
+     * 
+     * @return false if the edge wasn't found 
+     */
+    private boolean removeEdge(int edge, int v) {
+        int pos = findEdgeLeftOf(v)+1;
+        if(pos >= m_StatusSize || m_Status[pos] != edge) {
+            // collinear edges, search for it 
+            for(pos=0; pos<m_StatusSize && m_Status[pos] != edge; pos++);
+            if(pos == m_StatusSize) {
+                return false;
+            }
+        }
+        final int helper = m_Helper[edge];
+        if(m_Type[helper] == MERGE) {
+            addDiagonal(v, helper);
+        }
+        m_StatusSize--;
+        System.arraycopy(m_Status, pos+1, m_Status, pos, m_StatusSize-pos);
+        return true;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Triangulate the monotone pieces
+    
+    /**
+     * Walks the faces created by the polygon edges and the diagonals and 
+     * triangulates each face. 
+     * 
+     * @return false if a face couldn't be triangulated
+     */
+    private boolean triangulatePieces() {
+        final int n = m_N;
+        final int nbrHalfEdges = n + (m_NbrDiagonals<<1);
+        if(m_HalfEdgeOrigin.length < nbrHalfEdges) {
+            // a simple polygon never needs more than n-3 diagonals
+            return false;
+        }
+        
+        for(int i=0; i<n; i++) {
+            m_FirstOutgoing[i] = -1;
+        }
+        for(int h=0; h<nbrHalfEdges; h++) {
+            if(h < n) {
+                m_HalfEdgeOrigin[h] = h;
+                m_HalfEdgeDest[h] = (h == n-1) ? 0 : h+1;
+            } else {
+                final int d = (h-n) & ~1;
+                final boolean forward = ((h-n) & 1) == 0;
+                m_HalfEdgeOrigin[h] = m_Diagonals[forward ? d : d+1];
+                m_HalfEdgeDest[h] = m_Diagonals[forward ? d+1 : d];
+            }
+            m_NextOutgoing[h] = m_FirstOutgoing[m_HalfEdgeOrigin[h]];
+            m_FirstOutgoing[m_HalfEdgeOrigin[h]] = h;
+            m_Visited[h] = false;
+        }
+        
+        for(int h=0; h<nbrHalfEdges; h++) {
+            if(m_Visited[h]) {
+                continue;
+            }
+            int size = 0;
+            int e = h;
+            do {
+                if(size == n || m_Visited[e]) {
+                    return false;
+                }
+                m_Visited[e] = true;
+                m_Piece[size++] = m_HalfEdgeOrigin[e];
+                e = nextInFace(e);
+            } while(e != h);
+            
+            if(!triangulateMonotone(size)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return the half edge that follows half edge e in the face to the 
+     * left of it, i.e. the first outgoing half edge clockwise from e 
+     * reversed 
+     */
+    private int nextInFace(int e) {
+        final int v = m_HalfEdgeDest[e];
+        final long refX = m_X[m_HalfEdgeOrigin[e]] - m_X[v];
+        final long refY = m_Y[m_HalfEdgeOrigin[e]] - m_Y[v];
+        
+        int best = -1;
+        long bestX = 0;
+        long bestY = 0;
+        int bestHalf = 0;
+        for(int g = m_FirstOutgoing[v]; g >= 0; g = m_NextOutgoing[g]) {
+            final long x = m_X[m_HalfEdgeDest[g]] - m_X[v];
+            final long y = m_Y[m_HalfEdgeDest[g]] - m_Y[v];
+            final int half = getClockwiseHalf(refX, refY, x, y);
+            if(best < 0 || half < bestHalf 
+                    || (half == bestHalf && bestX * y - bestY * x > 0)) {
+                best = g;
+                bestX = x;
+                bestY = y;
+                bestHalf = half;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * @return 0 if the vector is less than half a turn clockwise from the
+     * reference vector, 1 if it is half a turn or more and 2 if it has the 
+     * same direction as the reference vector
+     */
+    private static int getClockwiseHalf(long refX, long refY, long x, long y) {
+        final long cross = refX * y - refY * x;
+        if(cross < 0) {
+            return 0;
+        } else if(cross > 0 || refX * x + refY * y < 0) {
+            return 1;
+        }
+        return 2;
+    }
+    
+    /**
+     * Triangulates the y-monotone piece in m_Piece. 
+     * 
+     * @param size the number of vertices of the piece 
+     * @return false if the piece wasn't monotone
+     */
+    private boolean triangulateMonotone(int size) {
+        final int[] piece = m_Piece;
+        if(size < 3) {
+            return false;
+        }
+        if(size == 3) {
+            addTriangle(piece[0], piece[1], piece[2]);
+            return true;
+        }
+        
+        int top = 0;
+        int bottom = 0;
+        for(int i=1; i<size; i++) {
+            if(isAbove(piece[i], piece[top])) {
+                top = i;
+            }
+            if(isAbove(piece[bottom], piece[i])) {
+                bottom = i;
+            }
+        }
+        
+        // merge the two chains, counter clockwise from the top is the
+        // left chain 
+        final int[] sorted = m_Sorted;
+        final boolean[] isLeft = m_IsLeftChain;
+        int left = top;
+        int right = top;
+        sorted[0] = piece[top];
+        isLeft[0] = true;
+        for(int i=1; i<size; i++) {
+            final int nextLeft = (left == size-1) ? 0 : left+1;
+            final int nextRight = (right == 0) ? size-1 : right-1;
+            if(left != bottom && (right == bottom || isAbove(piece[nextLeft], piece[nextRight]))) {
+                left = nextLeft;
+                sorted[i] = piece[left];
+                isLeft[i] = true;
+            } else {
+                right = nextRight;
+                sorted[i] = piece[right];
+                isLeft[i] = false;
+            }
+            if(!isAbove(sorted[i-1], sorted[i])) {
+                // not monotone
+                return false;
+            }
+        }
+        
+        final int[] stack = m_Stack;
+        stack[0] = 0;
+        stack[1] = 1;
+        int stackSize = 2;
+        for(int i=2; i<size-1; i++) {
+            final int top2 = stack[stackSize-1];
+            if(isLeft[i] != isLeft[top2]) {
+                for(int j=0; j<stackSize-1; j++) {
+                    addTriangle(sorted[i], sorted[stack[j]], sorted[stack[j+1]]);
+                }
+                stack[0] = i-1;
+                stack[1] = i;
+                stackSize = 2;
+            } else {
+                int last = stack[--stackSize];
+                while(stackSize > 0) {
+                    final int prev = stack[stackSize-1];
+                    final long turn = cross(sorted[prev], sorted[last], sorted[i]);
+                    // the diagonal from i to prev must be inside the piece
+                    if(isLeft[i] ? turn <= 0 : turn >= 0) {
+                        break;
+                    }
+                    addTriangle(sorted[i], sorted[last], sorted[prev]);
+                    last = prev;
+                    stackSize--;
+                }
+                stack[stackSize++] = last;
+                stack[stackSize++] = i;
+            }
+        }
+        for(int j=0; j<stackSize-1; j++) {
+            addTriangle(sorted[size-1], sorted[stack[j]], sorted[stack[j+1]]);
+        }
+        return true;
+    }
+    
+    /**
+     * Adds a triangle with the same winding as the vertex buffer, like the
+     * triangles created by ear clipping. 
+     */
+    private void addTriangle(int a, int b, int c) {
+        final long area = cross(a, b, c);
+        if((area < 0) != m_IsClockwise) {
+            final int tmp = b;
+            b = c;
+            c = tmp;
+        }
+        m_DoubleTriangleArea += (area < 0) ? -area : area;
+        final short[] triangle = m_Triangles[m_NbrTriangles++];
+        triangle[0] = (short)m_VertexNbr[a];
+        triangle[1] = (short)m_VertexNbr[b];
+        triangle[2] = (short)m_VertexNbr[c];
+    }
+}
@@ -38,6 +38,7 @@ import java.util.Hashtable;
 
 import com.wayfinder.core.internal.SharedSystems;
 import com.wayfinder.core.map.MapDownloadListener;
+import com.wayfinder.core.map.vectormap.MapInitialConfig;
 import com.wayfinder.core.map.vectormap.PoiCategory;
 import com.wayfinder.core.map.vectormap.internal.VectorMapOptimizationFilter;
 import com.wayfinder.core.map.vectormap.internal.process.TileMap;
@@ -113,7 +114,17 @@ public class TileMapControlThread implements Runnable {
         setNbrStrings();
     }
     
-    public void init(ConcurrencyLayer currLayer, boolean supportPolygons, int language) {
+    /**
+     * Starts the control thread and the extraction thread. 
+     * 
+     * @param currLayer the {@link ConcurrencyLayer} used to start the threads
+     * @param supportPolygons true if the platform can draw polygons
+     * @param language the text language
+     * @param nbrOfExtractionWorkers the number of threads that may extract
+     * tiles in parallel
+     */
+    public void init(ConcurrencyLayer currLayer, boolean supportPolygons, int language,
+            int nbrOfExtractionWorkers) {
         
         iExtractedTileMaps         = new LinkedList();
         iNewExtractedTileMaps   = new LinkedList();
@@ -123,7 +134,8 @@ public class TileMapControlThread implements Runnable {
         Thread t = currLayer.startNewDaemonThread(this, "TMControl");
         t.setPriority(Thread.NORM_PRIORITY);
         
-        iTileMapExtraction.init(currLayer, supportPolygons);
+        iMapLoader.setConcurrencyLayer(currLayer);
+        iTileMapExtraction.init(currLayer, supportPolygons, nbrOfExtractionWorkers);
     }
     
     public void clearMemCache() {
@@ -203,6 +215,9 @@ public class TileMapControlThread implements Runnable {
      */
     public void closeMapComponent() {
         try {
+            if(iMapLoader.isCacheStarted()) {
+                iMapLoader.saveWarmUpTiles(iTileMapHandler.getWarmUpTiles());
+            }
             iMapLoader.closeMapCache();
         } catch (Exception e) {
             if(LOG.isError()) {
@@ -265,6 +280,13 @@ public class TileMapControlThread implements Runnable {
         return iMapLoader;
     }
     
+    /**
+     * @return the TileMapExtractionThread
+     */
+    TileMapExtractionThread getTileMapExtraction() {
+        return iTileMapExtraction;
+    }
+    
     /**
      * @return a TileCategory array for the categories loaded in the TMFD
      */
@@ -387,6 +409,57 @@ public class TileMapControlThread implements Runnable {
         }
     }
     
+    /**
+     * Set the algorithm used to triangulate the polygons of a layer, see 
+     * {@link MapInitialConfig#setPolygonTriangulator(int, int)}. 
+     * 
+     * @param layerID the ID of the layer
+     * @param triangulator {@link MapInitialConfig#TRIANGULATOR_MONOTONE} or 
+     * {@link MapInitialConfig#TRIANGULATOR_EAR_CLIPPING}
+     */
+    public void setPolygonTriangulator(int layerID, int triangulator) {
+        iTileMapExtraction.setPolygonTriangulator(layerID, triangulator);
+    }
+    
+    /**
+     * Set the number of bytes of tile data kept in the memory cache and how
+     * it's stored, see {@link MapInitialConfig#setMemoryCacheSize(int)}. 
+     * 
+     * @param nbrOfBytes the size of the memory cache in bytes
+     * @param slabStorage true to store the data in slabs, see 
+     * {@link MapInitialConfig#setMemoryCacheSlabStorage(boolean)}
+     */
+    public void setMemCacheSize(int nbrOfBytes, boolean slabStorage) {
+        iMapLoader.getMemCache().setMaxSize(nbrOfBytes);
+        iMapLoader.getMemCache().setSlabStorage(slabStorage);
+    }
+    
+    /**
+     * Set the number of bytes that can be queued to be written to the 
+     * persistent cache in the background, 0 to write directly. Must be 
+     * called before the cache is started. 
+     * 
+     * @param nbrOfBytes the maximal number of queued bytes
+     */
+    public void setCacheWriteBehindSize(int nbrOfBytes) {
+        iMapLoader.setCacheWriteBehindSize(nbrOfBytes);
+    }
+    
+    /**
+     * Set the number of concurrent tile requests and the limits of each 
+     * request. 
+     * 
+     * @see TileMapNetworkHandler#setRequestLimits(int, int, int)
+     */
+    public void setTileRequestLimits(int nbrOfRequests, int maxTilesPerRequest, 
+            int maxBytesPerRequest) {
+        TileMapNetworkHandler networkHandler = iMapLoader.getTileMapNetworkHandler();
+        if(networkHandler != null) {
+            networkHandler.setRequestLimits(nbrOfRequests, maxTilesPerRequest, 
+                    maxBytesPerRequest);
+        }
+    }
+    
     /*
      * Internal method for setting the download status for a specific layer number.
      */
@@ -896,8 +969,16 @@ public class TileMapControlThread implements Runnable {
                 /* Data that are requested from internet and doesn't have a update time should
                  * be cached. */
                 if(wrapper.isGeoDataRequestedFromInternet(params.getImportance()) &&
-                   tmfd.getUpdateTimeForLayer(params.getLayerID()) == 0) {
+                   tmfd.getUpdateTimeForLayer(params.getLayerID()) == 0 &&
+                   tileMap.getByteData() != null) {
                     wrapper.addData(params, tileMap.getByteData());             
+                    
+                    /* Save the triangulated polygons with the tile so they
+                     * don't need to be triangulated when loaded from the cache. */
+                    if(tileMap.getTriangleData() != null) {
+                        wrapper.addData(params.cloneTileMapParams(TileMapParams.TRIANGLES), 
+                                        tileMap.getTriangleData());
+                    }
                 }
                 
                 wrapper.setReceived(params.getImportance());            
@@ -917,7 +998,7 @@ public class TileMapControlThread implements Runnable {
             /* Add the extracted geometric data to the tile wrapper, when the 
              * tile is complete we will save it in the r/w cache. */
             if(params.getImportance() == 0 && tmfd.getUpdateTimeForLayer(params.getLayerID()) == 0 && 
-                    wrapper.isGeoDataRequestedFromInternet(0)) {
+                    wrapper.isGeoDataRequestedFromInternet(0) && tileMap.getByteData() != null) {
                 wrapper.addData(params, tileMap.getByteData());
             }
             
@@ -989,7 +1070,8 @@ public class TileMapControlThread implements Runnable {
             /* Add the extracted string data to the tile wrapper, when the tile is
              * complete we will save it in the r/w cache. */
             if(wrapper.isStringDataRequestedFromInternet(params.getImportance()) &&
-               tmfd.getUpdateTimeForLayer(params.getLayerID()) == 0) {
+               tmfd.getUpdateTimeForLayer(params.getLayerID()) == 0 &&
+               tileMap.getByteData() != null) {
                 wrapper.addData(params, tileMap.getByteData());             
             }
             
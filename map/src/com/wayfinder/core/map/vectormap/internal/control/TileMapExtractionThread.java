@@ -37,17 +37,19 @@ package com.wayfinder.core.map.vectormap.internal.control;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Vector;
 import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.MapInitialConfig;
+import com.wayfinder.core.map.vectormap.internal.cache.MemCache;
 import com.wayfinder.core.map.vectormap.internal.drawer.Utils;
 import com.wayfinder.core.map.vectormap.internal.process.TileFeature;
-import com.wayfinder.core.map.vectormap.internal.process.TileFeatureData;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStore;
 import com.wayfinder.core.map.vectormap.internal.process.TileMap;
 import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
 import com.wayfinder.core.map.vectormap.internal.process.TileMapParamTypes;
 import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
 import com.wayfinder.core.shared.internal.debug.LogFactory;
 import com.wayfinder.core.shared.internal.debug.Logger;
+import com.wayfinder.core.shared.internal.threadpool.WorkScheduler;
 import com.wayfinder.core.shared.util.LinkedList;
 import com.wayfinder.pal.concurrency.ConcurrencyLayer;
 import com.wayfinder.pal.util.UtilFactory;
@@ -57,7 +59,14 @@ import com.wayfinder.pal.util.UtilFactory;
  * The TileMapExtractionThread class handles the extraction of new TileMaps that
  * has been loaded from the cache, pre-installed maps or the server. 
  * 
- * The class contains one thread that is used for extraction. 
+ * The class contains one thread that is used for extraction. If more than
+ * one extraction worker is requested the thread acts as a dispatcher instead:
+ * geometry and string tiles are decoded in parallel by a private 
+ * {@link WorkScheduler} while bitmaps, TileMapFormatDesc and CRC updates are
+ * still handled by the extraction thread itself. The decoded tiles are handed 
+ * over to the {@link TileMapControlThread} in the same order as they were 
+ * added and all tiles added before a TileMapFormatDesc or CRC update are 
+ * handed over before the update is applied.
  *
  * 
  */
@@ -76,20 +85,154 @@ public class TileMapExtractionThread implements Runnable {
     
     private boolean m_SupportDrawingPolygons;
     
+    // null if all extraction is done by the extraction thread 
+    private WorkScheduler m_WorkerPool;
+    
+    // ExtractionJobs handed to the worker pool that has not yet been
+    // passed on to the TileMapControlThread, in the order they were added.
+    private final LinkedList m_PendingJobs;
+    
+    // the triangulator to use for each layer ID, see MapInitialConfig
+    private final int[] m_PolygonTriangulators = new int[MapInitialConfig.MAX_LAYER_ID+1];
+    
+    // holds the triangles records loaded from the persistent cache
+    private volatile MemCache m_MemCache;
+    
+    // the counters below are guarded by m_TriangleStatsLock since the 
+    // tiles can be extracted by several workers
+    private final Object m_TriangleStatsLock = new Object();
+    private int m_NbrTilesTriangulated;
+    private int m_NbrTilesWithCachedTriangles;
+    private long m_TriangulationTimeSaved;
+    
+    private TileMapStatistics m_Statistics;
+    
+    // the size of m_PendingJobs, read by other threads
+    private volatile int m_NbrOfPendingJobs;
+    
     public TileMapExtractionThread(TileMapControlThread aTileMapControl, UtilFactory utilFactory) {
         iTileMapControl = aTileMapControl;
         m_UtilFactory = utilFactory;
         
         iNewUnprocessedTiles = new LinkedList();
-      
+        m_PendingJobs = new LinkedList();
     }
     
-    void init(ConcurrencyLayer currLayer, boolean supportPolygons) {
+    /**
+     * Starts the extraction thread.
+     * <p>
+     * The number of extraction workers will be limited to one on platforms
+     * with a limited number of threads, see 
+     * {@link #getNbrOfWorkersForPlatform(ConcurrencyLayer, int)}. 
+     * 
+     * @param currLayer the {@link ConcurrencyLayer} used to start the threads
+     * @param supportPolygons true if the platform can draw polygons
+     * @param nbrOfWorkers the requested number of extraction workers
+     */
+    void init(ConcurrencyLayer currLayer, boolean supportPolygons, int nbrOfWorkers) {
         m_SupportDrawingPolygons = supportPolygons;
+        
+        nbrOfWorkers = getNbrOfWorkersForPlatform(currLayer, nbrOfWorkers);
+        if(nbrOfWorkers > 1) {
+            m_WorkerPool = new WorkScheduler(currLayer, nbrOfWorkers);
+        }
+        if(LOG.isInfo()) {
+            LOG.info("TileMapExtractionThread.init()", "extraction workers= "+nbrOfWorkers);
+        }
+        
         Thread t = currLayer.startNewDaemonThread(this, "TMExtraction");
         t.setPriority(Thread.NORM_PRIORITY);
     }
     
+    /**
+     * Returns the number of extraction workers that will be used on this 
+     * platform. 
+     * 
+     * @param currLayer the {@link ConcurrencyLayer} of the platform
+     * @param requested the requested number of workers
+     * @return the number of workers to use, at least 1
+     */
+    static int getNbrOfWorkersForPlatform(ConcurrencyLayer currLayer, int requested) {
+        if(requested <= 1 || 
+           !TileMapLoader.canStartBackgroundThreads(currLayer)) {
+            return 1;
+        }
+        return requested;
+    }
+    
+    /**
+     * Set the algorithm used to triangulate the polygons of a layer. 
+     * 
+     * @param layerID the ID of the layer
+     * @param triangulator {@link MapInitialConfig#TRIANGULATOR_MONOTONE} or 
+     * {@link MapInitialConfig#TRIANGULATOR_EAR_CLIPPING}
+     */
+    void setPolygonTriangulator(int layerID, int triangulator) {
+        m_PolygonTriangulators[layerID] = triangulator;
+    }
+    
+    /**
+     * Set the memory cache that the triangles records loaded from the 
+     * persistent cache are written to. Set when the cache is started, 
+     * until then the polygons are always triangulated. 
+     * 
+     * @param aMemCache the memory cache of the {@link TileMapLoader}
+     */
+    void setMemCache(MemCache aMemCache) {
+        m_MemCache = aMemCache;
+    }
+    
+    /**
+     * Set the statistics that the extraction and triangulation times are 
+     * added to. 
+     * 
+     * @param aStatistics the statistics of the {@link TileMapLoader}
+     */
+    void setStatistics(TileMapStatistics aStatistics) {
+        m_Statistics = aStatistics;
+    }
+    
+    /**
+     * @return the number of tiles that are waiting to be extracted or are
+     * being extracted by the extraction workers
+     */
+    int getQueueSize() {
+        synchronized (iNewUnprocessedTiles) {
+            return iNewUnprocessedTiles.size() + m_NbrOfPendingJobs;
+        }
+    }
+    
+    /**
+     * @return the number of geometry tiles that has been triangulated 
+     * since the polygons wasn't found in the cache
+     */
+    public int getNbrOfTilesTriangulated() {
+        synchronized (m_TriangleStatsLock) {
+            return m_NbrTilesTriangulated;
+        }
+    }
+    
+    /**
+     * @return the number of geometry tiles where the triangulated polygons 
+     * was loaded from the cache
+     */
+    public int getNbrOfTilesWithCachedTriangles() {
+        synchronized (m_TriangleStatsLock) {
+            return m_NbrTilesWithCachedTriangles;
+        }
+    }
+    
+    /**
+     * @return the time in ms that has been saved by loading the 
+     * triangulated polygons from the cache, i.e. the time it took to 
+     * triangulate the tiles when they was first loaded 
+     */
+    public long getTriangulationTimeSaved() {
+        synchronized (m_TriangleStatsLock) {
+            return m_TriangulationTimeSaved;
+        }
+    }
+    
     /**
      * Set the TileMapFormatDesc 
      * 
@@ -107,8 +250,24 @@ public class TileMapExtractionThread implements Runnable {
      * @param data: the byte buffer for the importance 
      */
     public void addTileToExtraction(TileMapParams aParam, byte[] data) {
+        addTileToExtraction(new UnprocessTile(aParam,data));
+    }
+    
+    /**
+     * Add a geometry or string tile that is read in place from the memory
+     * cache. The buffer is released when the tile has been extracted. 
+     * 
+     * @param aParam the params of the tile
+     * @param aBuffer the buffer from {@link MemCache#getBufferFromCache(String)}
+     * @param aMemCache the memory cache that the buffer is released to
+     */
+    public void addTileToExtraction(TileMapParams aParam, BitBuffer aBuffer, MemCache aMemCache) {
+        addTileToExtraction(new UnprocessTile(aParam, aBuffer, aMemCache));
+    }
+    
+    private void addTileToExtraction(UnprocessTile tile) {
         synchronized(iNewUnprocessedTiles) {
-            iNewUnprocessedTiles.addLast(new UnprocessTile(aParam,data));
+            iNewUnprocessedTiles.addLast(tile);
             iNewUnprocessedTiles.notifyAll();
         }
     }
@@ -133,29 +292,131 @@ public class TileMapExtractionThread implements Runnable {
                     iNewUnprocessedTiles.toArray(tileMapsToExtract);
                     iNewUnprocessedTiles.clear();
                 }
-                for (int i= 0; i< tileMapsToExtract.length; i++) {
-                    processExtraction(tileMapsToExtract[i]);
-                    tileMapsToExtract[i] = null;//free the memory
-                    Thread.yield();//why?
+                try {
+                    if(m_WorkerPool == null) {
+                        for (int i= 0; i< tileMapsToExtract.length; i++) {
+                            UnprocessTile tile = tileMapsToExtract[i];
+                            tileMapsToExtract[i] = null;//free the memory
+                            processExtraction(tile);
+                            Thread.yield();//why?
+                        }
+                    } else {
+                        dispatchExtraction(tileMapsToExtract);
+                    }
+                } finally {
+                    // if the extraction failed the rest of the tiles are 
+                    // dropped, their buffers must still be released
+                    releaseTiles(tileMapsToExtract);
                 }
                 tileMapsToExtract = null;
             } catch (Exception e) {
                 if(LOG.isError()) {
                     LOG.error("TileMapExtractionThread.run()", e);
                 }
-                iNewUnprocessedTiles.clear();
+                synchronized (iNewUnprocessedTiles) {
+                    while(!iNewUnprocessedTiles.isEmpty()) {
+                        ((UnprocessTile)iNewUnprocessedTiles.removeFirst()).release();
+                    }
+                }
+                m_PendingJobs.clear();
+                m_NbrOfPendingJobs = 0;
                 iTileMapControl.resetAllLayers();
             }
         }
     }
     
+    /**
+     * Releases the tiles that are left in the array, i.e. the tiles that 
+     * hasn't been extracted or handed to a worker. 
+     * 
+     * @param tiles the tiles, the processed tiles set to null
+     */
+    private static void releaseTiles(UnprocessTile[] tiles) {
+        for (int i = 0; i < tiles.length; i++) {
+            if(tiles[i] != null) {
+                tiles[i].release();
+                tiles[i] = null;
+            }
+        }
+    }
+    
+    /**
+     * Hands the geometry and string tiles to the worker pool and processes
+     * everything else on the extraction thread. 
+     * <p>
+     * Before anything is processed on the extraction thread all tiles 
+     * that was added before it are passed on to the TileMapControlThread, 
+     * so a new TileMapFormatDesc or CRC is never applied before the tiles 
+     * in front of it.  
+     * 
+     * @param tiles the tiles in the order they were added
+     */
+    private void dispatchExtraction(UnprocessTile[] tiles) {
+        for (int i = 0; i < tiles.length; i++) {
+            UnprocessTile tile = tiles[i];
+            tiles[i] = null;//free the memory
+            
+            if(isTileMap(tile.params.getAsString())) {
+                ExtractionJob job = new ExtractionJob(tile, tmfd);
+                m_PendingJobs.addLast(job);
+                m_NbrOfPendingJobs = m_PendingJobs.size();
+                m_WorkerPool.schedule(job, WorkScheduler.PRIORITY_NORMAL);
+                // pass on the tiles that has already been extracted
+                publishExtractedJobs(false);
+            } else {
+                publishExtractedJobs(true);
+                processExtraction(tile);
+            }
+        }
+        publishExtractedJobs(true);
+    }
+    
+    /**
+     * Passes on the extracted tiles to the TileMapControlThread in the order
+     * they were added. 
+     * 
+     * @param waitForAll true to wait until all pending jobs has been extracted,
+     * false to only pass on the jobs that are done in front of the queue. 
+     */
+    private void publishExtractedJobs(boolean waitForAll) {
+        while (!m_PendingJobs.isEmpty()) {
+            ExtractionJob job = (ExtractionJob) m_PendingJobs.getFirst();
+            if(!job.waitUntilDone(waitForAll)) {
+                return;
+            }
+            m_PendingJobs.removeFirst();
+            m_NbrOfPendingJobs = m_PendingJobs.size();
+            job.rethrowError();
+            if(!job.m_Skipped) {
+                publishTileMap(job.m_Tile.params, job.m_TileMap);
+            }
+        }
+    }
+    
+    /**
+     * @param paramString
+     * @return true if the param string is for a geometry or string tile
+     */
+    static boolean isTileMap(String paramString) {
+        return !TileMapParamTypes.isBitmap(paramString) 
+            && !TileMapParamTypes.isMapFormatDesc(paramString) 
+            && TileMapParamTypes.isMap(paramString);
+    }
+    
     /**
      * Extract tilemaps that has been send from the cache or internet.  
      * 
      */
-    private void processExtraction(UnprocessTile tile) {  
-        TileMapParams params = tile.params;
-        byte[] data = tile.data;
+    private void processExtraction(UnprocessTile tile) {
+        try {
+            processExtraction(tile.params, tile.data, tile);
+        } finally {
+            tile.release();
+        }
+    }
+    
+    private void processExtraction(TileMapParams params, byte[] data, UnprocessTile tile) {  
+
         String paramString = params.getAsString();  
         
         if(LOG.isDebug()) {
@@ -202,52 +463,7 @@ public class TileMapExtractionThread implements Runnable {
         
         // Extract TileMaps
         } else if(TileMapParamTypes.isMap(paramString)) {
-            TileMap tileMap = null;
-            try {                   
-                tileMap = unpackData(data, params); 
-            } catch(Exception e) {      
-                if(LOG.isError()) {
-                    LOG.error("TileMapExtractionThread.processExtraction()", "Faild to parse "+params.getAsString());
-                    LOG.error("TileMapExtractionThread.processExtraction()", e);
-                }
-                tileMap = null;
-            }
-            if(tileMap != null) {
-                if(params.getTileMapType() == TileMapParams.MAP) { // If geometry     
-                    Vector geoData = tileMap.initData(tmfd);
-                    tileMap.purgeArgs();
-                    triangulatePolygons(geoData, tileMap);
-                    scaleCoords(geoData, tileMap);
-                } else { // Strings
-                    
-                    long geoMapCRC = iTileMapControl.getGeoMapCRC(params.getTileID(), tileMap.getImportance());                 
-                    if(tileMap.getCRC() != geoMapCRC && geoMapCRC != 0) {                       
-
-                        if(LOG.isError()) {
-                            LOG.error("TileMapExtractionThread.processExtraction()", 
-                                    "crc mismatch string CRC= "+tileMap.getCRC()+" geometric CRC= "+geoMapCRC+" layerID= "+params.getLayerID());
-                        }
-                                                
-                        String iGeoParam = iTileMapControl.getGeoMapParamString(params.getTileID(), params.getImportance());
-                        MapTask event = new MapTask(iTileMapControl);   
-                        event.removeAndReloadTileMaps(iGeoParam, paramString, tileMap.getTileMapParams());
-                        return; 
-                    }                           
-                }           
-                iTileMapControl.addExtractImportance(params, tileMap);              
-            } else {
-                
-                if(LOG.isError()) {
-                    LOG.error("TileMapExtractionThread.processExtraction()", 
-                            "Unable to load the TileMap, clear the tile and request new tile and tmfd");
-                }
-                                                                                        
-                MapTask event = new MapTask(iTileMapControl);
-                event.removeAndReloadOneTileMap(params);
-                
-                event = new MapTask(iTileMapControl);
-                event.loadTileMapFormatDesc();
-            }   
+            publishTileMap(params, extractTileMap(params, tile.getBuffer(), tmfd));
         } 
         
         else {
@@ -257,20 +473,173 @@ public class TileMapExtractionThread implements Runnable {
         }
     }
     
+    /**
+     * Unpacks and loads a geometry or string tile. For geometry tiles the
+     * polygons are also triangulated, the coordinates scaled to MC2 and 
+     * the lines simplified for each scale index, see {@link LineSimplifier}.
+     * <p>
+     * If the platform can't draw polygons the triangles are loaded from
+     * the memory cache when the triangles record for the tile was loaded 
+     * from the persistent cache together with the tile. Otherwise the 
+     * polygons are triangulated and a new record is set in the TileMap so 
+     * it can be saved with the tile, see {@link TileMap#getTriangleData()}.
+     * <p>
+     * Called from the extraction thread or one of the extraction workers. 
+     * 
+     * @param params the params of the tile
+     * @param buffer the tile data
+     * @param aTmfd the TileMapFormatDesc to use when loading the tile
+     * @return the loaded TileMap or null if it couldn't be loaded
+     */
+    private TileMap extractTileMap(TileMapParams params, BitBuffer buffer, TileMapFormatDesc aTmfd) {
+        final long startTime = System.currentTimeMillis();
+        TileMap tileMap = null;
+        try {                   
+            tileMap = unpackData(buffer, params, aTmfd); 
+        } catch(Exception e) {      
+            if(LOG.isError()) {
+                LOG.error("TileMapExtractionThread.extractTileMap()", "Faild to parse "+params.getAsString());
+                LOG.error("TileMapExtractionThread.extractTileMap()", e);
+            }
+            tileMap = null;
+        }
+        if(tileMap != null && params.getTileMapType() == TileMapParams.MAP) { // If geometry     
+            TileFeatureStore features = tileMap.initData(aTmfd);
+            tileMap.purgeArgs();
+            if(m_SupportDrawingPolygons) {
+                long time = System.currentTimeMillis();
+                triangulatePolygons(features, tileMap);
+                addTriangulation(System.currentTimeMillis()-time);
+            } else {
+                loadOrTriangulatePolygons(params, features, tileMap, aTmfd);
+            }
+            scaleCoords(features, tileMap);
+            new LineSimplifier().simplifyLines(features, aTmfd);
+        }
+        final TileMapStatistics statistics = m_Statistics;
+        if(tileMap != null && statistics != null) {
+            statistics.addExtraction(System.currentTimeMillis()-startTime);
+        }
+        return tileMap;
+    }
+    
+    /**
+     * Loads the triangulated polygons of a geometry tile from the memory 
+     * cache or triangulates the polygons if they are missing or doesn't 
+     * match the tile. 
+     * 
+     * @param params the params of the tile
+     * @param features the features of the tile, before the coordinates 
+     * are scaled 
+     * @param tileMap the tile
+     * @param aTmfd the TileMapFormatDesc used to load the tile
+     */
+    private void loadOrTriangulatePolygons(TileMapParams params, TileFeatureStore features, 
+            TileMap tileMap, TileMapFormatDesc aTmfd) {
+        
+        final MemCache memCache = m_MemCache;
+        if(memCache != null) {
+            final String trianglesParamString = 
+                TileMapParamTypes.getTrianglesParamString(params.getAsString());
+            byte[] data = memCache.getDataFromCache(trianglesParamString);
+            if(data != null) {
+                int time = TriangulatedPolygons.read(data, features, aTmfd.getCRC(), tileMap.getCRC());
+                if(time >= 0) {
+                    synchronized (m_TriangleStatsLock) {
+                        m_NbrTilesWithCachedTriangles++;
+                        m_TriangulationTimeSaved += time;
+                    }
+                    return;
+                }
+                if(LOG.isInfo()) {
+                    LOG.info("TileMapExtractionThread.loadOrTriangulatePolygons()", 
+                            "Cached triangles doesn't match the tile "+trianglesParamString);
+                }
+                memCache.removeFromCache(trianglesParamString);
+            }
+        }
+        
+        long time = System.currentTimeMillis();
+        triangulatePolygons(features, tileMap);
+        time = System.currentTimeMillis()-time;
+        
+        synchronized (m_TriangleStatsLock) {
+            m_NbrTilesTriangulated++;
+        }
+        addTriangulation(time);
+        tileMap.setTriangleData(
+                TriangulatedPolygons.write(features, aTmfd.getCRC(), tileMap.getCRC(), (int)time));
+    }
+    
+    private void addTriangulation(long time) {
+        final TileMapStatistics statistics = m_Statistics;
+        if(statistics != null) {
+            statistics.addTriangulation(time);
+        }
+    }
+    
+    /**
+     * Passes on an extracted tile to the TileMapControlThread. String tiles 
+     * that doesn't match the CRC of the geometry tile and tiles that couldn't
+     * be loaded will be reloaded.
+     * <p>
+     * Always called from the extraction thread. 
+     * 
+     * @param params the params of the tile
+     * @param tileMap the extracted tile or null if it couldn't be loaded
+     */
+    private void publishTileMap(TileMapParams params, TileMap tileMap) {
+        String paramString = params.getAsString();
+        
+        if(tileMap != null) {
+            if(params.getTileMapType() != TileMapParams.MAP) { // Strings
+                
+                long geoMapCRC = iTileMapControl.getGeoMapCRC(params.getTileID(), tileMap.getImportance());                 
+                if(tileMap.getCRC() != geoMapCRC && geoMapCRC != 0) {                       
+
+                    if(LOG.isError()) {
+                        LOG.error("TileMapExtractionThread.publishTileMap()", 
+                                "crc mismatch string CRC= "+tileMap.getCRC()+" geometric CRC= "+geoMapCRC+" layerID= "+params.getLayerID());
+                    }
+                                            
+                    String iGeoParam = iTileMapControl.getGeoMapParamString(params.getTileID(), params.getImportance());
+                    MapTask event = new MapTask(iTileMapControl);   
+                    event.removeAndReloadTileMaps(iGeoParam, paramString, tileMap.getTileMapParams());
+                    return; 
+                }                           
+            }           
+            iTileMapControl.addExtractImportance(params, tileMap);              
+        } else {
+            
+            if(LOG.isError()) {
+                LOG.error("TileMapExtractionThread.publishTileMap()", 
+                        "Unable to load the TileMap, clear the tile and request new tile and tmfd");
+            }
+                                                                                    
+            MapTask event = new MapTask(iTileMapControl);
+            event.removeAndReloadOneTileMap(params);
+            
+            event = new MapTask(iTileMapControl);
+            event.loadTileMapFormatDesc();
+        }   
+    }
+    
     // ----------------------------------------------------------------------------
     // Extraction methods
     
     /**
      * Unpack and load the tilemap
      */
-    private TileMap unpackData(byte[] data, TileMapParams tmp) {
+    private TileMap unpackData(BitBuffer bitBuffer, TileMapParams tmp, TileMapFormatDesc aTmfd) {
         TileMap map = new TileMap();
         map.setParams(tmp);
         
         //If gzip, then gunzip
-        if((((data[0]<<8) & 0xFF00) | (data[1] & 0xFF)) == 0x1f8b){
+        final byte[] data = bitBuffer.getByteArray();
+        final int offset = bitBuffer.getArrayOffset();
+        if((((data[offset]<<8) & 0xFF00) | (data[offset+1] & 0xFF)) == 0x1f8b){
             try {
-                data = unzipData(data);                
+                bitBuffer = new BitBuffer(unzipData(data, offset, bitBuffer.size()));
                 if(LOG.isTrace()) {
                     LOG.trace("TileMapExtractionThread.unpackData()", tmp.getAsString()+" is now unzipped!");
                 }
@@ -283,9 +652,7 @@ public class TileMapExtractionThread implements Runnable {
             }
         }
         
-        BitBuffer bitBuffer = new BitBuffer(data);
-        
-        if(map.load(bitBuffer,tmfd,false)) {
+        if(map.load(bitBuffer,aTmfd,false)) {
             return map;
         } else {
             if(LOG.isError()) {
@@ -298,9 +665,9 @@ public class TileMapExtractionThread implements Runnable {
     /**
      * Unzip the buffer if it's compressed. 
      */
-    private byte[] unzipData(byte[] aData) throws IOException {
+    private byte[] unzipData(byte[] aData, int aOffset, int aLength) throws IOException {
         
-        ByteArrayInputStream bain = new ByteArrayInputStream(aData);
+        ByteArrayInputStream bain = new ByteArrayInputStream(aData, aOffset, aLength);
         InputStream gStream = m_UtilFactory.openGZIPInputStream(bain);
         byte[] data;
 
@@ -328,43 +695,48 @@ public class TileMapExtractionThread implements Runnable {
     // ------------------------------------------------------------------------
     // 
     /**
-     * For all polygons, correct winding and triangulate.
+     * For all polygons, correct winding and triangulate. The triangulator 
+     * is selected by the layer of the tile. 
      *
-     * @param geoDatas The vector data that is to be rendered
-     * @param map Used for testing purposes
+     * @param features The vector data that is to be rendered
+     * @param map The tile that the features belongs to
      */
-    public void triangulatePolygons(Vector geoDatas, TileMap map){
+    public void triangulatePolygons(TileFeatureStore features, TileMap map){
         long timer = 0;
-        TileFeatureData geoData;
+        final int[] coords = features.getCoords();
+        final int nbrFeatures = features.getNbrFeatures();
         
-        for(int i=0; i<geoDatas.size();i++){
-            
-            geoData = (TileFeatureData)geoDatas.elementAt(i);
+        // reused for all polygons in the tile
+        MonotoneTriangulator triangulator = null;
+        if(m_PolygonTriangulators[map.getTileMapParams().getLayerID()] == MapInitialConfig.TRIANGULATOR_MONOTONE) {
+            triangulator = new MonotoneTriangulator();
+        }
+        
+        for(int i=0; i<nbrFeatures;i++){
             
-            if(geoData.getPrimitiveType() == TileFeature.POLYGON && geoData.getCoords().length >= 6) {            
+            if(TriangulatedPolygons.isTriangulated(features, i)) {            
                 
                 if(Utils.TIME_APP) {
                     timer = System.currentTimeMillis();
                 }
                 
-                int []coords = geoData.getCoords();
-                
-                int verticesLength;
-                int cLength = coords.length;
-                if(coords[0] == coords[cLength-2] && coords[1] == coords[cLength-1]) {
-                    verticesLength = cLength-2;
-                } else {
-                    verticesLength = cLength;
-                }
+                final int offset = features.getCoordsOffset(i);
+                final int verticesLength = 
+                    TriangulatedPolygons.getVerticesLength(coords, offset, features.getCoordsLength(i));
              
-                //ConcavePolygon cp = new ConcavePolygon(coords, 0, coords.length);
-                ConcavePolygon cp = new ConcavePolygon(coords, 0, verticesLength);
+                ConcavePolygon cp = new ConcavePolygon(coords, offset, verticesLength);
              
                 // Triangulate polygons if the underlying implementation doesn't support 
                 // drawing polygons. Then we need to draw triangles instead. 
                 if(!m_SupportDrawingPolygons) {
                     try {
-                        if(!cp.triangulate()){
+                        boolean triangulated;
+                        if(triangulator != null) {
+                            triangulated = cp.triangulate(triangulator);
+                        } else {
+                            triangulated = cp.triangulate();
+                        }
+                        if(!triangulated){
                             if(LOG.isError()) {
                                 LOG.error("TileMapExtractionThread.triangulatePolygons()", 
                                         "Unable to triangulate "+map.getParamString());
@@ -384,7 +756,7 @@ public class TileMapExtractionThread implements Runnable {
                     //System.out.println("Triangulate: " + timer + " ms (" + vertices.length + " vertex)");
                 }
                 
-                geoData.setConcavePolygon(cp);
+                features.setConcavePolygon(i, cp);
             }                 
         } // end for
     }
@@ -392,35 +764,37 @@ public class TileMapExtractionThread implements Runnable {
     /**
      * Scale the all the coordinates in the TileMap to MC2 coordinates. 
      * 
-     * @param gd
+     * @param features
      * @param map
      */
-    private void scaleCoords(Vector gd, TileMap map) {
+    private void scaleCoords(TileFeatureStore features, TileMap map) {
         float scale = map.getMC2Scale();
         long[] offset = map.getReferenceCoord();
-        TileFeatureData geoData;
+        final int[] coordExtremes = features.getCoordExtremes();
+        final int[] coords = features.getCoords();
+        final int nbrFeatures = features.getNbrFeatures();
 
-        for(int i=0; i<gd.size(); i++) {
-            geoData = (TileFeatureData)gd.elementAt(i);
+        for(int i=0; i<nbrFeatures; i++) {
             
-            if(geoData.getPrimitiveType() != TileFeature.BITMAP) {
+            if(features.getPrimitiveType(i) != TileFeature.BITMAP) {
                 
-                int[] coordExtremes = geoData.getCoordExtremes();
-                long minX = ((int)(coordExtremes[0]*scale))+offset[0];
-                long maxX = ((int)(coordExtremes[1]*scale))+offset[0];
-                long minY = ((int)(coordExtremes[2]*scale))+offset[1];
-                long maxY = ((int)(coordExtremes[3]*scale))+offset[1];
+                final int pos = i << 2;
+                long minX = ((int)(coordExtremes[pos]*scale))+offset[0];
+                long maxX = ((int)(coordExtremes[pos+1]*scale))+offset[0];
+                long minY = ((int)(coordExtremes[pos+2]*scale))+offset[1];
+                long maxY = ((int)(coordExtremes[pos+3]*scale))+offset[1];
                 
                 if(minX<Integer.MIN_VALUE) minX=Integer.MIN_VALUE+1;
                 if(minY<Integer.MIN_VALUE) minY=Integer.MIN_VALUE+1;
                 if(maxX>Integer.MAX_VALUE) maxX=Integer.MAX_VALUE-1;
                 if(maxY>Integer.MAX_VALUE) maxY=Integer.MAX_VALUE-1;
                 
-                geoData.setBoundingBox((int)maxX, (int)minX, (int)maxY, (int)minY);
+                features.setBoundingBox(i, (int)maxX, (int)minX, (int)maxY, (int)minY);
                 
-                int []coords = geoData.getCoords();
+                final int start = features.getCoordsOffset(i);
+                final int end = start + features.getCoordsLength(i);
                 
-                for(int j=0; j<coords.length; j+=2) {
+                for(int j=start; j<end; j+=2) {
                     
                     long x = ((int)(coords[j]*scale))+offset[0];
                     long y = ((int)(coords[j+1]*scale))+offset[1];
@@ -433,19 +807,128 @@ public class TileMapExtractionThread implements Runnable {
                     coords[j] = (int)x;
                     coords[j+1] = (int)y;                    
                 }                
-                gd.setElementAt(geoData,i);
             }      
         }
     }
     
+    /**
+     * A tile that is extracted by one of the extraction workers. 
+     */
+    private final class ExtractionJob implements Runnable {
+        
+        private final UnprocessTile m_Tile;
+        private final TileMapFormatDesc m_Tmfd;
+        
+        // the fields below are guarded by this
+        private TileMap m_TileMap;
+        private boolean m_Skipped;
+        private Throwable m_Error;
+        private boolean m_Done;
+        
+        ExtractionJob(UnprocessTile tile, TileMapFormatDesc aTmfd) {
+            m_Tile = tile;
+            m_Tmfd = aTmfd;
+        }
+
+        public void run() {
+            TileMap tileMap = null;
+            boolean skipped = false;
+            Throwable error = null;
+            try {
+                // Don't extract tilemaps that isn't visible, see processExtraction()
+                if(!iTileMapControl.isTileMapVisible(m_Tile.params)) {
+                    if(LOG.isInfo()) {
+                        LOG.info("TileMapExtractionThread.ExtractionJob.run()", 
+                                "Skip to extract a non visible tile: paramString= "+m_Tile.params.getAsString());
+                    }
+                    skipped = true;
+                } else {
+                    tileMap = extractTileMap(m_Tile.params, m_Tile.getBuffer(), m_Tmfd);
+                }
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                m_Tile.release();
+            }
+            synchronized (this) {
+                m_TileMap = tileMap;
+                m_Skipped = skipped;
+                m_Error = error;
+                m_Done = true;
+                notifyAll();
+            }
+        }
+        
+        /**
+         * @param wait true to block until the job is done
+         * @return true if the job is done
+         */
+        synchronized boolean waitUntilDone(boolean wait) {
+            while (wait && !m_Done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    if(LOG.isError()) {
+                        LOG.error("TileMapExtractionThread.ExtractionJob.waitUntilDone()", e);
+                    }
+                }
+            }
+            return m_Done;
+        }
+        
+        /**
+         * Throws any exception caught by the worker on the extraction 
+         * thread, so it's handled the same way as when the tile is 
+         * extracted by the extraction thread. 
+         */
+        synchronized void rethrowError() {
+            if(m_Error instanceof RuntimeException) {
+                throw (RuntimeException) m_Error;
+            } else if(m_Error instanceof Error) {
+                throw (Error) m_Error;
+            } else if(m_Error != null) {
+                throw new RuntimeException(m_Error.toString());
+            }
+        }
+    }
+    
     static public class UnprocessTile {
         public final TileMapParams params;  
         public final byte[] data;
+        // a buffer read in place from the memory cache instead of data 
+        private final BitBuffer buffer;
+        private final MemCache memCache;
         
         public UnprocessTile(TileMapParams params, byte[] data) {
             super();
             this.params = params;
             this.data = data;
+            this.buffer = null;
+            this.memCache = null;
+        }
+        
+        UnprocessTile(TileMapParams params, BitBuffer buffer, MemCache memCache) {
+            this.params = params;
+            this.data = null;
+            this.buffer = buffer;
+            this.memCache = memCache;
+        }
+        
+        BitBuffer getBuffer() {
+            if(buffer != null) {
+                return buffer;
+            }
+            return new BitBuffer(data);
+        }
+        
+        /**
+         * Releases the buffer to the memory cache, when the tile has been 
+         * extracted or skipped. 
+         */
+        void release() {
+            if(buffer != null) {
+                memCache.releaseBuffer(buffer);
+            }
         }
     }
 }
@@ -32,6 +32,7 @@ package com.wayfinder.core.map.vectormap.internal.control;
 
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Vector;
 
 import com.wayfinder.core.map.util.BitBuffer;
 import com.wayfinder.core.map.vectormap.internal.drawer.Utils;
@@ -274,6 +275,64 @@ public class TileMapHandler {
         }       
     }
     
+    /**
+     * Returns the tiles that should be loaded into the memory cache the next 
+     * time the map is started, see 
+     * {@link com.wayfinder.core.map.vectormap.internal.cache.CacheWarmUp}. 
+     * 
+     * The currently visible tiles of the layers that are saved in the cache 
+     * come first, followed by the ring of tiles around them. 
+     * 
+     * @return the params of importance 0 for the tiles
+     */
+    Vector getWarmUpTiles() {
+        Vector tiles = new Vector();
+        if(tmfd == null)
+            return tiles;
+        
+        final int nbrLayer = tmfd.getNumberOfLayers();
+        boolean []visibleLayer = new boolean[nbrLayer];
+        
+        Enumeration iEnum = iRequestedWrapper.elements();
+        while(iEnum.hasMoreElements()) {
+            TileMapLayerWrapper wrapper = (TileMapLayerWrapper)iEnum.nextElement();
+            int layerID = wrapper.getLayerID();
+            if(wrapper.isOverviewMap() || layerID == 1 || 
+               !iTileMapControl.shouldBeSavedInCache(layerID)) {
+                continue;
+            }
+            tiles.addElement(wrapper.getTileIDParam());
+            
+            int layerNbr = tmfd.getLayerNbrFromID(layerID);
+            if(layerNbr >= 0 && layerNbr < nbrLayer && 
+               wrapper.getDetailLevel() == prevDetailLevel[layerNbr]) {
+                visibleLayer[layerNbr] = true;
+            }
+        }
+        
+        // the neighbours of the visible tiles 
+        for(int layerNbr=0; layerNbr<nbrLayer; layerNbr++) {
+            if(!visibleLayer[layerNbr])
+                continue;
+            
+            int layerID = tmfd.getLayerIDFromLayerNbr(layerNbr);
+            int minLat = prevMinLat[layerNbr] - 1;
+            int maxLat = prevMaxLat[layerNbr] + 1;
+            int minLon = prevMinLon[layerNbr] - 1;
+            int maxLon = prevMaxLon[layerNbr] + 1;
+            for(int lat=minLat; lat<=maxLat; lat++) {
+                for(int lon=minLon; lon<=maxLon; lon++) {
+                    if(lat == minLat || lat == maxLat || lon == minLon || lon == maxLon) {
+                        TileMapParams tileIDParam = getTileID(lat, lon, layerID, prevDetailLevel[layerNbr]);
+                        tileIDParam.setTileID(tileIDParam.getAsString());
+                        tiles.addElement(tileIDParam);
+                    }
+                }
+            }
+        }
+        return tiles;
+    }
+    
     // ------------------------------------------------------------------------------------------
     /**
      * 
@@ -192,8 +192,9 @@ public class TileMapLayerWrapper implements TileMapLayerWrapperInterface {
         iTileMaps = new TileMap[nbrImp];
         iGeoMapCRC = new long[nbrImp];      
         iGeoTileParamStrings = new String[nbrImp];
-        iData = new byte[nbrImp*2][];
-        iParamsToCache = new TileMapParams[nbrImp*2];
+        // geometry, strings and triangles for each importance
+        iData = new byte[nbrImp*3][];
+        iParamsToCache = new TileMapParams[nbrImp*3];
         
         for(int i= 0; i<iGeoMapCRC.length; i++) {
             iGeoMapCRC[i] = 0;
@@ -449,6 +450,19 @@ public class TileMapLayerWrapper implements TileMapLayerWrapperInterface {
                 
                 iData[aParam.getImportance()] = aData;
                 iParamsToCache[aParam.getImportance()] = aParam;
+            } else if(aParam.getTileMapType() == TileMapParams.TRIANGLES) {
+                
+                final int index = (iMaxNbrOfImportance<<1)+aParam.getImportance(); 
+                if(LOG.isError()) {
+                    if(iData[index] != null) {
+                        LOG.error("TileMapLayerWrapper.addData()", "Add a imp that isn't empty:" +
+                                " paramString= "+aParam.getAsString()+
+                                " imp= "+aParam.getImportance());
+                    }
+                }
+                
+                iData[index] = aData;
+                iParamsToCache[index] = aParam;
             } else {
                 
                 if(LOG.isError()) {
@@ -36,13 +36,17 @@ import java.util.Vector;
 import com.wayfinder.core.internal.SharedSystems;
 import com.wayfinder.core.map.MapDownloadListener;
 import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.MapStatistics;
 import com.wayfinder.core.map.vectormap.PreInstalledMapsListener;
 import com.wayfinder.core.map.vectormap.internal.cache.CacheConfiguration;
 import com.wayfinder.core.map.vectormap.internal.cache.CacheInterface;
+import com.wayfinder.core.map.vectormap.internal.cache.CacheWarmUp;
 import com.wayfinder.core.map.vectormap.internal.cache.DummyCache;
 import com.wayfinder.core.map.vectormap.internal.cache.FileCache;
 import com.wayfinder.core.map.vectormap.internal.cache.MemCache;
 import com.wayfinder.core.map.vectormap.internal.cache.SecondaryCache;
+import com.wayfinder.core.map.vectormap.internal.cache.WriteBehindCache;
+import com.wayfinder.core.map.vectormap.internal.cache.precache.PreCacheDirectory;
 import com.wayfinder.core.map.vectormap.internal.cache.precache.PreCacheLoader;
 import com.wayfinder.core.map.vectormap.internal.cache.precache.SingleFileDBufRequester;
 import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
@@ -53,6 +57,7 @@ import com.wayfinder.core.shared.internal.debug.LogFactory;
 import com.wayfinder.core.shared.internal.debug.Logger;
 import com.wayfinder.core.shared.util.LinkedList;
 import com.wayfinder.core.network.internal.InternalNetworkInterface;
+import com.wayfinder.pal.concurrency.ConcurrencyLayer;
 import com.wayfinder.pal.persistence.PersistenceLayer;
 import com.wayfinder.pal.util.UtilFactory;
 
@@ -71,7 +76,7 @@ public class TileMapLoader implements TileMapRequestListener {
     
     private Hashtable m_RequestedParams;
     private CacheInterface iCache;
-    private MemCache iMemCache;
+    private final MemCache iMemCache;
     
     private TileMapExtractionThread iTileMapExtraction;
     private TileMapControlThread iTileMapControlThread;
@@ -79,9 +84,13 @@ public class TileMapLoader implements TileMapRequestListener {
     private TileMapNetworkHandler m_TileMapNetworkHandler;
     private PreCacheLoader iPreCacheLoader;
     
-    private SingleFileDBufRequester []iPreCacheRequester;
+    private PreCacheDirectory iPreCacheDirectory;
     private PersistenceLayer m_PersistenceLayer;
     private UtilFactory m_UtilFactory; 
+    private ConcurrencyLayer m_ConcurrencyLayer;
+    private int m_CacheWriteBehindSize;
+    private CacheWarmUp m_CacheWarmUp;
+    private final TileMapStatistics m_Statistics = new TileMapStatistics();
     
     // Indicate if we should load tiles from internet or only form cache. 
     private boolean iOfflineMode = false;
@@ -94,9 +103,11 @@ public class TileMapLoader implements TileMapRequestListener {
         iTileMapExtraction = aMapExtraction;
         iTileMapControlThread = aControlThread;
         iPreCacheLoader = new PreCacheLoader();
+        iMemCache = new MemCache();
         setCacheIsStarted(false);
         m_PersistenceLayer = persistenceLayer;
         m_UtilFactory = utilFactory;
+        iTileMapExtraction.setStatistics(m_Statistics);
     }
     
     /**
@@ -142,7 +153,7 @@ public class TileMapLoader implements TileMapRequestListener {
             if(al.size() > 0) {
                 SingleFileDBufRequester[] preCaches = new SingleFileDBufRequester[al.size()];
                 al.copyInto(preCaches);                
-                iPreCacheRequester = preCaches;
+                iPreCacheDirectory = new PreCacheDirectory(preCaches);
             }
         }
         
@@ -155,6 +166,9 @@ public class TileMapLoader implements TileMapRequestListener {
      * This method close the map cache. The cache index file will be saved. 
      */
     void closeMapCache() {
+        if(m_CacheWarmUp != null) {
+            m_CacheWarmUp.cancel();
+        }
         if(iCache != null) {
             iCache.closeCache();
         }
@@ -199,6 +213,42 @@ public class TileMapLoader implements TileMapRequestListener {
         iCacheIsStarted = isStarted;
     }
     
+    /**
+     * Set the number of bytes that can be queued to be written to the 
+     * read/write cache by a background thread, 0 to write directly. 
+     * Must be called before the cache is started. 
+     * 
+     * @param nbrOfBytes the maximal number of queued bytes
+     * @see WriteBehindCache
+     */
+    void setCacheWriteBehindSize(int nbrOfBytes) {
+        m_CacheWriteBehindSize = nbrOfBytes;
+    }
+    
+    /**
+     * @param currLayer the {@link ConcurrencyLayer} used to start the 
+     * thread that writes to the read/write cache
+     */
+    void setConcurrencyLayer(ConcurrencyLayer currLayer) {
+        m_ConcurrencyLayer = currLayer;
+    }
+    
+    /**
+     * Returns true if the platform can run the optional background threads 
+     * of the map: the write-behind cache, the cache warm up and the extra 
+     * extraction workers. 
+     * <p>
+     * Platforms that only guarantee a small number of threads (JTWI and 
+     * BlackBerry) do that work on the threads they already have. 
+     * 
+     * @param currLayer the {@link ConcurrencyLayer} of the platform
+     * @return true if background threads can be started
+     */
+    static boolean canStartBackgroundThreads(ConcurrencyLayer currLayer) {
+        return currLayer.getMaxNumberOfThreadsForPlatform() 
+                    > ConcurrencyLayer.THREAD_LIMIT_BLACKBERRY;
+    }
+    
     /**
      * Starts the memory cache and read/write cache. 
      * 
@@ -206,8 +256,6 @@ public class TileMapLoader implements TileMapRequestListener {
      */
     void startCache(LinkedList cacheConfig) {
 
-        iMemCache = new MemCache();
-        
         final int size = cacheConfig.size();        
         for(int i=0; i<size; i++) {
             CacheConfiguration cacheSetting = (CacheConfiguration)cacheConfig.get(i);
@@ -230,21 +278,63 @@ public class TileMapLoader implements TileMapRequestListener {
             }           
         }
         
+        if(iCache != null && !(iCache instanceof DummyCache) && 
+           m_CacheWriteBehindSize > 0 && m_ConcurrencyLayer != null &&
+           canStartBackgroundThreads(m_ConcurrencyLayer)) {
+            WriteBehindCache writeBehindCache = 
+                new WriteBehindCache(iCache, m_CacheWriteBehindSize);
+            writeBehindCache.start(m_ConcurrencyLayer);
+            
+            if(LOG.isInfo()) {
+                LOG.info("TileMapLoader.startCache()", "Write behind, max pending bytes= "
+                        +m_CacheWriteBehindSize);
+            }
+            iCache = writeBehindCache;
+        }
+        
         if(LOG.isInfo()) {
             
-            if(iCache instanceof FileCache) {
+            CacheInterface cache = iCache;
+            if(cache instanceof WriteBehindCache) {
+                cache = ((WriteBehindCache)cache).getCache();
+            }
+            if(cache instanceof FileCache) {
                 LOG.info("TileMapLoader.startCache()", "Using FileCache");
             }
-            if(iCache instanceof SecondaryCache) {
+            if(cache instanceof SecondaryCache) {
                 LOG.info("TileMapLoader.startCache()", "Using SecondaryCache");
             }
-            if(iCache instanceof DummyCache) {
+            if(cache instanceof DummyCache) {
                 LOG.info("TileMapLoader.startCache()", "Using DummyCache");
             }
         }
                 
         iCache.setMemCache(iMemCache);  
+        // the triangles records are loaded into the memory cache together 
+        // with the tiles
+        iTileMapExtraction.setMemCache(iMemCache);
         setCacheIsStarted(true);
+        
+        /* Load the tiles of the last viewport into the memory cache while 
+         * the TileMapFormatDesc is loaded. */
+        if(!(iCache instanceof DummyCache) && m_ConcurrencyLayer != null &&
+           canStartBackgroundThreads(m_ConcurrencyLayer)) {
+            m_CacheWarmUp = new CacheWarmUp(m_PersistenceLayer, iCache);
+            m_CacheWarmUp.start(m_ConcurrencyLayer);
+        }
+    }
+    
+    /**
+     * Saves the tiles that should be loaded into the memory cache the next 
+     * time the cache is started. 
+     * 
+     * @param tileIDParams the params of importance 0 for the tiles
+     * @see CacheWarmUp
+     */
+    void saveWarmUpTiles(Vector tileIDParams) {
+        if(iCache != null && !(iCache instanceof DummyCache)) {
+            CacheWarmUp.saveTiles(m_PersistenceLayer, tileIDParams);
+        }
     }
     
     /**
@@ -275,6 +365,58 @@ public class TileMapLoader implements TileMapRequestListener {
         return iMemCache;
     }
     
+    /**
+     * Returns a snapshot of the statistics of the tiers that the tiles are 
+     * loaded from and of the extraction. 
+     * 
+     * @return the statistics since the map was started or since the last 
+     * call to {@link #resetStatistics()}
+     */
+    public MapStatistics getStatistics() {
+        final TileMapNetworkHandler networkHandler = m_TileMapNetworkHandler;
+        return m_Statistics.createSnapshot(getNbrOfCacheBytesRead(), getNbrOfCacheBytesWritten(),
+                iTileMapExtraction.getQueueSize(), 
+                (networkHandler != null) ? networkHandler.getQueueSize() : 0);
+    }
+    
+    /**
+     * Sets all counters of the statistics to 0. 
+     */
+    public void resetStatistics() {
+        m_Statistics.reset(getNbrOfCacheBytesRead(), getNbrOfCacheBytesWritten());
+    }
+    
+    /**
+     * @return the persistent cache behind the write behind queue, if any
+     */
+    private CacheInterface getPersistentCache() {
+        CacheInterface cache = iCache;
+        if(cache instanceof WriteBehindCache) {
+            cache = ((WriteBehindCache)cache).getCache();
+        }
+        return cache;
+    }
+    
+    private long getNbrOfCacheBytesRead() {
+        CacheInterface cache = getPersistentCache();
+        if(cache instanceof FileCache) {
+            return ((FileCache)cache).getNbrOfBytesRead();
+        } else if(cache instanceof SecondaryCache) {
+            return ((SecondaryCache)cache).getNbrOfBytesRead();
+        }
+        return 0;
+    }
+    
+    private long getNbrOfCacheBytesWritten() {
+        CacheInterface cache = getPersistentCache();
+        if(cache instanceof FileCache) {
+            return ((FileCache)cache).getNbrOfBytesWritten();
+        } else if(cache instanceof SecondaryCache) {
+            return ((SecondaryCache)cache).getNbrOfBytesWritten();
+        }
+        return 0;
+    }
+    
     /**
      * Remove the paramstring from the memory cache. 
      * @param aParamString
@@ -379,15 +521,16 @@ public class TileMapLoader implements TileMapRequestListener {
                 iTileMapExtraction.addTileToExtraction(tmp, data);
             } else {
                 // Try to load the tmfd from the pre-cached map files 
-                if(iPreCacheRequester != null && !reset) {
+                if(iPreCacheDirectory != null && !reset) {
                     if(LOG.isInfo()) {
                         LOG.info("TileMapLoader.loadTMFD()", "try load from precache" );
                     }
 
                     m_RequestedParams.put(paramStringPreCache, tmpPreCache);
-                    for(int i=0; i<iPreCacheRequester.length; i++) {                
+                    SingleFileDBufRequester[] files = iPreCacheDirectory.getFiles(tmpPreCache);
+                    for(int i=0; i<files.length; i++) {                
                         if(iPreCacheLoader.readDone()) {                            
-                            existInCache = iPreCacheRequester[i].request(tmpPreCache, this);
+                            existInCache = files[i].request(tmpPreCache, this);
                             if(existInCache)
                                 break;
                         }
@@ -442,9 +585,10 @@ public class TileMapLoader implements TileMapRequestListener {
         
         boolean existInCache = false;
         
-        if(iPreCacheRequester != null) {            
-            for(int i=0; i<iPreCacheRequester.length; i++) {                
-                existInCache = iPreCacheRequester[i].existInPrecache(param);
+        if(iPreCacheDirectory != null) {            
+            SingleFileDBufRequester[] files = iPreCacheDirectory.getFiles(param);
+            for(int i=0; i<files.length; i++) {                
+                existInCache = files[i].existInPrecache(param);
                 if(existInCache)
                     break;                              
             }
@@ -469,13 +613,26 @@ public class TileMapLoader implements TileMapRequestListener {
         if(!m_RequestedParams.containsKey(paramString)) {
             boolean existInCache = false;
             
-            // Mem cache
-            byte []data = iMemCache.getDataFromCache(paramString);
+            // Mem cache, with slab storage the tiles are read in place
+            byte []data = null;
+            BitBuffer cachedBuffer = null;
+            if(iMemCache.hasSlabStorage() && TileMapExtractionThread.isTileMap(paramString)) {
+                cachedBuffer = iMemCache.getBufferFromCache(paramString);
+            } else {
+                data = iMemCache.getDataFromCache(paramString);
+            }
+            if(data != null) {
+                m_Statistics.addHit(MapStatistics.TIER_MEMORY_CACHE, data.length);
+            } else if(cachedBuffer != null) {
+                m_Statistics.addHit(MapStatistics.TIER_MEMORY_CACHE, cachedBuffer.size());
+            } else {
+                m_Statistics.addMiss(MapStatistics.TIER_MEMORY_CACHE);
+            }
             iCurrentRequesedWrapper = aCurrentRequestedWrapper;
             
-            if(data == null) {
+            if(data == null && cachedBuffer == null) {
                 // Pre installed cache
-                if(iPreCacheRequester != null && 
+                if(iPreCacheDirectory != null && 
                         //!TileMapParamTypes.isMapFormatDesc(paramString) && 
                         !TileMapParamTypes.isTmfdCRC(paramString) &&
                         (tmp.getLayerID() != 3) ) {
@@ -488,17 +645,13 @@ public class TileMapLoader implements TileMapRequestListener {
                          * the pre-installed maps. */
                         TileMapParams tmp_copy = tmp.cloneTileMapParams(); 
                         
-                        for(int i=0; i<iPreCacheRequester.length; i++) {                
+                        /* Only the files that may contain the tile are tried, 
+                         * see PreCacheDirectory. */
+                        SingleFileDBufRequester[] files = iPreCacheDirectory.getFiles(tmp_copy);
+                        for(int i=0; i<files.length; i++) {                
                             if(iPreCacheLoader.readDone()) {
-                                existInCache = iPreCacheRequester[i].request(tmp_copy, this);                               
+                                existInCache = files[i].request(tmp_copy, this);                               
                                 if(existInCache) {                              
-                                    if(i != 0) {
-                                        /* Move the lasted used pre-installed map first in the queue. 
-                                         * It's a big change that we want to use that file again. */
-                                        SingleFileDBufRequester file = iPreCacheRequester[0];
-                                        iPreCacheRequester[0] = iPreCacheRequester[i];
-                                        iPreCacheRequester[i] = file;
-                                    }                               
                                     break;          
                                 }
                             }
@@ -514,9 +667,10 @@ public class TileMapLoader implements TileMapRequestListener {
                      * */
                     } else {
                         
-                        for(int i=0; i<iPreCacheRequester.length; i++) {                
+                        SingleFileDBufRequester[] files = iPreCacheDirectory.getFiles(tmp);
+                        for(int i=0; i<files.length; i++) {                
                             if(iPreCacheLoader.readDone()) {
-                                existInCache = iPreCacheRequester[i].existInPrecache(tmp);      
+                                existInCache = files[i].existInPrecache(tmp);      
                                 
                                 if(existInCache) {  
                                     /* Remove the requested flag if it's a empty importance */
@@ -532,7 +686,11 @@ public class TileMapLoader implements TileMapRequestListener {
                     
                     if(!existInCache) {
                         m_RequestedParams.remove(paramString);
-                    }                                       
+                        m_Statistics.addMiss(MapStatistics.TIER_PRE_INSTALLED);
+                    } else {
+                        // the bytes are counted when the tile is received
+                        m_Statistics.addHit(MapStatistics.TIER_PRE_INSTALLED, 0);
+                    }
                 }
                             
                 // Request from the read/write cache
@@ -541,6 +699,12 @@ public class TileMapLoader implements TileMapRequestListener {
                     /* Check if data exist in the cache. */
                     if(tmp.getImportance() == 0) {
                         data = iCache.getDataFromCache(iCurrentRequesedWrapper, paramString, tmp.getTileID());
+                        // the bytes are counted by the cache, see getStatistics()
+                        if(data != null) {
+                            m_Statistics.addHit(MapStatistics.TIER_PERSISTENT_CACHE, 0);
+                        } else {
+                            m_Statistics.addMiss(MapStatistics.TIER_PERSISTENT_CACHE);
+                        }
                         if(iCurrentRequesedWrapper != null && iCurrentRequesedWrapper.isEmptyImportance(tmp.getImportance())) {
                             /* The tile exist in the cache but the current requested importance are empty, return */
                             return;
@@ -581,7 +745,9 @@ public class TileMapLoader implements TileMapRequestListener {
             }
             
             // Extract data if it's found in the cache
-            if(data != null) {
+            if(cachedBuffer != null) {
+                iTileMapExtraction.addTileToExtraction(tmp, cachedBuffer, iMemCache);
+            } else if(data != null) {
                 iTileMapExtraction.addTileToExtraction(tmp, data);
             }   
             
@@ -622,6 +788,7 @@ public class TileMapLoader implements TileMapRequestListener {
         
         if(param != null) {
             if(!fromCache) {
+                m_Statistics.addHit(MapStatistics.TIER_NETWORK, data.length);
                 if(!TileMapParamTypes.isTmfdCRC(paramString)) {             
                     /* Data will always be saved in the memory cache. It's up the the user
                      * of the data the reload the tile if the valid time for the tile
@@ -671,6 +838,7 @@ public class TileMapLoader implements TileMapRequestListener {
     public void requestReceived(TileMapParams param, BitBuffer buf, boolean fromCache) {
             
         if(buf != null) {
+            m_Statistics.addBytesRead(MapStatistics.TIER_PRE_INSTALLED, buf.size());
             iMemCache.writeToCache(param.getAsString(), buf.getByteArray());
             requestReceived(param.getAsString(), buf.getByteArray(), fromCache);
         } else {
@@ -694,6 +862,9 @@ public class TileMapLoader implements TileMapRequestListener {
             TileMapParams param;            
             for(int i=0; i<paramStrings.length; i++) {              
                 param = (TileMapParams)m_RequestedParams.remove(paramStrings[i]);                
+                if(param != null) {
+                    m_Statistics.addMiss(MapStatistics.TIER_NETWORK);
+                }
                 if(param != null && iTileMapControlThread.isTileMapVisible(param)) {
                     param.updateTimeStamp();
                     m_RequestedParams.put(param.getAsString(), param);
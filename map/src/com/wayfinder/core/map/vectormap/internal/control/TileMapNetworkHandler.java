@@ -41,12 +41,22 @@ import com.wayfinder.pal.util.UtilFactory;
 
 /**
  *  Class for handling sending and receiving of map server requests.  
+ *  <p>
+ *  Several requests can be in flight at the same time, each one in its own 
+ *  slot. A slot is refilled with the waiting parameter strings as soon as 
+ *  its request is done, and each slot has its own exponential backoff so a 
+ *  failing request doesn't hold back the others. 
  */
 public final class TileMapNetworkHandler {
 
     private static final Logger LOG = LogFactory
             .getLoggerForClass(TileMapNetworkHandler.class);
     
+    /**
+     * The default number of requests that can be in flight at the same time
+     */
+    public static final int DEFAULT_NBR_OF_REQUESTS = 2;
+    
     private final UtilFactory m_UtilFactory;
     private final WorkScheduler m_scheduler;
     private final InternalNetworkInterface m_NetworkInterface;
@@ -54,19 +64,36 @@ public final class TileMapNetworkHandler {
     
     // Holds the parameter strings that should be requested. 
     private Vector m_stringsForNextRequest;
-    // Holds the outstanding param strings that are in progress of being requested
-    // from the server
-    private Vector m_stringsBeingRequested;
     
+    // The maximal number of param strings and param string bytes in one 
+    // request, 0 if there is no limit
+    private int m_maxTilesPerRequest;
+    private int m_maxBytesPerRequest;
     
-    /* True if we have sent a request to the server and waiting for the response, false if not.
-     * This to make the handling of which tiles that has been downloaded and which that needs to
-     * be requested again easier. 
+    /* The state of each slot, indexed by the slot number. 
+     * 
+     * m_stringsBeingRequested holds the param strings of a slot that are 
+     * waiting for the backoff before they are sent, null if none.
+     * 
+     * m_HasOutgoingRequest is true if the slot has sent a request to the 
+     * server or is waiting to send it. This to make the handling of which 
+     * tiles that has been downloaded and which that needs to be requested 
+     * again easier. 
+     * 
+     * m_backoffWaitPeriod is the current counter of the backoff timer. 
+     * 
+     * m_requestIDs holds the ID of the last request of the slot. A slot 
+     * index is reused if the number of slots shrinks and grows again, the
+     * ID tells a late reply to a request from the old slot apart from the
+     * request of the new slot. 
      */
-    private boolean m_HasOutgoingRequest;
+    private Vector[] m_stringsBeingRequested;
+    private boolean[] m_HasOutgoingRequest;
+    private long[] m_backoffWaitPeriod;
+    private int[] m_requestIDs;
     
-    // the current counter of the backoff timer
-    private long m_backoffWaitPeriod;
+    // the ID of the last request, 0 is never used
+    private int m_lastRequestID;
     
     public TileMapNetworkHandler(InternalNetworkInterface aNetworkInterface, 
             TileMapRequestListener tileMapRequestListener, UtilFactory utilFactory,
@@ -78,13 +105,91 @@ public final class TileMapNetworkHandler {
         m_scheduler = scheduler;
         
         m_stringsForNextRequest = new Vector();
-        m_HasOutgoingRequest  = false;
+        setNbrOfSlots(DEFAULT_NBR_OF_REQUESTS);
     }
     
     
     public synchronized void setTileMapRequestListener(TileMapRequestListener listener) {
         m_TileMapRequestListener = listener;
     }
+    
+    
+    /**
+     * Sets how many requests that can be in flight at the same time and how
+     * large each request may be. 
+     * <p>
+     * The requests that already are in flight are not affected, but a slot 
+     * that is removed won't be refilled. 
+     * 
+     * @param nbrOfRequests the number of concurrent requests, at least 1
+     * @param maxTilesPerRequest the maximal number of param strings in one 
+     * request, 0 for no limit
+     * @param maxBytesPerRequest the maximal number of param string bytes in 
+     * one request, 0 for no limit. A request always holds at least one 
+     * param string. 
+     */
+    public synchronized void setRequestLimits(int nbrOfRequests, 
+            int maxTilesPerRequest, int maxBytesPerRequest) {
+        if(nbrOfRequests < 1) {
+            throw new IllegalArgumentException("At least one request slot is needed!");
+        }
+        if(maxTilesPerRequest < 0 || maxBytesPerRequest < 0) {
+            throw new IllegalArgumentException("Negative request limit");
+        }
+        
+        m_maxTilesPerRequest = maxTilesPerRequest;
+        m_maxBytesPerRequest = maxBytesPerRequest;
+        setNbrOfSlots(nbrOfRequests);
+        
+        if(LOG.isInfo()) {
+            LOG.info("TileMapNetworkHandler.setRequestLimits()", 
+                    "requests= "+nbrOfRequests+" max tiles= "+maxTilesPerRequest+
+                    " max bytes= "+maxBytesPerRequest);
+        }
+        sendRequest();
+    }
+    
+    
+    /*
+     * Resizes the slot arrays and keeps the state of the remaining slots. 
+     * The strings of a removed slot that hasn't been sent yet are put back
+     * in the queue. 
+     */
+    private void setNbrOfSlots(int nbrOfSlots) {
+        Vector[] strings = new Vector[nbrOfSlots];
+        boolean[] outgoing = new boolean[nbrOfSlots];
+        long[] backoff = new long[nbrOfSlots];
+        int[] requestIDs = new int[nbrOfSlots];
+        
+        if(m_HasOutgoingRequest != null) {
+            for (int i = 0; i < m_HasOutgoingRequest.length; i++) {
+                if(i < nbrOfSlots) {
+                    strings[i] = m_stringsBeingRequested[i];
+                    outgoing[i] = m_HasOutgoingRequest[i];
+                    backoff[i] = m_backoffWaitPeriod[i];
+                    requestIDs[i] = m_requestIDs[i];
+                } else if(m_stringsBeingRequested[i] != null) {
+                    Vector removed = m_stringsBeingRequested[i];
+                    for (int j = 0, n = removed.size(); j < n; j++) {
+                        m_stringsForNextRequest.insertElementAt(removed.elementAt(j), j);
+                    }
+                }
+            }
+        }
+        
+        m_stringsBeingRequested = strings;
+        m_HasOutgoingRequest = outgoing;
+        m_backoffWaitPeriod = backoff;
+        m_requestIDs = requestIDs;
+    }
+    
+    
+    /**
+     * @return the number of requests that can be in flight at the same time
+     */
+    public synchronized int getNbrOfSlots() {
+        return m_HasOutgoingRequest.length;
+    }
 
     
     //-------------------------------------------------------------------------
@@ -92,39 +197,56 @@ public final class TileMapNetworkHandler {
     
 
     /**
-     * Resets the timer for the exponential backoff between attempts to grab
+     * Resets the timers for the exponential backoff between attempts to grab
      * new data from the network.
      * <p>
-     * If the timer is already 0, this method will not have any effect.
+     * If the timers are already 0, this method will not have any effect.
      * <p>
-     * If the timer is above zero, any currently pending request will immediately
+     * If a timer is above zero, any currently pending request will immediately
      * be serviced. Please note that the request may still be delayed if the
      * current load on the Core network module is heavy.
      */
     public synchronized void resetExponentialBackoff() {
-        m_backoffWaitPeriod = 0;
-        // immediately transmit any outstanding requests
-        schedulePendingRequest();
+        for (int i = 0; i < m_backoffWaitPeriod.length; i++) {
+            m_backoffWaitPeriod[i] = 0;
+            // immediately transmit any outstanding requests
+            schedulePendingRequest(i, m_requestIDs[i]);
+        }
     }
     
     
     /**
-     * Increase the the time to the next time we try to request tilemaps from the server.   
+     * Increase the the time to the next time the slot tries to request 
+     * tilemaps from the server.   
      * 
+     * @param slot the slot of the failed request
+     * @param requestID the ID of the failed request
      */
-    synchronized void increaseExponentialBackoff() {     
-        if(m_backoffWaitPeriod < 32000L) {
-            if(m_backoffWaitPeriod <= 0) {
-                m_backoffWaitPeriod = 1000L;
+    synchronized void increaseExponentialBackoff(int slot, int requestID) {
+        if(!isCurrentRequest(slot, requestID)) {
+            return;
+        }
+        if(m_backoffWaitPeriod[slot] < 32000L) {
+            if(m_backoffWaitPeriod[slot] <= 0) {
+                m_backoffWaitPeriod[slot] = 1000L;
             } else {
-                m_backoffWaitPeriod *= 2L;
+                m_backoffWaitPeriod[slot] *= 2L;
             }
         }
     }
     
     
-    private long getBackoffTime() {
-        return m_backoffWaitPeriod;
+    synchronized long getBackoffTime(int slot) {
+        return m_backoffWaitPeriod[slot];
+    }
+    
+    
+    /*
+     * Returns true if the request is the last request of the slot and the 
+     * slot still exists. 
+     */
+    private boolean isCurrentRequest(int slot, int requestID) {
+        return slot < m_requestIDs.length && m_requestIDs[slot] == requestID;
     }
     
     
@@ -147,62 +269,127 @@ public final class TileMapNetworkHandler {
     
     
     /**
-     * Trigger that all added parameter strings are sent to the server. 
-     * It we have outgoing request already we ignore the request. 
+     * @return the number of parameter strings that are waiting to be sent
+     * to the server
+     */
+    public synchronized int getQueueSize() {
+        int size = m_stringsForNextRequest.size();
+        for (int i = 0; i < m_stringsBeingRequested.length; i++) {
+            if(m_stringsBeingRequested[i] != null) {
+                size += m_stringsBeingRequested[i].size();
+            }
+        }
+        return size;
+    }
+
+
+    /**
+     * Trigger that the added parameter strings are sent to the server.
+     * Each free slot gets the next strings in the queue, up to the limits
+     * of a request. If all slots have outgoing requests we ignore the 
+     * request, the strings are sent when a slot is done. 
      */
-    public synchronized void sendRequest() {     
-        if(!m_HasOutgoingRequest && m_stringsForNextRequest.size() > 0) {
-            m_HasOutgoingRequest = true;
+    public synchronized void sendRequest() {
+        for (int i = 0; i < m_HasOutgoingRequest.length 
+                        && m_stringsForNextRequest.size() > 0; i++) {
+            if(!m_HasOutgoingRequest[i]) {
+                m_HasOutgoingRequest[i] = true;
+                final int slot = i;
+                final int requestID = ++m_lastRequestID;
+                m_requestIDs[i] = requestID;
 
 //treat TMFD request special and send only one at once
-//            for (int i=0, n=m_stringsForNextRequest.size();i<n;i++) {
-//                final String param = (String)m_stringsForNextRequest.elementAt(i);
-//                if (TileMapParamTypes.isMapFormatDesc(param)) {
-//                    m_stringsForNextRequest.removeElementAt(i);
-//                    
-//                    // if backoff time is 0, it will go directly onto the queue
-//                    m_scheduler.scheduleDelayed(new Runnable() {
-//                        public void run() {
-//                            // this delayed call can be superceded by a call to
-//                            // resetExponentialBackoff() in which case 
-//                            // schedulePendingRequest will do nothing
-//                            scheduleSingleRequest(param);
-//                        }
-//                    }, getBackoffTime());                    
-//                    return;
+//                for (int j=0, n=m_stringsForNextRequest.size();j<n;j++) {
+//                    final String param = (String)m_stringsForNextRequest.elementAt(j);
+//                    if (TileMapParamTypes.isMapFormatDesc(param)) {
+//                        m_stringsForNextRequest.removeElementAt(j);
+//
+//                        // if backoff time is 0, it will go directly onto the queue
+//                        m_scheduler.scheduleDelayed(new Runnable() {
+//                            public void run() {
+//                                // this delayed call can be superceded by a call to
+//                                // resetExponentialBackoff() in which case
+//                                // schedulePendingRequest will do nothing
+//                                scheduleSingleRequest(slot, requestID, param);
+//                            }
+//                        }, m_backoffWaitPeriod[slot]);
+//                        return;
+//                    }
 //                }
-//            }
-            
-            m_stringsBeingRequested = m_stringsForNextRequest;
-            m_stringsForNextRequest = new Vector();
 
-            // if backoff time is 0, it will go directly onto the queue
-            m_scheduler.scheduleDelayed(new Runnable() {
-                public void run() {
-                    // this delayed call can be superceded by a call to
-                    // resetExponentialBackoff() in which case 
-                    // schedulePendingRequest will do nothing
-                    schedulePendingRequest();
-                }
-            }, getBackoffTime());
+                m_stringsBeingRequested[i] = takeStringsForRequest();
+
+                // if backoff time is 0, it will go directly onto the queue
+                m_scheduler.scheduleDelayed(new Runnable() {
+                    public void run() {
+                        // this delayed call can be superceded by a call to
+                        // resetExponentialBackoff() in which case 
+                        // schedulePendingRequest will do nothing
+                        schedulePendingRequest(slot, requestID);
+                    }
+                }, m_backoffWaitPeriod[i]);
+            }
         }
     }
     
     
+    /*
+     * Removes the strings for the next request from the queue. 
+     */
+    private Vector takeStringsForRequest() {
+        final int size = m_stringsForNextRequest.size();
+        int nbrOfStrings = 0;
+        int nbrOfBytes = 0;
+        while (nbrOfStrings < size) {
+            if(m_maxTilesPerRequest > 0 && nbrOfStrings >= m_maxTilesPerRequest) {
+                break;
+            }
+            // the BitBuffer writes the string and a terminating 0
+            int len = ((String) m_stringsForNextRequest.elementAt(nbrOfStrings)).length() + 1;
+            if(m_maxBytesPerRequest > 0 && nbrOfStrings > 0 
+                    && nbrOfBytes + len > m_maxBytesPerRequest) {
+                break;
+            }
+            nbrOfBytes += len;
+            nbrOfStrings++;
+        }
+        
+        Vector strings;
+        if(nbrOfStrings == size) {
+            strings = m_stringsForNextRequest;
+            m_stringsForNextRequest = new Vector();
+        } else {
+            strings = new Vector(nbrOfStrings);
+            for (int i = 0; i < nbrOfStrings; i++) {
+                strings.addElement(m_stringsForNextRequest.elementAt(i));
+            }
+            Vector rest = new Vector(size - nbrOfStrings + 10);
+            for (int i = nbrOfStrings; i < size; i++) {
+                rest.addElement(m_stringsForNextRequest.elementAt(i));
+            }
+            m_stringsForNextRequest = rest;
+        }
+        return strings;
+    }
+    
+    
     /**
-     * Creates a TileMapRequest and sends it to the network parts for handling
+     * Creates a TileMapRequest for the slot and sends it to the network 
+     * parts for handling
      */
-    private synchronized void schedulePendingRequest() {
-        if(m_stringsBeingRequested != null) {
+    private synchronized void schedulePendingRequest(int slot, int requestID) {
+        if(isCurrentRequest(slot, requestID) 
+                && m_stringsBeingRequested[slot] != null) {
             
-            final TileMapRequest req = new TileMapRequest(this, 
-                    m_stringsBeingRequested,  m_TileMapRequestListener, m_UtilFactory);
-            m_stringsBeingRequested = null;
+            final TileMapRequest req = new TileMapRequest(this, slot, requestID,
+                    m_stringsBeingRequested[slot],  m_TileMapRequestListener, m_UtilFactory);
+            m_stringsBeingRequested[slot] = null;
             
             m_NetworkInterface.pendingPostRequest(req.getConnectionURI(), req, req);
             if(LOG.isDebug()) {
                 LOG.debug("TileMapNetworkHandler.sendRequest()", 
-                        "m_UseXSGzip= "+req.usesXSGZIP()+
+                        "slot= "+slot+
+                        " m_UseXSGzip= "+req.usesXSGZIP()+
                         " m_Buffer.length= "+req.getBufferSize());
             }
         }
@@ -211,16 +398,32 @@ public final class TileMapNetworkHandler {
     /**
      * Creates a TileMapRequest and sends it to the network parts for handling
      */
-    private synchronized void scheduleSingleRequest(String param) {
-         TileMapSingleRequest req = new TileMapSingleRequest(this, 
+    private synchronized void scheduleSingleRequest(int slot, int requestID, String param) {
+         TileMapSingleRequest req = new TileMapSingleRequest(this, slot, requestID,
                     param,  m_TileMapRequestListener);
 
          m_NetworkInterface.pendingGetRequest(req.getConnectionURI(), req);
     }
     
     
-    synchronized void setHasOutgoingRequest(boolean hasOutgoing) {
-        m_HasOutgoingRequest = hasOutgoing;
+    /**
+     * Called when the request of a slot is done. The backoff of the slot is
+     * reset if the request succeeded and the slot is refilled with the 
+     * waiting strings. 
+     * 
+     * @param slot the slot of the request
+     * @param requestID the ID of the request, a late reply to a request 
+     * from a removed slot is ignored
+     * @param succeeded true if the server replied, false if the request 
+     * failed and the backoff already has been increased
+     */
+    synchronized void requestDone(int slot, int requestID, boolean succeeded) {
+        if(isCurrentRequest(slot, requestID)) {
+            m_HasOutgoingRequest[slot] = false;
+            if(succeeded) {
+                m_backoffWaitPeriod[slot] = 0;
+            }
+        }
         // Check if there are more request that needs to be sent to the server. 
         sendRequest();
     }
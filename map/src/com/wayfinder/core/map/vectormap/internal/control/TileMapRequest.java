@@ -81,11 +81,17 @@ final class TileMapRequest implements ResponseCallback, PostContent {
     private final boolean m_useXSGZIP; 
     private final UtilFactory m_utilFactory;
     private final TileMapNetworkHandler m_networkHandler;
+    // the slot of the network handler that sent this request and the ID 
+    // of the request in the slot
+    private final int m_slot;
+    private final int m_requestID;
 
 
-    TileMapRequest(TileMapNetworkHandler handler, Vector paramStrings, 
+    TileMapRequest(TileMapNetworkHandler handler, int slot, int requestID, Vector paramStrings, 
                    TileMapRequestListener listener, UtilFactory factory) {
         m_networkHandler = handler;
+        m_slot = slot;
+        m_requestID = requestID;
         m_paramStrings = paramStrings;
         m_tileMapReqlistener = listener;
         m_utilFactory = factory;
@@ -204,8 +210,7 @@ final class TileMapRequest implements ResponseCallback, PostContent {
             }
             reportFailedRequests(m_paramStrings);
         }
-        m_networkHandler.setHasOutgoingRequest(false);
-        m_networkHandler.resetExponentialBackoff();
+        m_networkHandler.requestDone(m_slot, m_requestID, true);
     }
     
     
@@ -279,9 +284,9 @@ final class TileMapRequest implements ResponseCallback, PostContent {
             LOG.error("TileMapNetworkHandler.error()", "msg= "+error.getInternalMsg());
         }
         
-        m_networkHandler.increaseExponentialBackoff();
+        m_networkHandler.increaseExponentialBackoff(m_slot, m_requestID);
         reportFailedRequests(m_paramStrings);
-        m_networkHandler.setHasOutgoingRequest(false);
+        m_networkHandler.requestDone(m_slot, m_requestID, false);
     }
     
     
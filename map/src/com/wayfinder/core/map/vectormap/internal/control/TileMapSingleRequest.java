@@ -53,11 +53,17 @@ final class TileMapSingleRequest implements ResponseCallback {
     private final TileMapRequestListener m_tileMapReqlistener;
     
     private final TileMapNetworkHandler m_networkHandler;
+    // the slot of the network handler that sent this request and the ID 
+    // of the request in the slot
+    private final int m_slot;
+    private final int m_requestID;
 
 
-    TileMapSingleRequest(TileMapNetworkHandler handler, String paramString, 
+    TileMapSingleRequest(TileMapNetworkHandler handler, int slot, int requestID, String paramString, 
                    TileMapRequestListener listener) {
         m_networkHandler = handler;
+        m_slot = slot;
+        m_requestID = requestID;
         m_paramString = paramString;
         m_tileMapReqlistener = listener;
     }
@@ -126,8 +132,7 @@ final class TileMapSingleRequest implements ResponseCallback {
 //            m_tileMapReqlistener.requestFailed(new String[]{m_paramString});
 //        }
         m_tileMapReqlistener.requestReceived(m_paramString, data, false);
-        m_networkHandler.setHasOutgoingRequest(false);
-        m_networkHandler.resetExponentialBackoff();
+        m_networkHandler.requestDone(m_slot, m_requestID, true);
     }
     
     //-------------------------------------------------------------------------
@@ -142,9 +147,9 @@ final class TileMapSingleRequest implements ResponseCallback {
             LOG.error("TileMapNetworkHandler.error()", "msg= "+error.getInternalMsg());
         }
         
-        m_networkHandler.increaseExponentialBackoff();
+        m_networkHandler.increaseExponentialBackoff(m_slot, m_requestID);
         m_tileMapReqlistener.requestFailed(new String[]{m_paramString});
-        m_networkHandler.setHasOutgoingRequest(false);
+        m_networkHandler.requestDone(m_slot, m_requestID, false);
     }
     
     public String toString() {
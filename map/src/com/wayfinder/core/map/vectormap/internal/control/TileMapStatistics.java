@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.control;
+
+import com.wayfinder.core.map.vectormap.MapStatistics;
+
+/**
+ * Counts the hits and misses of the tiers that the tiles are loaded from 
+ * and the time spent extracting them, see {@link MapStatistics}. 
+ * <p>
+ * The counters are updated by the {@link TileMapLoader}, the extraction 
+ * thread and the extraction workers. Each update only holds the lock of 
+ * this object while adding to a counter so the statistics can always be
+ * collected. 
+ * <p>
+ * The bytes of the persistent cache are counted by the cache itself, the
+ * values at the last reset are kept here so that they can be subtracted.  
+ */
+final class TileMapStatistics {
+    
+    private final int[] m_NbrOfHits = new int[MapStatistics.NBR_OF_TIERS];
+    private final int[] m_NbrOfMisses = new int[MapStatistics.NBR_OF_TIERS];
+    private final long[] m_NbrOfBytesRead = new long[MapStatistics.NBR_OF_TIERS];
+    private int m_NbrOfExtractedTiles;
+    private long m_ExtractionTime;
+    private int m_NbrOfTriangulatedTiles;
+    private long m_TriangulationTime;
+    
+    // the bytes read and written by the persistent cache at the last reset
+    private long m_CacheBytesReadAtReset;
+    private long m_CacheBytesWrittenAtReset;
+    
+    /**
+     * @param tier the tier where the tile was found
+     * @param nbrOfBytes the size of the tile, 0 if it's counted later with
+     * {@link #addBytesRead(int, int)}
+     */
+    synchronized void addHit(int tier, int nbrOfBytes) {
+        m_NbrOfHits[tier]++;
+        m_NbrOfBytesRead[tier] += nbrOfBytes;
+    }
+    
+    /**
+     * @param tier the tier where the tile wasn't found
+     */
+    synchronized void addMiss(int tier) {
+        m_NbrOfMisses[tier]++;
+    }
+    
+    /**
+     * @param tier the tier that the bytes was read from
+     * @param nbrOfBytes the number of bytes
+     */
+    synchronized void addBytesRead(int tier, int nbrOfBytes) {
+        m_NbrOfBytesRead[tier] += nbrOfBytes;
+    }
+    
+    /**
+     * @param time the time in ms it took to extract a tile
+     */
+    synchronized void addExtraction(long time) {
+        m_NbrOfExtractedTiles++;
+        m_ExtractionTime += time;
+    }
+    
+    /**
+     * @param time the time in ms it took to triangulate a tile
+     */
+    synchronized void addTriangulation(long time) {
+        m_NbrOfTriangulatedTiles++;
+        m_TriangulationTime += time;
+    }
+    
+    /**
+     * Creates a snapshot of the counters. 
+     * 
+     * @param cacheBytesRead the bytes read by the persistent cache since it
+     * was created
+     * @param cacheBytesWritten the bytes written by the persistent cache 
+     * since it was created
+     * @param extractionQueueSize the number of tiles waiting to be extracted
+     * @param networkQueueSize the number of tiles waiting to be requested
+     * @return the snapshot
+     */
+    synchronized MapStatistics createSnapshot(long cacheBytesRead, long cacheBytesWritten, 
+            int extractionQueueSize, int networkQueueSize) {
+        
+        long[] bytesRead = new long[MapStatistics.NBR_OF_TIERS];
+        System.arraycopy(m_NbrOfBytesRead, 0, bytesRead, 0, bytesRead.length);
+        bytesRead[MapStatistics.TIER_PERSISTENT_CACHE] = 
+            Math.max(0, cacheBytesRead - m_CacheBytesReadAtReset);
+        
+        return new MapStatistics(copy(m_NbrOfHits), copy(m_NbrOfMisses), bytesRead, 
+                Math.max(0, cacheBytesWritten - m_CacheBytesWrittenAtReset), 
+                m_NbrOfExtractedTiles, m_ExtractionTime, 
+                m_NbrOfTriangulatedTiles, m_TriangulationTime, 
+                extractionQueueSize, networkQueueSize);
+    }
+    
+    /**
+     * Sets all counters to 0. 
+     * 
+     * @param cacheBytesRead the bytes read by the persistent cache since it
+     * was created
+     * @param cacheBytesWritten the bytes written by the persistent cache 
+     * since it was created
+     */
+    synchronized void reset(long cacheBytesRead, long cacheBytesWritten) {
+        for(int i=0; i<MapStatistics.NBR_OF_TIERS; i++) {
+            m_NbrOfHits[i] = 0;
+            m_NbrOfMisses[i] = 0;
+            m_NbrOfBytesRead[i] = 0;
+        }
+        m_NbrOfExtractedTiles = 0;
+        m_ExtractionTime = 0;
+        m_NbrOfTriangulatedTiles = 0;
+        m_TriangulationTime = 0;
+        m_CacheBytesReadAtReset = cacheBytesRead;
+        m_CacheBytesWrittenAtReset = cacheBytesWritten;
+    }
+    
+    private static int[] copy(int[] array) {
+        int[] copy = new int[array.length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+
+package com.wayfinder.core.map.vectormap.internal.control;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileFeature;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStore;
+
+/**
+ * Reads and writes the triangulated polygons of a geometry tile, so the
+ * triangles can be saved in the persistent cache together with the tile 
+ * and don't need to be triangulated again the next time the tile is 
+ * loaded from the cache. 
+ * <p>
+ * The record is only valid for the tile and TileMapFormatDesc it was
+ * created from, {@link #read(byte[], TileFeatureStore, long, long)} will 
+ * reject records with another TileMapFormatDesc CRC or tile CRC. 
+ * 
+ * <pre>
+ * |--------------------------------------------------|
+ * | Triangles record           | SIZE                |
+ * |--------------------------------------------------|
+ * | TileMapFormatDesc CRC      | 4 bytes             |
+ * | Tile CRC                   | 4 bytes             |
+ * | Triangulation time (ms)    | 4 bytes             |
+ * | Number of polygons         | 2 bytes             |
+ * |--------------------------------------------------|
+ * | For each polygon:                                |
+ * | Feature index              | 2 bytes             |
+ * | Vertex indices             | 3*2 bytes/triangle  |
+ * |--------------------------------------------------|
+ * </pre>
+ */
+final class TriangulatedPolygons {
+    
+    private static final int HEADER_SIZE = 14;
+    
+    /**
+     * The max size of a record, the cache stores the size of each record 
+     * in a signed short. 
+     */
+    static final int MAX_RECORD_SIZE = Short.MAX_VALUE;
+    
+    private TriangulatedPolygons() {
+    }
+    
+    /**
+     * Returns the number of coordinate values to use for a polygon. The
+     * last vertex is skipped if it's the same as the first. 
+     * 
+     * @param coords the coordinates of the tile
+     * @param offset the offset of the polygon in coords
+     * @param length the number of coordinate values of the polygon
+     * @return the number of coordinate values to triangulate
+     */
+    static int getVerticesLength(int[] coords, int offset, int length) {
+        if(coords[offset] == coords[offset+length-2] && coords[offset+1] == coords[offset+length-1]) {
+            return length-2;
+        }
+        return length;
+    }
+    
+    /**
+     * @param features the features of the tile
+     * @param feature the index of the feature
+     * @return true if the feature is a polygon that should be triangulated
+     */
+    static boolean isTriangulated(TileFeatureStore features, int feature) {
+        return features.getPrimitiveType(feature) == TileFeature.POLYGON 
+            && features.getCoordsLength(feature) >= 6;
+    }
+    
+    /**
+     * Creates a record of the triangulated polygons. 
+     * 
+     * @param features the triangulated features of the tile
+     * @param tmfdCrc the CRC of the TileMapFormatDesc used to load the tile
+     * @param tileCrc the CRC of the tile
+     * @param triangulationTime the time in ms it took to triangulate the tile
+     * @return the record or null if there are no polygons or if the 
+     * triangles couldn't be saved
+     */
+    static byte[] write(TileFeatureStore features, long tmfdCrc, long tileCrc, int triangulationTime) {
+        final int nbrFeatures = features.getNbrFeatures();
+        if(nbrFeatures > 0xFFFF) {
+            return null;
+        }
+        
+        int nbrPolygons = 0;
+        int size = HEADER_SIZE;
+        for(int i=0; i<nbrFeatures; i++) {
+            if(isTriangulated(features, i)) {
+                ConcavePolygon cp = features.getConcavePolygon(i);
+                if(cp == null) {
+                    // failed to triangulate, triangulate again next time
+                    return null;
+                }
+                nbrPolygons++;
+                size += 2 + cp.getIndexBuffer().length * 6;
+            }
+        }
+        if(nbrPolygons == 0 || size > MAX_RECORD_SIZE) {
+            return null;
+        }
+        
+        byte[] data = new byte[size];
+        int pos = writeInt(data, 0, (int)tmfdCrc);
+        pos = writeInt(data, pos, (int)tileCrc);
+        pos = writeInt(data, pos, triangulationTime);
+        pos = writeShort(data, pos, nbrPolygons);
+        for(int i=0; i<nbrFeatures; i++) {
+            if(isTriangulated(features, i)) {
+                pos = writeShort(data, pos, i);
+                final short[][] ibuff = features.getConcavePolygon(i).getIndexBuffer();
+                for(int j=0; j<ibuff.length; j++) {
+                    pos = writeShort(data, pos, ibuff[j][0]);
+                    pos = writeShort(data, pos, ibuff[j][1]);
+                    pos = writeShort(data, pos, ibuff[j][2]);
+                }
+            }
+        }
+        return data;
+    }
+    
+    /**
+     * Sets the triangulated polygons of the tile from a record. Nothing
+     * is changed if the record doesn't match the tile. 
+     * 
+     * @param data the record
+     * @param features the features of the tile, the coordinates must not
+     * have been scaled yet
+     * @param tmfdCrc the CRC of the TileMapFormatDesc used to load the tile
+     * @param tileCrc the CRC of the tile
+     * @return the time in ms it took to triangulate the tile when the record
+     * was created, or -1 if the record doesn't match the tile
+     */
+    static int read(byte[] data, TileFeatureStore features, long tmfdCrc, long tileCrc) {
+        if(data.length < HEADER_SIZE 
+                || readInt(data, 0) != (int)tmfdCrc 
+                || readInt(data, 4) != (int)tileCrc) {
+            return -1;
+        }
+        final int triangulationTime = readInt(data, 8);
+        final int nbrPolygons = readShort(data, 12) & 0xFFFF;
+        
+        final int[] coords = features.getCoords();
+        final int nbrFeatures = features.getNbrFeatures();
+        // set the polygons when the whole record has been read
+        ConcavePolygon[] polygons = new ConcavePolygon[nbrFeatures];
+        int pos = HEADER_SIZE;
+        int nbrRead = 0;
+        for(int i=0; i<nbrFeatures; i++) {
+            if(isTriangulated(features, i)) {
+                if(nbrRead == nbrPolygons 
+                        || pos + 2 > data.length 
+                        || (readShort(data, pos) & 0xFFFF) != i) {
+                    return -1;
+                }
+                pos += 2;
+                
+                final int offset = features.getCoordsOffset(i);
+                final int verticesLength = getVerticesLength(coords, offset, features.getCoordsLength(i));
+                ConcavePolygon cp = new ConcavePolygon(coords, offset, verticesLength);
+                final short[][] ibuff = cp.getIndexBuffer();
+                if(pos + ibuff.length * 6 > data.length) {
+                    return -1;
+                }
+                for(int j=0; j<ibuff.length; j++) {
+                    ibuff[j][0] = readShort(data, pos);
+                    ibuff[j][1] = readShort(data, pos+2);
+                    ibuff[j][2] = readShort(data, pos+4);
+                    pos += 6;
+                }
+                polygons[i] = cp;
+                nbrRead++;
+            }
+        }
+        if(nbrRead != nbrPolygons || pos != data.length) {
+            return -1;
+        }
+        
+        for(int i=0; i<nbrFeatures; i++) {
+            if(polygons[i] != null) {
+                features.setConcavePolygon(i, polygons[i]);
+            }
+        }
+        return triangulationTime;
+    }
+    
+    private static int writeInt(byte[] data, int pos, int value) {
+        data[pos]   = (byte)(value >> 24);
+        data[pos+1] = (byte)(value >> 16);
+        data[pos+2] = (byte)(value >> 8);
+        data[pos+3] = (byte)value;
+        return pos+4;
+    }
+    
+    private static int writeShort(byte[] data, int pos, int value) {
+        data[pos]   = (byte)(value >> 8);
+        data[pos+1] = (byte)value;
+        return pos+2;
+    }
+    
+    private static int readInt(byte[] data, int pos) {
+        return ((data[pos] & 0xFF) << 24) 
+             | ((data[pos+1] & 0xFF) << 16) 
+             | ((data[pos+2] & 0xFF) << 8) 
+             |  (data[pos+3] & 0xFF);
+    }
+    
+    private static short readShort(byte[] data, int pos) {
+        return (short)(((data[pos] & 0xFF) << 8) | (data[pos+1] & 0xFF));
+    }
+}
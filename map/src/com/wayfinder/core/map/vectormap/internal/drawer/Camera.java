@@ -724,25 +724,6 @@ public class Camera implements MapCameraInterface {
         return screenCoord;
     }
     
-    /**
-     * Return the screen coordinates for the worldX and worldY specified by the 
-     * parameter. Note that the screen coordinates has an offset with halfscreen
-     * width / height. 
-     * 
-     * @param worldX world latitude in MC2
-     * @param worldY world latitude in MC2
-     * @return the screen coordinates [screenX, screenY] with a offset of halfscreen
-     *         width / height. 
-     */
-    int[] getNewScreenCoordinateInternal(long worldX, long worldY) {
-       
-        double screenX   = viewProj[0][0]*worldX + viewProj[0][1]*worldY + viewProj[0][3];
-        double screenY   = viewProj[1][0]*worldX + viewProj[1][1]*worldY + viewProj[1][3];
-        double Z         = viewProj[3][0]*worldX + viewProj[3][1]*worldY + viewProj[3][3];
-        
-        return new int[]{ (int)(screenX/Z), (int)(screenY/Z) };
-    }
-    
     /**
      * Returns the current camera rotation
      *
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.drawer;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStore;
+
+/**
+ * A uniform grid over the features of a {@link TileMapWrapper}, used by the 
+ * {@link MapDrawer} to only visit the features that may intersect the 
+ * camera bounding box. 
+ * <p>
+ * The grid covers the bounding box of all features in the wrapper and 
+ * holds, for each draw level and cell, the positions in 
+ * {@link TileMapWrapper#getFeatureRefs(int)} of the features whose bounding 
+ * box overlaps the cell. A query marks the positions in a bit mask, so the 
+ * features are still visited in draw order and a feature overlapping 
+ * several cells is only visited once. 
+ * <p>
+ * The grid is immutable and replaced when the features of the wrapper 
+ * changes. 
+ */
+final class FeatureGrid {
+    
+    static final int GRID_SIZE = 8;
+    
+    // draw levels with fewer features than this are not indexed
+    static final int MIN_NBR_FEATURES = 16;
+    
+    private static final int NBR_CELLS = GRID_SIZE * GRID_SIZE;
+    
+    // the bounding box of all features, minX, maxX, minY, maxY
+    private final int[] m_bounds = new int[4];
+    private final long m_cellWidth;
+    private final long m_cellHeight;
+    
+    // for each draw level the positions of cell c are stored in 
+    // m_cellPositions[level] from m_cellStart[level][c] to 
+    // m_cellStart[level][c+1], null if the level isn't indexed
+    private final int[][] m_cellStart;
+    private final int[][] m_cellPositions;
+    // the number of features of each draw level when the grid was built
+    private final int[] m_nbrFeatures;
+    
+    /**
+     * Builds the grid. 
+     * 
+     * @param featureRefs the feature references of each draw level
+     * @param nbrFeatureRefs the number of references of each draw level
+     * @param featureStores the stores indexed by importance
+     * @param importanceShift the shift of the importance in a reference
+     * @param indexMask the mask of the feature index in a reference 
+     */
+    FeatureGrid(int[][] featureRefs, int[] nbrFeatureRefs, TileFeatureStore[] featureStores, 
+            int importanceShift, int indexMask) {
+        final int nbrLevels = featureRefs.length;
+        m_cellStart = new int[nbrLevels][];
+        m_cellPositions = new int[nbrLevels][];
+        m_nbrFeatures = new int[nbrLevels];
+        
+        final int[] bounds = m_bounds;
+        bounds[0] = Integer.MAX_VALUE;
+        bounds[1] = Integer.MIN_VALUE;
+        bounds[2] = Integer.MAX_VALUE;
+        bounds[3] = Integer.MIN_VALUE;
+        for (int level = 0; level < nbrLevels; level++) {
+            final int[] refs = featureRefs[level];
+            final int size = nbrFeatureRefs[level];
+            for (int i = 0; i < size; i++) {
+                final int ref = refs[i];
+                final int[] ce = featureStores[ref >>> importanceShift].getCoordExtremes();
+                final int pos = (ref & indexMask) << 2;
+                if (ce[pos] < bounds[0]) bounds[0] = ce[pos];
+                if (ce[pos+1] > bounds[1]) bounds[1] = ce[pos+1];
+                if (ce[pos+2] < bounds[2]) bounds[2] = ce[pos+2];
+                if (ce[pos+3] > bounds[3]) bounds[3] = ce[pos+3];
+            }
+        }
+        m_cellWidth = ((long)bounds[1] - bounds[0]) / GRID_SIZE + 1;
+        m_cellHeight = ((long)bounds[3] - bounds[2]) / GRID_SIZE + 1;
+        
+        final int[] cellRange = new int[4];
+        for (int level = 0; level < nbrLevels; level++) {
+            final int[] refs = featureRefs[level];
+            final int size = nbrFeatureRefs[level];
+            m_nbrFeatures[level] = size;
+            if (size < MIN_NBR_FEATURES) {
+                continue;
+            }
+            
+            // count the features of each cell and then fill the cells
+            final int[] cellStart = new int[NBR_CELLS + 1];
+            for (int i = 0; i < size; i++) {
+                final int ref = refs[i];
+                getCellRange(featureStores[ref >>> importanceShift].getCoordExtremes(), 
+                        (ref & indexMask) << 2, cellRange);
+                for (int y = cellRange[2]; y <= cellRange[3]; y++) {
+                    for (int x = cellRange[0]; x <= cellRange[1]; x++) {
+                        cellStart[y * GRID_SIZE + x + 1]++;
+                    }
+                }
+            }
+            for (int c = 0; c < NBR_CELLS; c++) {
+                cellStart[c + 1] += cellStart[c];
+            }
+            
+            final int[] positions = new int[cellStart[NBR_CELLS]];
+            final int[] cellEnd = new int[NBR_CELLS];
+            System.arraycopy(cellStart, 0, cellEnd, 0, NBR_CELLS);
+            for (int i = 0; i < size; i++) {
+                final int ref = refs[i];
+                getCellRange(featureStores[ref >>> importanceShift].getCoordExtremes(), 
+                        (ref & indexMask) << 2, cellRange);
+                for (int y = cellRange[2]; y <= cellRange[3]; y++) {
+                    for (int x = cellRange[0]; x <= cellRange[1]; x++) {
+                        positions[cellEnd[y * GRID_SIZE + x]++] = i;
+                    }
+                }
+            }
+            m_cellStart[level] = cellStart;
+            m_cellPositions[level] = positions;
+        }
+    }
+    
+    /**
+     * Marks the features of the draw level that may intersect the camera 
+     * bounding box. Bit (i &amp; 31) of mask[i &gt;&gt; 5] is set if the 
+     * feature at position i should be visited. 
+     * <p>
+     * Nothing is marked and false is returned if all features should be 
+     * visited, i.e. if the level isn't indexed or the camera bounding box 
+     * covers the whole grid. 
+     * 
+     * @param level the draw level
+     * @param size the current number of features of the draw level, 
+     * features added after the grid was built are always marked
+     * @param camBox the camera bounding box, minX, maxX, minY, maxY
+     * @param mask the bit mask with room for size bits
+     * @return true if the mask was set, false if all features should be
+     * visited
+     */
+    boolean query(int level, int size, int[] camBox, int[] mask) {
+        final int[] cellStart = m_cellStart[level];
+        final int[] bounds = m_bounds;
+        if (cellStart == null 
+                || (camBox[0] <= bounds[0] && camBox[1] >= bounds[1] 
+                    && camBox[2] <= bounds[2] && camBox[3] >= bounds[3])) {
+            return false;
+        }
+        
+        final int nbrWords = (size + 31) >> 5;
+        for (int i = 0; i < nbrWords; i++) {
+            mask[i] = 0;
+        }
+        
+        if (camBox[0] < bounds[1] && camBox[1] > bounds[0] 
+                && camBox[2] < bounds[3] && camBox[3] > bounds[2]) {
+            final int[] positions = m_cellPositions[level];
+            final int minCellX = getCell(camBox[0], bounds[0], m_cellWidth);
+            final int maxCellX = getCell(camBox[1], bounds[0], m_cellWidth);
+            final int minCellY = getCell(camBox[2], bounds[2], m_cellHeight);
+            final int maxCellY = getCell(camBox[3], bounds[2], m_cellHeight);
+            for (int y = minCellY; y <= maxCellY; y++) {
+                for (int x = minCellX; x <= maxCellX; x++) {
+                    final int cell = y * GRID_SIZE + x;
+                    final int end = cellStart[cell + 1];
+                    for (int j = cellStart[cell]; j < end; j++) {
+                        final int pos = positions[j];
+                        mask[pos >> 5] |= 1 << (pos & 31);
+                    }
+                }
+            }
+        }
+        
+        for (int pos = m_nbrFeatures[level]; pos < size; pos++) {
+            mask[pos >> 5] |= 1 << (pos & 31);
+        }
+        return true;
+    }
+    
+    private void getCellRange(int[] ce, int pos, int[] cellRange) {
+        cellRange[0] = getCell(ce[pos], m_bounds[0], m_cellWidth);
+        cellRange[1] = getCell(ce[pos+1], m_bounds[0], m_cellWidth);
+        cellRange[2] = getCell(ce[pos+2], m_bounds[2], m_cellHeight);
+        cellRange[3] = getCell(ce[pos+3], m_bounds[2], m_cellHeight);
+    }
+    
+    private static int getCell(int coord, int min, long cellSize) {
+        final long cell = ((long)coord - min) / cellSize;
+        if (cell < 0) {
+            return 0;
+        } else if (cell >= GRID_SIZE) {
+            return GRID_SIZE - 1;
+        }
+        return (int)cell;
+    }
+}
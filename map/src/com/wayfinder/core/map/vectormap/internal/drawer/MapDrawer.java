@@ -40,13 +40,12 @@ import com.wayfinder.core.map.vectormap.internal.control.ConcavePolygon;
 import com.wayfinder.core.map.vectormap.internal.control.TileMapControlThread;
 import com.wayfinder.core.map.vectormap.internal.process.TextPlacementInfo;
 import com.wayfinder.core.map.vectormap.internal.process.TileFeature;
-import com.wayfinder.core.map.vectormap.internal.process.TileFeatureData;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStore;
 import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
 import com.wayfinder.core.shared.BoundingBox;
 import com.wayfinder.core.shared.Position;
 import com.wayfinder.core.shared.internal.debug.LogFactory;
 import com.wayfinder.core.shared.internal.debug.Logger;
-import com.wayfinder.core.shared.util.IntVector;
 import com.wayfinder.core.shared.util.qtree.QuadTree;
 import com.wayfinder.core.shared.util.qtree.QuadTreeNode;
 import com.wayfinder.pal.graphics.WFFont;
@@ -75,11 +74,18 @@ public class MapDrawer {
     private Vector m_poiBoxes;
     private Vector objectBoxes;
     private Vector bitmapsToBeRendered;
-    private Vector tracking2DTextBoundingBoxes;
+    
+    // Size in pixels of the cells of the collision indices
+    private static final int COLLISION_CELL_SIZE = 32;
+    
+    // Screen boxes of the drawn tracking texts
+    private final ScreenBoxIndex m_trackingTextBoxes = new ScreenBoxIndex(COLLISION_CELL_SIZE);
     
     private float iCurrentZoomLevel;
     
     private Vector m_cityCenterObjects;
+    // Screen boxes of the city centres in m_cityCenterObjects
+    private final ScreenBoxIndex m_cityCenterBoxes = new ScreenBoxIndex(COLLISION_CELL_SIZE);
     
     private int clipLine;
     private long[] camBoxScreenCoords;
@@ -139,6 +145,19 @@ public class MapDrawer {
     private int[] m_screenXCoordsBuffer = new int[m_screenCoordsBufferCapacity];
     private int[] m_screenYCoordsBuffer = new int[m_screenCoordsBufferCapacity];
     
+    // Bit mask of the features to visit in drawMap(), see FeatureGrid
+    private int[] m_visibleFeatures = new int[32];
+    
+    // The number of features visited and drawn since init()
+    private int m_nbrFeaturesVisited;
+    private int m_nbrFeaturesDrawn;
+    
+    // What drawMap() draws, see drawTileToRaster() and drawTileOverlays()
+    private static final int DRAW_ALL = 0;
+    private static final int DRAW_GEOMETRY = 1;
+    private static final int DRAW_OVERLAYS = 2;
+    private int m_drawMode = DRAW_ALL;
+    
     /**
      * Creates a new MapDrawer
      * 
@@ -158,7 +177,6 @@ public class MapDrawer {
         m_poiBoxes = new Vector();
         objectBoxes = new Vector();
         m_cityCenterObjects = new Vector();
-        tracking2DTextBoundingBoxes = new Vector();        
         clipNearVectorNorm = new float[2];
         m_TrackingStringAdded = new Hashtable();
     }
@@ -231,12 +249,32 @@ public class MapDrawer {
         m_poiBoxes.removeAllElements();               
         //Clears the "bitmaps-to-be-rendered-queue"
         bitmapsToBeRendered.removeAllElements();
-        iDrawedPoiBoxes.clear();        
+        m_drawnPoiBoxes.reset(iScreenInfo.getScreenWidth(), iScreenInfo.getScreenHeight());
         // Clears the Vector containing the bounding boxes for the polygons
         objectBoxes.removeAllElements();    
         // Resets text data for city centres               
         m_cityCenterObjects.removeAllElements();  
+        m_cityCenterBoxes.reset(iScreenInfo.getScreenWidth(), iScreenInfo.getScreenHeight());
         m_TrackingStringAdded.clear();
+        m_nbrFeaturesVisited = 0;
+        m_nbrFeaturesDrawn = 0;
+    }
+    
+    /**
+     * @return the number of features visited by 
+     * {@link #drawMap(TileMapWrapper, int, int, int, int[], Vector, Camera, int)} 
+     * since the frame was started
+     */
+    int getNbrOfFeaturesVisited() {
+        return m_nbrFeaturesVisited;
+    }
+    
+    /**
+     * @return the number of visited features that was inside the camera 
+     * bounding box and drawn since the frame was started
+     */
+    int getNbrOfFeaturesDrawn() {
+        return m_nbrFeaturesDrawn;
     }
     
     
@@ -281,6 +319,67 @@ public class MapDrawer {
         m_halfHeight = halfHeight;
     }
     
+    /**
+     * Draws the lines and polygons of all levels of a tile on an off-screen 
+     * image, used by the {@link TileRasterCache}. Only supported in 2D. 
+     * <p>
+     * The image is not cleared and the bitmaps and the texts of the tile are 
+     * not drawn, see {@link #drawTileOverlays(TileMapWrapper, int[], Camera, int)}. 
+     * 
+     * @param tmw  tilemap wrapper, contains the data to draw
+     * @param imageGraphics  the graphics of the image
+     * @param imageX  the screen x coordinate of the left edge of the image
+     * @param imageY  the screen y coordinate of the top edge of the image
+     * @param tileBox  the bounding box of the tile, same order as the camera box
+     * @param startPass  draw pass to start with
+     * @param camera  the camera
+     * @param scaleIndex  the current scale index
+     */
+    void drawTileToRaster(TileMapWrapper tmw, WFGraphics imageGraphics, int imageX, int imageY, 
+            int[] tileBox, int startPass, Camera camera, int scaleIndex) {
+        final WFGraphics screenGraphics = this.g;
+        final int halfWidth = m_halfWidth;
+        final int halfHeight = m_halfHeight;
+        
+        this.g = imageGraphics;
+        m_halfWidth = halfWidth - imageX;
+        m_halfHeight = halfHeight - imageY;
+        m_drawMode = DRAW_GEOMETRY;
+        try {
+            for (int level=0; level<=Utils.MAX_LEVEL; level++) {
+                for (int pass=startPass; pass<=1; pass++) {
+                    drawMap(tmw, level, pass, startPass, tileBox, null, camera, scaleIndex);
+                }
+            }
+        } finally {
+            this.g = screenGraphics;
+            m_halfWidth = halfWidth;
+            m_halfHeight = halfHeight;
+            m_drawMode = DRAW_ALL;
+        }
+    }
+    
+    /**
+     * Adds the bitmaps and polygon boxes of a tile that is drawn from an 
+     * off-screen image, i.e. what {@link #drawTileToRaster(TileMapWrapper, 
+     * WFGraphics, int, int, int[], int, Camera, int)} doesn't draw.
+     * 
+     * @param tmw  tilemap wrapper, contains the data to draw
+     * @param camBox  camera's bounding box
+     * @param camera  the camera
+     * @param scaleIndex  the current scale index
+     */
+    void drawTileOverlays(TileMapWrapper tmw, int[] camBox, Camera camera, int scaleIndex) {
+        m_drawMode = DRAW_OVERLAYS;
+        try {
+            for (int level=0; level<=Utils.MAX_LEVEL; level++) {
+                drawMap(tmw, level, 1, 1, camBox, null, camera, scaleIndex);
+            }
+        } finally {
+            m_drawMode = DRAW_ALL;
+        }
+    }
+    
     /**
      * Draws the current vector data.
      * 
@@ -299,11 +398,11 @@ public class MapDrawer {
      * @param camera  the camera
      */
     public void drawMap(TileMapWrapper tmw, int level, int pass,int startPass, int[] camBox, Vector tracking2Dstrings, Camera camera, int scaleIndex) {
-        Vector geoDatas = tmw.getGeoData(level);
-        final int size = geoDatas.size();
+        final int size = tmw.getNbrFeatures(level);
         if (size == 0) {
             return;
         }
+        final int[] featureRefs = tmw.getFeatureRefs(level);
 
         final TileMapFormatDesc tmfd = m_Tmfd;
         int numberOfImportance = iNbrOfImportanceByLayerNbr[tmfd.getLayerNbrFromID(tmw.getLayerID())];
@@ -320,16 +419,51 @@ public class MapDrawer {
         final int halfHeight = m_halfHeight;
         final boolean cameraIsPanned = m_cameraIsPanned;
         final WFGraphics g = this.g;
+        final int drawMode = m_drawMode;
         
         float[][] newtransform = camera.getTransform();
+        
+        if (pass == 1 && drawMode == DRAW_ALL) {
+            tmw.clearTextPlacementInfo(level);
+        }
+        
+        // Only visit the features that may be inside the camera bounding box
+        int[] visibleFeatures = null;
+        final FeatureGrid featureGrid = tmw.getFeatureGrid();
+        if (featureGrid != null) {
+            visibleFeatures = m_visibleFeatures;
+            if (visibleFeatures.length < ((size + 31) >> 5)) {
+                visibleFeatures = new int[(size + 31) >> 5];
+                m_visibleFeatures = visibleFeatures;
+            }
+            if (!featureGrid.query(level, size, camBox, visibleFeatures)) {
+                visibleFeatures = null;
+            }
+        }
+        int nbrVisited = 0;
+        int nbrDrawn = 0;
 
         // For all features in the current level
         for (int i=0; i<size; i++) {
             
-            TileFeatureData geoData = (TileFeatureData)geoDatas.elementAt(i);
-            int[] ip = geoData.getImportanceAndPrimitiveType();
-            int importance = ip[0];
-            int primitiveType = ip[1];
+            if (visibleFeatures != null) {
+                final int visibleBits = visibleFeatures[i >> 5];
+                if (visibleBits == 0) {
+                    // skip the rest of the word
+                    i |= 31;
+                    continue;
+                }
+                if ((visibleBits & (1 << (i & 31))) == 0) {
+                    continue;
+                }
+            }
+            nbrVisited++;
+            
+            final int featureRef = featureRefs[i];
+            final TileFeatureStore features = tmw.getFeatureStore(featureRef);
+            final int feature = TileMapWrapper.getFeatureIndex(featureRef);
+            int importance = TileMapWrapper.getImportance(featureRef);
+            int primitiveType = features.getPrimitiveType(feature);
             
             /* Don't draw more importance than are defined for the current scale */
             if(importance >= numberOfImportance) {
@@ -346,20 +480,22 @@ public class MapDrawer {
             
             if(primitiveType == TileFeature.BITMAP) {
                 /* Don't draw bitmap in pass 0 */
-                if (pass==0 || !shouldShowServerPOIs) {
+                if (pass==0 || !shouldShowServerPOIs || drawMode == DRAW_GEOMETRY) {
                     continue;
                 }
                 
-                final int[] latlon = geoData.getLatLon();
+                final int lat = features.getLatitude(feature);
+                final int lon = features.getLongitude(feature);
                 
-                if (latlon[0] >= camBox[1] || 
-                    latlon[0] <= camBox[0] || 
-                    latlon[1] >= camBox[3] || 
-                    latlon[1] <= camBox[2]) {
+                if (lat >= camBox[1] || 
+                    lat <= camBox[0] || 
+                    lon >= camBox[3] || 
+                    lon <= camBox[2]) {
                     continue;
                 }
+                nbrDrawn++;
                 
-                int maxScale = geoData.getMaxScale();
+                int maxScale = features.getMaxScale(feature);
                 /* 
                  * The current bitmaps should be shown on the screen 
                  * (i.e. the zoomlevel are lower then max scale). 
@@ -369,7 +505,7 @@ public class MapDrawer {
                  */
                 if (maxScale >= zoomLevel || maxScale == -1) {
                     
-                    String url = TileMapControlThread.getString(geoData.getBitmapIndex());
+                    String url = TileMapControlThread.getString(features.getBitmapIndex(feature));
                     WFImage bitMapImage = null;
                     
                     if (url != null) {
@@ -378,10 +514,10 @@ public class MapDrawer {
                     
                     if (bitMapImage != null) {
 
-                    	screenMin[0] = latlon[0];
-                        screenMin[1] = latlon[1];
-                        screenMax[0] = latlon[0];
-                        screenMax[1] = latlon[1];
+                    	screenMin[0] = lat;
+                        screenMin[1] = lon;
+                        screenMax[0] = lat;
+                        screenMax[1] = lon;
                         if (camera.isIn3DMode()) {
                             applyTransform(screenMax, 2, newtransform);
                             applyTransform(screenMin, 2, newtransform);
@@ -395,10 +531,10 @@ public class MapDrawer {
                         screenMax[0] += halfWidth;
                         screenMax[1] += halfHeight;
                         
-                        String text = geoData.getText();
+                        String text = features.getText(feature);
                         // City centre feature
                    	    if (text != null) {
-                            final int featureType = geoData.getFeatureType(); 
+                            final int featureType = features.getFeatureType(feature); 
            	            	if (featureType >= 23 && featureType <= 30) {
 	       	                    // Use larger font for main city centres
     	                        WFFont font = null;
@@ -417,6 +553,7 @@ public class MapDrawer {
             	                if (!checkCityCentresCollission(bbox)) {
         	                        CityCentreObject ccObj = new CityCentreObject(text, font, bbox);
     	                            m_cityCenterObjects.addElement(ccObj);
+    	                            m_cityCenterBoxes.add(bbox.getMinX(), bbox.getMinY(), bbox.getMaxX(), bbox.getMaxY());
 	                            }
                         	}
                         }
@@ -425,10 +562,10 @@ public class MapDrawer {
                         screenMin[1] -=23;//adjusted when image is used later on.
                         
                         POIBox poiBox = new POIBox(screenMin[0], screenMin[1], screenMax[0], screenMax[1], 
-                                new Position(latlon[0], latlon[1]), text, tmw, importance);
+                                new Position(lat, lon), text, tmw, importance);
                         
                         // Adds the bitmap to the map
-                        int[] poipoint = {latlon[0], latlon[1]};
+                        int[] poipoint = {lat, lon};
                         final Vector bitmapsToBeRendered = this.bitmapsToBeRendered;
                         bitmapsToBeRendered.addElement(poipoint);
                         bitmapsToBeRendered.addElement(bitMapImage);
@@ -440,21 +577,23 @@ public class MapDrawer {
                 continue;
             }
              
-            int[] coordExtremes = geoData.getCoordExtremes();
-            int minX = coordExtremes[0];
-            int maxX = coordExtremes[1];
-            int minY = coordExtremes[2];
-            int maxY = coordExtremes[3];
+            final int[] coordExtremes = features.getCoordExtremes();
+            final int extremesPos = feature << 2;
+            int minX = coordExtremes[extremesPos];
+            int maxX = coordExtremes[extremesPos+1];
+            int minY = coordExtremes[extremesPos+2];
+            int maxY = coordExtremes[extremesPos+3];
             
             /* Cull off-screen objects */
             if((minX>=camBox[1] || maxX<=camBox[0] || 
                      minY>=camBox[3] || maxY<=camBox[2])) {
-                if (primitiveType == TileFeature.LINE) {
+                if (primitiveType == TileFeature.LINE && drawMode == DRAW_ALL) {
                     // Make sure no off-screen texts are left on-screen.
-                    geoData.setTextPlacementInfo(null);
+                    features.setTextPlacementInfo(feature, null);
                 }
                 continue;
             }
+            nbrDrawn++;
             
             //--------------------------------------------------------------------------------------------
             // Draw Polygons
@@ -462,8 +601,8 @@ public class MapDrawer {
                 if (pass == 1) {
                     /* Create objectBoxes that are used to draw the name of the bua in the blue box when
                      * we move the cursor over it */
-                    final String text = geoData.getText();
-                    if (text != null) {
+                    final String text = features.getText(feature);
+                    if (text != null && drawMode != DRAW_GEOMETRY) {
                         screenMin[0] = minX;
                         screenMin[1] = minY;
                         screenMax[0] = maxX;
@@ -481,13 +620,14 @@ public class MapDrawer {
                         screenMax[0] += halfWidth;
                         screenMax[1] += halfHeight;
                     
-                        objectBoxes.addElement(new ObjectBox(screenMin[0], screenMin[1], screenMax[0], screenMax[1], text, geoData.getLevel()));                    
+                        objectBoxes.addElement(new ObjectBox(screenMin[0], screenMin[1], screenMax[0], screenMax[1], text, features.getLevel(feature)));                    
                     }
                     
-                    final ConcavePolygon cp = geoData.getConcavePolygon();
-                    if (cp!=null) {          
-                        final int []coords = geoData.getCoords();
-                        final int length = coords.length;
+                    final ConcavePolygon cp = features.getConcavePolygon(feature);
+                    if (cp!=null && drawMode != DRAW_OVERLAYS) {          
+                        final int []coords = features.getCoords();
+                        final int offset = features.getCoordsOffset(feature);
+                        final int length = features.getCoordsLength(feature);
                         int[] vertices = this.m_vertices;
                         if (vertices == null || vertices.length < length) {
                             m_vertices = new int[length];
@@ -495,15 +635,16 @@ public class MapDrawer {
                             m_pointsY = new int[length >> 1];
                             vertices = m_vertices;
                         }
-                        System.arraycopy(coords, 0, vertices, 0, length);
                         if (cameraIsPanned) {
-                            setVerticesToClip(coords);
-                            drawConcavePolygonWithClipping(cp, vertices, length, geoData.getColor(scaleIndex), verticesToClip, newtransform);
+                            setVerticesToClip(coords, offset, length);
+                            Matrix4.transformPoints(newtransform, coords, offset, vertices, 0, length >> 1);
+                            drawConcavePolygonWithClipping(cp, vertices, length, features.getColor(feature, scaleIndex), verticesToClip);
 //                            } else if (g.supportsTransforms()) {
-//                                g.setColor(geoData.getColor(scaleIndex));
+//                                g.setColor(features.getColor(feature, scaleIndex));
 //                                g.fillPolygonT(vertices, length);
                         } else {
-                            drawConcavePolygon(cp, vertices, length, geoData.getColor(scaleIndex), newtransform, startPass == 0 || startPass == -1);
+                            Matrix4.transformPointsAffine(newtransform, coords, offset, vertices, 0, length >> 1);
+                            drawConcavePolygon(cp, vertices, length, features.getColor(feature, scaleIndex), startPass == 0 || startPass == -1);
                         }
                     }                
                 }
@@ -511,16 +652,19 @@ public class MapDrawer {
             
             //--------------------------------------------------------------------------------------------------
             // Draw Lines
-            else if (primitiveType == TileFeature.LINE ) {
+            else if (primitiveType == TileFeature.LINE && drawMode != DRAW_OVERLAYS) {
                 
-                int width = geoData.getWidth(scaleIndex);
-                int widthMeters = geoData.getWidthMeters(scaleIndex);
+                int width = features.getWidth(feature, scaleIndex);
+                int widthMeters = features.getWidthMeters(feature, scaleIndex);
                 width = getPixelWidth(camera, width, widthMeters);
                 
-                int color = geoData.getColor(scaleIndex);
-                int borderColor = geoData.getBorderColor(scaleIndex);             
-                String text = geoData.getText();
-                int []coords = geoData.getCoords();
+                int color = features.getColor(feature, scaleIndex);
+                int borderColor = features.getBorderColor(feature, scaleIndex);             
+                String text = features.getText(feature);
+                // the line simplified for the current scale index
+                int []coords = features.getCoords(feature, scaleIndex);
+                int coordsOffset = features.getCoordsOffset(feature, scaleIndex);
+                int coordsLength = features.getCoordsLength(feature, scaleIndex);
 
                 //{longest length, x, y} 
                 // Note: This variable is a cool variable to store the world 
@@ -530,27 +674,33 @@ public class MapDrawer {
                 textpos[2] = -1;
                 
                 TextPlacementInfo textPlacementInfo;           
-                if (pass == 1 && (text != null)) {
-                    textPlacementInfo = geoData.getTextPlacementInfo();
-                    if (textPlacementInfo == null) {
-                        textPlacementInfo = new TextPlacementInfo();
-                    }
-                } else {
+                if (drawMode != DRAW_ALL) {
+                    // the text placement is only valid on the screen
                     textPlacementInfo = null;
+                } else {
+                    if (pass == 1 && (text != null)) {
+                        textPlacementInfo = features.getTextPlacementInfo(feature);
+                        if (textPlacementInfo == null) {
+                            textPlacementInfo = new TextPlacementInfo();
+                        }
+                        tmw.addTextPlacementRef(level, featureRef);
+                    } else {
+                        textPlacementInfo = null;
+                    }
+                    features.setTextPlacementInfo(feature, textPlacementInfo);
                 }
-                geoData.setTextPlacementInfo(textPlacementInfo);
                 
-                boolean isOutline = (pass == 0 && borderColor != TileFeatureData.NO_BORDER_COLOR);
+                boolean isOutline = (pass == 0 && borderColor != TileFeatureStore.NO_BORDER_COLOR);
                 if (camera.isIn3DMode()) {
-                    setVerticesToClip(coords);
+                    setVerticesToClip(coords, coordsOffset, coordsLength);
                 }
                 
-                drawPolyLine(tmw.getLayerID(), coords, width, pass==0 ? borderColor:color, isOutline, 
+                drawPolyLine(tmw.getLayerID(), coords, coordsOffset, coordsLength, width, pass==0 ? borderColor:color, isOutline, 
                         verticesToClip, newtransform, camBoxScreenCoords, 
                         textpos, textPlacementInfo, camera);
                 
                 // Put texts to draw in a cool Vector
-                if (tracking && (textpos[0]!=-1 && text!=null)) {
+                if (tracking && drawMode == DRAW_ALL && (textpos[0]!=-1 && text!=null)) {
                     if(!trackingStringAdded.containsKey(text)) {
                         trackingStringAdded.put(text, text);
                         tracking2Dstrings.addElement(new TextPos(text, textpos[1], textpos[2]));
@@ -558,6 +708,9 @@ public class MapDrawer {
                 }     
             }
         }
+        
+        m_nbrFeaturesVisited += nbrVisited;
+        m_nbrFeaturesDrawn += nbrDrawn;
     }
 
     /**
@@ -579,8 +732,8 @@ public class MapDrawer {
         return (int) (width * iScreenInfo.getDPICorrection());
     }
     
-    private void setVerticesToClip(int []coords) {
-        int nbrFeatures = coords.length >> 1;
+    private void setVerticesToClip(int []coords, int offset, int length) {
+        int nbrFeatures = length >> 1;
         int nbrBytes = ((nbrFeatures) / 8) + ((nbrFeatures%8>0)?1:0);
         
         if (verticesToClip == null || verticesToClip.length < nbrBytes) {
@@ -591,9 +744,9 @@ public class MapDrawer {
             }
         }
         
-        for (int v = 0; v < coords.length; v+=2) {
-            int x = coords[v];
-            int y = coords[v+1];
+        for (int v = 0; v < length; v+=2) {
+            int x = coords[offset+v];
+            int y = coords[offset+v+1];
             this.featureToPoint[0] = x-camBoxScreenCoords[2];
             this.featureToPoint[1] = y-camBoxScreenCoords[3];
             this.featureToPoint = Utils.normalize(this.featureToPoint);
@@ -613,34 +766,23 @@ public class MapDrawer {
      * @return true if any city center collides, false otherwise
      */
     private boolean checkCityCentresCollission(DrawBoundingBox bbox) {       
-        final int size = m_cityCenterObjects.size();
-        for (int i=0; i<size; i++) {
-            DrawBoundingBox compBbox = ((CityCentreObject) m_cityCenterObjects.elementAt(i)).getBoundingBox();
-            if (compBbox.intersectsWith(bbox)) {
-                return true;
-            }
-        }
-        
-        return false;
+        return m_cityCenterBoxes.intersects(bbox.getMinX(), bbox.getMinY(), 
+                bbox.getMaxX(), bbox.getMaxY(), true);
     }
     
+    /*
+     * Checks if the text box collides with an earlier tracking text and 
+     * adds it to the drawn tracking texts if it doesn't. 
+     */
     private boolean collidesWithAnotherTracking2DString(int textWidth,int textHeight, int x , int y){
         int xMin = x;
         int xMax = x + textWidth;
         int yMin = y;
         int yMax = y + textHeight;
-        final int size = tracking2DTextBoundingBoxes.size();
-        for(int i=0;i<size;i++){
-            Box box = (Box) tracking2DTextBoundingBoxes.elementAt(i);
-            int otherXMin = box.getStartX();
-            int otherXMax = box.getStartX() + box.getEndX();
-            int otherYMin = box.getStartY();
-            int otherYMax = box.getStartY() + box.getEndY();
-            if(!(xMax < otherXMin || xMin > otherXMax || yMax < otherYMin || yMin > otherYMax)) {
-                return true;
-            }
+        if (m_trackingTextBoxes.intersects(xMin, yMin, xMax, yMax, false)) {
+            return true;
         }
-        tracking2DTextBoundingBoxes.addElement(new Box(xMin, yMin, xMax, yMax));
+        m_trackingTextBoxes.add(xMin, yMin, xMax, yMax);
         return false;
     }
     
@@ -724,8 +866,8 @@ public class MapDrawer {
         }
     }
     
-    /* Array that holds bitmap collision detection */
-    private IntVector iDrawedPoiBoxes = new IntVector(40);
+    /* Screen boxes of the drawn POIs and map objects, used for bitmap collision detection */
+    private final ScreenBoxIndex m_drawnPoiBoxes = new ScreenBoxIndex(COLLISION_CELL_SIZE);
     
     // vertices of a line (represented by two triangles) between two points
     private static int[] lineVertices = new int[8];
@@ -978,6 +1120,8 @@ public class MapDrawer {
      * Draws a 3d polyline with polygons
      * 
      * @param vertices - vertices of polyline
+     * @param offset - index of the first vertex in vertices
+     * @param length - number of values (x and y) in the polyline
      * @param lineWidth - width of polyline
      * @param isOutline - true if this is an outline, false otherwise
      * @param verticesToClip - vertices to clip
@@ -985,10 +1129,10 @@ public class MapDrawer {
      * @param camLine - camLine
      * @param camera - the camera
      */
-    private void draw3dPolygonPolyLine(int[] vertices, int lineWidth, boolean isOutline, 
+    private void draw3dPolygonPolyLine(int[] vertices, int offset, int length, int lineWidth, boolean isOutline, 
             byte[] verticesToClip, float[][]transform, long[] camLine, Camera camera) {
         
-        final int nbrFeatures = ((vertices.length) >> 1) - 1;
+        final int nbrFeatures = (length >> 1) - 1;
         int []xPts = null;
         int []yPts = null;
         int nbrPonts = 0;
@@ -999,7 +1143,7 @@ public class MapDrawer {
         
         for (int i=0; i<nbrFeatures; i++) {
             
-            final int pos = (i<<1);
+            final int pos = offset + (i<<1);
             int y1 = vertices[pos+1];
             int y2 = vertices[pos+3];
             int x1 = vertices[pos];
@@ -1089,6 +1233,8 @@ public class MapDrawer {
      * Draws a 3d polyline with triangles
      * 
      * @param vertices - vertices of polyline
+     * @param offset - index of the first vertex in vertices
+     * @param length - number of values (x and y) in the polyline
      * @param lineWidth - width of polyline
      * @param isOutline - true if this is an outline, false otherwise
      * @param verticesToClip - vertices to clip
@@ -1097,16 +1243,16 @@ public class MapDrawer {
      * @param textPosition - text position (output argument)
      * @param camera - the camera
      */
-    private void draw3dTrianglePolyLine(int[] vertices, int lineWidth, 
+    private void draw3dTrianglePolyLine(int[] vertices, int offset, int length, int lineWidth, 
             boolean isOutline, byte[] verticesToClip, float[][]transform, 
             long[] camLine, int[] textPosition, Camera camera) {
         
-        int nbrFeatures = (vertices.length >> 1) - 1;
+        int nbrFeatures = (length >> 1) - 1;
         for (int i=0; i<nbrFeatures; i++) {
             iFirstLineInPolyLine = (i == 0);
             iLastLineInPolyLine = (i == nbrFeatures-1);
             
-            final int pos = (i<<1);
+            final int pos = offset + (i<<1);
             int y1 = vertices[pos+1];
             int y2 = vertices[pos+3];
             int x1 = vertices[pos];
@@ -1203,19 +1349,22 @@ public class MapDrawer {
      * Draws a 2d poly line with triangles
      * 
      * @param vertices - vertices of polyline
+     * @param offset - index of the first vertex in vertices
+     * @param length - number of values (x and y) in the polyline
      * @param lineWidth - width of polyline
      * @param isOutline - true if this is an outline, false otherwise
      * @param transform - camera transform
      * @param textPosition - text position (output argument)
      * @param camera - the camera
      */
-    private void draw2dTrianglePolyLine(int[] vertices, int lineWidth, 
+    private void draw2dTrianglePolyLine(int[] vertices, int offset, int length, int lineWidth, 
             boolean isOutline, float[][]transform, int[] textPosition, 
             Camera camera) {
         
-        for (int i = 0; i<vertices.length-2; i=i+2) {
-            iFirstLineInPolyLine = (i == 0);
-            iLastLineInPolyLine = (i >= vertices.length-4);
+        final int end = offset + length;
+        for (int i = offset; i<end-2; i=i+2) {
+            iFirstLineInPolyLine = (i == offset);
+            iLastLineInPolyLine = (i >= end-4);
             drawLine(vertices[i], vertices[i+1], vertices[i+2], vertices[i+3], 
                     lineWidth, isOutline, transform, textPosition, camera);
         }
@@ -1226,6 +1375,8 @@ public class MapDrawer {
      * 
      * @param layerId  id of layer to be drawn
      * @param vertices  vertices of polyline
+     * @param offset  index of the first vertex in vertices
+     * @param length  number of values (x and y) in the polyline
      * @param lineWidth  width of polyline
      * @param color  color of polyline
      * @param isOutline  true if this is an outline, false otherwise
@@ -1236,7 +1387,7 @@ public class MapDrawer {
      * @param textPlacementInfo  text placement information (output argument)
      * @param camera  the camera
      */
-    private void drawPolyLine(int layerId, int[] vertices, int lineWidth, 
+    private void drawPolyLine(int layerId, int[] vertices, int offset, int length, int lineWidth, 
             int color, boolean isOutline, byte[] verticesToClip, float[][] cameraTransform, 
             long[] camLine, int[] textPosition, TextPlacementInfo textPlacementInfo, 
             Camera camera) {
@@ -1246,16 +1397,16 @@ public class MapDrawer {
         if (camera.isIn3DMode()) { // 3d mode
             // Draw route layer with triangles to improve visual quality
             if (g.supportsPolygon() && layerId != RenderManager.ID_ROUTE_LAYER) {
-                draw3dPolygonPolyLine(vertices, lineWidth, isOutline, 
+                draw3dPolygonPolyLine(vertices, offset, length, lineWidth, isOutline, 
                         verticesToClip, cameraTransform, camLine, camera);
             } else {
                 iDrawReversedGapTriangle = false;
-                draw3dTrianglePolyLine(vertices, lineWidth, isOutline, 
+                draw3dTrianglePolyLine(vertices, offset, length, lineWidth, isOutline, 
                         verticesToClip, cameraTransform, camLine, textPosition, 
                         camera);
             }
         } else if (g.supportsPath()) { // draw 2d polylines using paths
-            apply2dScreenCoordinatesTransform(vertices, cameraTransform);
+            apply2dScreenCoordinatesTransform(vertices, offset, length, cameraTransform);
             if (textPlacementInfo != null && !tracking) {
                 calculateLineTextPlacementInfo(m_screenXCoordsBuffer, m_screenYCoordsBuffer, 
                         m_screenCoordsBufferSize, textPlacementInfo);
@@ -1263,7 +1414,7 @@ public class MapDrawer {
             drawPath(m_screenXCoordsBuffer, m_screenYCoordsBuffer, m_screenCoordsBufferSize, lineWidth, textPosition, camera);
         } else { // draw 2d polylines using triangles
             iDrawReversedGapTriangle = false;
-            draw2dTrianglePolyLine(vertices, lineWidth, isOutline, 
+            draw2dTrianglePolyLine(vertices, offset, length, lineWidth, isOutline, 
                     cameraTransform, textPosition, camera);
         }
     }
@@ -1273,8 +1424,8 @@ public class MapDrawer {
     private void drawLineAsPolygon (int x1, int y1, int x2, int y2, int lineWidth, float[][]transform, Camera cam, 
             int []xPts, int []yPts, int ptsCnt, int nbrPonts, boolean firstLineSegment, boolean isOutline) {
         
-            final int halfWidth = iScreenInfo.getHalfScreenWidth();
-            final int halfHeight = iScreenInfo.getHalfScreenHeight();
+            final int halfWidth = m_halfWidth;
+            final int halfHeight = m_halfHeight;
             
             final long dX = x1 - x2;
             final long dY = y1 - y2;
@@ -1433,10 +1584,9 @@ public class MapDrawer {
             iPrevSegmentStartPointY = y1;
     }
     
-    private void drawConcavePolygonWithClipping(ConcavePolygon cp, int[] vertices, int vLength, int color,byte[]verticesToClip,float[][]tr){
+    private void drawConcavePolygonWithClipping(ConcavePolygon cp, int[] vertices, int vLength, int color,byte[]verticesToClip){
         g.setColor(color);
         short[][] ibuff = cp.getIndexBuffer();
-        applyTransform(vertices, vLength, tr);
         for(int j=0;j<ibuff.length;j++){
             short[]tri=ibuff[j];
             
@@ -1543,11 +1693,9 @@ public class MapDrawer {
     }
     
     private void drawConcavePolygon(ConcavePolygon cp, int[] vertices, 
-            int vLength, int color, float[][]tr, boolean secondPass) {
+            int vLength, int color, boolean secondPass) {
         final WFGraphics g = this.g;
         g.setColor(color);
-
-        applyTransformUnpanned(vertices, vLength, tr);
         
         int halfWidth = m_halfWidth;
         int halfHeight = m_halfHeight;
@@ -1674,23 +1822,7 @@ public class MapDrawer {
     }
     
     final void applyTransform(int[] p, int length, float[][] transform){
-        float transform30 = transform[3][0];
-        float transform31 = transform[3][1];
-        float transform33 = transform[3][3];
-        float transform00 = transform[0][0];
-        float transform01 = transform[0][1];
-        float transform03 = transform[0][3];
-        float transform10 = transform[1][0];
-        float transform11 = transform[1][1];
-        float transform13 = transform[1][3];
-        
-        for (int index = 0; index < length; index=index+2) {
-            int px = p[index];
-            int py = p[index+1];
-            float wInv = 1 / (transform30*px + transform31*py + transform33);
-            p[index] = (int)((transform00*px + transform01*py + transform03) * wInv);
-            p[index+1] = (int)((transform10*px + transform11*py + transform13) * wInv);
-        }
+        Matrix4.transformPoints(transform, p, 0, p, 0, length >> 1);
     }
     
     final static float[] s_palMatrix = new float[9];
@@ -1709,19 +1841,7 @@ public class MapDrawer {
     }
     
     final void applyTransformUnpanned(int[] p, int length, float[][] transform) {
-        float transform00 = transform[0][0];
-        float transform01 = transform[0][1];
-        float transform03 = transform[0][3];
-        float transform10 = transform[1][0];
-        float transform11 = transform[1][1];
-        float transform13 = transform[1][3];
-        
-        for (int index = 0; index < length; index=index+2){
-            int px = p[index];
-            int py = p[index+1];
-            p[index] = (int)(transform00*px + transform01*py + transform03);
-            p[index+1] = (int)(transform10*px + transform11*py + transform13);
-        }
+        Matrix4.transformPointsAffine(transform, p, 0, p, 0, length >> 1);
     }
     
 //    /**
@@ -1820,7 +1940,7 @@ public class MapDrawer {
      */
     public void init2DTracking() {
         g.setFont(Utils.get().getFont(Utils.FONT_SMALL));
-        tracking2DTextBoundingBoxes.removeAllElements();
+        m_trackingTextBoxes.reset(iScreenInfo.getScreenWidth(), iScreenInfo.getScreenHeight());
     }
     
     /**
@@ -1902,27 +2022,27 @@ public class MapDrawer {
     String getLineString(long worldX, long worldY, TileMapWrapper tmw, float zoomLevel) {
         int scaleIndex = m_Tmfd.getScaleIndexFromZoomLevel(zoomLevel);
         for(int level=Utils.MAX_LEVEL; level>=0; level--) {
-            Vector geoDatas = tmw.getGeoData(level);
-            int size = 0;
-            synchronized(geoDatas) {
-                size = geoDatas.size();
-            }
+            final int size = tmw.getNbrFeatures(level);
+            final int[] featureRefs = tmw.getFeatureRefs(level);
             
             for(int i=0; i<size; i++) {
                 
-                TileFeatureData geoData = (TileFeatureData) geoDatas.elementAt(i);
+                final int featureRef = featureRefs[i];
+                final TileFeatureStore features = tmw.getFeatureStore(featureRef);
+                final int featureIndex = TileMapWrapper.getFeatureIndex(featureRef);
                 
-                if(geoData.getPrimitiveType() != TileFeature.LINE) {
+                if(features.getPrimitiveType(featureIndex) != TileFeature.LINE) {
                     continue;
                 }
 
-                if(geoData.getText() == null)
+                if(features.getText(featureIndex) == null)
                     continue;
                 
-                int[] feature = geoData.getCoords();
-                String text = geoData.getText();
+                int[] feature = features.getCoords();
+                String text = features.getText(featureIndex);
+                final int end = features.getCoordsOffset(featureIndex) + features.getCoordsLength(featureIndex);
                     
-                for(int j=0; j<feature.length-2; j+=2) {
+                for(int j=features.getCoordsOffset(featureIndex); j<end-2; j+=2) {
                     final long dx = (feature[j+2] - feature[j]);
                     final long dy = (feature[j+3] - feature[j+1]);
                     long dist2 = (dx*dx+dy*dy);
@@ -1953,7 +2073,7 @@ public class MapDrawer {
                     double sin2Theta = 1.0-cos2Theta;
                     double distSquare = len1square * sin2Theta * Utils.MC2SCALETIMES2;
                     
-                    int lineWidth = geoData.getWidth(scaleIndex);
+                    int lineWidth = features.getWidth(featureIndex, scaleIndex);
                     if(lineWidth >0){  //PIXELS
                         lineWidth = (int)(lineWidth * zoomLevel * iScreenInfo.getDPICorrection());
                     }else if(lineWidth <0){ //METER
@@ -1976,10 +2096,12 @@ public class MapDrawer {
      * in the screen coordinates buffers.
      * 
      * @param vertices  the vertices to be transformed
+     * @param offset  index of the first vertex in vertices
+     * @param length  number of values (x and y) to transform
      * @param cameraTransform  the camera transform
      */
-    private void apply2dScreenCoordinatesTransform(int[] vertices, float[][] cameraTransform) {
-        m_screenCoordsBufferSize = vertices.length / 2;
+    private void apply2dScreenCoordinatesTransform(int[] vertices, int offset, int length, float[][] cameraTransform) {
+        m_screenCoordsBufferSize = length / 2;
         // Ensure capacity of screen coordinates buffer
         if (m_screenCoordsBufferSize > m_screenCoordsBufferCapacity) {
             m_screenCoordsBufferCapacity = Math.max(2*m_screenCoordsBufferCapacity, m_screenCoordsBufferSize);
@@ -2000,10 +2122,10 @@ public class MapDrawer {
         float transform11 = cameraTransform[1][1];
         float transform13 = cameraTransform[1][3];
 
-        for (int i=0; i<vertices.length; i+=2) {
+        for (int i=0; i<length; i+=2) {
             int coordsIndex = i >> 1;
-            int x = vertices[i];
-            int y = vertices[i+1];
+            int x = vertices[offset+i];
+            int y = vertices[offset+i+1];
             int xt = (int)(transform00*x + transform01*y + transform03);
             int yt = (int)(transform10*x + transform11*y + transform13);
             m_screenXCoordsBuffer[coordsIndex] = xt;
@@ -2099,26 +2221,11 @@ public class MapDrawer {
         /* Collision detection for bitmap images */
         boolean collides = false;
         if(useCollisionDetection) {
-            int pbX1, pbX2, pbY1, pbY2;
-            for(int i=0; i<iDrawedPoiBoxes.size(); i+=4) {
-                pbX1 = iDrawedPoiBoxes.get(i);
-                pbY1 = iDrawedPoiBoxes.get(i+1);
-                pbX2 = iDrawedPoiBoxes.get(i+2);
-                pbY2 = iDrawedPoiBoxes.get(i+3);
-                
-                
-                if(!(x2 < pbX1 || x1 > pbX2 || y2 < pbY1 || y1 > pbY2)) {
-                    collides = true;
-                    break;
-                }                       
-            }
+            collides = m_drawnPoiBoxes.intersects(x1, y1, x2, y2, false);
         }
         
         if(!collides) {
-            iDrawedPoiBoxes.add(x1);
-            iDrawedPoiBoxes.add(y1);
-            iDrawedPoiBoxes.add(x2);
-            iDrawedPoiBoxes.add(y2);
+            m_drawnPoiBoxes.add(x1, y1, x2, y2);
             g.drawImage(bitMapImage,transformable[0]+iScreenInfo.getHalfScreenWidth(),transformable[1]+iScreenInfo.getHalfScreenHeight(), anchor);
             return false;
         }
@@ -2279,10 +2386,8 @@ public class MapDrawer {
                 screenX, screenY, imageObject.getAnchor());
         
         //object.getMinX()... should be now set correctly in draw method 
-        iDrawedPoiBoxes.add(screenX + object.getMinX());
-        iDrawedPoiBoxes.add(screenY + object.getMinY());
-        iDrawedPoiBoxes.add(screenX + object.getMaxX());
-        iDrawedPoiBoxes.add(screenY + object.getMaxY());
+        m_drawnPoiBoxes.add(screenX + object.getMinX(), screenY + object.getMinY(), 
+                screenX + object.getMaxX(), screenY + object.getMaxY());
     }
 }
 
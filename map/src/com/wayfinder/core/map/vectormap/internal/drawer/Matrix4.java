@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.drawer;
+
+/**
+ * A mutable 4x4 float matrix stored as a float[4][4], the same layout as 
+ * the camera transform returned by {@link Camera#getTransform()}.
+ * <p>
+ * All operations are done in place, so a matrix can be reused between 
+ * frames without allocating. The static methods work on any float[4][4], 
+ * e.g. the camera transform. 
+ */
+final class Matrix4 {
+    
+    private final float[][] m_m = new float[4][4];
+    
+    /**
+     * Creates a new unity matrix.
+     */
+    Matrix4() {
+        setIdentity();
+    }
+    
+    /**
+     * @return the array of the matrix, changed in place by the operations 
+     * on this matrix
+     */
+    float[][] getArray() {
+        return m_m;
+    }
+    
+    /**
+     * Sets this matrix to the unity matrix.
+     * 
+     * @return this matrix
+     */
+    Matrix4 setIdentity() {
+        return setScale(1f);
+    }
+    
+    /**
+     * Sets this matrix to a scaling of x, y and z, e.g. the DPI correction.
+     * 
+     * @param s the scale
+     * @return this matrix
+     */
+    Matrix4 setScale(float s) {
+        final float[][] m = m_m;
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                m[i][j] = 0f;
+            }
+        }
+        m[0][0] = s;
+        m[1][1] = s;
+        m[2][2] = s;
+        m[3][3] = 1f;
+        return this;
+    }
+    
+    /**
+     * Copies a matrix into this matrix.
+     * 
+     * @param a the 4x4 matrix to copy
+     * @return this matrix
+     */
+    Matrix4 set(float[][] a) {
+        for (int i = 0; i < 4; i++) {
+            System.arraycopy(a[i], 0, m_m[i], 0, 4);
+        }
+        return this;
+    }
+    
+    /**
+     * Sets this matrix to the product a*b. Both a and b may be the array 
+     * of this matrix.
+     * 
+     * @param a Left 4x4 matrix
+     * @param b Right 4x4 matrix
+     * @return this matrix
+     */
+    Matrix4 multiply(float[][] a, float[][] b) {
+        multiply(a, b, m_m);
+        return this;
+    }
+    
+    /**
+     * Multiplies this matrix with b from the right.
+     * 
+     * @param b Right 4x4 matrix
+     * @return this matrix
+     */
+    Matrix4 multiply(float[][] b) {
+        multiply(m_m, b, m_m);
+        return this;
+    }
+    
+    /**
+     * Inverts this matrix.
+     * 
+     * @return false if the matrix is singular, in which case it's unchanged
+     */
+    boolean invert() {
+        return invert(m_m);
+    }
+    
+    /**
+     * Transforms the points in src, stored as x, y pairs, with this matrix
+     * and stores them in dst. Same as {@link #transformPoints(float[][], 
+     * int[], int, int[], int, int)} with offset 0. 
+     * 
+     * @param src the points to transform
+     * @param dst the transformed points, may be src
+     * @param n the number of points
+     */
+    void transformPoints(int[] src, int[] dst, int n) {
+        transformPoints(m_m, src, 0, dst, 0, n);
+    }
+    
+    /**
+     * Matrix multiplication c = a*b of 4x4 float matrices. c may be the 
+     * same array as a or b.
+     *
+     * @param a Left 4x4 matrix
+     * @param b Right 4x4 matrix
+     * @param c the product matrix
+     */
+    static void multiply(float[][] a, float[][] b, float[][] c) {
+        final float[] b0 = b[0];
+        final float[] b1 = b[1];
+        final float[] b2 = b[2];
+        final float[] b3 = b[3];
+        
+        // b is read first since it may be c, and each row of a is read 
+        // before the same row of c is written since a may be c
+        final float b00 = b0[0], b01 = b0[1], b02 = b0[2], b03 = b0[3];
+        final float b10 = b1[0], b11 = b1[1], b12 = b1[2], b13 = b1[3];
+        final float b20 = b2[0], b21 = b2[1], b22 = b2[2], b23 = b2[3];
+        final float b30 = b3[0], b31 = b3[1], b32 = b3[2], b33 = b3[3];
+        
+        for (int i = 0; i < 4; i++) {
+            final float[] ai = a[i];
+            final float ai0 = ai[0], ai1 = ai[1], ai2 = ai[2], ai3 = ai[3];
+            final float[] ci = c[i];
+            ci[0] = ai0*b00 + ai1*b10 + ai2*b20 + ai3*b30;
+            ci[1] = ai0*b01 + ai1*b11 + ai2*b21 + ai3*b31;
+            ci[2] = ai0*b02 + ai1*b12 + ai2*b22 + ai3*b32;
+            ci[3] = ai0*b03 + ai1*b13 + ai2*b23 + ai3*b33;
+        }
+    }
+    
+    /**
+     * Inverts a 4x4 matrix in place, by the cofactors computed in double
+     * precision.
+     * 
+     * @param a the 4x4 matrix
+     * @return false if the matrix is singular, in which case it's unchanged
+     */
+    static boolean invert(float[][] a) {
+        final double a00 = a[0][0], a01 = a[0][1], a02 = a[0][2], a03 = a[0][3];
+        final double a10 = a[1][0], a11 = a[1][1], a12 = a[1][2], a13 = a[1][3];
+        final double a20 = a[2][0], a21 = a[2][1], a22 = a[2][2], a23 = a[2][3];
+        final double a30 = a[3][0], a31 = a[3][1], a32 = a[3][2], a33 = a[3][3];
+        
+        // the 2x2 determinants of the two upper and the two lower rows
+        final double s0 = a00*a11 - a10*a01;
+        final double s1 = a00*a12 - a10*a02;
+        final double s2 = a00*a13 - a10*a03;
+        final double s3 = a01*a12 - a11*a02;
+        final double s4 = a01*a13 - a11*a03;
+        final double s5 = a02*a13 - a12*a03;
+        
+        final double c5 = a22*a33 - a32*a23;
+        final double c4 = a21*a33 - a31*a23;
+        final double c3 = a21*a32 - a31*a22;
+        final double c2 = a20*a33 - a30*a23;
+        final double c1 = a20*a32 - a30*a22;
+        final double c0 = a20*a31 - a30*a21;
+        
+        final double det = s0*c5 - s1*c4 + s2*c3 + s3*c2 - s4*c1 + s5*c0;
+        if (det == 0) {
+            return false;
+        }
+        final double invDet = 1.0 / det;
+        
+        a[0][0] = (float)(( a11*c5 - a12*c4 + a13*c3) * invDet);
+        a[0][1] = (float)((-a01*c5 + a02*c4 - a03*c3) * invDet);
+        a[0][2] = (float)(( a31*s5 - a32*s4 + a33*s3) * invDet);
+        a[0][3] = (float)((-a21*s5 + a22*s4 - a23*s3) * invDet);
+        
+        a[1][0] = (float)((-a10*c5 + a12*c2 - a13*c1) * invDet);
+        a[1][1] = (float)(( a00*c5 - a02*c2 + a03*c1) * invDet);
+        a[1][2] = (float)((-a30*s5 + a32*s2 - a33*s1) * invDet);
+        a[1][3] = (float)(( a20*s5 - a22*s2 + a23*s1) * invDet);
+        
+        a[2][0] = (float)(( a10*c4 - a11*c2 + a13*c0) * invDet);
+        a[2][1] = (float)((-a00*c4 + a01*c2 - a03*c0) * invDet);
+        a[2][2] = (float)(( a30*s4 - a31*s2 + a33*s0) * invDet);
+        a[2][3] = (float)((-a20*s4 + a21*s2 - a23*s0) * invDet);
+        
+        a[3][0] = (float)((-a10*c3 + a11*c1 - a12*c0) * invDet);
+        a[3][1] = (float)(( a00*c3 - a01*c1 + a02*c0) * invDet);
+        a[3][2] = (float)((-a30*s3 + a31*s1 - a32*s0) * invDet);
+        a[3][3] = (float)(( a20*s3 - a21*s1 + a22*s0) * invDet);
+        return true;
+    }
+    
+    /**
+     * Transforms points in the z=0 plane, stored as x, y pairs, with the 
+     * perspective division. Used for the 3D camera transform. 
+     * 
+     * @param m the 4x4 transform
+     * @param src the points to transform
+     * @param srcOffset the index of the first x coordinate in src
+     * @param dst the transformed points, may be src
+     * @param dstOffset the index of the first x coordinate in dst
+     * @param n the number of points
+     */
+    static void transformPoints(float[][] m, int[] src, int srcOffset, 
+            int[] dst, int dstOffset, int n) {
+        final float m00 = m[0][0];
+        final float m01 = m[0][1];
+        final float m03 = m[0][3];
+        final float m10 = m[1][0];
+        final float m11 = m[1][1];
+        final float m13 = m[1][3];
+        final float m30 = m[3][0];
+        final float m31 = m[3][1];
+        final float m33 = m[3][3];
+        
+        final int end = srcOffset + (n << 1);
+        for (int s = srcOffset, d = dstOffset; s < end; s += 2, d += 2) {
+            final int px = src[s];
+            final int py = src[s+1];
+            final float wInv = 1 / (m30*px + m31*py + m33);
+            dst[d] = (int)((m00*px + m01*py + m03) * wInv);
+            dst[d+1] = (int)((m10*px + m11*py + m13) * wInv);
+        }
+    }
+    
+    /**
+     * Transforms points in the z=0 plane, stored as x, y pairs, without the 
+     * perspective division. Used for the 2D camera transform. 
+     * 
+     * @param m the 4x4 transform
+     * @param src the points to transform
+     * @param srcOffset the index of the first x coordinate in src
+     * @param dst the transformed points, may be src
+     * @param dstOffset the index of the first x coordinate in dst
+     * @param n the number of points
+     */
+    static void transformPointsAffine(float[][] m, int[] src, int srcOffset, 
+            int[] dst, int dstOffset, int n) {
+        final float m00 = m[0][0];
+        final float m01 = m[0][1];
+        final float m03 = m[0][3];
+        final float m10 = m[1][0];
+        final float m11 = m[1][1];
+        final float m13 = m[1][3];
+        
+        final int end = srcOffset + (n << 1);
+        for (int s = srcOffset, d = dstOffset; s < end; s += 2, d += 2) {
+            final int px = src[s];
+            final int py = src[s+1];
+            dst[d] = (int)(m00*px + m01*py + m03);
+            dst[d+1] = (int)(m10*px + m11*py + m13);
+        }
+    }
+}
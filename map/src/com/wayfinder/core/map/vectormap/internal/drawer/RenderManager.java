@@ -75,6 +75,9 @@ public class RenderManager implements MapRenderer {
     private static final int INITIAL_MOVEMENT_SPEED = 10;
     private static final int MOVEMENT_SPEED_INC = 20;
     
+    // The size of the raster cache, in number of screens
+    private static final int RASTER_CACHE_SCREENS = 4;
+    
     // Cursor/map movement speed in pixels/s
     private int m_MovementSpeed = INITIAL_MOVEMENT_SPEED;
     private long m_MapUpdateTime = 0;
@@ -95,6 +98,12 @@ public class RenderManager implements MapRenderer {
     private WFImage m_RenderImage = null;
     private WFGraphics m_RenderImageGraphics = null;
     
+    // Images of the map tiles, used while the map only pans in 2D
+    private TileRasterCache m_TileRasterCache = null;
+    private int []m_RasterTileBox = new int[4];
+    private int m_NbrRasterTilesDrawn;
+    private int m_NbrRasterTilesRendered;
+    
     private Vector m_Tracking2Dstrings = new Vector();
     private boolean m_IsMapLocked = false;
     
@@ -180,6 +189,7 @@ public class RenderManager implements MapRenderer {
         m_isGridEnabled = config.isGridEnabled();
         m_gridBgColor = config.getGridBackgroundColor();
         m_gridLineColor = config.getGridLineColor();        
+        m_TileRasterCache = new TileRasterCache(wfFactory, 0);
         setDrawArea(config.getX(), config.getY(), config.getWidth(), config.getHeight());
         m_copyrightTextPosY = m_ScreenHeight-Utils.get().getFont(Utils.FONT_SMALL).getFontHeight()-10;
     }
@@ -370,6 +380,12 @@ public class RenderManager implements MapRenderer {
         
         // Update the map rendering time, used to calculate how fast we should move the map. 
         m_MapUpdateTime = System.currentTimeMillis() - time;
+        
+        if(LOG.isTrace()) {
+            LOG.trace("RenderManager.renderMap()", 
+                    "time= "+m_MapUpdateTime+" ms raster tiles drawn= "+m_NbrRasterTilesDrawn+
+                    " rendered= "+m_NbrRasterTilesRendered);
+        }
     }
     
     /*
@@ -411,6 +427,16 @@ public class RenderManager implements MapRenderer {
         }
 
         mapDrawer.initDrawing(camera);
+        
+        // Draw the map tiles from the raster cache if the camera only pans
+        final int mapLayerNbr = tmfd.getLayerNbrFromID(ID_MAP_LAYER);
+        final Vector mapTiles = (mapLayerNbr < tmwArray.length) ? tmwArray[mapLayerNbr] : null; 
+        final boolean useRasterCache = canUseRasterCache(mapTiles, mapLayerNbr);
+        m_NbrRasterTilesDrawn = 0;
+        m_NbrRasterTilesRendered = 0;
+        if (useRasterCache) {
+            drawMapTilesFromRasterCache(g, tmfd, mapTiles, mapLayerNbr, camBox, startPass, scaleIndex);
+        }
 
         /*           
          * The map is drawn i Level order, from 0 to Utils.MAX_LEVEL
@@ -427,6 +453,9 @@ public class RenderManager implements MapRenderer {
             for (int pass=startPass; pass<=1; pass++) {
                 final int len = tmwArray.length;
                 for (int t = 0; t < len; t++){
+                    if (useRasterCache && t == mapLayerNbr) {
+                        continue;
+                    }
                     final Vector tmWrappers = tmwArray[t];
                     final int size = tmWrappers.size();
                     for (int i = 0; i < size; i++) { 
@@ -447,6 +476,12 @@ public class RenderManager implements MapRenderer {
             }
         }        
         
+        if(LOG.isTrace()) {
+            LOG.trace("RenderManager.internalRenderMap()", 
+                    "features visited= "+mapDrawer.getNbrOfFeaturesVisited()+
+                    " drawn= "+mapDrawer.getNbrOfFeaturesDrawn());
+        }
+        
         if (!isMovingMap && !m_FollowGpsPosition) {
             // Draw 2D, non-tracking, map strings
             if (m_TileMapHolder.updateStrings(m_WFFactory, g)) {
@@ -507,6 +542,136 @@ public class RenderManager implements MapRenderer {
         }        
     }
     
+    /*
+     * Returns true if the map tiles can be drawn from the raster cache. 
+     * 
+     * The cache is only used when the map is panned in 2D, not when 
+     * following the gps position or zooming, since the images are only
+     * valid for the zoom level and rotation they was rendered with. All
+     * map tiles must have the same detail level and the map must be 
+     * rotated a multiple of 90 degrees, otherwise the opaque tile images 
+     * would overlap each other. 
+     */
+    private boolean canUseRasterCache(Vector mapTiles, int mapLayerNbr) {
+        if (!m_IsMovingMap || m_IsZooming || m_FollowGpsPosition || m_Camera.isIn3DMode() 
+                || mapTiles == null || mapTiles.size() == 0) {
+            return false;
+        }
+        
+        final int size = mapTiles.size();
+        final int detailLevel = ((TileMapWrapper)mapTiles.elementAt(0)).getDetailLevel();
+        for (int i = 1; i < size; i++) {
+            if (((TileMapWrapper)mapTiles.elementAt(i)).getDetailLevel() != detailLevel) {
+                return false;
+            }
+        }
+        
+        // Less than half a pixel off over a tile
+        final float[][] tr = m_Camera.getTransform();
+        final float maxDiff = 0.5f / m_Tmfd.getMc2UnitsPerTile(mapLayerNbr, detailLevel);
+        return (Math.abs(tr[0][0]) <= maxDiff && Math.abs(tr[1][1]) <= maxDiff) 
+            || (Math.abs(tr[0][1]) <= maxDiff && Math.abs(tr[1][0]) <= maxDiff);
+    }
+    
+    /*
+     * Draws the map tiles from the images in the raster cache. Tiles that 
+     * aren't cached, or was cached with another zoom level, rotation, 
+     * tmfd (e.g. night mode) or rendered importances are rendered to a new 
+     * image first. The bitmaps and polygon boxes of the tiles are added as 
+     * usual since they are drawn on top of the map later on. 
+     */
+    void drawMapTilesFromRasterCache(WFGraphics g, TileMapFormatDesc tmfd, Vector mapTiles, 
+            int mapLayerNbr, int[] camBox, int startPass, int scaleIndex) {
+        final TileRasterCache cache = m_TileRasterCache;
+        final Camera camera = m_Camera;
+        final MapDrawer mapDrawer = m_MapDrawer;
+        final float[][] tr = camera.getTransform();
+        final int[] tileBox = m_RasterTileBox;
+        
+        final int clipX = g.getClipX();
+        final int clipY = g.getClipY();
+        final int clipMaxX = clipX + g.getClipWidth();
+        final int clipMaxY = clipY + g.getClipHeight();
+        
+        cache.beginFrame();
+        final int size = mapTiles.size();
+        for (int i = 0; i < size; i++) {
+            TileMapWrapper tmw = (TileMapWrapper)mapTiles.elementAt(i);
+            if (tmw.hasExpired(tmfd.getUpdateTimeForLayer(tmw.getLayerID()))) {
+                if(LOG.isInfo()) {
+                    LOG.info("RenderManager.drawMapTilesFromRasterCache()", "layerID "+tmw.getLayerID()+" has expired");
+                }
+                m_TileMapControlThread.reloadTileID(tmw.getTileID());
+                continue;
+            }
+            
+            // The tile in the same order as the camera bounding box
+            final long mc2UnitsPerTile = tmfd.getMc2UnitsPerTile(mapLayerNbr, tmw.getDetailLevel());
+            tileBox[0] = (int)(tmw.getLatitude() * mc2UnitsPerTile);
+            tileBox[1] = (int)(tileBox[0] + mc2UnitsPerTile);
+            tileBox[2] = (int)(tmw.getLongitude() * mc2UnitsPerTile);
+            tileBox[3] = (int)(tileBox[2] + mc2UnitsPerTile);
+            
+            TileRasterCache.Entry entry = cache.lookup(tmw);
+            if (tileBox[0] >= camBox[1] || tileBox[1] <= camBox[0] || 
+                    tileBox[2] >= camBox[3] || tileBox[3] <= camBox[2]) {
+                continue;
+            }
+            
+            // The screen rectangle of the tile
+            final float x1 = tr[0][0]*tileBox[0] + tr[0][1]*tileBox[2] + tr[0][3] + m_HalfScreenWidth;
+            final float y1 = tr[1][0]*tileBox[0] + tr[1][1]*tileBox[2] + tr[1][3] + m_HalfScreenHeight;
+            final float x2 = tr[0][0]*tileBox[1] + tr[0][1]*tileBox[3] + tr[0][3] + m_HalfScreenWidth;
+            final float y2 = tr[1][0]*tileBox[1] + tr[1][1]*tileBox[3] + tr[1][3] + m_HalfScreenHeight;
+            final float left = Math.min(x1, x2);
+            final float top = Math.min(y1, y2);
+            
+            final int renderImportances = tmw.getRender();
+            if (entry != null && entry.isValid(tr, mc2UnitsPerTile, tmfd, renderImportances, startPass)) {
+                cache.markDrawn(entry);
+                m_NbrRasterTilesDrawn++;
+            } else {
+                final int imageX = (int)Math.floor(left);
+                final int imageY = (int)Math.floor(top);
+                final int width = (int)Math.ceil(Math.max(x1, x2)) - imageX;
+                final int height = (int)Math.ceil(Math.max(y1, y2)) - imageY;
+                
+                entry = cache.allocate(tmw, width, height);
+                if (entry == null) {
+                    // No room in the cache, draw the tile on the screen instead
+                    mapDrawer.drawTileToRaster(tmw, g, 0, 0, camBox, startPass, camera, scaleIndex);
+                    mapDrawer.drawTileOverlays(tmw, camBox, camera, scaleIndex);
+                    continue;
+                }
+                
+                final WFGraphics imageGraphics = entry.getImage().getWFGraphics();
+                imageGraphics.setClip(0, 0, width, height);
+                imageGraphics.setColor(tmfd.getBackgroundColor());
+                imageGraphics.fillRect(0, 0, width, height);
+                imageGraphics.allowAntialias(!camera.isMoving());
+                mapDrawer.drawTileToRaster(tmw, imageGraphics, imageX, imageY, tileBox, startPass, camera, scaleIndex);
+                entry.setRendered(tr, tmfd, renderImportances, startPass, left - imageX, top - imageY);
+                m_NbrRasterTilesRendered++;
+            }
+            
+            // Only draw the part of the image used by the tile
+            final int x = (int)Math.floor(left - entry.getFractionX() + 0.5f);
+            final int y = (int)Math.floor(top - entry.getFractionY() + 0.5f);
+            final int minX = Math.max(x, clipX);
+            final int minY = Math.max(y, clipY);
+            final int maxX = Math.min(x + entry.getWidth(), clipMaxX);
+            final int maxY = Math.min(y + entry.getHeight(), clipMaxY);
+            if (minX < maxX && minY < maxY) {
+                g.setClip(minX, minY, maxX - minX, maxY - minY);
+                g.drawImage(entry.getImage(), x, y, WFGraphics.ANCHOR_LEFT | WFGraphics.ANCHOR_TOP);
+                // restore the clip, the next tile may be drawn on the screen
+                g.setClip(clipX, clipY, clipMaxX - clipX, clipMaxY - clipY);
+            }
+            mapDrawer.drawTileOverlays(tmw, camBox, camera, scaleIndex);
+        }
+        cache.endFrame();
+    }
+    
     private void drawTexts() {
         Vector []tileMapWrappersPerLayerNumberArray = m_TileMapHolder.getTileMaps();
         for (int i=0; i<tileMapWrappersPerLayerNumberArray.length; i++) {
@@ -595,6 +760,8 @@ public class RenderManager implements MapRenderer {
             m_MapOverlayManager.setDimension(m_ScreenWidth, m_ScreenHeight);
             m_HalfScreenWidth = m_ScreenWidth / 2;
             m_HalfScreenHeight = m_ScreenHeight / 2;
+            m_TileRasterCache.clear();
+            m_TileRasterCache.setMaxNbrPixels(RASTER_CACHE_SCREENS * m_ScreenWidth * m_ScreenHeight);
             m_ActiveScreenPosition[0] = m_HalfScreenWidth;
             m_ActiveScreenPosition[1] = m_HalfScreenHeight;
             m_Camera.setGPSAdjust(0);
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.drawer;
+
+/**
+ * Index of the screen boxes of the texts and images drawn in a frame, used 
+ * for the collision detection in the {@link MapDrawer}.
+ * <p>
+ * The screen is divided into square cells and each box is added to all 
+ * cells it overlaps, so a collision test only compares the boxes of the 
+ * cells the tested box overlaps. Boxes outside the screen are kept in the 
+ * border cells. 
+ * <p>
+ * All data is kept in int arrays that only grows, so {@link #reset(int, int)}
+ * and {@link #add(int, int, int, int)} doesn't allocate once the arrays 
+ * are large enough for a frame. 
+ */
+final class ScreenBoxIndex {
+    
+    private final int m_cellSize;
+    private int m_nbrCellsX;
+    private int m_nbrCellsY;
+    
+    // the first entry of each cell, -1 if the cell is empty
+    private int[] m_cellHead = new int[0];
+    
+    // the boxes, stored as minX, minY, maxX, maxY
+    private int[] m_boxes = new int[64];
+    private int m_nbrBoxes;
+    
+    // an entry for each cell a box overlaps, linked per cell 
+    private int[] m_entryBox = new int[64];
+    private int[] m_entryNext = new int[64];
+    private int m_nbrEntries;
+    
+    /**
+     * @param cellSize the width and height of a cell in pixels
+     */
+    ScreenBoxIndex(int cellSize) {
+        m_cellSize = cellSize;
+    }
+    
+    /**
+     * Removes all boxes. 
+     * 
+     * @param screenWidth the width of the screen
+     * @param screenHeight the height of the screen
+     */
+    void reset(int screenWidth, int screenHeight) {
+        m_nbrCellsX = Math.max(1, (screenWidth + m_cellSize - 1) / m_cellSize);
+        m_nbrCellsY = Math.max(1, (screenHeight + m_cellSize - 1) / m_cellSize);
+        final int nbrCells = m_nbrCellsX * m_nbrCellsY;
+        if (m_cellHead.length < nbrCells) {
+            m_cellHead = new int[nbrCells];
+        }
+        final int[] cellHead = m_cellHead;
+        for (int i = 0; i < nbrCells; i++) {
+            cellHead[i] = -1;
+        }
+        m_nbrBoxes = 0;
+        m_nbrEntries = 0;
+    }
+    
+    /**
+     * @return the number of boxes added since the last reset
+     */
+    int size() {
+        return m_nbrBoxes;
+    }
+    
+    /**
+     * Adds a box. 
+     */
+    void add(int minX, int minY, int maxX, int maxY) {
+        if ((m_nbrBoxes + 1) << 2 > m_boxes.length) {
+            int[] tmp = new int[m_boxes.length << 1];
+            System.arraycopy(m_boxes, 0, tmp, 0, m_nbrBoxes << 2);
+            m_boxes = tmp;
+        }
+        final int box = m_nbrBoxes++;
+        final int pos = box << 2;
+        m_boxes[pos] = minX;
+        m_boxes[pos+1] = minY;
+        m_boxes[pos+2] = maxX;
+        m_boxes[pos+3] = maxY;
+        
+        final int maxCellX = getCellX(Math.max(minX, maxX));
+        final int maxCellY = getCellY(Math.max(minY, maxY));
+        for (int y = getCellY(Math.min(minY, maxY)); y <= maxCellY; y++) {
+            for (int x = getCellX(Math.min(minX, maxX)); x <= maxCellX; x++) {
+                if (m_nbrEntries == m_entryBox.length) {
+                    int[] tmp = new int[m_nbrEntries << 1];
+                    System.arraycopy(m_entryBox, 0, tmp, 0, m_nbrEntries);
+                    m_entryBox = tmp;
+                    tmp = new int[m_nbrEntries << 1];
+                    System.arraycopy(m_entryNext, 0, tmp, 0, m_nbrEntries);
+                    m_entryNext = tmp;
+                }
+                final int cell = y * m_nbrCellsX + x;
+                final int entry = m_nbrEntries++;
+                m_entryBox[entry] = box;
+                m_entryNext[entry] = m_cellHead[cell];
+                m_cellHead[cell] = entry;
+            }
+        }
+    }
+    
+    /**
+     * Checks if the box intersects any of the added boxes. 
+     * 
+     * @param strict true if boxes that only shares an edge doesn't 
+     * intersect, see {@link DrawBoundingBox#intersectsWith(DrawBoundingBox)}
+     * @return true if the box intersects an added box
+     */
+    boolean intersects(int minX, int minY, int maxX, int maxY, boolean strict) {
+        if (m_nbrBoxes == 0) {
+            return false;
+        }
+        if (strict) {
+            // a.max > b.min is the same as a.max - 1 >= b.min for ints
+            minX++;
+            minY++;
+            maxX--;
+            maxY--;
+        }
+        final int[] boxes = m_boxes;
+        final int[] entryBox = m_entryBox;
+        final int[] entryNext = m_entryNext;
+        final int maxCellX = getCellX(Math.max(minX, maxX));
+        final int maxCellY = getCellY(Math.max(minY, maxY));
+        for (int y = getCellY(Math.min(minY, maxY)); y <= maxCellY; y++) {
+            for (int x = getCellX(Math.min(minX, maxX)); x <= maxCellX; x++) {
+                for (int e = m_cellHead[y * m_nbrCellsX + x]; e >= 0; e = entryNext[e]) {
+                    final int pos = entryBox[e] << 2;
+                    if (!(maxX < boxes[pos] || minX > boxes[pos+2] 
+                          || maxY < boxes[pos+1] || minY > boxes[pos+3])) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+    
+    private int getCellX(int x) {
+        if (x < 0) {
+            return 0;
+        }
+        return Math.min(x / m_cellSize, m_nbrCellsX - 1);
+    }
+    
+    private int getCellY(int y) {
+        if (y < 0) {
+            return 0;
+        }
+        return Math.min(y / m_cellSize, m_nbrCellsY - 1);
+    }
+}
@@ -36,7 +36,7 @@ import java.util.Vector;
 import com.wayfinder.core.map.util.ScreenInfo;
 import com.wayfinder.core.map.vectormap.internal.process.TextPlacementInfo;
 import com.wayfinder.core.map.vectormap.internal.process.TileFeature;
-import com.wayfinder.core.map.vectormap.internal.process.TileFeatureData;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStore;
 import com.wayfinder.core.map.vectormap.internal.process.TileMap;
 import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
 import com.wayfinder.core.shared.internal.debug.LogFactory;
@@ -50,6 +50,9 @@ public class TileMapWrapper {
     private static final Logger LOG = LogFactory
             .getLoggerForClass(TileMapWrapper.class);
     
+    private static final int FEATURE_REF_IMPORTANCE_SHIFT = 24;
+    private static final int FEATURE_REF_INDEX_MASK = (1 << FEATURE_REF_IMPORTANCE_SHIFT) - 1;
+    
     private int nbrImportances;
     private int iLat;
     private int iLon;
@@ -64,7 +67,21 @@ public class TileMapWrapper {
     
     private String iTileID;
     
-    private Vector[] geoDataVector;
+    /* The features to draw for each draw level. Each feature is referenced 
+     * by (importance << FEATURE_REF_IMPORTANCE_SHIFT) | featureIndex, where 
+     * the feature index is the index in the TileFeatureStore of the importance */
+    private int[][] featureRefs;
+    private int[] nbrFeatureRefs;
+    private TileFeatureStore[] featureStores;
+    // index of the features used to cull them against the camera, rebuilt 
+    // when a geometry tile is added 
+    private FeatureGrid m_featureGrid;
+    
+    /* The references of the lines that was given text placement info when 
+     * the draw level was last drawn, so it can be cleared from lines that 
+     * are not visited by the next drawing, see clearTextPlacementInfo() */
+    private int[][] m_textPlacementRefs;
+    private int[] m_nbrTextPlacementRefs;
     private long []tileMapTimeStamp;
     private long []tileNoticeSortArray;
     
@@ -75,10 +92,14 @@ public class TileMapWrapper {
         iLayerID = aLayerID;
         iDetailLevel = aDetailLevel;
         
-        geoDataVector = new Vector[Utils.MAX_LEVEL+1];
-        for(int i=0; i<geoDataVector.length; i++) {
-            geoDataVector[i] = new Vector(30);
+        featureRefs = new int[Utils.MAX_LEVEL+1][];
+        for(int i=0; i<featureRefs.length; i++) {
+            featureRefs[i] = new int[30];
         }
+        nbrFeatureRefs = new int[Utils.MAX_LEVEL+1];
+        m_textPlacementRefs = new int[Utils.MAX_LEVEL+1][];
+        m_nbrTextPlacementRefs = new int[Utils.MAX_LEVEL+1];
+        featureStores = new TileFeatureStore[aMaxNbrImp];
         
         clearStrings();
         iTileID = aTileID;
@@ -134,12 +155,19 @@ public class TileMapWrapper {
                 tileMapTimeStamp[importance] = tileMap.getTimestamp();
             loadedMaps |= (0x1<<importance);
             
-            Vector newGeoData = tileMap.getGeoData();
-            for (int i=0; i<newGeoData.size(); i++) {
-                TileFeatureData tileFeatureData = (TileFeatureData)newGeoData.elementAt(i);
-                tileFeatureData.setImportance(importance);              
-                Vector geoData = geoDataVector[tileFeatureData.getLevel()];
-                geoData.addElement(tileFeatureData);
+            TileFeatureStore features = tileMap.getFeatureStore();
+            features.setImportance(importance);
+            if (importance >= featureStores.length) {
+                TileFeatureStore[] tmp = new TileFeatureStore[importance+1];
+                System.arraycopy(featureStores, 0, tmp, 0, featureStores.length);
+                featureStores = tmp;
+            }
+            featureStores[importance] = features;
+            
+            final int nbrFeatures = features.getNbrFeatures();
+            final int impRef = importance << FEATURE_REF_IMPORTANCE_SHIFT;
+            for (int i=0; i<nbrFeatures; i++) {
+                addFeatureRef(features.getLevel(i), impRef | i);
             }
             
             // Sort the features in the tile in the right drawing order.  
@@ -158,42 +186,59 @@ public class TileMapWrapper {
                             "Features sorting time = "+(System.currentTimeMillis()-time)+" ms, nbrFeaturesToSort= "+nbrFeaturesToSort);
                 }
             }
+            
+            m_featureGrid = new FeatureGrid(featureRefs, nbrFeatureRefs, featureStores, 
+                    FEATURE_REF_IMPORTANCE_SHIFT, FEATURE_REF_INDEX_MASK);
         } else {
             //It was a string
             int[] strIdx = tileMap.getStrIdxByFeatureIdx();
             String[] str = tileMap.getStringArray();
             renderStringImportance |= (0x1<<importance);
             
-            for(int i=0; i<geoDataVector.length; i++) {
-                Vector geoDatas = geoDataVector[i];
-                synchronized(geoDatas) {
-                    final int size = geoDatas.size();
-                    for(int j=0; j<size; j++) {
-                        TileFeatureData geoData = (TileFeatureData) geoDatas.elementAt(j);
-                        
-                        if(geoData.getImportance() == importance) {
-                            int idx =-1;
-                            try {
-                                idx = strIdx[geoData.getFeatureIndex()];
-                            }catch(ArrayIndexOutOfBoundsException e){
-                                idx = -1;                               
-                            }
-                            
-                            if(idx>-1) {
-                                geoData.setText(str[idx]);
-                            } else {
-                                geoData.setText(null);
-                            }
-                        }
+            TileFeatureStore features = null;
+            if (importance < featureStores.length) {
+                features = featureStores[importance];
+            }
+            
+            if (features != null) {
+                final int nbrFeatures = features.getNbrFeatures();
+                for(int i=0; i<nbrFeatures; i++) {
+                    int idx =-1;
+                    try {
+                        idx = strIdx[i];
+                    }catch(ArrayIndexOutOfBoundsException e){
+                        idx = -1;                               
+                    }
+                    
+                    if(idx>-1) {
+                        features.setText(i, str[idx]);
+                    } else {
+                        features.setText(i, null);
                     }
                 }
             }
         }
     }
+    
+    /*
+     * Adds a feature reference last in the draw level. 
+     */
+    private void addFeatureRef(int level, int ref) {
+        int[] refs = featureRefs[level];
+        final int size = nbrFeatureRefs[level];
+        if (size == refs.length) {
+            int[] tmp = new int[size << 1];
+            System.arraycopy(refs, 0, tmp, 0, size);
+            refs = tmp;
+            featureRefs[level] = refs;
+        }
+        refs[size] = ref;
+        nbrFeatureRefs[level] = size + 1;
+    }
      
-    // Temporary vector that holds the sorted elements until 
-    // they can be added to the real vector again. 
-    private Vector m_ms_combinedVector = new Vector();
+    // Temporary array that holds the sorted elements until 
+    // they can be added to the real array again. 
+    private int[] m_ms_combined = new int[30];
     
     // For debug only
     private int nbrFeaturesToSort = 0;
@@ -202,70 +247,68 @@ public class TileMapWrapper {
      * Sort the features in the map in tile notice value order
      */
     public void mergeSort() {        
-        for (int i=0; i<geoDataVector.length; i++) {
-            Vector v = geoDataVector[i];
-            final int size = v.size();
+        for (int i=0; i<featureRefs.length; i++) {
+            final int size = nbrFeatureRefs[i];
             nbrFeaturesToSort += size;
-            tileNoticeMergeSort(v, 0, size-1);            
+            if (m_ms_combined.length < size) {
+                m_ms_combined = new int[size];
+            }
+            tileNoticeMergeSort(featureRefs[i], 0, size-1);            
         }        
     } 
 
     /*
      * Sort the features in tile notice value order using merge sort. 
      */
-    private void tileNoticeMergeSort(Vector v, int start, int end ) {
+    private void tileNoticeMergeSort(int[] v, int start, int end ) {
         
         // Check that it's items to sort...
         if ((end-start) >= 1 ) {            
             int middle = (start+end) / 2;
             
-            // Split the vector in half and sort each half with recursive calls. 
+            // Split the array in half and sort each half with recursive calls. 
             tileNoticeMergeSort(v, start, middle );
             tileNoticeMergeSort(v, middle+1, end );
             
-            // Merge the sorted "sub-vectors" 
+            // Merge the sorted "sub-arrays" 
             merge(v, start, middle, end);
         }
     }
      
      /*
-      * Merge two sorted "sub-vectors" into one sorted vector
+      * Merge two sorted "sub-arrays" into one sorted array
       */
-    private void merge(Vector v, int left, int middle, int right ) {
+    private void merge(int[] v, int left, int middle, int right ) {
          
         int leftIndex = left;
         int rightIndex = (middle+1);
-        m_ms_combinedVector.removeAllElements();
+        final int[] combined = m_ms_combined;
+        int cnt = 0;
 
         // Merge arrays until reaching end of either
         while (leftIndex <= middle && rightIndex <= right) {            
-            if(tileNoticeSortArray[((TileFeatureData) v.elementAt(leftIndex)).getImportance()] <= 
-                tileNoticeSortArray[((TileFeatureData) v.elementAt(rightIndex)).getImportance()]) {
+            if(tileNoticeSortArray[v[leftIndex] >>> FEATURE_REF_IMPORTANCE_SHIFT] <= 
+                tileNoticeSortArray[v[rightIndex] >>> FEATURE_REF_IMPORTANCE_SHIFT]) {
                 
-                m_ms_combinedVector.addElement(v.elementAt(leftIndex++)); 
+                combined[cnt++] = v[leftIndex++]; 
             } else {
-                m_ms_combinedVector.addElement(v.elementAt(rightIndex++));
+                combined[cnt++] = v[rightIndex++];
             }
         }
       
         if(leftIndex == (middle+1)) {
-           // If left vector is empty, copy in rest of right vector
+           // If left array is empty, copy in rest of right array
            while ( rightIndex <= right )
-               m_ms_combinedVector.addElement(v.elementAt(rightIndex++));
+               combined[cnt++] = v[rightIndex++];
         } else {
-            // The right vector is empty, copy in rest of left vector
+            // The right array is empty, copy in rest of left array
             while ( leftIndex <= middle ) { 
-                m_ms_combinedVector.addElement(v.elementAt(leftIndex++));
+                combined[cnt++] = v[leftIndex++];
             }
         }
 
-        // Copy the sorted TileFeatureData into original vector v. 
-        int cnt = 0;
-        for (int i = left; i <= right; i++) {
-            Object obj = m_ms_combinedVector.elementAt(cnt);
-            v.setElementAt(obj, i);
-            cnt++;
-        }
+        // Copy the sorted feature references into original array v. 
+        System.arraycopy(combined, 0, v, left, cnt);
     }
     
     public void setRender(int importance, boolean shouldRender) {
@@ -325,12 +368,100 @@ public class TileMapWrapper {
         return iDetailLevel;
     }
     /**
-     * Returns the geodatas that should be drawn at this draw level(order).
+     * Returns the features that should be drawn at this draw level(order). 
+     * Only the first {@link #getNbrFeatures(int)} references are valid. 
+     * 
+     * @param drawLevel Drawing level (order).
+     * @return References to the features that should be drawn at the 
+     * specified draw level. 
+     * @see #getFeatureStore(int)
+     * @see #getFeatureIndex(int)
+     */
+    public int[] getFeatureRefs(int drawLevel) {
+        return featureRefs[drawLevel];
+    }
+    
+    /**
+     * @param drawLevel Drawing level (order).
+     * @return the number of features that should be drawn at the draw level.
+     */
+    public int getNbrFeatures(int drawLevel) {
+        return nbrFeatureRefs[drawLevel];
+    }
+    
+    /**
+     * @return the index of the features, null until the first geometry 
+     * tile has been added
+     */
+    FeatureGrid getFeatureGrid() {
+        return m_featureGrid;
+    }
+    
+    /**
+     * Clears the text placement info of the lines at the draw level that 
+     * was recorded by {@link #addTextPlacementRef(int, int)} since the 
+     * last call. 
+     * <p>
+     * Called by the {@link MapDrawer} before the features of the draw level
+     * are drawn, since the lines that isn't visited must not keep the text 
+     * placement info from an earlier frame. 
+     * 
+     * @param drawLevel Drawing level (order).
+     */
+    void clearTextPlacementInfo(int drawLevel) {
+        final int[] refs = m_textPlacementRefs[drawLevel];
+        final int size = m_nbrTextPlacementRefs[drawLevel];
+        for (int i=0; i<size; i++) {
+            final int ref = refs[i];
+            getFeatureStore(ref).setTextPlacementInfo(getFeatureIndex(ref), null);
+        }
+        m_nbrTextPlacementRefs[drawLevel] = 0;
+    }
+    
+    /**
+     * Records that the referenced line was given text placement info, see
+     * {@link #clearTextPlacementInfo(int)}.
+     * 
      * @param drawLevel Drawing level (order).
-     * @return Geodatas that should be drawn at the specified draw level.
+     * @param featureRef a reference from {@link #getFeatureRefs(int)}
+     */
+    void addTextPlacementRef(int drawLevel, int featureRef) {
+        int[] refs = m_textPlacementRefs[drawLevel];
+        final int size = m_nbrTextPlacementRefs[drawLevel];
+        if (refs == null || size == refs.length) {
+            int[] tmp = new int[(size == 0) ? 8 : size << 1];
+            if (refs != null) {
+                System.arraycopy(refs, 0, tmp, 0, size);
+            }
+            refs = tmp;
+            m_textPlacementRefs[drawLevel] = refs;
+        }
+        refs[size] = featureRef;
+        m_nbrTextPlacementRefs[drawLevel] = size + 1;
+    }
+    
+    /**
+     * @param featureRef a reference from {@link #getFeatureRefs(int)}
+     * @return the store holding the referenced feature
+     */
+    public TileFeatureStore getFeatureStore(int featureRef) {
+        return featureStores[featureRef >>> FEATURE_REF_IMPORTANCE_SHIFT];
+    }
+    
+    /**
+     * @param featureRef a reference from {@link #getFeatureRefs(int)}
+     * @return the importance of the referenced feature
+     */
+    public static int getImportance(int featureRef) {
+        return featureRef >>> FEATURE_REF_IMPORTANCE_SHIFT;
+    }
+    
+    /**
+     * @param featureRef a reference from {@link #getFeatureRefs(int)}
+     * @return the index of the referenced feature in its TileFeatureStore 
      */
-    public Vector getGeoData(int drawLevel) {
-        return geoDataVector[drawLevel];
+    public static int getFeatureIndex(int featureRef) {
+        return featureRef & FEATURE_REF_INDEX_MASK;
     }
     
     public void setEmptyImportances(int emptyImportances) {
@@ -387,13 +518,16 @@ public class TileMapWrapper {
         
         boolean returnValue = false;
         for (int level=0; level<Utils.MAX_LEVEL; level++) {
-            Vector geoDatas = geoDataVector[level];
-            for (int i=0; i<geoDatas.size(); i++) {
-                TileFeatureData geoData = (TileFeatureData) geoDatas.elementAt(i);
-                String text = geoData.getText();
-                TextPlacementInfo textPlacementInfo = geoData.getTextPlacementInfo();
+            final int[] refs = featureRefs[level];
+            final int size = nbrFeatureRefs[level];
+            for (int i=0; i<size; i++) {
+                final int ref = refs[i];
+                final TileFeatureStore features = getFeatureStore(ref);
+                final int feature = getFeatureIndex(ref);
+                String text = features.getText(feature);
+                TextPlacementInfo textPlacementInfo = features.getTextPlacementInfo(feature);
                  
-                if (geoData.getPrimitiveType() == TileFeature.LINE ) {                    
+                if (features.getPrimitiveType(feature) == TileFeature.LINE ) {                    
                     // Check if the name of the line and text placement info exists 
                     if (textPlacementInfo != null && textPlacementInfo.containsInfo()) {
                         int textWidth = 0, textHeight = 0;
@@ -405,7 +539,7 @@ public class TileMapWrapper {
                         int centerX = startX/2 + stopX/2;
                         int centerY = startY/2 + stopY/2;
                         
-                        boolean isHighwayText = !(geoData.getFeatureType() != 5 || geoData.getText().length() >= 6);
+                        boolean isHighwayText = !(features.getFeatureType(feature) != 5 || text.length() >= 6);
                         DrawBoundingBox textBoundingBox = null;
                         
                         if (!isHighwayText) {
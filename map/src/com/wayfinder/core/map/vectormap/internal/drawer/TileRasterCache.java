@@ -0,0 +1,350 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.drawer;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import com.wayfinder.pal.graphics.WFGraphicsFactory;
+import com.wayfinder.pal.graphics.WFImage;
+
+/**
+ * Cache of off-screen images of rendered map tiles, used by the 
+ * {@link RenderManager} to composite the map with drawImage() while the 
+ * camera only pans.
+ * <p>
+ * An entry is valid for the camera transform, tile map format description, 
+ * rendered importances and start pass it was rendered with, see 
+ * {@link Entry#isValid(float[][], long, Object, int, int)}. The total number 
+ * of pixels of the images are kept below a budget by evicting the least 
+ * recently drawn entries, and the images of evicted entries are reused for 
+ * new entries when they are large enough.
+ * <p>
+ * The cache is used frame by frame. {@link #beginFrame()} starts a frame and 
+ * {@link #endFrame()} removes the entries of the tiles that wasn't looked up 
+ * during the frame, so tiles that has been removed from the map aren't kept 
+ * alive by the cache.  
+ */
+final class TileRasterCache {
+    
+    /**
+     * A cached tile image.
+     */
+    static final class Entry {
+        
+        private final Object m_key;
+        private WFImage m_image;
+        
+        // the part of the image that is used by the tile
+        private int m_width;
+        private int m_height;
+        
+        // the state the image was rendered with
+        private boolean m_isValid;
+        private float m_t00, m_t01, m_t10, m_t11;
+        private Object m_tmfd;
+        private int m_renderImportances;
+        private int m_startPass;
+        
+        // the fraction of a pixel the tile corner was rendered at
+        private float m_fractionX, m_fractionY;
+        
+        private int m_lastSeenFrame;
+        private int m_lastDrawnFrame;
+        
+        Entry(Object key) {
+            m_key = key;
+        }
+        
+        WFImage getImage() {
+            return m_image;
+        }
+        
+        int getWidth() {
+            return m_width;
+        }
+        
+        int getHeight() {
+            return m_height;
+        }
+        
+        /**
+         * Checks if the image can be drawn with the current camera transform. 
+         * <p>
+         * The rotation, zoom level and the latitude correction of the 
+         * transform must be the same as when the image was rendered, within 
+         * half a pixel over the size of the tile. The translation may differ
+         * since that only moves the image.
+         * 
+         * @param transform the 2D camera transform
+         * @param mc2UnitsPerTile the size of the tile in MC2 units
+         * @param tmfd the current tile map format description
+         * @param renderImportances the importances of the tile set to be rendered
+         * @param startPass the first draw pass
+         * @return true if the image can be drawn
+         */
+        boolean isValid(float[][] transform, long mc2UnitsPerTile, Object tmfd, 
+                int renderImportances, int startPass) {
+            if (!m_isValid
+                    || m_tmfd != tmfd 
+                    || m_renderImportances != renderImportances 
+                    || m_startPass != startPass) {
+                return false;
+            }
+            final float maxDiff = 0.5f / mc2UnitsPerTile;
+            return Math.abs(transform[0][0] - m_t00) <= maxDiff
+                && Math.abs(transform[0][1] - m_t01) <= maxDiff
+                && Math.abs(transform[1][0] - m_t10) <= maxDiff
+                && Math.abs(transform[1][1] - m_t11) <= maxDiff;
+        }
+        
+        /**
+         * Marks the image as rendered with the specified state. 
+         * 
+         * @param transform the 2D camera transform
+         * @param tmfd the current tile map format description
+         * @param renderImportances the importances of the tile set to be rendered
+         * @param startPass the first draw pass
+         * @param fractionX the fraction of a pixel the left edge of the tile 
+         * was rendered at
+         * @param fractionY the fraction of a pixel the top edge of the tile 
+         * was rendered at
+         */
+        void setRendered(float[][] transform, Object tmfd, int renderImportances, 
+                int startPass, float fractionX, float fractionY) {
+            m_t00 = transform[0][0];
+            m_t01 = transform[0][1];
+            m_t10 = transform[1][0];
+            m_t11 = transform[1][1];
+            m_tmfd = tmfd;
+            m_renderImportances = renderImportances;
+            m_startPass = startPass;
+            m_fractionX = fractionX;
+            m_fractionY = fractionY;
+            m_isValid = true;
+        }
+        
+        float getFractionX() {
+            return m_fractionX;
+        }
+        
+        float getFractionY() {
+            return m_fractionY;
+        }
+    }
+    
+    private final WFGraphicsFactory m_factory;
+    private int m_maxNbrPixels;
+    private int m_nbrPixels;
+    
+    private final Hashtable m_entriesByKey = new Hashtable();
+    private final Vector m_entries = new Vector();
+    
+    private int m_frame;
+    
+    /**
+     * @param factory the factory used to create the images
+     * @param maxNbrPixels the maximum total number of pixels of the images
+     */
+    TileRasterCache(WFGraphicsFactory factory, int maxNbrPixels) {
+        m_factory = factory;
+        m_maxNbrPixels = maxNbrPixels;
+    }
+    
+    /**
+     * Sets the maximum total number of pixels of the images. Entries are 
+     * evicted at the next allocation if the cache is larger. 
+     * 
+     * @param maxNbrPixels the maximum total number of pixels of the images
+     */
+    void setMaxNbrPixels(int maxNbrPixels) {
+        m_maxNbrPixels = maxNbrPixels;
+    }
+    
+    int getMaxNbrPixels() {
+        return m_maxNbrPixels;
+    }
+    
+    /**
+     * @return the total number of pixels of the cached images
+     */
+    int getNbrPixels() {
+        return m_nbrPixels;
+    }
+    
+    /**
+     * @return the number of cached entries 
+     */
+    int size() {
+        return m_entries.size();
+    }
+    
+    /**
+     * Starts a new frame.
+     */
+    void beginFrame() {
+        m_frame++;
+    }
+    
+    /**
+     * Ends the current frame and removes the entries that wasn't looked up 
+     * during the frame. 
+     */
+    void endFrame() {
+        for (int i = m_entries.size() - 1; i >= 0; i--) {
+            Entry entry = (Entry) m_entries.elementAt(i);
+            if (entry.m_lastSeenFrame != m_frame) {
+                remove(i);
+            }
+        }
+    }
+    
+    /**
+     * Removes all entries. 
+     */
+    void clear() {
+        m_entries.removeAllElements();
+        m_entriesByKey.clear();
+        m_nbrPixels = 0;
+    }
+    
+    /**
+     * Returns the entry of a tile and marks it as seen during the current 
+     * frame.
+     * 
+     * @param key the tile
+     * @return the entry or null if the tile isn't cached
+     */
+    Entry lookup(Object key) {
+        Entry entry = (Entry) m_entriesByKey.get(key);
+        if (entry != null) {
+            entry.m_lastSeenFrame = m_frame;
+        }
+        return entry;
+    }
+    
+    /**
+     * Marks an entry as drawn during the current frame. Entries drawn during
+     * the current frame are never evicted. 
+     * 
+     * @param entry the entry
+     */
+    void markDrawn(Entry entry) {
+        entry.m_lastSeenFrame = m_frame;
+        entry.m_lastDrawnFrame = m_frame;
+    }
+    
+    /**
+     * Returns an invalid entry with an image of at least the specified size 
+     * for a tile, and marks it as drawn during the current frame. 
+     * <p>
+     * The least recently drawn entries are evicted until the new image fits 
+     * in the budget. 
+     * 
+     * @param key the tile
+     * @param width the width of the tile in pixels
+     * @param height the height of the tile in pixels
+     * @return the entry or null if the image doesn't fit in the budget 
+     * without evicting images drawn during the current frame
+     */
+    Entry allocate(Object key, int width, int height) {
+        Entry entry = (Entry) m_entriesByKey.get(key);
+        if (entry != null) {
+            final WFImage image = entry.m_image;
+            if (image.getWidth() >= width && image.getHeight() >= height) {
+                entry.m_width = width;
+                entry.m_height = height;
+                entry.m_isValid = false;
+                markDrawn(entry);
+                return entry;
+            }
+            remove(m_entries.indexOf(entry));
+        }
+        
+        WFImage image = null;
+        final int nbrPixels = width * height;
+        while (m_nbrPixels + nbrPixels > m_maxNbrPixels) {
+            final int lru = getLeastRecentlyDrawn();
+            if (lru < 0) {
+                return null;
+            }
+            WFImage evicted = ((Entry) m_entries.elementAt(lru)).m_image;
+            remove(lru);
+            if (evicted.getWidth() >= width && evicted.getHeight() >= height) {
+                // reuse the image instead of creating a new one
+                image = evicted;
+                m_nbrPixels += image.getWidth() * image.getHeight();
+                break;
+            }
+        }
+        if (image == null) {
+            image = m_factory.createWFImage(width, height);
+            m_nbrPixels += nbrPixels;
+        }
+        
+        entry = new Entry(key);
+        entry.m_image = image;
+        entry.m_width = width;
+        entry.m_height = height;
+        m_entries.addElement(entry);
+        m_entriesByKey.put(key, entry);
+        markDrawn(entry);
+        return entry;
+    }
+    
+    /*
+     * Returns the index of the least recently drawn entry that wasn't drawn 
+     * in the current frame, or -1 if no such entry exists.  
+     */
+    private int getLeastRecentlyDrawn() {
+        int lru = -1;
+        int lruFrame = m_frame;
+        final int size = m_entries.size();
+        for (int i = 0; i < size; i++) {
+            Entry entry = (Entry) m_entries.elementAt(i);
+            if (entry.m_lastDrawnFrame < lruFrame) {
+                lru = i;
+                lruFrame = entry.m_lastDrawnFrame;
+            }
+        }
+        return lru;
+    }
+    
+    private void remove(int index) {
+        Entry entry = (Entry) m_entries.elementAt(index);
+        m_entries.removeElementAt(index);
+        m_entriesByKey.remove(entry.m_key);
+        m_nbrPixels -= entry.m_image.getWidth() * entry.m_image.getHeight();
+    }
+}
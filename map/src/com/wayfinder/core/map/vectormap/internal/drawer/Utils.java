@@ -251,7 +251,9 @@ public class Utils {
     }
     
     /**
-     * Matrix multiplication of 4x4 float matrices
+     * Matrix multiplication of 4x4 float matrices. A new matrix is 
+     * allocated for each call, {@link Matrix4#multiply(float[][], float[][])}
+     * multiplies into an existing matrix. 
      *
      * @param a Left 4x4 matrix
      * @param b Right 4x4 matrix
@@ -259,22 +261,7 @@ public class Utils {
      */
     public static float[][] multiply(float[][]a,float[][]b) {
         float[][]c = new float[4][4];
-        c[0][0] = a[0][0]*b[0][0] + a[0][1]*b[1][0] + a[0][2]*b[2][0] + a[0][3]*b[3][0];
-        c[0][1] = a[0][0]*b[0][1] + a[0][1]*b[1][1] + a[0][2]*b[2][1] + a[0][3]*b[3][1];
-        c[0][2] = a[0][0]*b[0][2] + a[0][1]*b[1][2] + a[0][2]*b[2][2] + a[0][3]*b[3][2];
-        c[0][3] = a[0][0]*b[0][3] + a[0][1]*b[1][3] + a[0][2]*b[2][3] + a[0][3]*b[3][3];
-        c[1][0] = a[1][0]*b[0][0] + a[1][1]*b[1][0] + a[1][2]*b[2][0] + a[1][3]*b[3][0];
-        c[1][1] = a[1][0]*b[0][1] + a[1][1]*b[1][1] + a[1][2]*b[2][1] + a[1][3]*b[3][1];
-        c[1][2] = a[1][0]*b[0][2] + a[1][1]*b[1][2] + a[1][2]*b[2][2] + a[1][3]*b[3][2];
-        c[1][3] = a[1][0]*b[0][3] + a[1][1]*b[1][3] + a[1][2]*b[2][3] + a[1][3]*b[3][3];
-        c[2][0] = a[2][0]*b[0][0] + a[2][1]*b[1][0] + a[2][2]*b[2][0] + a[2][3]*b[3][0];
-        c[2][1] = a[2][0]*b[0][1] + a[2][1]*b[1][1] + a[2][2]*b[2][1] + a[2][3]*b[3][1];
-        c[2][2] = a[2][0]*b[0][2] + a[2][1]*b[1][2] + a[2][2]*b[2][2] + a[2][3]*b[3][2];
-        c[2][3] = a[2][0]*b[0][3] + a[2][1]*b[1][3] + a[2][2]*b[2][3] + a[2][3]*b[3][3];
-        c[3][0] = a[3][0]*b[0][0] + a[3][1]*b[1][0] + a[3][2]*b[2][0] + a[3][3]*b[3][0];
-        c[3][1] = a[3][0]*b[0][1] + a[3][1]*b[1][1] + a[3][2]*b[2][1] + a[3][3]*b[3][1];
-        c[3][2] = a[3][0]*b[0][2] + a[3][1]*b[1][2] + a[3][2]*b[2][2] + a[3][3]*b[3][2];
-        c[3][3] = a[3][0]*b[0][3] + a[3][1]*b[1][3] + a[3][2]*b[2][3] + a[3][3]*b[3][3];
+        Matrix4.multiply(a, b, c);
         return c;
     }
     
@@ -308,24 +295,24 @@ public class Utils {
     }
 
     /**
-     * Returns a float 4x4 unity matrix
+     * Returns a float 4x4 unity matrix. A new matrix is allocated for each
+     * call, see {@link Matrix4#setIdentity()}. 
      *
      * @return a 4x4 unity matrix
      */
     public static float[][] getUnityMatrix(){
-        float[][]u = {{1f,0f,0f,0f},{0f,1f,0f,0f},{0f,0f,1f,0f},{0f,0f,0f,1f}};
-        return u;
+        return new Matrix4().getArray();
     }
     
     /**
-     * Returns a DPI-corrected matrix
+     * Returns a DPI-corrected matrix. A new matrix is allocated for each 
+     * call, see {@link Matrix4#setScale(float)}. 
      *
      * @param s the dpi correction value
      * @return a DPI-corrected matrix
      */
     public static float[][] getDPIMatrix(float s){
-        float[][]u = {{s,0f,0f,0f},{0f,s,0f,0f},{0f,0f,s,0f},{0f,0f,0f,1f}};
-        return u;
+        return new Matrix4().setScale(s).getArray();
     }
     
     /**
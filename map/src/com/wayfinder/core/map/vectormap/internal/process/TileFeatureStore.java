@@ -0,0 +1,531 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.process;
+
+import com.wayfinder.core.map.vectormap.internal.control.ConcavePolygon;
+
+
+/**
+ * 
+ * The TileFeatureStore holds all the extracted features of one TileMap. 
+ * 
+ * Instead of one object per feature the attributes are kept in one primitive 
+ * array per attribute, indexed by the feature index. All coordinates of the 
+ * tile are packed into one int array, the coordinates of a feature starts at 
+ * {@link #getCoordsOffset(int)} and are {@link #getCoordsLength(int)} values 
+ * long (x1,y1,x2,y2,...,xn,yn). 
+ * 
+ * Note that all arguments in this class are not used by all features in the map. 
+ * Arguments that are only used by a few features (POIs and events) are not 
+ * allocated until a feature in the tile sets them. 
+ * 
+ */
+public final class TileFeatureStore {
+    
+    // Indicate that no border color should be used
+    public static final int NO_BORDER_COLOR = -1;
+    
+    private final int m_nbrFeatures;
+    private int m_importance;
+    
+    private final byte[] m_primitiveType;
+    private final byte[] m_level;
+    private final int[] m_featureType;
+    
+    // minLat, maxLat, minLon, maxLon for each feature
+    private final int[] m_coordExtremes;
+    
+    private final int[] m_coords;
+    private final int[] m_coordsOffset;
+    private final int[] m_coordsLength;
+    private int m_coordsEnd;
+
+    // The simplified lines, null if no line was simplified. A coordinate
+    // offset of -1 means that the full coordinates is used at the scale
+    // index, see setScaleCoords().
+    private int m_nbrScaleIndices;
+    private int[] m_scaleCoords;
+    private int[] m_scaleCoordsOffset;
+    private int[] m_scaleCoordsLength;
+
+    private final SimpleArg[] m_color;
+    private final SimpleArg[] m_borderColor;
+    private final SimpleArg[] m_widthArgs;
+    private final SimpleArg[] m_widthMetersArgs;
+    
+    private final String[] m_text;
+    private final TextPlacementInfo[] m_textPlacementInfo;
+    private final ConcavePolygon[] m_concavePolygon;
+    
+    // Only allocated when used by a feature in the tile
+    private int[] m_maxScale;
+    private int[] m_bitmapIndex;
+    private int[] m_time;
+    private int[] m_id;
+    private short[] m_duration;
+    
+    /**
+     * Creates a new store.
+     * 
+     * @param nbrFeatures the number of features in the tile
+     * @param nbrCoordValues the total number of coordinate values (x and y) 
+     * of all features in the tile
+     */
+    TileFeatureStore(int nbrFeatures, int nbrCoordValues) {
+        m_nbrFeatures = nbrFeatures;
+        m_primitiveType = new byte[nbrFeatures];
+        m_level = new byte[nbrFeatures];
+        m_featureType = new int[nbrFeatures];
+        m_coordExtremes = new int[nbrFeatures << 2];
+        m_coords = new int[nbrCoordValues];
+        m_coordsOffset = new int[nbrFeatures];
+        m_coordsLength = new int[nbrFeatures];
+        m_color = new SimpleArg[nbrFeatures];
+        m_borderColor = new SimpleArg[nbrFeatures];
+        m_widthArgs = new SimpleArg[nbrFeatures];
+        m_widthMetersArgs = new SimpleArg[nbrFeatures];
+        m_text = new String[nbrFeatures];
+        m_textPlacementInfo = new TextPlacementInfo[nbrFeatures];
+        m_concavePolygon = new ConcavePolygon[nbrFeatures];
+    }
+    
+    // ---------------------------------------------------------------------------------
+    // General for all primitive type
+    
+    /**
+     * @return the number of features in the store
+     */
+    public int getNbrFeatures() {
+        return m_nbrFeatures;
+    }
+    
+    /**
+     * @return the importance of the tile the features belongs to
+     */
+    public int getImportance() {
+        return m_importance;
+    }
+    
+    /**
+     * @return the primitive type of the feature
+     */
+    public int getPrimitiveType(int feature) {
+        return m_primitiveType[feature];
+    }
+    
+    /**
+     * @return the type of the feature
+     */
+    public int getFeatureType(int feature) {
+        return m_featureType[feature];
+    }
+    
+    /**
+     * @return the draw level (order) of the feature
+     */
+    public int getLevel(int feature) {
+        return m_level[feature];
+    }
+    
+    /**
+     * Returns the bounding boxes of all features. The bounding box of a feature
+     * starts at index (feature << 2) and is stored as minLat, maxLat, minLon, 
+     * maxLon. 
+     * 
+     * @return the bounding boxes of all features
+     */
+    public int[] getCoordExtremes() {
+        return m_coordExtremes;
+    }
+    
+    /**
+     * @return
+     */
+    public String getText(int feature) {
+        return m_text[feature];
+    }
+    
+    /**
+     * Returns the text placement information
+     * 
+     * @return text placement information
+     */
+    public TextPlacementInfo getTextPlacementInfo(int feature) {
+        return m_textPlacementInfo[feature];
+    }
+    
+    /**
+     * 
+     * @return
+     */
+    public int getTime(int feature) {
+        if (m_time == null) {
+            return 0;
+        }
+        return m_time[feature];
+    }
+    
+    /**
+     * 
+     * @return
+     */
+    public int getPoiUniqueID(int feature) {
+        if (m_id == null) {
+            return -1;
+        }
+        return m_id[feature];
+    }
+    
+    /**
+     * 
+     * @return the duration of the events with resolution of 5 minutes. Duration 0 means that
+     * it's a all day event. 
+     */
+    public short getDuration(int feature) {
+        if (m_duration == null) {
+            return 0;
+        }
+        return m_duration[feature];
+    }
+    
+    // ----------------------------------------------------------------------------------
+    // Used by the BITMAP primitive type
+    
+    public int getMaxScale(int feature) {
+        if (m_maxScale == null) {
+            return -1;
+        }
+        return m_maxScale[feature];
+    }
+    
+    public int getBitmapIndex(int feature) {
+        if (m_bitmapIndex == null) {
+            return 0;
+        }
+        return m_bitmapIndex[feature];
+    }
+
+    /**
+     * @return latitude in MC2 coordinate.
+     */
+    public int getLatitude(int feature) {
+        // The bounding box of a bitmap is its center point
+        return m_coordExtremes[feature << 2];
+    }
+
+    /**
+     * @return longitude in MC2 coordinate
+     */
+    public int getLongitude(int feature) {
+        return m_coordExtremes[(feature << 2) + 2];
+    }
+    
+    // ----------------------------------------------------------------------------------
+    // Used by the LINE and POLYGON primitive type
+    
+    /**
+     * Returns the color used at the specified scale index.
+     * @param scaleIndex
+     * @return Color at the specified scale index.
+     */
+    public int getColor(int feature, int scaleIndex) {
+        SimpleArg color = m_color[feature];
+        if (color == null) {
+            // Yes, same as no color.
+            return NO_BORDER_COLOR;
+        }
+        return color.getValue(scaleIndex);
+    }
+    
+    /**
+     * @return the packed coordinates of all features in the tile
+     */
+    public int[] getCoords() {
+        return m_coords;
+    }
+    
+    /**
+     * @return the index in {@link #getCoords()} of the first coordinate of 
+     * the feature
+     */
+    public int getCoordsOffset(int feature) {
+        return m_coordsOffset[feature];
+    }
+    
+    /**
+     * @return the number of coordinate values (x and y) of the feature
+     */
+    public int getCoordsLength(int feature) {
+        return m_coordsLength[feature];
+    }
+
+    /**
+     * Returns the array holding the coordinates of the feature to draw at
+     * the scale index. For simplified lines this is not the same array as
+     * {@link #getCoords()}.
+     *
+     * @param scaleIndex the scale index, see
+     * {@link TileMapFormatDesc#getScaleIndexFromZoomLevel(float)}
+     * @return the coordinates to use together with
+     * {@link #getCoordsOffset(int, int)} and {@link #getCoordsLength(int, int)}
+     */
+    public int[] getCoords(int feature, int scaleIndex) {
+        if (getScaleCoordsPos(feature, scaleIndex) < 0) {
+            return m_coords;
+        }
+        return m_scaleCoords;
+    }
+
+    /**
+     * @return the index in {@link #getCoords(int, int)} of the first
+     * coordinate of the feature at the scale index
+     */
+    public int getCoordsOffset(int feature, int scaleIndex) {
+        final int pos = getScaleCoordsPos(feature, scaleIndex);
+        if (pos < 0) {
+            return m_coordsOffset[feature];
+        }
+        return m_scaleCoordsOffset[pos];
+    }
+
+    /**
+     * @return the number of coordinate values (x and y) of the feature at
+     * the scale index
+     */
+    public int getCoordsLength(int feature, int scaleIndex) {
+        final int pos = getScaleCoordsPos(feature, scaleIndex);
+        if (pos < 0) {
+            return m_coordsLength[feature];
+        }
+        return m_scaleCoordsLength[pos];
+    }
+
+    /**
+     * @return the position in m_scaleCoordsOffset and m_scaleCoordsLength
+     * or -1 if the full coordinates should be used
+     */
+    private int getScaleCoordsPos(int feature, int scaleIndex) {
+        if (m_scaleCoords == null
+                || scaleIndex < 0 || scaleIndex >= m_nbrScaleIndices) {
+            return -1;
+        }
+        final int pos = feature * m_nbrScaleIndices + scaleIndex;
+        if (m_scaleCoordsOffset[pos] < 0) {
+            return -1;
+        }
+        return pos;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Used by the POLYGON primitive type
+    
+    public ConcavePolygon getConcavePolygon(int feature) {
+        return m_concavePolygon[feature];
+    }
+    
+    // ----------------------------------------------------------------------------------
+    // Used by the LINE primitive type
+    
+    public int getWidth(int feature, int scaleIndex) {
+        return m_widthArgs[feature].getValue(scaleIndex);
+    }
+    
+    public int getBorderColor(int feature, int scaleIndex) {
+        SimpleArg borderColor = m_borderColor[feature];
+        if (borderColor == null) {
+            return NO_BORDER_COLOR;
+        }
+        return borderColor.getValue(scaleIndex);
+    }
+    
+    public int getWidthMeters(int feature, int scaleIndex) {
+        SimpleArg widthMeters = m_widthMetersArgs[feature];
+        if (widthMeters == null) {
+            return 0xFF;
+        }
+        return widthMeters.getValue(scaleIndex);
+    }
+    
+    
+    // ----------------------------------------------------------------------------------
+    // Set methods  
+    
+    public void setImportance(int imp) {
+        m_importance = imp;
+    }
+    
+    void setPrimitiveType(int feature, int primitiveType) {
+        m_primitiveType[feature] = (byte)primitiveType;
+    }
+    
+    void setFeatureType(int feature, int type) {
+        m_featureType[feature] = type;
+    }
+    
+    /**
+     * Sets the draw level (order).
+     * @param level the draw level (order)
+     */
+    void setLevel(int feature, int level) {
+        m_level[feature] = (byte)level;
+    }
+    
+    /**
+     * 
+     * @param text
+     */
+    public void setText(int feature, String text) {
+        m_text[feature] = text;
+    }
+    
+    /**
+     * Sets the text placement information
+     * 
+     * @param textPlacementInfo  text placement information
+     */
+    public void setTextPlacementInfo(int feature, TextPlacementInfo textPlacementInfo) {
+        m_textPlacementInfo[feature] = textPlacementInfo;
+    }
+    
+    public void setBoundingBox(int feature, int maxLat, int minLat, int maxLon, int minLon) {
+        final int[] ce = m_coordExtremes;
+        final int pos = feature << 2;
+        ce[pos] = minLat;
+        ce[pos+1] = maxLat;
+        ce[pos+2] = minLon;
+        ce[pos+3] = maxLon;
+    }
+    
+    void setColor(int feature, SimpleArg color) {
+        m_color[feature] = color;
+    }
+    
+    /**
+     * Copies the coordinates of the feature into the packed coordinate array.
+     * 
+     * @param coords the coordinates
+     * @param length the number of coordinate values to copy
+     */
+    void setCoords(int feature, int[] coords, int length) {
+        System.arraycopy(coords, 0, m_coords, m_coordsEnd, length);
+        m_coordsOffset[feature] = m_coordsEnd;
+        m_coordsLength[feature] = length;
+        m_coordsEnd += length;
+    }
+    
+    /**
+     * Sets the simplified coordinates of the features.
+     * <p>
+     * The offset and length of a feature at a scale index is stored at
+     * position (feature * nbrScaleIndices + scaleIndex). An offset of -1
+     * means that the full coordinates of the feature are drawn at the
+     * scale index.
+     *
+     * @param nbrScaleIndices the number of scale indices
+     * @param coords the packed simplified coordinates
+     * @param offsets the offset in coords for each feature and scale index
+     * @param lengths the length in coords for each feature and scale index
+     */
+    public void setScaleCoords(int nbrScaleIndices, int[] coords, int[] offsets, int[] lengths) {
+        m_nbrScaleIndices = nbrScaleIndices;
+        m_scaleCoords = coords;
+        m_scaleCoordsOffset = offsets;
+        m_scaleCoordsLength = lengths;
+    }
+
+    public void setConcavePolygon(int feature, ConcavePolygon concavePolygon) {
+        m_concavePolygon[feature] = concavePolygon;
+    }
+
+    void setWidth(int feature, SimpleArg args) {
+        m_widthArgs[feature] = args;
+    }
+    
+    void setWidthMeter(int feature, SimpleArg arg) {
+        m_widthMetersArgs[feature] = arg;
+    }
+    
+    void setBorderColor(int feature, SimpleArg borderColor) {
+        m_borderColor[feature] = borderColor;
+    }
+    
+    void setMaxScale(int feature, int maxScale) {
+        if (m_maxScale == null) {
+            m_maxScale = newIntArray(-1);
+        }
+        m_maxScale[feature] = maxScale;
+    }
+    
+    void setBitmapIndex(int feature, int index) {
+        if (m_bitmapIndex == null) {
+            m_bitmapIndex = new int[m_nbrFeatures];
+        }
+        m_bitmapIndex[feature] = index;
+    }
+    
+    void setTime(int feature, int time) {
+        if (m_time == null) {
+            m_time = new int[m_nbrFeatures];
+        }
+        m_time[feature] = time;
+    }
+    
+    void setId(int feature, int id) {
+        if (m_id == null) {
+            m_id = newIntArray(-1);
+        }
+        m_id[feature] = id;
+    }
+    
+    /**
+     * Sets the duration for the event. The size of the duration is 2 bytes.
+     *  
+     * @param duration  the duration
+     */
+    void setDuration(int feature, int duration) {
+        if (m_duration == null) {
+            m_duration = new short[m_nbrFeatures];
+        }
+        m_duration[feature] = (short)duration;
+    }
+    
+    private int[] newIntArray(int defaultValue) {
+        int[] array = new int[m_nbrFeatures];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = defaultValue;
+        }
+        return array;
+    }
+
+}
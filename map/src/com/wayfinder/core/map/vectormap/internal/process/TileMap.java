@@ -40,6 +40,7 @@ import com.wayfinder.core.map.vectormap.internal.control.TileMapControlThread;
 import com.wayfinder.core.map.vectormap.internal.drawer.Utils;
 import com.wayfinder.core.shared.internal.debug.LogFactory;
 import com.wayfinder.core.shared.internal.debug.Logger;
+import com.wayfinder.core.shared.util.IntVector;
 
 public class TileMap {
     
@@ -53,13 +54,14 @@ public class TileMap {
     private int[]           categoryIdxByFeatureIdx = null;
     private ExtendedStrings []iExtenedStringsArray = null;
     private String[]        strings = null;
-    private Vector          data = null;
+    private TileFeatureStore featureStore = null;
     private Vector          allArgs = null;
     private long            crc;
     private char            emptyImportances;
     private TileMapParams   params = null;
     private long            timestamp;    
     private byte            []iData = null;    
+    private byte            []iTriangleData = null;
     private Vector          allTileFeatures;
 
     
@@ -142,17 +144,49 @@ public class TileMap {
         return iMaxNbrOfImportance;
     }
     
+    /**
+     * @return the data the tile was loaded from or null if it was read in 
+     * place from the memory cache, see {@link #load(BitBuffer, TileMapFormatDesc, boolean)}
+     */
     public byte []getByteData() {
         return iData;
     }
     
     public void clearByteData() {
         iData = null;
+        iTriangleData = null;
+    }
+    
+    /**
+     * Returns the triangulated polygons of a geometry tile that should be 
+     * saved in the persistent cache together with the tile, see 
+     * {@link TileMapParams#TRIANGLES}. 
+     * 
+     * @return the triangles record or null if the polygons wasn't 
+     * triangulated or if the triangles was loaded from the cache
+     */
+    public byte []getTriangleData() {
+        return iTriangleData;
+    }
+    
+    /**
+     * @param aTriangleData the triangles record of the tile
+     */
+    public void setTriangleData(byte []aTriangleData) {
+        iTriangleData = aTriangleData;
     }
     
     public boolean load(BitBuffer bitBuffer, TileMapFormatDesc tmfd, boolean gunzippedAlready ){
         
-        iData = bitBuffer.getByteArray();
+        /* A buffer that is a part of a larger array is read in place from 
+         * the memory cache and can't be kept. The data has already been 
+         * saved in the caches when it was loaded from the server. */
+        final byte []data = bitBuffer.getByteArray();
+        if(bitBuffer.getArrayOffset() == 0 && bitBuffer.size() == data.length) {
+            iData = data;
+        } else {
+            iData = null;
+        }
         
         int nbrBitsFeatureIdx = 0;
         int nbrBitsStrIdx = 0;
@@ -450,18 +484,36 @@ public class TileMap {
         }
     }
     
-    public Vector getGeoData() {
-        return data;
+    /**
+     * @return the extracted features of the tile or null if the 
+     * tile hasn't been initialized. 
+     */
+    public TileFeatureStore getFeatureStore() {
+        return featureStore;
     }
     
-    public Vector initData(TileMapFormatDesc tmfd) {
+    public TileFeatureStore initData(TileMapFormatDesc tmfd) {
         TileFeature[][] primitiveDefaultMap = tmfd.getPrimitiveDefaultMap();
-        Vector tempData = new Vector();
         int detailLevel = params.getDetailLevel();        
         TileFeature tileFeature;
         
+        /* Count the coordinates first so that all coordinates can be packed 
+         * into one array */ 
+        final int nbrFeatures = allTileFeatures.size();
+        int nbrCoordValues = 0;
+        for (int i=0; i<nbrFeatures; i++) {
+            TileFeatureArg []tileArgs = ((TileFeature)allTileFeatures.elementAt(i)).getArgs();
+            for (int j=0; j<tileArgs.length; j++) {
+                if (tileArgs[j].getType() == TileFeatureArg.COORDSARG) {
+                    nbrCoordValues += ((CoordsArg)tileArgs[j]).getCoords().size();
+                }
+            }
+        }
+        
+        TileFeatureStore store = new TileFeatureStore(nbrFeatures, nbrCoordValues);
+        
         /* For all features in the TileMap */
-        for (int i=0; i<allTileFeatures.size(); i++) {
+        for (int i=0; i<nbrFeatures; i++) {
             tileFeature = (TileFeature)allTileFeatures.elementAt(i);
             
             // Get the feature type
@@ -476,14 +528,14 @@ public class TileMap {
             /* The primitive TileFeature type */
             int primitiveType = feature.getType();
             
-            TileFeatureData geoData = new TileFeatureData(primitiveType, i, type);
-            
+            store.setPrimitiveType(i, primitiveType);
+            store.setFeatureType(i, type);
          
             for (int x=0; x<defaultTileFeatureArgs.length; x++) {
                 if (defaultTileFeatureArgs[x].getType() == TileFeatureArg.SIMPLEARG) {                       
                     SimpleArg simpleArg = (SimpleArg)defaultTileFeatureArgs[x]; 
                     
-                    setGeoDataArguments(detailLevel, geoData, simpleArg);                  
+                    setGeoDataArguments(detailLevel, store, i, simpleArg);                  
                     
                 } else if (defaultTileFeatureArgs[x].getType() == TileFeatureArg.STRINGARG) {
                     
@@ -495,7 +547,7 @@ public class TileMap {
                     if (stringArg.getName() == TileArgNames.IMAGE_NAME) {
                         int poiIdx = TileMapControlThread.
                                         getStringIndex("b"+stringArg.getValue(detailLevel)+".png");
-                        geoData.setBitmapIndex(poiIdx);
+                        store.setBitmapIndex(i, poiIdx);
                     }
                 }                   
             }
@@ -515,21 +567,23 @@ public class TileMap {
                         continue;
                     }
                     
-                    geoData.setCenterLat(coordArg.getLatitude());
-                    geoData.setCenterLon(coordArg.getLongitude());                  
-                    geoData.setBoundingBox(coordArg.getLatitude(), 
-                                           coordArg.getLatitude(), 
-                                           coordArg.getLongitude(), 
-                                           coordArg.getLongitude());    
+                    // The bounding box of a bitmap is its center point
+                    store.setBoundingBox(i,
+                                         coordArg.getLatitude(), 
+                                         coordArg.getLatitude(), 
+                                         coordArg.getLongitude(), 
+                                         coordArg.getLongitude());    
                     
                 } else if(tileArgs[j].getType() == TileFeatureArg.COORDSARG) {
                     
-                    CoordsArg coordsArg = (CoordsArg)tileArgs[j];                   
-                    geoData.setCoords(coordsArg.getCoords().getArray());
-                    geoData.setBoundingBox(coordsArg.getMaxLat(), 
-                                           coordsArg.getMinLat(), 
-                                           coordsArg.getMaxLon(), 
-                                           coordsArg.getMinLon());         
+                    CoordsArg coordsArg = (CoordsArg)tileArgs[j];
+                    IntVector coords = coordsArg.getCoords();
+                    store.setCoords(i, coords.getArray(), coords.size());
+                    store.setBoundingBox(i,
+                                         coordsArg.getMaxLat(), 
+                                         coordsArg.getMinLat(), 
+                                         coordsArg.getMaxLon(), 
+                                         coordsArg.getMinLon());         
                     
                 /* Note that old clients (branch_release_7 and before) will not load
                  * simple arg that are send with the feature. Those client will 
@@ -538,7 +592,7 @@ public class TileMap {
                     
                     SimpleArg simpleArg = (SimpleArg)tileArgs[j];     
                     
-                    setGeoDataArguments(detailLevel, geoData, simpleArg);  
+                    setGeoDataArguments(detailLevel, store, i, simpleArg);  
                     
                 } else if (tileArgs[j].getType() == TileFeatureArg.STRINGARG) {
                     
@@ -550,44 +604,43 @@ public class TileMap {
                     if (stringArg.getName() == TileArgNames.IMAGE_NAME) {
                         int poiIdx = TileMapControlThread.
                                         getStringIndex("b"+stringArg.getValue(detailLevel)+".png");
-                        geoData.setBitmapIndex(poiIdx);
+                        store.setBitmapIndex(i, poiIdx);
                     }
                 }               
             } 
-
-            tempData.addElement(geoData);
         }
         
-        data = tempData;                
-        return tempData;
+        featureStore = store;                
+        return store;
     }
 
     /**
      * Sets the geometric data from argument.
      * 
      * @param detailLevel The detail level to set the argument.
-     * @param geoData The geometric data to set the argument.
-     * @param simpleArg The argument to set in geoData.
+     * @param store The features to set the argument in.
+     * @param featureIndex The index of the feature to set the argument for.
+     * @param simpleArg The argument to set in the store.
      */
-    private void setGeoDataArguments(int detailLevel, TileFeatureData geoData, SimpleArg simpleArg) {
+    private void setGeoDataArguments(int detailLevel, TileFeatureStore store, int featureIndex, SimpleArg simpleArg) {
         if (simpleArg.getName() == TileArgNames.LEVEL) {
-            geoData.setLevel(simpleArg.getValue(detailLevel));
+            store.setLevel(featureIndex, simpleArg.getValue(detailLevel));
         } else if (simpleArg.getName() == TileArgNames.MAX_SCALE) {
-            geoData.setMaxScale(simpleArg.getValue(detailLevel));
+            store.setMaxScale(featureIndex, simpleArg.getValue(detailLevel));
         } else if (simpleArg.getName() == TileArgNames.COLOR) {
-            geoData.setColor(simpleArg);
+            store.setColor(featureIndex, simpleArg);
         } else if (simpleArg.getName() == TileArgNames.WIDTH) {
-            geoData.setWidth(simpleArg);
+            store.setWidth(featureIndex, simpleArg);
         } else if (simpleArg.getName() == TileArgNames.WIDTH_METERS) {
-            geoData.setWidthMeter(simpleArg);
+            store.setWidthMeter(featureIndex, simpleArg);
         } else if (simpleArg.getName() == TileArgNames.BORDER_COLOR) {
-            geoData.setBorderColor(simpleArg);                       
+            store.setBorderColor(featureIndex, simpleArg);                       
         } else if (simpleArg.getName() == TileArgNames.TIME) {
-            geoData.setTime(simpleArg.getValue(detailLevel));
+            store.setTime(featureIndex, simpleArg.getValue(detailLevel));
         } else if (simpleArg.getName() == TileArgNames.ID) {
-            geoData.setId(simpleArg.getValue(detailLevel));
+            store.setId(featureIndex, simpleArg.getValue(detailLevel));
         } else if (simpleArg.getName() == TileArgNames.DURATION) {
-            geoData.setDuration(simpleArg.getValue(detailLevel));
+            store.setDuration(featureIndex, simpleArg.getValue(detailLevel));
         }
     }
     
@@ -643,10 +696,7 @@ public class TileMap {
     }
     
     public void purgeGeoData() {
-        if(data!=null) {
-            data.removeAllElements();
-            data = null;
-        }
+        featureStore = null;
     }
     
     public void purgeStrings() {
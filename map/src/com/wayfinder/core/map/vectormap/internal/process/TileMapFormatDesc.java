@@ -848,4 +848,26 @@ public class TileMapFormatDesc {
         return first;
     }
 
+    /**
+     * @return the number of scale indices, the scale index returned by
+     * {@link #getScaleIndexFromZoomLevel(float)} is always lower.
+     */
+    public int getNbrOfScaleIndices() {
+        return m_scaleLevelsTable.length;
+    }
+
+    /**
+     * Returns the lowest zoom level that gives the scale index, see
+     * {@link #getScaleIndexFromZoomLevel(float)}.
+     *
+     * @param scaleIndex the scale index
+     * @return the lowest zoom level (meters per pixel) of the scale index
+     */
+    public int getMinZoomLevelForScaleIndex(int scaleIndex) {
+        if (scaleIndex == 0) {
+            return 0;
+        }
+        return m_scaleLevelsTable[scaleIndex - 1];
+    }
+
 }
@@ -38,7 +38,14 @@ public class TileMapParamTypes {
     private static final int FORMAT_DESC_NIGHT = 3;
     private static final int FORMAT_DESC_DAY_CRC = 4;
     private static final int FORMAT_DESC_NIGHT_CRC = 5;
-    private static final int UNKNOWN = 6;
+    private static final int TRIANGLES = 6;
+    private static final int UNKNOWN = 7;
+    
+    /**
+     * The first character of the param string for the triangulated 
+     * polygons of a geometry tile, see {@link TileMapParams#TRIANGLES}.
+     */
+    static final char TRIANGLES_PREFIX = 'P';
     
     
     public static int getParamType( String str ) {
@@ -60,6 +67,8 @@ public class TileMapParamTypes {
                 return FORMAT_DESC_DAY_CRC;
             case 'c':
                 return FORMAT_DESC_NIGHT_CRC;
+            case TRIANGLES_PREFIX: // Triangulated polygons
+                return TRIANGLES;
         }
         return UNKNOWN;
     }
@@ -97,6 +106,21 @@ public class TileMapParamTypes {
                getParamType( paramsStr ) == FORMAT_DESC_NIGHT_CRC; 
     }
     
+    public static boolean isTriangles( String paramsStr ) {
+        return getParamType( paramsStr ) == TRIANGLES;
+    }
+    
+    /**
+     * Returns the param string of the cache record that holds the 
+     * triangulated polygons of a geometry tile. 
+     * 
+     * @param geoParamString the param string of the geometry tile
+     * @return the param string of the triangles record
+     */
+    public static String getTrianglesParamString( String geoParamString ) {
+        return TRIANGLES_PREFIX + geoParamString.substring(1);
+    }
+    
     public static boolean hasValidParamType(String paramsStr) {
         return getParamType(paramsStr) != UNKNOWN;
     }
@@ -47,7 +47,7 @@ public class TileMapParams {
     private int detailLevel;
     private int tileIndexLat;
     private int tileIndexLon;
-    private int iTileMapType; // 1==Map, 0==Strings
+    private int iTileMapType; // 1==Map, 0==Strings, 2==Triangles
     private int layerID = 0;
     private int serverPrefix;
     private String iTileID;
@@ -63,6 +63,11 @@ public class TileMapParams {
     
     public static final int MAP = 1;
     public static final int STRINGS = 0;
+    /**
+     * The triangulated polygons of a geometry tile. Only used for the 
+     * records in the persistent cache, never requested from the server. 
+     */
+    public static final int TRIANGLES = 2;
     private boolean iOverviewMap = false;
     
     
@@ -211,7 +216,7 @@ public class TileMapParams {
         // Lowest bits of server prefix.
         buf.writeNextBits(serverPrefix & 0x1f, 5);
         
-        if ( iTileMapType == MAP) {
+        if ( iTileMapType == MAP || iTileMapType == TRIANGLES ) {
             // The features do not have any language.
         } else {
             // For strings, the language is important.
@@ -263,6 +268,8 @@ public class TileMapParams {
         
         if ( iTileMapType == MAP ) { //DATA
             tmpString.append('G'); // We use G for features now. G - Geometry :)
+        } else if ( iTileMapType == TRIANGLES ) {
+            tmpString.append(TileMapParamTypes.TRIANGLES_PREFIX);
         } else {
             tmpString.append('T'); // T as in sTring map. errm.. No no, T - Text
         }
@@ -330,11 +337,22 @@ public class TileMapParams {
     }
     
     public TileMapParams cloneTileMapParams() {
+        return cloneTileMapParams(iTileMapType);
+    }
+    
+    /**
+     * Returns a copy of the params with another TileMap type, e.g. the
+     * params of the triangles record for a geometry tile. 
+     * 
+     * @param aTileMapType {@link #MAP}, {@link #STRINGS} or {@link #TRIANGLES}
+     * @return a copy of the params with the type set to aTileMapType
+     */
+    public TileMapParams cloneTileMapParams(int aTileMapType) {
         TileMapParams p = new TileMapParams();
         p.setParams(serverPrefix, 
                     gzip, 
                     layerID, 
-                    iTileMapType, 
+                    aTileMapType, 
                     importanceNbr, 
                     langType, 
                     tileIndexLat, 
@@ -377,6 +395,35 @@ public class TileMapParams {
     }
     
     
+    /**
+     * Unpacks a map or strings param string, e.g. a param string read from 
+     * a cache, into the fields of a new TileMapParams.
+     * <p>
+     * The string isn't packed again and compared, see 
+     * {@link #assertParamStringCorrect(String)}. Trailing '+' characters 
+     * are stripped when a string is packed, so the gzip flag of a string 
+     * created without gzip may be unpacked as true.
+     * 
+     * @param aParamString a param string starting with 'G' or 'T'
+     * @return the params, with the tile ID set to aParamString
+     * @throws IllegalArgumentException if the string can't be unpacked
+     */
+    public static TileMapParams parseParamString(String aParamString)
+    throws IllegalArgumentException {
+        final TileMapParams params;
+        try {
+            params = unpackParamString(aParamString);
+        } catch(IllegalArgumentException iae) {
+            throw iae;
+        } catch(RuntimeException re) {
+            throw new IllegalArgumentException(aParamString
+                    + " could not be unpacked: " + re.getClass().getName());
+        }
+        params.setTileID(aParamString);
+        return params;
+    }
+    
+    
     /**
      * internal method - should only be run when debugging is active since it
      * may incur a significate performance hit
@@ -408,6 +455,37 @@ public class TileMapParams {
             return;
         }
 
+        TileMapParams repackedParams;
+        try {
+            repackedParams = unpackParamString(aParamString);
+        } catch(IllegalArgumentException iae) {
+            throw createAssertEx(aParamString, iae.getMessage());
+        }
+        final String repackedParamStr = repackedParams.getAsString();
+        
+        // *** If strings match - awsum thx! If not - pewpew exception ***  //
+        if(!aParamString.equals(repackedParamStr)) {
+            // paramstring is not valid - throw exception
+            throw createAssertEx(aParamString, "repacked paramstring became: " + repackedParamStr);
+        }
+        if(LOG.isTrace()) {
+            LOG.trace("TileMapParams.assertParamStringInternal()", "ParamStr " + aParamString + " OK!");
+        }
+    }
+    
+    
+    /**
+     * Unpacks a map or strings param string into a new TileMapParams 
+     * without checking that it packs back to the same string. 
+     * 
+     * @throws IllegalArgumentException with the reason if the string can't 
+     * be unpacked
+     * @throws IndexOutOfBoundsException If the paramstring was too short to
+     * be unpacked
+     */
+    private static TileMapParams unpackParamString(String aParamString) 
+    throws IllegalArgumentException {
+        
         // *** Start by unpacking the paramstring into a bitbuffer ***  //
         
         // text or geometry?
@@ -418,7 +496,7 @@ public class TileMapParams {
         } else if(firstChar == 'T') {
             paramGeoOrText = STRINGS;
         } else {
-            throw createAssertEx(aParamString, "This paramstring is neither strings or geometry");
+            throw new IllegalArgumentException("This paramstring is neither strings or geometry");
         }
         
         // convert to bits
@@ -429,7 +507,7 @@ public class TileMapParams {
             char ch = aParamString.charAt(i);
             int index = sortedCodeChars.indexOf(ch);
             if(index < 0) {
-                throw createAssertEx(aParamString, "Paramstring contains illegal character");
+                throw new IllegalArgumentException("Paramstring contains illegal character");
             }
             buf.writeNextBits(index & 0xff, 6);
         }
@@ -480,7 +558,7 @@ public class TileMapParams {
         } else if(paramGeoOrText == STRINGS){
             paramLangType = buf.nextBits(3) | (buf.nextBits(3) << 3 );
         } else {
-            throw createAssertEx(aParamString, "Could not determine langType for this paramstring");
+            throw new IllegalArgumentException("Could not determine langType for this paramstring");
         }
 
         // check quirky mode
@@ -509,16 +587,7 @@ public class TileMapParams {
                 paramGeoOrText, paramImportance, paramLangType,
                 paramTileIndexLat, paramTileIndexLon, paramDetailLvl,
                 paramRID, null);
-        final String repackedParamStr = repackedParams.getAsString();
-        
-        // *** If strings match - awsum thx! If not - pewpew exception ***  //
-        if(!aParamString.equals(repackedParamStr)) {
-            // paramstring is not valid - throw exception
-            throw createAssertEx(aParamString, "repacked paramstring became: " + repackedParamStr);
-        }
-        if(LOG.isTrace()) {
-            LOG.trace("TileMapParams.assertParamStringInternal()", "ParamStr " + aParamString + " OK!");
-        }
+        return repackedParams;
     }
     
     
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.util;
+
+import java.io.IOException;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileMap;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+
+/**
+ * Decodes the fixture tiles from the cache tests over and over, once with
+ * the word based {@link BitBuffer} and once with a bit by bit reader, and 
+ * prints the time per tile for both.
+ * <p>
+ * Not a unit test, run it through main().
+ */
+public class BitBufferBenchmark {
+    
+    private static final int WARMUP_ROUNDS = 2000;
+    private static final int ROUNDS = 20000;
+    
+    private final TileMapFormatDesc m_tmfd;
+    private final byte[][] m_tiles;
+    private final TileMapParams[] m_params;
+    
+    private BitBufferBenchmark() throws IOException {
+        m_tmfd = new TileMapFormatDesc();
+        m_tmfd.load(new BitBuffer(BitBufferTest.loadFixture("tmfd")), null);
+        m_tiles = new byte[][] {
+                BitBufferTest.loadFixture("data_tile_0"),
+                BitBufferTest.loadFixture("data_tile_1")
+        };
+        m_params = new TileMapParams[] {
+                new TileMapParams("G+1aA7V0Y", "G+1aA7V0Y"),
+                new TileMapParams("T+1aA7V0Y", "G+1aA7V0Y")
+        };
+    }
+    
+    private long decodeAll(int rounds, boolean bitByBit) {
+        long start = System.currentTimeMillis();
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < m_tiles.length; i++) {
+                BitBuffer buf = bitByBit ? new BitByBitBuffer(m_tiles[i]) 
+                                         : new BitBuffer(m_tiles[i]);
+                TileMap map = new TileMap();
+                map.setParams(m_params[i]);
+                if (!map.load(buf, m_tmfd, false)) {
+                    throw new IllegalStateException("Fixture failed to load");
+                }
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+    
+    private long decodeTmfd(int rounds, boolean bitByBit) throws IOException {
+        byte[] data = BitBufferTest.loadFixture("tmfd");
+        long start = System.currentTimeMillis();
+        for (int r = 0; r < rounds; r++) {
+            BitBuffer buf = bitByBit ? new BitByBitBuffer(data) 
+                                     : new BitBuffer(data);
+            new TileMapFormatDesc().load(buf, null);
+        }
+        return System.currentTimeMillis() - start;
+    }
+    
+    private static void report(String what, long millis, int count) {
+        System.out.println(what + ": " + millis + " ms total, " 
+                + ((millis * 1000000L) / count) + " ns per item");
+    }
+    
+    public static void main(String[] args) throws IOException {
+        BitBufferBenchmark bench = new BitBufferBenchmark();
+        
+        bench.decodeAll(WARMUP_ROUNDS, true);
+        bench.decodeAll(WARMUP_ROUNDS, false);
+        int tiles = ROUNDS * bench.m_tiles.length;
+        report("tiles, bit by bit ", bench.decodeAll(ROUNDS, true), tiles);
+        report("tiles, word reader", bench.decodeAll(ROUNDS, false), tiles);
+        
+        int tmfdRounds = ROUNDS / 20;
+        bench.decodeTmfd(tmfdRounds / 10, true);
+        bench.decodeTmfd(tmfdRounds / 10, false);
+        report("tmfd,  bit by bit ", bench.decodeTmfd(tmfdRounds, true), tmfdRounds);
+        report("tmfd,  word reader", bench.decodeTmfd(tmfdRounds, false), tmfdRounds);
+    }
+    
+    
+    /**
+     * Reads the bits the way BitBuffer did before the word based reader.
+     */
+    private static class BitByBitBuffer extends BitBuffer {
+        
+        BitByBitBuffer(byte[] data) {
+            super(data);
+        }
+        
+        public int nextBits(int nbrOfBits) {
+            int value = 0;
+            for (int i = 0; i < nbrOfBits; i++) {
+                value <<= 1;
+                value |= nextBit();
+            }
+            return value;
+        }
+        
+        public int nextSignedBits(int nbrOfBits) {
+            int value = 0;
+            if(nextBit() == 1) {
+                value = 0xffffffff;
+            }
+            nbrOfBits--;
+            value <<= nbrOfBits;
+            return value | nextBits(nbrOfBits);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.util;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileMap;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the word based reading in {@link BitBuffer} returns exactly
+ * the same values as reading the bits one by one, using the tile fixtures
+ * from the cache tests.
+ */
+public class BitBufferTest extends TestCase {
+    
+    static final String FIXTURE_DIR = 
+        "./map/test/com/wayfinder/core/map/vectormap/internal/cache/";
+    
+    private static final String[] FIXTURES = new String[] {
+        "data_tile_0", "data_tile_1", "data_nontile", "tmfd"
+    };
+    
+    static byte[] loadFixture(String name) throws IOException {
+        DataInputStream din = new DataInputStream(
+                new FileInputStream(FIXTURE_DIR + name));
+        try {
+            byte[] data = new byte[din.available()];
+            din.readFully(data);
+            return data;
+        } finally {
+            din.close();
+        }
+    }
+    
+    /**
+     * Reads nbrOfBits bits starting at bit position bitPos, one bit at a 
+     * time. This is the reference the fast reader is compared against.
+     */
+    static int referenceBits(byte[] data, int bitPos, int nbrOfBits) {
+        int value = 0;
+        for (int i = 0; i < nbrOfBits; i++, bitPos++) {
+            int bit = (data[bitPos >> 3] >> (7 - (bitPos & 7))) & 1;
+            value = (value << 1) | bit;
+        }
+        return value;
+    }
+    
+    static int referenceSignedBits(byte[] data, int bitPos, int nbrOfBits) {
+        int value = 0;
+        if (referenceBits(data, bitPos, 1) == 1) {
+            value = 0xffffffff;
+        }
+        value <<= (nbrOfBits - 1);
+        return value | referenceBits(data, bitPos + 1, nbrOfBits - 1);
+    }
+
+    
+    public void testAllWidthsAndOffsetsOnFixtures() throws IOException {
+        for (int f = 0; f < FIXTURES.length; f++) {
+            byte[] data = loadFixture(FIXTURES[f]);
+            final int totalBits = data.length << 3;
+            for (int width = 1; width <= 32; width++) {
+                for (int start = 0; start < 8; start++) {
+                    BitBuffer unsigned = new BitBuffer(data);
+                    BitBuffer signed = new BitBuffer(data);
+                    unsigned.nextBits(start);
+                    signed.nextBits(start);
+                    int pos = start;
+                    while (pos + width <= totalBits) {
+                        assertEquals(FIXTURES[f] + " unsigned w=" + width + " pos=" + pos,
+                                referenceBits(data, pos, width),
+                                unsigned.nextBits(width));
+                        assertEquals(FIXTURES[f] + " signed w=" + width + " pos=" + pos,
+                                referenceSignedBits(data, pos, width),
+                                signed.nextSignedBits(width));
+                        pos += width;
+                        assertEquals(pos, unsigned.getCurrentBitOffset());
+                        assertEquals(pos, signed.getCurrentBitOffset());
+                    }
+                }
+            }
+        }
+    }
+    
+    
+    public void testMixedReadsOnFixtures() throws IOException {
+        Random rand = new Random(4711);
+        for (int f = 0; f < FIXTURES.length; f++) {
+            byte[] data = loadFixture(FIXTURES[f]);
+            final int totalBits = data.length << 3;
+            BitBuffer buf = new BitBuffer(data);
+            int pos = 0;
+            while (true) {
+                int op = rand.nextInt(10);
+                if (op == 0) {
+                    buf.alignToByte();
+                    pos = (pos + 7) & ~7;
+                    assertEquals(pos, buf.getCurrentBitOffset());
+                    continue;
+                }
+                if (op == 1) {
+                    if (pos + 1 > totalBits) {
+                        break;
+                    }
+                    assertEquals(referenceBits(data, pos, 1), buf.nextBit());
+                    pos++;
+                    continue;
+                }
+                int width = 1 + rand.nextInt(32);
+                if (pos + width > totalBits) {
+                    break;
+                }
+                if ((op & 1) == 0) {
+                    assertEquals(referenceBits(data, pos, width), 
+                            buf.nextBits(width));
+                } else {
+                    assertEquals(referenceSignedBits(data, pos, width), 
+                            buf.nextSignedBits(width));
+                }
+                pos += width;
+                assertEquals(pos, buf.getCurrentBitOffset());
+            }
+        }
+    }
+    
+    
+    public void testZeroBits() {
+        BitBuffer buf = new BitBuffer(new byte[] { (byte)0xA5 });
+        assertEquals(0, buf.nextBits(0));
+        assertEquals(0, buf.getCurrentBitOffset());
+        assertEquals(0xA, buf.nextBits(4));
+        assertEquals(0, buf.nextBits(0));
+        assertEquals(0x5, buf.nextBits(4));
+        assertEquals(8, buf.getCurrentBitOffset());
+    }
+    
+    
+    public void testReadPastEndThrows() {
+        BitBuffer buf = new BitBuffer(new byte[] { 1, 2, 3 });
+        buf.nextBits(20);
+        try {
+            buf.nextBits(5);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+    
+    
+    public void testWriteAfterRead() {
+        BitBuffer buf = new BitBuffer(2);
+        buf.writeNextBits(0x2B, 7);
+        buf.writeNextBits(0x1CD, 9);
+        buf.reset();
+        assertEquals(0x2B, buf.nextBits(7));
+        assertEquals(0x1CD, buf.nextBits(9));
+    }
+    
+    
+    /**
+     * Decodes the fixture tiles through the real TileMap and TMFD loaders 
+     * and checks every nextBits()/nextSignedBits() call they make.
+     */
+    public void testTileDecodingMatchesReference() throws IOException {
+        CheckingBitBuffer tmfdBuf = new CheckingBitBuffer(loadFixture("tmfd"));
+        TileMapFormatDesc tmfd = new TileMapFormatDesc();
+        assertTrue(tmfd.load(tmfdBuf, null));
+        assertTrue(tmfdBuf.m_nbrChecked > 0);
+        
+        String[] tiles = new String[] { "data_tile_0", "data_tile_1" };
+        String[] params = new String[] { "G+1aA7V0Y", "T+1aA7V0Y" };
+        for (int i = 0; i < tiles.length; i++) {
+            CheckingBitBuffer buf = new CheckingBitBuffer(loadFixture(tiles[i]));
+            TileMap map = new TileMap();
+            map.setParams(new TileMapParams(params[i], "G+1aA7V0Y"));
+            assertTrue(map.load(buf, tmfd, false));
+            assertTrue(buf.m_nbrChecked > 0);
+        }
+    }
+    
+    
+    /**
+     * Decodes a fixture tile from a part of a larger array, as when it's 
+     * read in place from a slab in the memory cache. 
+     */
+    public void testTileDecodingFromPartOfArray() throws IOException {
+        TileMapFormatDesc tmfd = new TileMapFormatDesc();
+        assertTrue(tmfd.load(new BitBuffer(loadFixture("tmfd")), null));
+        
+        byte[] tile = loadFixture("data_tile_0");
+        byte[] slab = new byte[tile.length + 300];
+        new Random(4711).nextBytes(slab);
+        System.arraycopy(tile, 0, slab, 100, tile.length);
+        
+        BitBuffer buf = new BitBuffer(slab, 100, tile.length);
+        assertEquals(tile.length, buf.size());
+        assertEquals(100, buf.getArrayOffset());
+        TileMap map = new TileMap();
+        map.setParams(new TileMapParams("G+1aA7V0Y", "G+1aA7V0Y"));
+        assertTrue(map.load(buf, tmfd, false));
+        // the slab can't be kept by the tile
+        assertNull(map.getByteData());
+        
+        TileMap reference = new TileMap();
+        reference.setParams(new TileMapParams("G+1aA7V0Y", "G+1aA7V0Y"));
+        assertTrue(reference.load(new BitBuffer(tile), tmfd, false));
+        assertEquals(reference.getCRC(), map.getCRC());
+        assertSame(tile, reference.getByteData());
+    }
+    
+    
+    public void testPartOfArrayOffsets() {
+        byte[] data = new byte[] { 9, 9, 0x12, 0x34, 0x56, 9 };
+        BitBuffer buf = new BitBuffer(data, 2, 3);
+        assertEquals(0x123, buf.nextBits(12));
+        assertEquals(12, buf.getCurrentBitOffset());
+        assertEquals(1, buf.getCurrentByteOffset());
+        assertEquals(2, buf.getNbrBytesLeft());
+        assertEquals(0x456, buf.nextBits(12));
+        try {
+            buf.nextBits(1);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+        buf.reset();
+        assertEquals(0x12, buf.nextByte());
+        
+        try {
+            new BitBuffer(data, 4, 3);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+    
+    
+    /**
+     * Every read of a part of an array stops at the end of the part, 
+     * the next bytes in the array belong to another tile. 
+     */
+    public void testPartOfArrayBounds() {
+        byte[] data = new byte[] { 9, 0x12, 0x34, 'a', 'b', 'c', 0 };
+        BitBuffer buf = new BitBuffer(data, 1, 5);
+        buf.skip(4);
+        assertEquals((short)'c', buf.nextByte());
+        assertEquals(0, buf.getNbrBytesLeft());
+        
+        // at the end of the part and with one byte left
+        for (int read = 0; read < 12; read++) {
+            buf.reset();
+            buf.skip(read < 8 ? 5 : 4);
+            assertReadFails(buf, read);
+        }
+        
+        // the string isn't terminated within the part
+        buf.reset();
+        buf.skip(2);
+        assertEquals("abc", buf.nextStringUTF());
+        assertReadFails(buf, 1);
+    }
+    
+    
+    public void testPartOfArrayIsReadOnly() {
+        byte[] data = new byte[] { 9, 0x12, 0x34, 9 };
+        BitBuffer buf = new BitBuffer(data, 1, 2);
+        try {
+            buf.writeNextBits(0, 8);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            buf.writeNextString("a");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            buf.softReset();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(9, data[0]);
+        assertEquals(0x12, data[1]);
+        assertEquals(0x34, data[2]);
+        assertEquals(9, data[3]);
+    }
+    
+    
+    /*
+     * Reads past the end of the buffer with one of the byte reading methods
+     */
+    private static void assertReadFails(BitBuffer buf, int read) {
+        try {
+            switch (read) {
+            case 0: buf.nextBit(); break;
+            case 1: buf.nextByte(); break;
+            case 2: buf.nextSignedByte(); break;
+            case 3: buf.checkNextByte(); break;
+            case 4: buf.nextShort(); break;
+            case 5: buf.nextInt(); break;
+            case 6: buf.nextByteArray(1); break;
+            case 7: buf.skip(1); break;
+            case 8: buf.nextShort(); break;
+            case 9: buf.nextInt(); break;
+            case 10: buf.nextByteArray(2); break;
+            case 11: buf.skip(2); break;
+            }
+            fail("Expected ArrayIndexOutOfBoundsException for read " + read);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+    
+    
+    private static class CheckingBitBuffer extends BitBuffer {
+        
+        private final byte[] m_data;
+        private int m_nbrChecked;
+        
+        CheckingBitBuffer(byte[] data) {
+            super(data);
+            m_data = data;
+        }
+        
+        public int nextBits(int nbrOfBits) {
+            int pos = getCurrentBitOffset();
+            int value = super.nextBits(nbrOfBits);
+            assertEquals(referenceBits(m_data, pos, nbrOfBits), value);
+            assertEquals(pos + nbrOfBits, getCurrentBitOffset());
+            m_nbrChecked++;
+            return value;
+        }
+        
+        public int nextSignedBits(int nbrOfBits) {
+            int pos = getCurrentBitOffset();
+            int value = super.nextSignedBits(nbrOfBits);
+            assertEquals(referenceSignedBits(m_data, pos, nbrOfBits), value);
+            assertEquals(pos + nbrOfBits, getCurrentBitOffset());
+            m_nbrChecked++;
+            return value;
+        }
+    }
+}
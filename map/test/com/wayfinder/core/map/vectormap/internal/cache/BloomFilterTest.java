@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import junit.framework.TestCase;
+
+public class BloomFilterTest extends TestCase {
+    
+    public void testAddedKeysAreFound() {
+        BloomFilter filter = new BloomFilter(2000);
+        for (int i = 0; i < 2000; i++) {
+            filter.add("G+1aA" + i);
+            filter.add(TileKey.pack(3, 0, 2, 0, 0, i, -i));
+        }
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(filter.mightContain("G+1aA" + i));
+            assertTrue(filter.mightContain(TileKey.pack(3, 0, 2, 0, 0, i, -i)));
+        }
+        assertEquals(4000, filter.getNbrOfEntries());
+        assertEquals(0, filter.getNbrOfRejectedLookups());
+    }
+    
+    public void testFalsePositiveRate() {
+        final int nbrOfEntries = 5000;
+        BloomFilter filter = new BloomFilter(nbrOfEntries);
+        for (int i = 0; i < nbrOfEntries; i++) {
+            filter.add(TileKey.pack(3, 0, 2, 0, 0, i / 100, i % 100));
+        }
+        
+        int falsePositives = 0;
+        for (int i = 0; i < nbrOfEntries; i++) {
+            // the neighbouring tiles
+            if (filter.mightContain(TileKey.pack(3, 0, 2, 0, 0, i / 100, 100 + i % 100))) {
+                falsePositives++;
+            }
+        }
+        // ~1% expected
+        assertTrue("false positives: " + falsePositives, falsePositives < nbrOfEntries / 50);
+        assertEquals(nbrOfEntries - falsePositives, filter.getNbrOfRejectedLookups());
+        assertEquals(nbrOfEntries, filter.getNbrOfLookups());
+    }
+    
+    public void testMinSize() {
+        BloomFilter filter = new BloomFilter(0);
+        assertEquals(BloomFilter.MIN_NBR_OF_ENTRIES, filter.getMaxNbrOfEntries());
+        assertFalse(filter.mightContain("btat_petrolstation.png"));
+    }
+    
+    public void testNeedsRebuildWhenFull() {
+        BloomFilter filter = new BloomFilter(0);
+        for (int i = 0; i < BloomFilter.MIN_NBR_OF_ENTRIES; i++) {
+            filter.add("t" + i);
+        }
+        assertFalse(filter.needsRebuild());
+        filter.add("one more");
+        assertTrue(filter.needsRebuild());
+    }
+    
+    public void testNeedsRebuildWhenHalfIsRemoved() {
+        BloomFilter filter = new BloomFilter(0);
+        for (int i = 0; i < BloomFilter.MIN_NBR_OF_ENTRIES; i++) {
+            filter.add("t" + i);
+        }
+        for (int i = 0; i <= BloomFilter.MIN_NBR_OF_ENTRIES / 2; i++) {
+            assertFalse(filter.needsRebuild());
+            filter.entryRemoved();
+        }
+        assertTrue(filter.needsRebuild());
+    }
+}
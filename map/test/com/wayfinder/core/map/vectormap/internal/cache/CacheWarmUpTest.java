@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.util.Vector;
+
+import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
+import com.wayfinder.pal.persistence.MemorySettingsConnection;
+import com.wayfinder.pal.persistence.SettingsConnection;
+
+import junit.framework.TestCase;
+
+public class CacheWarmUpTest extends TestCase {
+    
+    private MemoryPersistenceLayer m_Layer;
+    private FileCache m_Cache;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        // the settings are kept between the connections
+        final SettingsConnection settings = new MemorySettingsConnection();
+        m_Layer = new MemoryPersistenceLayer() {
+            public SettingsConnection openSettingsConnection(String settingsType) {
+                assertEquals(CacheWarmUp.SETTINGS_TYPE, settingsType);
+                return settings;
+            }
+        };
+        
+        DataInputStream din = new DataInputStream(new FileInputStream(
+                "./map/test/com/wayfinder/core/map/vectormap/internal/cache/tmfd"));
+        byte[] data = new byte[din.available()];
+        din.readFully(data);
+        din.close();
+        TileMapFormatDesc tmfd = new TileMapFormatDesc();
+        tmfd.load(new BitBuffer(data), null);
+        
+        m_Cache = new FileCache(m_Layer, false);
+        m_Cache.setTileMapFormatDesc(tmfd);
+        m_Cache.setMemCache(new MemCache());
+        assertTrue(m_Cache.openCache());
+    }
+    
+    private static TileMapParams tile(int layerID, int lat, int lon) {
+        TileMapParams params = new TileMapParams();
+        params.setParams(3, true, layerID, TileMapParams.MAP, 0, 0, lat, lon, 2, null, "");
+        params.setTileID(params.getAsString());
+        return params;
+    }
+    
+    private static Vector tiles(TileMapParams[] params) {
+        Vector tiles = new Vector();
+        for (int i = 0; i < params.length; i++) {
+            tiles.addElement(params[i]);
+        }
+        return tiles;
+    }
+    
+    private void write(TileMapParams tile, byte[] geoData, byte[] stringData) {
+        TileMapParams strings = tile.cloneTileMapParams(TileMapParams.STRINGS);
+        assertTrue(m_Cache.writeDataToCache(new byte[][] { geoData, stringData }, 
+                new TileMapParams[] { tile, strings }, tile, 
+                geoData.length + stringData.length, 2, (short)0));
+    }
+    
+    public void testNothingSaved() {
+        assertEquals(0, CacheWarmUp.readTiles(m_Layer).size());
+        assertEquals(0, new CacheWarmUp(m_Layer, m_Cache).warmUp());
+    }
+    
+    public void testTilesAreSaved() {
+        TileMapParams overview = new TileMapParams();
+        overview.setParams(3, true, 0, TileMapParams.MAP, 0, 0, 1, 1, 
+                4, null, "", true);
+        TileMapParams[] params = new TileMapParams[] { 
+                tile(0, 120, -45), tile(TileKey.ROUTE_LAYER_ID, 120, -45), 
+                overview, tile(3, -7, 8) };
+        CacheWarmUp.saveTiles(m_Layer, tiles(params));
+        
+        Vector tiles = CacheWarmUp.readTiles(m_Layer);
+        assertEquals(2, tiles.size());
+        assertTile(params[0], (TileMapParams)tiles.elementAt(0));
+        assertTile(params[3], (TileMapParams)tiles.elementAt(1));
+    }
+    
+    private static void assertTile(TileMapParams expected, TileMapParams actual) {
+        assertEquals(expected.getTileID(), actual.getTileID());
+        assertEquals(expected.getAsString(), actual.getAsString());
+        assertEquals(expected.getLayerID(), actual.getLayerID());
+        assertEquals(expected.getDetailLevel(), actual.getDetailLevel());
+        assertEquals(expected.getTileIndexLat(), actual.getTileIndexLat());
+        assertEquals(expected.getTileIndexLon(), actual.getTileIndexLon());
+    }
+    
+    public void testOnlyMaxNbrOfTilesAreSaved() {
+        Vector tiles = new Vector();
+        for (int i = 0; i < CacheWarmUp.MAX_NBR_OF_TILES + 10; i++) {
+            tiles.addElement(tile(0, i, i));
+        }
+        CacheWarmUp.saveTiles(m_Layer, tiles);
+        
+        Vector saved = CacheWarmUp.readTiles(m_Layer);
+        assertEquals(CacheWarmUp.MAX_NBR_OF_TILES, saved.size());
+        assertTile((TileMapParams)tiles.elementAt(0), (TileMapParams)saved.elementAt(0));
+    }
+    
+    public void testWarmUpLoadsAllImportancesIntoMemCache() {
+        TileMapParams cached = tile(0, 120, -45);
+        TileMapParams notCached = tile(0, 121, -45);
+        byte[] geoData = new byte[] { 1, 2, 3 };
+        byte[] stringData = new byte[] { 4, 5 };
+        write(cached, geoData, stringData);
+        CacheWarmUp.saveTiles(m_Layer, tiles(new TileMapParams[] { notCached, cached }));
+        
+        // as after a restart
+        MemCache memCache = new MemCache();
+        m_Cache.setMemCache(memCache);
+        
+        CacheWarmUp warmUp = new CacheWarmUp(m_Layer, m_Cache);
+        assertEquals(1, warmUp.warmUp());
+        assertEquals(1, warmUp.getNbrOfLoadedTiles());
+        assertEquals(2, memCache.getNbrOfEntries());
+        
+        byte[] data = memCache.getDataFromCache(cached.getAsString());
+        assertNotNull(data);
+        assertEquals(geoData.length, data.length);
+        TileMapParams strings = cached.cloneTileMapParams(TileMapParams.STRINGS);
+        assertNotNull(memCache.getDataFromCache(strings.getAsString()));
+    }
+    
+    public void testCancelledWarmUpLoadsNothing() {
+        TileMapParams cached = tile(0, 120, -45);
+        write(cached, new byte[] { 1 }, new byte[] { 2 });
+        CacheWarmUp.saveTiles(m_Layer, tiles(new TileMapParams[] { cached }));
+        MemCache memCache = new MemCache();
+        m_Cache.setMemCache(memCache);
+        
+        CacheWarmUp warmUp = new CacheWarmUp(m_Layer, m_Cache);
+        warmUp.cancel();
+        assertEquals(0, warmUp.warmUp());
+        assertEquals(0, memCache.getNbrOfEntries());
+    }
+}
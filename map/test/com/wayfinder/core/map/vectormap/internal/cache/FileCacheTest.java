@@ -41,9 +41,12 @@ import java.util.Hashtable;
 import java.util.Vector;
 
 import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.internal.control.TileMapLayerWrapper;
 import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
 import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.core.shared.internal.settings.language.LangTypes;
 import com.wayfinder.core.shared.util.qtree.QuadTree;
+import com.wayfinder.pal.persistence.MemoryPageFile;
 import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
 
 import junit.framework.TestCase;
@@ -209,6 +212,36 @@ public class FileCacheTest extends TestCase {
         }
     }
     
+    public void testWriteTrianglesRecord() {
+        m_fileCache.openCache();
+        
+        TileMapParams geo = new TileMapParams();
+        geo.setParams(0, true, 0, TileMapParams.MAP, 0, 0, 0, 0, 0, null, "G+1aA7V0Y");
+        byte[] triangles = new byte[] { 1, 2, 3, 4, 5 };
+        byte[][] cacheData = new byte[][] { m_tileData[0], triangles };
+        TileMapParams[] params = new TileMapParams[] { 
+                geo, geo.cloneTileMapParams(TileMapParams.TRIANGLES) };
+        int size = m_tileData[0].length + triangles.length;
+        
+        assertTrue(m_fileCache.writeDataToCache(cacheData, params, geo, size, 2, (short)0));
+        
+        try {
+            DataInputStream din = m_fileCache.getCacheFileHandler().getPageDataInputStream(0);
+            din.readInt();
+            din.readShort();
+            din.skipBytes(FileCache.CACHE_IMP_OFFSET + m_tileData[0].length);
+            
+            assertEquals(0, din.readByte());
+            assertEquals(TileMapParams.TRIANGLES, din.readByte());
+            assertEquals(triangles.length, din.readShort());
+            for (int i = 0; i < triangles.length; i++) {
+                assertEquals(triangles[i], din.readByte());
+            }
+        } catch (IOException e) {
+            fail("IOException when getting input stream on page 0! "+e);
+        }
+    }
+    
     public void testExistsInCache() {
         m_fileCache.openCache();
         m_fileCache.writeDataToCache(
@@ -304,4 +337,201 @@ public class FileCacheTest extends TestCase {
             e.printStackTrace();
         }
     }
+    
+    public void testTilesAreSavedInTileIndex() throws IOException {
+        m_fileCache.openCache();
+        
+        TileMapParams geo = new TileMapParams();
+        geo.setParams(3, true, 0, TileMapParams.MAP, 0, 0, 120, -45, 2, null, "G+1aA7V0Y");
+        byte[][] cacheData = new byte[][] { m_tileData[0] };
+        assertTrue(m_fileCache.writeDataToCache(cacheData, new TileMapParams[] { geo }, 
+                geo, m_tileData[0].length, 1, (short)0));
+        
+        TileIndex tileIndex = m_fileCache.getTileIndex();
+        assertEquals(1, tileIndex.size());
+        int location = tileIndex.get(TileKey.getTileKey(geo));
+        assertEquals(0, TileIndex.getPage(location));
+        assertEquals(0, TileIndex.getOffset(location));
+        assertTrue(m_fileCache.existInCache(geo));
+        
+        Vector nodes = new Vector();
+        m_fileCache.getCacheQuadTree().getAllNodesThatContainsLoadedEntrys(nodes);
+        assertEquals(0, nodes.size());
+        
+        // more importances for the same tile moves it
+        int offset = m_fileCache.getCurrentOffset();
+        TileMapParams strings = geo.cloneTileMapParams(TileMapParams.STRINGS);
+        cacheData = new byte[][] { m_tileData[1] };
+        assertTrue(m_fileCache.writeDataToCache(cacheData, new TileMapParams[] { strings }, 
+                geo, m_tileData[1].length, 1, (short)0));
+        assertEquals(1, tileIndex.size());
+        assertEquals(offset, TileIndex.getOffset(tileIndex.get(TileKey.getTileKey(geo))));
+        
+        m_fileCache.saveCache();
+        assertFalse(tileIndex.hasBeenChanged());
+        DataInputStream din = m_fileCache.getCacheFileHandler().getTileIndexFile().openDataInputStream();
+        TileIndex savedIndex = new TileIndex();
+        savedIndex.read(readAll(din));
+        assertEquals(1, savedIndex.size());
+        assertEquals(tileIndex.get(TileKey.getTileKey(geo)), savedIndex.get(TileKey.getTileKey(geo)));
+        
+        m_fileCache.removeFromCache(strings);
+        assertFalse(m_fileCache.existInCache(geo));
+        assertEquals(0, tileIndex.size());
+    }
+    
+    public void testRouteTilesAreSavedInQuadTree() {
+        m_fileCache.openCache();
+        
+        TileMapParams route = new TileMapParams();
+        route.setParams(3, true, TileKey.ROUTE_LAYER_ID, TileMapParams.MAP, 0, 0, 120, -45, 2, 
+                null, "G+1aA7V0Y");
+        byte[][] cacheData = new byte[][] { m_tileData[0] };
+        assertTrue(m_fileCache.writeDataToCache(cacheData, new TileMapParams[] { route }, 
+                route, m_tileData[0].length, 1, (short)0));
+        
+        assertEquals(0, m_fileCache.getTileIndex().size());
+        assertTrue(m_fileCache.existInCache(route));
+        Vector nodes = new Vector();
+        m_fileCache.getCacheQuadTree().getAllNodesThatContainsLoadedEntrys(nodes);
+        assertEquals(1, nodes.size());
+        
+        m_fileCache.removeFromCache(route);
+        assertFalse(m_fileCache.existInCache(route));
+    }
+    
+    /**
+     * Writes the same blocks through streams and page files, the page files
+     * must be the same so the cache can be read with either. 
+     */
+    public void testPageFilesMatchStreams() throws Exception {
+        MemoryPersistenceLayer pageLayer = new MemoryPersistenceLayer(true);
+        FileCache pageCache = new FileCache(pageLayer, false);
+        pageCache.setTileMapFormatDesc(m_tmfd);
+        assertTrue(pageCache.openCache());
+        assertTrue(pageCache.getCacheFileHandler().hasPageFiles());
+        
+        m_fileCache.openCache();
+        assertFalse(m_fileCache.getCacheFileHandler().hasPageFiles());
+        
+        FileCache[] caches = new FileCache[] { m_fileCache, pageCache };
+        for (int i = 0; i < caches.length; i++) {
+            caches[i].writeDataToCache(new byte[][] { m_tileData[0], null }, m_paramsTile, 
+                    m_paramsTile[0], m_tileData[0].length, 1, (short)0);
+            caches[i].writeDataToCache(m_nonTileData, m_paramsNonTile, 
+                    m_paramsNonTile[0], m_nonTileDataSize, 1, (short)0);
+            // adds the strings to the tile, the geometry is read back and 
+            // written again
+            caches[i].writeDataToCache(new byte[][] { null, m_tileData[1] }, m_paramsTile, 
+                    m_paramsTile[0], m_tileData[1].length, 1, (short)0);
+        }
+        assertEquals(0, m_fileCache.getErrorCount());
+        assertEquals(0, pageCache.getErrorCount());
+        assertEquals(m_fileCache.getCurrentOffset(), pageCache.getCurrentOffset());
+        
+        byte[] streamPage = readAll(m_fileCache.getCacheFileHandler().getPageDataInputStream(0));
+        MemoryPageFile pageFile = (MemoryPageFile) pageLayer.openPageFile(
+                "/mapcache/FPage.dvf0", FileCache.MAX_PAGE_SIZE);
+        byte[] page = pageFile.toByteArray();
+        assertEquals(streamPage.length, page.length);
+        for (int i = 0; i < page.length; i++) {
+            assertEquals(streamPage[i], page[i]);
+        }
+    }
+    
+    public void testReadFromPageFiles() {
+        FileCache pageCache = new FileCache(new MemoryPersistenceLayer(true), false);
+        pageCache.setTileMapFormatDesc(m_tmfd);
+        MemCache memCache = new MemCache();
+        pageCache.setMemCache(memCache);
+        assertTrue(pageCache.openCache());
+        
+        pageCache.writeDataToCache(m_tileData, m_paramsTile, 
+                m_paramsTile[0], m_tileDataSize, 2, (short)0);
+        pageCache.writeDataToCache(m_nonTileData, m_paramsNonTile, 
+                m_paramsNonTile[0], m_nonTileDataSize, 1, (short)0);
+        
+        String paramString = m_paramsNonTile[0].getAsString();
+        byte[] data = pageCache.getDataFromCache(null, paramString, 
+                m_paramsNonTile[0].getTileID());
+        assertNotNull(data);
+        assertEquals(m_nonTileDataSize, data.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(m_nonTileData[0][i], data[i]);
+        }
+        assertNotNull(memCache.getDataFromCache(paramString));
+    }
+    
+    public void testMissesAreAnsweredByBloomFilter() {
+        FileCache pageCache = new FileCache(new MemoryPersistenceLayer(true), false);
+        pageCache.setTileMapFormatDesc(m_tmfd);
+        pageCache.setMemCache(new MemCache());
+        assertTrue(pageCache.openCache());
+        
+        TileMapParams geo = new TileMapParams();
+        geo.setParams(3, true, 0, TileMapParams.MAP, 0, LangTypes.SWEDISH, 120, -45, 2, null, "");
+        geo.setTileID(geo.getAsString());
+        TileMapLayerWrapper wrapper = new TileMapLayerWrapper(120, -45, 0, 2, geo);
+        BloomFilter filter = pageCache.getBloomFilter();
+        assertFalse(pageCache.existInCache(geo));
+        assertNull(pageCache.getDataFromCache(wrapper, geo.getAsString(), geo.getTileID()));
+        assertNull(pageCache.getDataFromCache(null, "btat_petrolstation.png", "btat_petrolstation.png"));
+        assertEquals(3, filter.getNbrOfRejectedLookups());
+        
+        byte[][] cacheData = new byte[][] { m_tileData[0] };
+        assertTrue(pageCache.writeDataToCache(cacheData, new TileMapParams[] { geo }, 
+                geo, m_tileData[0].length, 1, (short)0));
+        pageCache.writeDataToCache(new byte[][] { m_nonTileData[0] }, m_paramsNonTile, 
+                m_paramsNonTile[0], m_nonTileDataSize, 1, (short)-1);
+        assertTrue(pageCache.existInCache(geo));
+        assertNotNull(pageCache.getDataFromCache(wrapper, geo.getAsString(), geo.getTileID()));
+        assertNotNull(pageCache.getDataFromCache(null, "btat_petrolstation.png", "btat_petrolstation.png"));
+        assertEquals(3, filter.getNbrOfRejectedLookups());
+    }
+    
+    public void testBytesReadAndWrittenAreCounted() {
+        FileCache pageCache = new FileCache(new MemoryPersistenceLayer(true), false);
+        pageCache.setTileMapFormatDesc(m_tmfd);
+        pageCache.setMemCache(new MemCache());
+        assertTrue(pageCache.openCache());
+        
+        TileMapParams geo = new TileMapParams();
+        geo.setParams(3, true, 0, TileMapParams.MAP, 0, LangTypes.SWEDISH, 120, -45, 2, null, "");
+        geo.setTileID(geo.getAsString());
+        TileMapLayerWrapper wrapper = new TileMapLayerWrapper(120, -45, 0, 2, geo);
+        assertTrue(pageCache.writeDataToCache(new byte[][] { m_tileData[0] }, new TileMapParams[] { geo }, 
+                geo, m_tileData[0].length, 1, (short)0));
+        assertEquals(m_tileData[0].length, pageCache.getNbrOfBytesWritten());
+        assertEquals(0, pageCache.getNbrOfBytesRead());
+        
+        // misses doesn't read anything
+        assertNull(pageCache.getDataFromCache(null, "btat_petrolstation.png", "btat_petrolstation.png"));
+        assertEquals(0, pageCache.getNbrOfBytesRead());
+        
+        assertNotNull(pageCache.getDataFromCache(wrapper, geo.getAsString(), geo.getTileID()));
+        assertTrue(pageCache.getNbrOfBytesRead() >= m_tileData[0].length);
+    }
+    
+    public void testBloomFilterIsRebuiltWhenFull() {
+        m_fileCache.openCache();
+        BloomFilter filter = m_fileCache.getBloomFilter();
+        byte[] data = new byte[] { 1, 2, 3 };
+        for (int i = 0; i <= filter.getMaxNbrOfEntries(); i++) {
+            TileMapParams geo = new TileMapParams();
+            geo.setParams(3, true, 0, TileMapParams.MAP, 0, 0, i, i, 2, null, "");
+            geo.setTileID(geo.getAsString());
+            m_fileCache.writeDataToCache(new byte[][] { data }, new TileMapParams[] { geo }, 
+                    geo, data.length, 1, (short)0);
+        }
+        assertNotSame(filter, m_fileCache.getBloomFilter());
+        assertEquals(filter.getMaxNbrOfEntries() + 1, m_fileCache.getBloomFilter().getNbrOfEntries());
+        assertTrue(m_fileCache.getBloomFilter().getMaxNbrOfEntries() > filter.getMaxNbrOfEntries());
+    }
+    
+    private static byte[] readAll(DataInputStream din) throws IOException {
+        byte[] data = new byte[din.available()];
+        din.readFully(data);
+        din.close();
+        return data;
+    }
 }
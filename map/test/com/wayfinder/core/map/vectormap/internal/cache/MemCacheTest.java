@@ -0,0 +1,191 @@
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import junit.framework.TestCase;
+
+import com.wayfinder.core.map.util.BitBuffer;
+
+public class MemCacheTest extends TestCase {
+    
+    private MemCache m_cache;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_cache = new MemCache(10000);
+    }
+    
+    public void testGetAndMiss() {
+        byte []data = new byte[100];
+        m_cache.writeToCache("a", data);
+        assertSame(data, m_cache.getDataFromCache("a"));
+        assertNull(m_cache.getDataFromCache("b"));
+        assertEquals(1, m_cache.getNbrOfHits());
+        assertEquals(1, m_cache.getNbrOfMisses());
+        assertEquals(100, m_cache.getSize());
+        assertEquals(1, m_cache.getNbrOfEntries());
+    }
+    
+    public void testStaysWithinBudget() {
+        for(int i=0; i<500; i++) {
+            m_cache.writeToCache("t" + i, new byte[100 + (i % 7) * 50]);
+            assertTrue(m_cache.getSize() <= m_cache.getMaxSize());
+        }
+        assertTrue(m_cache.getNbrOfEvictions() > 0);
+    }
+    
+    public void testReplaceUpdatesSize() {
+        m_cache.writeToCache("a", new byte[100]);
+        byte []data = new byte[300];
+        m_cache.writeToCache("a", data);
+        assertEquals(300, m_cache.getSize());
+        assertEquals(1, m_cache.getNbrOfEntries());
+        assertSame(data, m_cache.getDataFromCache("a"));
+    }
+    
+    public void testRemove() {
+        m_cache.writeToCache("a", new byte[100]);
+        m_cache.writeToCache("b", new byte[200]);
+        m_cache.removeFromCache("a");
+        m_cache.removeFromCache("c");
+        assertNull(m_cache.getDataFromCache("a"));
+        assertNotNull(m_cache.getDataFromCache("b"));
+        assertEquals(200, m_cache.getSize());
+    }
+    
+    public void testOversizedIsRejected() {
+        m_cache.writeToCache("big", new byte[20000]);
+        assertNull(m_cache.getDataFromCache("big"));
+        assertEquals(0, m_cache.getSize());
+        assertEquals(1, m_cache.getNbrOfEvictions());
+    }
+    
+    public void testFrequentEntriesSurviveScan() {
+        for(int i=0; i<10; i++) {
+            m_cache.writeToCache("hot" + i, new byte[500]);
+        }
+        for(int n=0; n<5; n++) {
+            for(int i=0; i<10; i++) {
+                assertNotNull(m_cache.getDataFromCache("hot" + i));
+            }
+        }
+        // a scan of tiles that are only seen once
+        for(int i=0; i<200; i++) {
+            m_cache.writeToCache("scan" + i, new byte[500]);
+        }
+        int nbrOfHot = 0;
+        for(int i=0; i<10; i++) {
+            if(m_cache.getDataFromCache("hot" + i) != null) {
+                nbrOfHot++;
+            }
+        }
+        assertEquals(10, nbrOfHot);
+    }
+    
+    public void testShrinkEvicts() {
+        for(int i=0; i<10; i++) {
+            m_cache.writeToCache("t" + i, new byte[500]);
+        }
+        m_cache.setMaxSize(1000);
+        assertTrue(m_cache.getSize() <= 1000);
+        m_cache.setMaxSize(0);
+        assertEquals(0, m_cache.getSize());
+        assertEquals(0, m_cache.getNbrOfEntries());
+    }
+    
+    public void testClearAndResetCounters() {
+        m_cache.writeToCache("a", new byte[100]);
+        m_cache.getDataFromCache("a");
+        m_cache.getDataFromCache("b");
+        m_cache.clearMemCache();
+        assertEquals(0, m_cache.getSize());
+        assertEquals(0, m_cache.getNbrOfEntries());
+        assertNull(m_cache.getDataFromCache("a"));
+        m_cache.resetCounters();
+        assertEquals(0, m_cache.getNbrOfHits());
+        assertEquals(0, m_cache.getNbrOfMisses());
+        assertEquals(0, m_cache.getNbrOfEvictions());
+    }
+    
+    public void testSlabStorage() {
+        MemCache cache = new MemCache(100000, true);
+        assertTrue(cache.hasSlabStorage());
+        byte []data = new byte[1000];
+        for(int i=0; i<data.length; i++) {
+            data[i] = (byte)i;
+        }
+        cache.writeToCache("a", data);
+        assertEquals(SlabAllocator.getChunkSize(1000), cache.getSize());
+        
+        byte []copy = cache.getDataFromCache("a");
+        assertNotSame(data, copy);
+        assertEquals(1000, copy.length);
+        for(int i=0; i<data.length; i++) {
+            assertEquals(data[i], copy[i]);
+        }
+        
+        BitBuffer buffer = cache.getBufferFromCache("a");
+        assertNotSame(data, buffer.getByteArray());
+        assertEquals(1000, buffer.size());
+        assertEquals(0, buffer.nextByte());
+        assertEquals(1, buffer.nextByte());
+        cache.releaseBuffer(buffer);
+        assertNull(cache.getBufferFromCache("b"));
+        assertEquals(2, cache.getNbrOfHits());
+        assertEquals(1, cache.getNbrOfMisses());
+        
+        // larger than a slab, kept as it is
+        byte []large = new byte[SlabAllocator.SLAB_SIZE + 1];
+        cache.writeToCache("large", large);
+        assertSame(large, cache.getDataFromCache("large"));
+        assertSame(large, cache.getBufferFromCache("large").getByteArray());
+    }
+    
+    public void testSlabChunkIsKeptWhileRead() {
+        MemCache cache = new MemCache(SlabAllocator.SLAB_SIZE, true);
+        byte []data = new byte[1000];
+        data[0] = 42;
+        cache.writeToCache("a", data);
+        BitBuffer buffer = cache.getBufferFromCache("a");
+        cache.removeFromCache("a");
+        
+        // fill the cache, the chunk of the removed entry must not be reused
+        for(int i=0; i<200; i++) {
+            byte []other = new byte[1000];
+            other[0] = 7;
+            cache.writeToCache("t" + i, other);
+            assertTrue(cache.getSize() <= cache.getMaxSize());
+        }
+        assertEquals(42, buffer.nextByte());
+        cache.releaseBuffer(buffer);
+        // released twice does nothing
+        cache.releaseBuffer(buffer);
+        
+        // a half slab only fits in chunks that are merged again
+        cache.clearMemCache();
+        byte []half = new byte[SlabAllocator.SLAB_SIZE / 2];
+        cache.writeToCache("half", half);
+        assertNotSame(half, cache.getBufferFromCache("half").getByteArray());
+    }
+    
+    public void testSwitchStorage() {
+        m_cache.writeToCache("a", new byte[100]);
+        m_cache.setSlabStorage(true);
+        assertEquals(0, m_cache.getNbrOfEntries());
+        m_cache.writeToCache("a", new byte[100]);
+        assertEquals(SlabAllocator.MIN_CHUNK_SIZE, m_cache.getSize());
+        m_cache.setSlabStorage(false);
+        assertFalse(m_cache.hasSlabStorage());
+        assertEquals(0, m_cache.getSize());
+    }
+    
+    public void testNegativeSizeThrows() {
+        try {
+            m_cache.setMaxSize(-1);
+            fail("Negative size accepted");
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
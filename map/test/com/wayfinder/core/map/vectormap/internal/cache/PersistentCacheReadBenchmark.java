@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.wayfinder.pal.error.PermissionsException;
+import com.wayfinder.pal.persistence.MemoryPageFile;
+import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
+import com.wayfinder.pal.persistence.WFPageFile;
+
+/**
+ * Measures the number of lookups per second in a {@link FileCache} with 
+ * page files when 1, 2, 4 and 8 threads read at the same time, both with 
+ * all reads serialized as when every cache method was synchronized and 
+ * with the read lock, and prints both.
+ * <p>
+ * Every read from a page file sleeps {@link #READ_LATENCY} ms to simulate 
+ * the latency of the file system on a device. 
+ * <p>
+ * Not a unit test, run it through main().
+ */
+public class PersistentCacheReadBenchmark {
+    
+    private static final long READ_LATENCY = 1;
+    private static final int NBR_OF_ENTRIES = 2000;
+    private static final int LOOKUPS_PER_RUN = 800;
+    private static final int[] NBR_OF_THREADS = { 1, 2, 4, 8 };
+    
+    private final FileCache m_Cache;
+    
+    private PersistentCacheReadBenchmark() {
+        MemoryPersistenceLayer layer = new MemoryPersistenceLayer(true) {
+            public WFPageFile openPageFile(String path, int maxSize)
+                    throws IOException, PermissionsException {
+                return new SlowPageFile((MemoryPageFile) super.openPageFile(path, maxSize));
+            }
+        };
+        m_Cache = new FileCache(layer, false);
+        m_Cache.setMemCache(new MemCache());
+        m_Cache.openCache();
+        for (int i = 0; i < NBR_OF_ENTRIES; i++) {
+            PersistentCacheStressTest.write(m_Cache, i);
+        }
+    }
+    
+    private void lookup(Random random, boolean serialized) {
+        int i = random.nextInt(NBR_OF_ENTRIES);
+        String name = PersistentCacheStressTest.name(i);
+        if (serialized) {
+            synchronized (m_Cache) {
+                m_Cache.getDataFromCache(null, name, name);
+            }
+        } else {
+            m_Cache.getDataFromCache(null, name, name);
+        }
+    }
+    
+    /**
+     * @return the number of lookups per second
+     */
+    private long run(int nbrOfThreads, final boolean serialized) throws InterruptedException {
+        final int lookupsPerThread = LOOKUPS_PER_RUN / nbrOfThreads;
+        Thread[] threads = new Thread[nbrOfThreads];
+        for (int t = 0; t < nbrOfThreads; t++) {
+            final Random random = new Random(t);
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < lookupsPerThread; i++) {
+                        lookup(random, serialized);
+                    }
+                }
+            });
+        }
+        long start = System.currentTimeMillis();
+        for (int t = 0; t < nbrOfThreads; t++) {
+            threads[t].start();
+        }
+        for (int t = 0; t < nbrOfThreads; t++) {
+            threads[t].join();
+        }
+        long time = Math.max(1, System.currentTimeMillis() - start);
+        return (lookupsPerThread * nbrOfThreads * 1000L) / time;
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        PersistentCacheReadBenchmark bench = new PersistentCacheReadBenchmark();
+        
+        // warm up
+        bench.run(2, true);
+        bench.run(2, false);
+        
+        System.out.println("lookups/s with " + READ_LATENCY + " ms latency per page file read");
+        System.out.println("threads  serialized  read lock");
+        for (int i = 0; i < NBR_OF_THREADS.length; i++) {
+            int nbrOfThreads = NBR_OF_THREADS[i];
+            long serialized = bench.run(nbrOfThreads, true);
+            long readLock = bench.run(nbrOfThreads, false);
+            System.out.println(pad(nbrOfThreads, 7) + pad(serialized, 12) + pad(readLock, 11));
+        }
+    }
+    
+    private static String pad(long value, int width) {
+        String str = Long.toString(value);
+        while (str.length() < width) {
+            str = " " + str;
+        }
+        return str;
+    }
+    
+    
+    /**
+     * A page file that takes time to read from. 
+     */
+    private static class SlowPageFile implements WFPageFile {
+        
+        private final MemoryPageFile m_File;
+        
+        SlowPageFile(MemoryPageFile file) {
+            m_File = file;
+        }
+        
+        public int size() {
+            return m_File.size();
+        }
+        
+        public int getMaxSize() {
+            return m_File.getMaxSize();
+        }
+        
+        public void read(int offset, byte[] data, int dataOffset, int length) 
+                throws IOException {
+            try {
+                Thread.sleep(READ_LATENCY);
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted");
+            }
+            m_File.read(offset, data, dataOffset, length);
+        }
+        
+        public void write(int offset, byte[] data, int dataOffset, int length) 
+                throws IOException {
+            m_File.write(offset, data, dataOffset, length);
+        }
+        
+        public void clear() throws IOException {
+            m_File.clear();
+        }
+        
+        public void flush() throws IOException {
+            m_File.flush();
+        }
+        
+        public void close() throws IOException {
+            m_File.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import java.util.Random;
+import java.util.Vector;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
+
+import junit.framework.TestCase;
+
+/**
+ * Reads from the persistent caches from several threads while another 
+ * thread writes, saves and removes data, and checks that every read 
+ * returns either nothing or the data that was written.
+ */
+public class PersistentCacheStressTest extends TestCase {
+    
+    private static final long TIMEOUT = 60000;
+    
+    private static final int NBR_OF_READERS = 4;
+    private static final int NBR_OF_INITIAL_WRITES = 100;
+    
+    private final Vector m_Errors = new Vector();
+    private int m_NbrOfWritten;
+    private boolean m_WriterDone;
+    
+    static String name(int i) {
+        return "img" + i + ".png";
+    }
+    
+    static byte[] data(int i) {
+        byte[] data = new byte[200 + (i * 37) % 1800];
+        for (int j = 0; j < data.length; j++) {
+            data[j] = (byte)(i * 31 + j);
+        }
+        return data;
+    }
+    
+    static void write(CacheInterface cache, int i) {
+        TileMapParams params = new TileMapParams(name(i), name(i));
+        byte[] data = data(i);
+        cache.writeDataToCache(new byte[][] { data }, new TileMapParams[] { params }, 
+                params, data.length, 1, (short)0);
+    }
+    
+    private static boolean equals(byte[] a, byte[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private synchronized void addError(Object error) {
+        m_Errors.addElement(error);
+    }
+    
+    private synchronized int getNbrOfWritten() {
+        return m_NbrOfWritten;
+    }
+    
+    private synchronized void setNbrOfWritten(int nbrOfWritten) {
+        m_NbrOfWritten = nbrOfWritten;
+    }
+    
+    private synchronized boolean isWriterDone() {
+        return m_WriterDone;
+    }
+    
+    private synchronized void setWriterDone() {
+        m_WriterDone = true;
+    }
+    
+    /**
+     * @param cache an open cache
+     * @param nbrOfWrites the number of writes done while reading
+     * @param minReads the minimum number of reads done by each reader
+     * @param keepsAll true if the cache is big enough to keep all data, 
+     * in that case all data that isn't removed must be found
+     */
+    private void stress(final CacheInterface cache, final int nbrOfWrites, 
+            final int minReads, final boolean keepsAll) throws InterruptedException {
+        
+        for (int i = 0; i < NBR_OF_INITIAL_WRITES; i++) {
+            write(cache, i);
+        }
+        setNbrOfWritten(NBR_OF_INITIAL_WRITES);
+        
+        Thread[] readers = new Thread[NBR_OF_READERS];
+        for (int r = 0; r < readers.length; r++) {
+            final Random random = new Random(r);
+            readers[r] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        int nbrOfReads = 0;
+                        while (nbrOfReads < minReads || !isWriterDone()) {
+                            int i = random.nextInt(getNbrOfWritten());
+                            byte[] data = cache.getDataFromCache(null, name(i), name(i));
+                            if (data != null && !PersistentCacheStressTest.equals(data, data(i))) {
+                                addError("wrong data for " + name(i));
+                            } else if (data == null && keepsAll && i % 97 != 0) {
+                                addError("missing data for " + name(i));
+                            }
+                            nbrOfReads++;
+                        }
+                    } catch (Throwable t) {
+                        addError(t);
+                    }
+                }
+            });
+        }
+        
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    int end = NBR_OF_INITIAL_WRITES + nbrOfWrites;
+                    for (int i = NBR_OF_INITIAL_WRITES; i < end; i++) {
+                        write(cache, i);
+                        setNbrOfWritten(i + 1);
+                        if (i % 97 == 0) {
+                            cache.removeFromCache(new TileMapParams(name(i), name(i)));
+                        }
+                        if (i % 250 == 0) {
+                            cache.saveCache();
+                        }
+                    }
+                } catch (Throwable t) {
+                    addError(t);
+                } finally {
+                    setWriterDone();
+                }
+            }
+        });
+        
+        for (int r = 0; r < readers.length; r++) {
+            readers[r].start();
+        }
+        writer.start();
+        writer.join(TIMEOUT);
+        for (int r = 0; r < readers.length; r++) {
+            readers[r].join(TIMEOUT);
+            assertFalse("reader " + r + " is still running", readers[r].isAlive());
+        }
+        assertFalse("the writer is still running", writer.isAlive());
+        
+        if (m_Errors.size() > 0) {
+            Object error = m_Errors.elementAt(0);
+            if (error instanceof Throwable) {
+                ((Throwable)error).printStackTrace();
+            }
+            fail(m_Errors.size() + " errors, first: " + error);
+        }
+    }
+    
+    public void testFileCacheStreams() throws Exception {
+        FileCache cache = new FileCache(new MemoryPersistenceLayer(false), false);
+        cache.setMemCache(new MemCache());
+        assertTrue(cache.openCache());
+        // every stream read copies the whole page, keep the reads few
+        stress(cache, 1500, 50, true);
+        assertTrue(cache.getCurrentPageNumber() > 0);
+        assertEquals(0, cache.getErrorCount());
+        cache.closeCache();
+    }
+    
+    public void testFileCachePageFiles() throws Exception {
+        FileCache cache = new FileCache(new MemoryPersistenceLayer(true), false);
+        cache.setMemCache(new MemCache());
+        assertTrue(cache.openCache());
+        stress(cache, 3000, 2000, true);
+        assertTrue(cache.getCurrentPageNumber() > 1);
+        assertEquals(0, cache.getErrorCount());
+        cache.closeCache();
+    }
+    
+    public void testSecondaryCache() throws Exception {
+        // small pages to make the cache move between them
+        SecondaryCache cache = new SecondaryCache(new MemoryPersistenceLayer(false, 64 * 1024));
+        cache.setMemCache(new MemCache());
+        assertTrue(cache.openCache());
+        stress(cache, 3000, 2000, false);
+        cache.closeCache();
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import junit.framework.TestCase;
+
+public class ReadWriteLockTest extends TestCase {
+    
+    private static final long TIMEOUT = 10000;
+    
+    private ReadWriteLock m_lock;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_lock = new ReadWriteLock();
+    }
+    
+    /**
+     * Runs a task on a new thread, the task is done when the thread has 
+     * ended. 
+     */
+    private static Thread start(Runnable task) {
+        Thread t = new Thread(task);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+    
+    private static void waitUntilBlocked(Thread t) throws InterruptedException {
+        // the thread is waiting in the lock when it's not done after a while
+        t.join(100);
+        assertTrue(t.isAlive());
+    }
+    
+    public void testSeveralReaders() throws Exception {
+        m_lock.readLock();
+        Thread reader = start(new Runnable() {
+            public void run() {
+                m_lock.readLock();
+                m_lock.readUnlock();
+            }
+        });
+        reader.join(TIMEOUT);
+        assertFalse(reader.isAlive());
+        assertEquals(1, m_lock.getNbrOfReaders());
+        m_lock.readUnlock();
+        assertEquals(0, m_lock.getNbrOfReaders());
+    }
+    
+    public void testWriterWaitsForReaders() throws Exception {
+        m_lock.readLock();
+        Thread writer = start(new Runnable() {
+            public void run() {
+                m_lock.writeLock();
+                m_lock.writeUnlock();
+            }
+        });
+        waitUntilBlocked(writer);
+        
+        m_lock.readUnlock();
+        writer.join(TIMEOUT);
+        assertFalse(writer.isAlive());
+    }
+    
+    public void testReaderWaitsForWriter() throws Exception {
+        m_lock.writeLock();
+        Thread reader = start(new Runnable() {
+            public void run() {
+                m_lock.readLock();
+                m_lock.readUnlock();
+            }
+        });
+        waitUntilBlocked(reader);
+        
+        m_lock.writeUnlock();
+        reader.join(TIMEOUT);
+        assertFalse(reader.isAlive());
+    }
+    
+    public void testWaitingWriterIsPreferred() throws Exception {
+        m_lock.readLock();
+        Thread writer = start(new Runnable() {
+            public void run() {
+                m_lock.writeLock();
+                m_lock.writeUnlock();
+            }
+        });
+        waitUntilBlocked(writer);
+        
+        // a new reader must wait for the writer
+        Thread reader = start(new Runnable() {
+            public void run() {
+                m_lock.readLock();
+                m_lock.readUnlock();
+            }
+        });
+        waitUntilBlocked(reader);
+        
+        m_lock.readUnlock();
+        writer.join(TIMEOUT);
+        reader.join(TIMEOUT);
+        assertFalse(writer.isAlive());
+        assertFalse(reader.isAlive());
+    }
+    
+    public void testWriterCanLockAgain() {
+        m_lock.writeLock();
+        m_lock.writeLock();
+        m_lock.readLock();
+        assertTrue(m_lock.isWriteLockedByCurrentThread());
+        m_lock.readUnlock();
+        m_lock.writeUnlock();
+        assertTrue(m_lock.isWriteLockedByCurrentThread());
+        m_lock.writeUnlock();
+        assertFalse(m_lock.isWriteLockedByCurrentThread());
+        assertEquals(0, m_lock.getNbrOfReaders());
+    }
+    
+    public void testUnlockWithoutLock() {
+        try {
+            m_lock.readUnlock();
+            fail("read unlock without the lock");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            m_lock.writeUnlock();
+            fail("write unlock without the lock");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+import java.util.Vector;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
+
+/**
+ * Replays a trace of tile requests against a {@link SecondaryCache} with 
+ * FIFO and with CLOCK eviction and prints the hit ratio and the number of 
+ * relocated entries for both.
+ * <p>
+ * The trace is read from the file given as the first argument, one request 
+ * per line as "&lt;id&gt; &lt;size&gt;". Without an argument a synthetic 
+ * trace is used: {@link #NBR_OF_DAYS} days where every day the tiles around 
+ * home are requested twice and {@link #TRAVEL_TILES_PER_DAY} tiles that 
+ * are never requested again are passed through.
+ * <p>
+ * A miss writes data of the requested size to the cache, as when the tile 
+ * has been downloaded.
+ * <p>
+ * Not a unit test, run it through main().
+ */
+public class SecondaryCacheEvictionSimulator {
+    
+    private static final int PAGE_SIZE = 32 * 1024;
+    
+    private static final int NBR_OF_DAYS = 30;
+    private static final int HOME_TILES = 60;
+    private static final int TRAVEL_TILES_PER_DAY = 100;
+    private static final int MIN_TILE_SIZE = 1000;
+    private static final int MAX_TILE_SIZE = 3000;
+    
+    private final int[] m_Ids;
+    private final int[] m_Sizes;
+    
+    private SecondaryCacheEvictionSimulator(Vector requests) {
+        m_Ids = new int[requests.size()];
+        m_Sizes = new int[requests.size()];
+        for (int i = 0; i < m_Ids.length; i++) {
+            int[] request = (int[]) requests.elementAt(i);
+            m_Ids[i] = request[0];
+            m_Sizes[i] = request[1];
+        }
+    }
+    
+    private static Vector readTrace(String path) throws IOException {
+        Vector requests = new Vector();
+        BufferedReader reader = new BufferedReader(new FileReader(path));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                requests.addElement(new int[] {
+                        Integer.parseInt(line.substring(0, space)),
+                        Integer.parseInt(line.substring(space + 1).trim()) });
+            }
+        } finally {
+            reader.close();
+        }
+        return requests;
+    }
+    
+    private static Vector createTrace() {
+        Random random = new Random(4711);
+        int[] homeSizes = new int[HOME_TILES];
+        for (int i = 0; i < HOME_TILES; i++) {
+            homeSizes[i] = size(random);
+        }
+        
+        Vector requests = new Vector();
+        int nextTravelId = HOME_TILES;
+        for (int day = 0; day < NBR_OF_DAYS; day++) {
+            // to work and back
+            for (int trip = 0; trip < 2; trip++) {
+                for (int i = 0; i < HOME_TILES; i++) {
+                    requests.addElement(new int[] { i, homeSizes[i] });
+                }
+            }
+            for (int i = 0; i < TRAVEL_TILES_PER_DAY; i++) {
+                requests.addElement(new int[] { nextTravelId++, size(random) });
+            }
+        }
+        return requests;
+    }
+    
+    private static int size(Random random) {
+        return MIN_TILE_SIZE + random.nextInt(MAX_TILE_SIZE - MIN_TILE_SIZE);
+    }
+    
+    private void run(String label, int policy) {
+        SecondaryCache cache = new SecondaryCache(
+                new MemoryPersistenceLayer(false, PAGE_SIZE));
+        cache.setMemCache(new MemCache());
+        cache.openCache();
+        cache.setEvictionPolicy(policy);
+        
+        int hits = 0;
+        for (int i = 0; i < m_Ids.length; i++) {
+            String name = "t" + m_Ids[i];
+            if (cache.getDataFromCache(null, name, name) != null) {
+                hits++;
+            } else {
+                TileMapParams params = new TileMapParams(name, name);
+                cache.writeDataToCache(new byte[][] { new byte[m_Sizes[i]] }, 
+                        new TileMapParams[] { params }, params, m_Sizes[i], 1, (short)0);
+            }
+        }
+        System.out.println(label + ": hit ratio " + (hits * 1000 / m_Ids.length) / 10.0 
+                + "% (" + hits + "/" + m_Ids.length + "), relocated entries " 
+                + cache.getNbrOfRelocatedEntries());
+    }
+    
+    public static void main(String[] args) throws IOException {
+        Vector requests = args.length > 0 ? readTrace(args[0]) : createTrace();
+        SecondaryCacheEvictionSimulator simulator = new SecondaryCacheEvictionSimulator(requests);
+        simulator.run("FIFO ", SecondaryCache.EVICTION_FIFO);
+        simulator.run("CLOCK", SecondaryCache.EVICTION_CLOCK);
+    }
+}
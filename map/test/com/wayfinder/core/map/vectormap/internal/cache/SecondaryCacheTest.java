@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
+
+import junit.framework.TestCase;
+
+public class SecondaryCacheTest extends TestCase {
+    
+    private static final int PAGE_SIZE = 8 * 1024;
+    private static final int DATA_SIZE = 1000;
+    
+    /* enough entries to fill all pages once */
+    private static final int NBR_OF_COLD = 10 * PAGE_SIZE / DATA_SIZE;
+    
+    private MemoryPersistenceLayer m_Layer;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_Layer = new MemoryPersistenceLayer(false, PAGE_SIZE);
+    }
+    
+    private SecondaryCache openCache() {
+        SecondaryCache cache = new SecondaryCache(m_Layer);
+        cache.setMemCache(new MemCache());
+        assertTrue(cache.openCache());
+        return cache;
+    }
+    
+    private static byte[] data(int value) {
+        byte[] data = new byte[DATA_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(value + i);
+        }
+        return data;
+    }
+    
+    private static void write(CacheInterface cache, String name, int value) {
+        TileMapParams params = new TileMapParams(name, name);
+        cache.writeDataToCache(new byte[][] { data(value) }, new TileMapParams[] { params }, 
+                params, DATA_SIZE, 1, (short)0);
+    }
+    
+    private static void assertData(byte[] expected, byte[] data) {
+        assertNotNull(data);
+        assertEquals(expected.length, data.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(expected[i], data[i]);
+        }
+    }
+    
+    private static void writeCold(CacheInterface cache) {
+        for (int i = 0; i < NBR_OF_COLD; i++) {
+            write(cache, "cold" + i + ".png", i);
+        }
+    }
+    
+    public void testHotEntryIsKept() {
+        SecondaryCache cache = openCache();
+        write(cache, "hot.png", 77);
+        write(cache, "once.png", 78);
+        for (int i = 0; i < SecondaryCache.HOT_ACCESS_COUNT; i++) {
+            assertData(data(77), cache.getDataFromCache(null, "hot.png", "hot.png"));
+        }
+        assertData(data(78), cache.getDataFromCache(null, "once.png", "once.png"));
+        
+        // one lap moves the entry and halves the count, it's dropped on the 
+        // next lap unless it's read again
+        for (int lap = 0; lap < 3; lap++) {
+            writeCold(cache);
+            assertData(data(77), cache.getDataFromCache(null, "hot.png", "hot.png"));
+            cache.getDataFromCache(null, "hot.png", "hot.png");
+        }
+        
+        assertNull(cache.getDataFromCache(null, "once.png", "once.png"));
+        assertNull(cache.getDataFromCache(null, "cold0.png", "cold0.png"));
+        assertTrue(cache.getNbrOfRelocatedEntries() >= 3);
+    }
+    
+    public void testEntryNotReadAgainIsDropped() {
+        SecondaryCache cache = openCache();
+        write(cache, "hot.png", 77);
+        for (int i = 0; i < SecondaryCache.HOT_ACCESS_COUNT; i++) {
+            cache.getDataFromCache(null, "hot.png", "hot.png");
+        }
+        writeCold(cache);
+        writeCold(cache);
+        assertNull(cache.getDataFromCache(null, "hot.png", "hot.png"));
+    }
+    
+    public void testFifoDropsHotEntry() {
+        SecondaryCache cache = openCache();
+        cache.setEvictionPolicy(SecondaryCache.EVICTION_FIFO);
+        write(cache, "hot.png", 77);
+        for (int i = 0; i < 10; i++) {
+            cache.getDataFromCache(null, "hot.png", "hot.png");
+        }
+        writeCold(cache);
+        assertNull(cache.getDataFromCache(null, "hot.png", "hot.png"));
+        assertEquals(0, cache.getNbrOfRelocatedEntries());
+    }
+    
+    public void testAccessCountIsKeptWhenDataIsAdded() {
+        SecondaryCache cache = openCache();
+        write(cache, "hot.png", 77);
+        for (int i = 0; i < 3; i++) {
+            cache.getDataFromCache(null, "hot.png", "hot.png");
+        }
+        write(cache, "hot.png", 78);
+        IndexTableEntry entry = (IndexTableEntry) cache.getIndexTableHashtable().get("hot.png");
+        assertEquals(3, entry.getAccessCount());
+    }
+    
+    public void testAccessCountsAreSaved() {
+        SecondaryCache cache = openCache();
+        write(cache, "hot.png", 77);
+        // moves to the next page so the index of the first page is written
+        for (int i = 0; i < PAGE_SIZE / DATA_SIZE; i++) {
+            write(cache, "cold" + i + ".png", i);
+        }
+        for (int i = 0; i < 5; i++) {
+            cache.getDataFromCache(null, "hot.png", "hot.png");
+        }
+        cache.closeCache();
+        
+        cache = openCache();
+        IndexTableEntry entry = (IndexTableEntry) cache.getIndexTableHashtable().get("hot.png");
+        assertNotNull(entry);
+        assertEquals(5, entry.getAccessCount());
+        
+        writeCold(cache);
+        assertData(data(77), cache.getDataFromCache(null, "hot.png", "hot.png"));
+    }
+    
+    public void testBytesReadAndWrittenAreCounted() {
+        SecondaryCache cache = openCache();
+        write(cache, "hot.png", 77);
+        assertEquals(DATA_SIZE, cache.getNbrOfBytesWritten());
+        assertEquals(0, cache.getNbrOfBytesRead());
+        
+        assertData(data(77), cache.getDataFromCache(null, "hot.png", "hot.png"));
+        assertTrue(cache.getNbrOfBytesRead() >= DATA_SIZE);
+    }
+    
+    public void testBloomFilterIsRebuiltOnOpen() {
+        SecondaryCache cache = openCache();
+        write(cache, "hot.png", 77);
+        assertNull(cache.getDataFromCache(null, "cold.png", "cold.png"));
+        assertEquals(1, cache.getBloomFilter().getNbrOfRejectedLookups());
+        cache.closeCache();
+        
+        cache = openCache();
+        assertTrue(cache.getBloomFilter().mightContain("hot.png"));
+        assertData(data(77), cache.getDataFromCache(null, "hot.png", "hot.png"));
+        assertFalse(cache.existInCache(new TileMapParams("cold.png", "cold.png")));
+        assertEquals(1, cache.getBloomFilter().getNbrOfRejectedLookups());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import java.util.Random;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+public class SlabAllocatorTest extends TestCase {
+    
+    public void testCapacity() {
+        assertEquals(SlabAllocator.SLAB_SIZE, SlabAllocator.getCapacity(1));
+        assertEquals(2 * SlabAllocator.SLAB_SIZE, 
+                SlabAllocator.getCapacity(SlabAllocator.SLAB_SIZE + 1));
+        assertEquals(0, SlabAllocator.getCapacity(0));
+        
+        SlabAllocator slabs = new SlabAllocator(100000);
+        assertEquals(2 * SlabAllocator.SLAB_SIZE, slabs.getCapacity());
+        assertEquals(slabs.getCapacity(), slabs.getNbrOfFreeBytes());
+    }
+    
+    public void testChunkSize() {
+        assertEquals(SlabAllocator.MIN_CHUNK_SIZE, SlabAllocator.getChunkSize(1));
+        assertEquals(SlabAllocator.MIN_CHUNK_SIZE, 
+                SlabAllocator.getChunkSize(SlabAllocator.MIN_CHUNK_SIZE));
+        assertEquals(2 * SlabAllocator.MIN_CHUNK_SIZE, 
+                SlabAllocator.getChunkSize(SlabAllocator.MIN_CHUNK_SIZE + 1));
+        assertEquals(SlabAllocator.SLAB_SIZE, 
+                SlabAllocator.getChunkSize(SlabAllocator.SLAB_SIZE));
+    }
+    
+    public void testChunksDoesNotOverlap() {
+        SlabAllocator slabs = new SlabAllocator(SlabAllocator.SLAB_SIZE);
+        int a = slabs.allocate(100);
+        int b = slabs.allocate(1000);
+        int c = slabs.allocate(100);
+        assertSame(slabs.getSlab(a), slabs.getSlab(b));
+        
+        int[] chunks = { a, b, c };
+        int[] sizes = { 128, 1024, 128 };
+        for(int i=0; i<chunks.length; i++) {
+            for(int j=i+1; j<chunks.length; j++) {
+                int startI = SlabAllocator.getOffset(chunks[i]);
+                int startJ = SlabAllocator.getOffset(chunks[j]);
+                assertTrue(startI + sizes[i] <= startJ || startJ + sizes[j] <= startI);
+            }
+        }
+        assertEquals(SlabAllocator.SLAB_SIZE - 1280, slabs.getNbrOfFreeBytes());
+    }
+    
+    public void testFull() {
+        SlabAllocator slabs = new SlabAllocator(SlabAllocator.SLAB_SIZE);
+        int a = slabs.allocate(SlabAllocator.SLAB_SIZE / 2);
+        int b = slabs.allocate(SlabAllocator.SLAB_SIZE / 2);
+        assertTrue(a >= 0 && b >= 0);
+        assertEquals(-1, slabs.allocate(1));
+        slabs.free(a);
+        assertTrue(slabs.allocate(1) >= 0);
+    }
+    
+    public void testFreedChunksAreMerged() {
+        SlabAllocator slabs = new SlabAllocator(2 * SlabAllocator.SLAB_SIZE);
+        Random rand = new Random(4711);
+        Vector chunks = new Vector();
+        for(int n=0; n<5000; n++) {
+            if(chunks.size() > 0 && rand.nextInt(3) == 0) {
+                int i = rand.nextInt(chunks.size());
+                slabs.free(((Integer)chunks.elementAt(i)).intValue());
+                chunks.removeElementAt(i);
+            } else {
+                int chunk = slabs.allocate(1 + rand.nextInt(4000));
+                if(chunk >= 0) {
+                    chunks.addElement(new Integer(chunk));
+                }
+            }
+        }
+        for(int i=0; i<chunks.size(); i++) {
+            slabs.free(((Integer)chunks.elementAt(i)).intValue());
+        }
+        assertEquals(slabs.getCapacity(), slabs.getNbrOfFreeBytes());
+        // everything is merged back to whole slabs
+        assertTrue(slabs.allocate(SlabAllocator.SLAB_SIZE) >= 0);
+        assertTrue(slabs.allocate(SlabAllocator.SLAB_SIZE) >= 0);
+        assertEquals(0, slabs.getNbrOfFreeBytes());
+    }
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TileIndexTest extends TestCase {
+    
+    private static long key(int i) {
+        return TileKey.pack(i % 64, 0, i % 16, 0, 0, (i * 7) % 16384, i % 16000);
+    }
+    
+    private static int location(int i) {
+        return TileIndex.createLocation((byte)(i % 120), (i * 13) % FileCache.MAX_PAGE_SIZE);
+    }
+    
+    public void testLocation() {
+        int location = TileIndex.createLocation((byte)119, FileCache.MAX_PAGE_SIZE - 1);
+        assertTrue(location >= 0);
+        assertEquals(119, TileIndex.getPage(location));
+        assertEquals(FileCache.MAX_PAGE_SIZE - 1, TileIndex.getOffset(location));
+        assertEquals(0, TileIndex.createLocation((byte)0, 0));
+    }
+    
+    public void testPutGetRemove() {
+        TileIndex index = new TileIndex();
+        assertEquals(TileIndex.NO_ENTRY, index.get(key(1)));
+        assertFalse(index.hasBeenChanged());
+        
+        index.put(key(1), location(1));
+        assertEquals(location(1), index.get(key(1)));
+        assertEquals(1, index.size());
+        assertTrue(index.hasBeenChanged());
+        
+        // update
+        index.put(key(1), location(2));
+        assertEquals(location(2), index.get(key(1)));
+        assertEquals(1, index.size());
+        
+        assertTrue(index.remove(key(1)));
+        assertFalse(index.remove(key(1)));
+        assertEquals(TileIndex.NO_ENTRY, index.get(key(1)));
+        assertEquals(0, index.size());
+    }
+    
+    public void testGrowAndRemoveMany() {
+        TileIndex index = new TileIndex();
+        final int n = 5000;
+        for (int i = 0; i < n; i++) {
+            index.put(key(i), location(i));
+        }
+        assertEquals(n, index.size());
+        assertTrue(index.getCapacity() >= 2 * n);
+        
+        // removes in a random order, the remaining keys must still be found
+        Random random = new Random(4711);
+        boolean[] removed = new boolean[n];
+        for (int r = 0; r < n / 2; r++) {
+            int i = random.nextInt(n);
+            assertEquals(!removed[i], index.remove(key(i)));
+            removed[i] = true;
+        }
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (removed[i]) {
+                assertEquals(TileIndex.NO_ENTRY, index.get(key(i)));
+            } else {
+                assertEquals(location(i), index.get(key(i)));
+                size++;
+            }
+        }
+        assertEquals(size, index.size());
+    }
+    
+    public void testRemovePagesUpTo() {
+        TileIndex index = new TileIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.put(key(i), location(i));
+        }
+        int nbrRemoved = index.removePagesUpTo(50);
+        int size = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (TileIndex.getPage(location(i)) <= 50) {
+                assertEquals(TileIndex.NO_ENTRY, index.get(key(i)));
+            } else {
+                assertEquals(location(i), index.get(key(i)));
+                size++;
+            }
+        }
+        assertEquals(size, index.size());
+        assertEquals(1000 - size, nbrRemoved);
+    }
+    
+    public void testWriteAndRead() throws IOException {
+        TileIndex index = new TileIndex();
+        for (int i = 0; i < 300; i++) {
+            index.put(key(i), location(i));
+        }
+        index.remove(key(17));
+        
+        byte[] data = write(index);
+        assertFalse(index.hasBeenChanged());
+        assertEquals(8 + 12 * 299, data.length);
+        
+        TileIndex read = new TileIndex();
+        read.put(key(1000), location(1000));
+        read.read(data);
+        assertFalse(read.hasBeenChanged());
+        assertEquals(299, read.size());
+        assertEquals(TileIndex.NO_ENTRY, read.get(key(1000)));
+        assertEquals(TileIndex.NO_ENTRY, read.get(key(17)));
+        for (int i = 0; i < 300; i++) {
+            if (i != 17) {
+                assertEquals(location(i), read.get(key(i)));
+            }
+        }
+    }
+    
+    public void testReadInvalid() throws IOException {
+        TileIndex index = new TileIndex();
+        index.put(key(1), location(1));
+        byte[] data = write(index);
+        
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        TileIndex read = new TileIndex();
+        try {
+            read.read(truncated);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals(0, read.size());
+        }
+        
+        data[3] = 99; // version
+        try {
+            read.read(data);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals(0, read.size());
+        }
+    }
+    
+    private static byte[] write(TileIndex index) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bout);
+        index.write(dout);
+        dout.close();
+        return bout.toByteArray();
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+
+import junit.framework.TestCase;
+
+public class TileKeyTest extends TestCase {
+    
+    public void testPackAndUnpack() {
+        long key = TileKey.pack(63, 15, 15, 31, 8191, -16384, 16383);
+        assertTrue(key >= 0);
+        assertEquals(63, TileKey.getServerPrefix(key));
+        assertEquals(15, TileKey.getLayerID(key));
+        assertEquals(15, TileKey.getDetailLevel(key));
+        assertEquals(31, TileKey.getImportance(key));
+        assertEquals(8191, TileKey.getLanguage(key));
+        assertEquals(-16384, TileKey.getTileIndexLat(key));
+        assertEquals(16383, TileKey.getTileIndexLon(key));
+        
+        key = TileKey.pack(5, 0, 3, 2, 1, -1, 0);
+        assertEquals(5, TileKey.getServerPrefix(key));
+        assertEquals(0, TileKey.getLayerID(key));
+        assertEquals(3, TileKey.getDetailLevel(key));
+        assertEquals(2, TileKey.getImportance(key));
+        assertEquals(1, TileKey.getLanguage(key));
+        assertEquals(-1, TileKey.getTileIndexLat(key));
+        assertEquals(0, TileKey.getTileIndexLon(key));
+    }
+    
+    public void testFieldsGiveDifferentKeys() {
+        long key = TileKey.pack(1, 2, 3, 4, 5, 6, 7);
+        assertTrue(key != TileKey.pack(0, 2, 3, 4, 5, 6, 7));
+        assertTrue(key != TileKey.pack(1, 3, 3, 4, 5, 6, 7));
+        assertTrue(key != TileKey.pack(1, 2, 4, 4, 5, 6, 7));
+        assertTrue(key != TileKey.pack(1, 2, 3, 5, 5, 6, 7));
+        assertTrue(key != TileKey.pack(1, 2, 3, 4, 6, 6, 7));
+        assertTrue(key != TileKey.pack(1, 2, 3, 4, 5, 7, 7));
+        assertTrue(key != TileKey.pack(1, 2, 3, 4, 5, 6, 8));
+        // lat and lon aren't mixed up
+        assertTrue(TileKey.pack(0, 0, 0, 0, 0, 6, 7) != TileKey.pack(0, 0, 0, 0, 0, 7, 6));
+    }
+    
+    public void testOutOfRange() {
+        assertEquals(TileKey.NO_KEY, TileKey.pack(64, 0, 0, 0, 0, 0, 0));
+        assertEquals(TileKey.NO_KEY, TileKey.pack(0, 16, 0, 0, 0, 0, 0));
+        assertEquals(TileKey.NO_KEY, TileKey.pack(0, 0, 16, 0, 0, 0, 0));
+        assertEquals(TileKey.NO_KEY, TileKey.pack(0, 0, 0, 32, 0, 0, 0));
+        assertEquals(TileKey.NO_KEY, TileKey.pack(0, 0, 0, 0, 8192, 0, 0));
+        assertEquals(TileKey.NO_KEY, TileKey.pack(0, 0, 0, 0, 0, 16384, 0));
+        assertEquals(TileKey.NO_KEY, TileKey.pack(0, 0, 0, 0, 0, 0, -16385));
+        assertEquals(TileKey.NO_KEY, TileKey.pack(-1, 0, 0, 0, 0, 0, 0));
+    }
+    
+    public void testRouteLayerHasNoKey() {
+        assertEquals(TileKey.NO_KEY, TileKey.pack(0, TileKey.ROUTE_LAYER_ID, 0, 0, 0, 0, 0));
+    }
+    
+    public void testTileKeyIgnoresImportanceAndLanguage() {
+        TileMapParams geo = new TileMapParams();
+        geo.setParams(7, true, 0, TileMapParams.MAP, 0, 0, 120, -45, 2, null, "G");
+        TileMapParams strings = new TileMapParams();
+        strings.setParams(7, true, 0, TileMapParams.STRINGS, 3, 12, 120, -45, 2, null, "G");
+        
+        long key = TileKey.getTileKey(geo);
+        assertEquals(key, TileKey.getTileKey(strings));
+        assertEquals(7, TileKey.getServerPrefix(key));
+        assertEquals(2, TileKey.getDetailLevel(key));
+        assertEquals(120, TileKey.getTileIndexLat(key));
+        assertEquals(-45, TileKey.getTileIndexLon(key));
+        assertEquals(0, TileKey.getImportance(key));
+        assertEquals(0, TileKey.getLanguage(key));
+        
+        TileMapParams other = new TileMapParams();
+        other.setParams(7, true, 0, TileMapParams.MAP, 0, 0, 121, -45, 2, null, "G");
+        assertTrue(key != TileKey.getTileKey(other));
+    }
+    
+    public void testTileIDParams() {
+        TileMapParams geo = new TileMapParams();
+        geo.setParams(7, false, 3, TileMapParams.MAP, 0, 0, 120, -45, 2, null, "");
+        TileMapParams params = TileKey.getTileIDParams(TileKey.getTileKey(geo));
+        assertEquals(geo.getAsString(), params.getAsString());
+        assertEquals(geo.getAsString(), params.getTileID());
+        
+        params = TileKey.getTileIDParams(geo.getAsString(), true);
+        assertTrue(params.isOverviewMap());
+        assertEquals(3, params.getLayerID());
+        assertEquals(120, params.getTileIndexLat());
+        assertEquals(-45, params.getTileIndexLon());
+        assertEquals(geo.getAsString(), params.getTileID());
+        
+        params = TileKey.getTileIDParams("Bicon.png", true);
+        assertEquals("Bicon.png", params.getAsString());
+        assertEquals("Bicon.png", params.getTileID());
+        
+        TileMapParams route = new TileMapParams();
+        route.setParams(7, true, TileKey.ROUTE_LAYER_ID, TileMapParams.MAP, 0, 0, 1, 1, 2, null, "");
+        assertNull(TileKey.getTileIDParams(route.getAsString(), false));
+    }
+}
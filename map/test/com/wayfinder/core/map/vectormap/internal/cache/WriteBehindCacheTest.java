@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.util.Hashtable;
+import java.util.Timer;
+import java.util.Vector;
+
+import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.internal.control.TileMapLayerWrapper;
+import com.wayfinder.core.map.vectormap.internal.control.TileMapLayerWrapperInterface;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.pal.concurrency.ConcurrencyLayer;
+import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
+
+import junit.framework.TestCase;
+
+public class WriteBehindCacheTest extends TestCase {
+    
+    private static final long TIMEOUT = 10000;
+    
+    private TileMapParams m_geoParams;
+    private TileMapParams m_stringParams;
+    private TileMapParams m_imageParams;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_geoParams = new TileMapParams("G+1aA7V0Y", "G+1aA7V0Y");
+        m_stringParams = new TileMapParams("T+1aA7V0Y", "G+1aA7V0Y");
+        m_imageParams = new TileMapParams("btat_petrolstation.png", "btat_petrolstation.png");
+    }
+    
+    private static byte[] data(int length, int value) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte)value;
+        }
+        return data;
+    }
+    
+    private static void write(CacheInterface cache, TileMapParams params, byte[] data) {
+        cache.writeDataToCache(new byte[][] { data }, new TileMapParams[] { params }, 
+                params, data.length, 1, (short)0);
+    }
+    
+    public void testDataIsQueued() {
+        RecordingCache cache = new RecordingCache(0);
+        WriteBehindCache writeBehind = new WriteBehindCache(cache, 1000);
+        MemCache memCache = new MemCache();
+        writeBehind.setMemCache(memCache);
+        
+        byte[] geo = data(100, 1);
+        byte[][] cacheData = new byte[][] { geo, null };
+        assertTrue(writeBehind.writeDataToCache(cacheData, 
+                new TileMapParams[] { m_geoParams, null }, m_geoParams, 100, 1, (short)3));
+        // the data is released as when it's written to the cache
+        assertNull(cacheData[0]);
+        
+        assertEquals(0, cache.m_Writes.size());
+        assertEquals(100, writeBehind.getPendingSize());
+        assertTrue(writeBehind.existInCache(m_geoParams));
+        assertSame(geo, writeBehind.getDataFromCache(null, "G+1aA7V0Y", "G+1aA7V0Y"));
+        assertSame(geo, memCache.getDataFromCache("G+1aA7V0Y"));
+        assertNull(writeBehind.getDataFromCache(null, "T+1aA7V0Y", "G+1aA7V0Y"));
+        
+        writeBehind.flush();
+        assertEquals(0, writeBehind.getPendingSize());
+        assertFalse(writeBehind.existInCache(m_geoParams));
+        assertEquals(1, cache.m_Writes.size());
+        Write w = (Write)cache.m_Writes.elementAt(0);
+        assertEquals(1, w.m_Params.length);
+        assertSame(geo, w.m_Data[0]);
+        assertEquals(100, w.m_TotalSize);
+        assertEquals(3, w.m_EmptyImp);
+    }
+    
+    public void testTileIsWrittenOnce() {
+        RecordingCache cache = new RecordingCache(0);
+        WriteBehindCache writeBehind = new WriteBehindCache(cache, 1000);
+        
+        write(writeBehind, m_geoParams, data(100, 1));
+        byte[] strings = data(50, 2);
+        writeBehind.writeDataToCache(new byte[][] { strings }, new TileMapParams[] { m_stringParams }, 
+                m_geoParams, 50, 1, (short)7);
+        // the new geometry data replaces the queued data
+        byte[] geo = data(80, 3);
+        write(writeBehind, m_geoParams, geo);
+        
+        assertEquals(130, writeBehind.getPendingSize());
+        assertEquals(1, writeBehind.getNbrOfCoalescedWrites());
+        assertSame(geo, writeBehind.getDataFromCache(null, "G+1aA7V0Y", "G+1aA7V0Y"));
+        
+        writeBehind.flush();
+        assertEquals(1, cache.m_Writes.size());
+        Write w = (Write)cache.m_Writes.elementAt(0);
+        assertEquals(2, w.m_Params.length);
+        assertSame(m_stringParams, w.m_Params[0]);
+        assertSame(strings, w.m_Data[0]);
+        assertSame(m_geoParams, w.m_Params[1]);
+        assertSame(geo, w.m_Data[1]);
+        assertEquals(130, w.m_TotalSize);
+        assertEquals(0, w.m_EmptyImp);
+    }
+    
+    public void testRemoveFromCache() {
+        RecordingCache cache = new RecordingCache(0);
+        WriteBehindCache writeBehind = new WriteBehindCache(cache, 1000);
+        
+        write(writeBehind, m_geoParams, data(100, 1));
+        write(writeBehind, m_imageParams, data(10, 2));
+        writeBehind.removeFromCache(m_geoParams);
+        
+        assertEquals(10, writeBehind.getPendingSize());
+        assertFalse(writeBehind.existInCache(m_geoParams));
+        assertEquals(1, cache.m_Removed.size());
+        
+        writeBehind.flush();
+        assertEquals(1, cache.m_Writes.size());
+        assertSame(m_imageParams, ((Write)cache.m_Writes.elementAt(0)).m_TileIDParam);
+    }
+    
+    public void testCloseWritesQueuedData() {
+        RecordingCache cache = new RecordingCache(0);
+        WriteBehindCache writeBehind = new WriteBehindCache(cache, 1000);
+        
+        write(writeBehind, m_geoParams, data(100, 1));
+        writeBehind.saveCache();
+        assertEquals(1, cache.m_Writes.size());
+        assertEquals(1, cache.m_NbrOfSaves);
+        
+        write(writeBehind, m_imageParams, data(10, 2));
+        writeBehind.closeCache();
+        assertEquals(2, cache.m_Writes.size());
+        assertTrue(cache.m_Closed);
+        
+        // written directly when the cache has been closed
+        write(writeBehind, m_stringParams, data(10, 2));
+        assertEquals(3, cache.m_Writes.size());
+        assertEquals(0, writeBehind.getPendingSize());
+    }
+    
+    public void testWriteWhileClosingIsWrittenBeforeClose() {
+        final RecordingCache cache = new RecordingCache(0);
+        final byte[] late = data(10, 2);
+        final boolean[] lateWrite = new boolean[2];
+        WriteBehindCache writeBehind = new WriteBehindCache(cache, 1000) {
+            public void flush() {
+                super.flush();
+                // a write from another thread when the queue has been flushed
+                if (!lateWrite[0]) {
+                    lateWrite[0] = true;
+                    lateWrite[1] = writeDataToCache(new byte[][] { late }, 
+                            new TileMapParams[] { m_imageParams }, m_imageParams, 
+                            late.length, 1, (short)0);
+                }
+            }
+        };
+        
+        write(writeBehind, m_geoParams, data(100, 1));
+        writeBehind.closeCache();
+        assertTrue(lateWrite[1]);
+        assertEquals(2, cache.m_Writes.size());
+        assertSame(m_imageParams, ((Write)cache.m_Writes.elementAt(1)).m_TileIDParam);
+        assertEquals(0, cache.m_NbrOfWritesAfterClose);
+        assertEquals(0, writeBehind.getPendingSize());
+    }
+    
+    public void testWorkerWritesInOrder() throws Exception {
+        RecordingCache cache = new RecordingCache(5);
+        // room for two tiles
+        WriteBehindCache writeBehind = new WriteBehindCache(cache, 250);
+        writeBehind.start(new ThreadLayer(ConcurrencyLayer.THREAD_LIMIT_UNLIMITED));
+        
+        final int nbrOfTiles = 20;
+        TileMapParams[] params = new TileMapParams[nbrOfTiles];
+        for (int i = 0; i < nbrOfTiles; i++) {
+            params[i] = new TileMapParams("img" + i + ".png", "img" + i + ".png");
+            write(writeBehind, params[i], data(100, i));
+            assertTrue(writeBehind.getPendingSize() <= 250);
+        }
+        
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while(writeBehind.getPendingSize() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, writeBehind.getPendingSize());
+        
+        synchronized (cache) {
+            assertEquals(nbrOfTiles, cache.m_Writes.size());
+            for (int i = 0; i < nbrOfTiles; i++) {
+                assertSame(params[i], ((Write)cache.m_Writes.elementAt(i)).m_TileIDParam);
+            }
+        }
+        writeBehind.closeCache();
+    }
+    
+    public void testFileCacheReadsWrittenData() throws Exception {
+        DataInputStream din = new DataInputStream(new FileInputStream(
+                "./map/test/com/wayfinder/core/map/vectormap/internal/cache/tmfd"));
+        byte[] tmfdData = new byte[din.available()];
+        din.readFully(tmfdData);
+        din.close();
+        TileMapFormatDesc tmfd = new TileMapFormatDesc();
+        tmfd.load(new BitBuffer(tmfdData), null);
+        
+        FileCache fileCache = new FileCache(new MemoryPersistenceLayer(), false);
+        fileCache.setTileMapFormatDesc(tmfd);
+        assertTrue(fileCache.openCache());
+        WriteBehindCache writeBehind = new WriteBehindCache(fileCache, 1000);
+        writeBehind.setMemCache(new MemCache());
+        
+        byte[] image = data(200, 5);
+        write(writeBehind, m_imageParams, image);
+        assertEquals(0, fileCache.getCurrentOffset());
+        
+        writeBehind.flush();
+        assertTrue(fileCache.getCurrentOffset() > 0);
+        byte[] data = writeBehind.getDataFromCache(null, "btat_petrolstation.png", 
+                "btat_petrolstation.png");
+        assertNotNull(data);
+        assertNotSame(image, data);
+        assertEquals(image.length, data.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(image[i], data[i]);
+        }
+    }
+    
+    private static class Write {
+        TileMapParams[] m_Params;
+        byte[][] m_Data;
+        TileMapParams m_TileIDParam;
+        int m_TotalSize;
+        short m_EmptyImp;
+    }
+    
+    /**
+     * Records the writes, each write takes a while. 
+     */
+    private static class RecordingCache implements CacheInterface {
+        
+        private final long m_WriteTime;
+        final Vector m_Writes = new Vector();
+        final Vector m_Removed = new Vector();
+        int m_NbrOfSaves;
+        boolean m_Closed;
+        int m_NbrOfWritesAfterClose;
+        
+        RecordingCache(long writeTime) {
+            m_WriteTime = writeTime;
+        }
+        
+        public synchronized boolean writeDataToCache(byte[][] aCacheData, TileMapParams[] aParams, 
+                TileMapParams aTileIDParam, int aTotalSize, int aNbrOfImp, short aEmptyImp) {
+            if(m_WriteTime > 0) {
+                try {
+                    Thread.sleep(m_WriteTime);
+                } catch (InterruptedException e) {
+                    fail(e.toString());
+                }
+            }
+            assertEquals(aNbrOfImp, aParams.length);
+            if(m_Closed) {
+                m_NbrOfWritesAfterClose++;
+            }
+            Write w = new Write();
+            w.m_Params = aParams;
+            w.m_Data = (byte[][])aCacheData.clone();
+            w.m_TileIDParam = aTileIDParam;
+            w.m_TotalSize = aTotalSize;
+            w.m_EmptyImp = aEmptyImp;
+            m_Writes.addElement(w);
+            return true;
+        }
+        
+        public synchronized void removeFromCache(TileMapParams aParams) {
+            m_Removed.addElement(aParams);
+        }
+        
+        public synchronized void saveCache() {
+            m_NbrOfSaves++;
+        }
+        
+        public synchronized void closeCache() {
+            m_Closed = true;
+        }
+        
+        public byte[] getDataFromCache(TileMapLayerWrapper aTileMapWrapper, 
+                String aParamString, String aTileID) {
+            return null;
+        }
+        
+        public boolean existInCache(TileMapParams aParam) {
+            return false;
+        }
+        
+        public boolean openCache() {
+            return true;
+        }
+        
+        public void setMemCache(MemCache aMemCache) {
+        }
+        
+        public boolean updateLoadedNodes(TileMapLayerWrapperInterface wrapper, 
+                Hashtable aLoadedWrapper) {
+            return false;
+        }
+        
+        public void setTileMapFormatDesc(TileMapFormatDesc aTmfd) {
+        }
+        
+        public void setVisible(boolean aVisible) {
+        }
+        
+        public void purgeData() {
+        }
+    }
+    
+    private static class ThreadLayer implements ConcurrencyLayer {
+        
+        private final int m_maxThreads;
+        
+        ThreadLayer(int maxThreads) {
+            m_maxThreads = maxThreads;
+        }
+        
+        public int getCurrentNbrOfThreads() {
+            return Thread.activeCount();
+        }
+
+        public int getMaxNumberOfThreadsForPlatform() {
+            return m_maxThreads;
+        }
+
+        public Thread startNewDaemonThread(Runnable run, String threadName) {
+            Thread t = new Thread(run, threadName);
+            t.setDaemon(true);
+            t.start();
+            return t;
+        }
+
+        public Timer startNewDaemonTimer() {
+            return new Timer(true);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache.precache;
+
+import java.util.Random;
+import java.util.Vector;
+
+import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.internal.control.TileMapRequestListener;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+
+import junit.framework.TestCase;
+
+public class FileHandlerTest extends TestCase {
+    
+    private static final int NBR_OF_STRINGS = 40;
+    private static final int NBR_OF_THREADS = 4;
+    private static final int NBR_OF_READS = 200;
+    
+    private static String[] strings() {
+        String[] strings = new String[NBR_OF_STRINGS];
+        for (int i = 0; i < strings.length; i++) {
+            String nbr = "000" + i;
+            strings[i] = "Bicon_" + nbr.substring(nbr.length() - 3) + ".png";
+        }
+        return strings;
+    }
+    
+    private static byte[][] buffers(int seed) {
+        byte[][] buffers = new byte[NBR_OF_STRINGS][];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new byte[20 + i];
+            for (int j = 0; j < buffers[i].length; j++) {
+                buffers[i][j] = (byte)(seed + i + j);
+            }
+        }
+        return buffers;
+    }
+    
+    private static SFDTestFile.Layer createLayer(boolean pageFiles, String[] names) 
+            throws Exception {
+        SFDTestFile.Layer layer = new SFDTestFile.Layer(0, pageFiles);
+        for (int i = 0; i < names.length; i++) {
+            layer.addFile(names[i], SFDTestFile.create(strings(), buffers(i)));
+        }
+        return layer;
+    }
+    
+    private static void assertRead(FileHandler fh, byte[] data, int offset, int length) {
+        byte[] bytes = new byte[length];
+        final int[] nbrRead = { -1 };
+        int n = fh.read(bytes, length, new FileHandlerListener() {
+            public void readDone(int nbrOfBytes) {
+                nbrRead[0] = nbrOfBytes;
+            }
+            
+            public void writeDone(int nbrOfBytes) {
+            }
+        }, offset);
+        
+        int expected = Math.max(0, Math.min(length, data.length - offset));
+        assertEquals(expected, n);
+        assertEquals(expected, nbrRead[0]);
+        for (int i = 0; i < n; i++) {
+            assertEquals(data[offset + i], bytes[i]);
+        }
+    }
+    
+    private void checkReads(boolean pageFiles) throws Exception {
+        SFDTestFile.Layer layer = createLayer(pageFiles, new String[] { "test.wfd" });
+        byte[] data = SFDTestFile.create(strings(), buffers(0));
+        FileHandler fh = new FileHandler("test.wfd", false, layer);
+        assertTrue(fh.fileConnectionOk());
+        assertEquals(pageFiles, fh.hasPageFile());
+        assertEquals(data.length, fh.getFileSize());
+        
+        assertRead(fh, data, 100, 50);
+        // backwards
+        assertRead(fh, data, 10, 50);
+        assertRead(fh, data, 0, data.length);
+        // past the end
+        assertRead(fh, data, data.length - 10, 50);
+        assertRead(fh, data, data.length + 10, 50);
+    }
+    
+    public void testReadFromPageFile() throws Exception {
+        checkReads(true);
+    }
+    
+    public void testReadFromStream() throws Exception {
+        checkReads(false);
+    }
+    
+    public void testRequestFromPageFile() throws Exception {
+        SFDTestFile.Layer layer = createLayer(true, new String[] { "test.wfd" });
+        SingleFileDBufRequester requester = 
+            new PreCacheLoader().addSingleFileCache("test.wfd", 0, layer);
+        assertNotNull(requester);
+        
+        String[] strings = strings();
+        byte[][] buffers = buffers(0);
+        Listener listener = new Listener();
+        for (int i = 0; i < strings.length; i++) {
+            assertTrue(requester.request(new TileMapParams(strings[i], strings[i]), listener));
+            byte[] received = ((BitBuffer) listener.m_Buffers.lastElement()).getByteArray();
+            assertEquals(buffers[i].length, received.length);
+            for (int j = 0; j < received.length; j++) {
+                assertEquals(buffers[i][j], received[j]);
+            }
+        }
+    }
+    
+    private void checkConcurrentReads(boolean pageFiles) throws Exception {
+        final String[] names = { "a.wfd", "b.wfd" };
+        SFDTestFile.Layer layer = createLayer(pageFiles, names);
+        final FileHandler[] handlers = new FileHandler[names.length];
+        final byte[][] data = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            handlers[i] = new FileHandler(names[i], false, layer);
+            assertEquals(pageFiles, handlers[i].hasPageFile());
+            data[i] = SFDTestFile.create(strings(), buffers(i));
+        }
+        
+        final Vector errors = new Vector();
+        Thread[] threads = new Thread[NBR_OF_THREADS];
+        for (int t = 0; t < threads.length; t++) {
+            final Random random = new Random(t);
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < NBR_OF_READS; i++) {
+                            int file = random.nextInt(handlers.length);
+                            int offset = random.nextInt(data[file].length);
+                            assertRead(handlers[file], data[file], offset, 1 + random.nextInt(64));
+                        }
+                    } catch (Throwable e) {
+                        errors.addElement(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        if (!errors.isEmpty()) {
+            fail(errors.firstElement().toString());
+        }
+    }
+    
+    public void testConcurrentReadsFromPageFiles() throws Exception {
+        checkConcurrentReads(true);
+    }
+    
+    public void testConcurrentReadsFromStreams() throws Exception {
+        checkConcurrentReads(false);
+    }
+    
+    private static class Listener implements TileMapRequestListener {
+        
+        private final Vector m_Buffers = new Vector();
+        
+        public void requestReceived(String paramString, byte[] tiledata, boolean fromCache) {
+        }
+        
+        public void requestReceived(TileMapParams desc, BitBuffer buf, boolean fromCache) {
+            m_Buffers.addElement(buf);
+        }
+        
+        public void requestFailed(String[] paramStrings) {
+        }
+    }
+}
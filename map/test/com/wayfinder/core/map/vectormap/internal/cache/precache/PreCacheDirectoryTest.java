@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache.precache;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+
+import junit.framework.TestCase;
+
+public class PreCacheDirectoryTest extends TestCase {
+    
+    private static final String[] NAMES = { "north.wfd", "south.wfd", "world.wfd" };
+    
+    private SingleFileDBufRequester[] m_Files;
+    private PreCacheDirectory m_Directory;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        SFDTestFile.Layer layer = new SFDTestFile.Layer(0);
+        // layer 0 at detail 0 and 1 in the north and south, layer 1 at 
+        // detail 0 in the north
+        layer.addFile("north.wfd", SFDTestFile.create(
+                new String[] { "Bnorth.png" }, new byte[][] { new byte[10] }, 
+                new int[][] { { 0, 0, 0, 9, 0, 9 }, { 0, 1, 0, 19, 0, 19 }, 
+                              { 1, 0, 0, 9, 0, 9 } }));
+        layer.addFile("south.wfd", SFDTestFile.create(
+                new String[] { "Bsouth.png" }, new byte[][] { new byte[10] }, 
+                new int[][] { { 0, 0, -10, -1, 0, 9 }, { 0, 1, -20, -1, 0, 19 } }));
+        layer.addFile("world.wfd", SFDTestFile.create(
+                new String[] { "Bworld.png", "DXXX" }, new byte[][] { new byte[10], new byte[10] }));
+        
+        PreCacheLoader loader = new PreCacheLoader();
+        m_Files = new SingleFileDBufRequester[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            m_Files[i] = loader.addSingleFileCache(NAMES[i], 0, layer);
+            assertNotNull(m_Files[i]);
+        }
+        m_Directory = new PreCacheDirectory(m_Files);
+    }
+    
+    private static TileMapParams tile(int layer, int detail, int lat, int lon, int importance) {
+        TileMapParams param = new TileMapParams();
+        param.setParams(9, false, layer, TileMapParams.MAP, importance, 0, lat, lon, detail, null, "");
+        return param;
+    }
+    
+    private void assertFiles(String[] expected, TileMapParams param) {
+        SingleFileDBufRequester[] files = m_Directory.getFiles(param);
+        assertEquals(param.getAsString(), expected.length, files.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], files[i].getPathUTF8());
+        }
+    }
+    
+    public void testTiles() {
+        assertEquals(NAMES.length, m_Directory.getNbrOfFiles());
+        assertFiles(new String[] { "north.wfd" }, tile(0, 0, 0, 0, 0));
+        assertFiles(new String[] { "north.wfd" }, tile(0, 0, 9, 9, 0));
+        assertFiles(new String[] { "north.wfd" }, tile(0, 1, 15, 15, 0));
+        assertFiles(new String[] { "north.wfd" }, tile(1, 0, 5, 5, 0));
+        assertFiles(new String[] { "south.wfd" }, tile(0, 0, -10, 5, 0));
+        assertFiles(new String[] { "south.wfd" }, tile(0, 1, -20, 19, 0));
+        
+        // outside the ranges
+        assertFiles(new String[0], tile(0, 0, 10, 5, 0));
+        assertFiles(new String[0], tile(0, 0, 5, -1, 0));
+        assertFiles(new String[0], tile(0, 0, -11, 5, 0));
+        assertFiles(new String[0], tile(1, 0, -5, 5, 0));
+        assertFiles(new String[0], tile(0, 2, 5, 5, 0));
+        assertFiles(new String[0], tile(2, 0, 5, 5, 0));
+    }
+    
+    public void testStrings() {
+        assertFiles(new String[] { "north.wfd" }, new TileMapParams("Bnorth.png", "Bnorth.png"));
+        assertFiles(new String[] { "world.wfd" }, new TileMapParams("Bworld.png", "Bworld.png"));
+        assertFiles(new String[] { "world.wfd" }, new TileMapParams("DXXX", "DXXX"));
+        assertFiles(new String[0], new TileMapParams("Bmissing.png", "Bmissing.png"));
+        assertFiles(new String[0], new TileMapParams("dXXX", "dXXX"));
+    }
+    
+    public void testAllFilesWithTheTileAreFound() {
+        // every file that may contain a tile is returned by the directory 
+        for (int layer = 0; layer < 3; layer++) {
+            for (int detail = 0; detail < 3; detail++) {
+                for (int lat = -25; lat < 25; lat++) {
+                    for (int lon = -5; lon < 25; lon++) {
+                        TileMapParams param = tile(layer, detail, lat, lon, 0);
+                        SingleFileDBufRequester[] found = m_Directory.getFiles(param);
+                        for (int i = 0; i < m_Files.length; i++) {
+                            boolean inDirectory = false;
+                            for (int j = 0; j < found.length; j++) {
+                                inDirectory |= found[j] == m_Files[i];
+                            }
+                            assertEquals(param.getAsString(), 
+                                    m_Files[i].existInPrecache(param), inDirectory);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
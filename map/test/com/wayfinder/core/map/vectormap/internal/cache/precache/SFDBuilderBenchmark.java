@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache.precache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.core.shared.internal.settings.language.LangTypes;
+
+/**
+ * Measures the throughput of the {@link SFDBuilder}. Writes a dump with a
+ * square of tiles with maps and strings of a few importances for two 
+ * layers and a number of bitmaps, and prints the time and MB/s to add the
+ * dump, to write the file and to load the header of the file. 
+ * <p>
+ * The first argument is the side of the square of tiles, 100 by default.
+ * <p>
+ * Not a unit test, run it through main().
+ */
+public class SFDBuilderBenchmark {
+    
+    private static final int NBR_OF_IMPORTANCES = 4;
+    private static final int NBR_OF_BITMAPS = 2000;
+    private static final int LANG = LangTypes.ENGLISH;
+    
+    private static String paramString(int layer, int type, int importance, int lat, int lon) {
+        TileMapParams params = new TileMapParams();
+        params.setParams(9, true, layer, type, importance, LANG, lat, lon, 2, null, "");
+        return params.getAsString();
+    }
+    
+    private static byte[] dump(int side) throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        for (int lat = 0; lat < side; lat++) {
+            for (int lon = 0; lon < side; lon++) {
+                for (int layer = 0; layer < 4; layer += 3) {
+                    for (int imp = 0; imp < NBR_OF_IMPORTANCES; imp++) {
+                        SFDBuilder.writeDumpEntry(out, 
+                                paramString(layer, TileMapParams.MAP, imp, lat, lon), 
+                                new byte[200 + (lat + lon + imp) % 800]);
+                        SFDBuilder.writeDumpEntry(out, 
+                                paramString(layer, TileMapParams.STRINGS, imp, lat, lon), 
+                                new byte[50 + (lat * lon) % 200]);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < NBR_OF_BITMAPS; i++) {
+            SFDBuilder.writeDumpEntry(out, "Bpoi_" + i + ".png", new byte[100 + i % 1000]);
+        }
+        out.close();
+        return bout.toByteArray();
+    }
+    
+    private static String mbPerSecond(int nbrOfBytes, long time) {
+        return (float)nbrOfBytes / (1024 * 1024) * 1000 / Math.max(1, time) + " MB/s";
+    }
+    
+    public static void main(String[] args) throws Exception {
+        final int side = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        byte[] dump = dump(side);
+        
+        SFDBuilder builder = new SFDBuilder("benchmark", LANG);
+        long time = System.currentTimeMillis();
+        int nbrAdded = builder.addDump(new ByteArrayInputStream(dump));
+        time = System.currentTimeMillis() - time;
+        System.out.println("add: " + nbrAdded + " buffers, " + builder.getNbrOfTiles() + " tiles, " 
+                + builder.getNbrOfStrings() + " strings, " + time + " ms, " 
+                + mbPerSecond(dump.length, time));
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream(dump.length);
+        time = System.currentTimeMillis();
+        final int size = builder.write(out);
+        time = System.currentTimeMillis() - time;
+        System.out.println("write: " + size + " bytes, " + time + " ms, " + mbPerSecond(size, time));
+        
+        SFDTestFile.Layer layer = new SFDTestFile.Layer(0);
+        layer.addFile("benchmark.wfd", out.toByteArray());
+        time = System.currentTimeMillis();
+        SingleFileDBufRequester requester = 
+            new PreCacheLoader().addSingleFileCache("benchmark.wfd", LANG, layer);
+        time = System.currentTimeMillis() - time;
+        System.out.println("load: " + (requester != null ? "ok" : "failed") + ", " + time + " ms");
+    }
+}
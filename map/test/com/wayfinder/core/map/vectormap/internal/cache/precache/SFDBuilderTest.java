@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache.precache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Hashtable;
+
+import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.internal.cache.CacheInterface;
+import com.wayfinder.core.map.vectormap.internal.cache.FileCache;
+import com.wayfinder.core.map.vectormap.internal.cache.MemCache;
+import com.wayfinder.core.map.vectormap.internal.cache.SecondaryCache;
+import com.wayfinder.core.map.vectormap.internal.control.TileMapRequestListener;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.core.shared.internal.settings.language.LangTypes;
+import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
+
+import junit.framework.TestCase;
+
+public class SFDBuilderTest extends TestCase {
+    
+    private static final int LANG = LangTypes.ENGLISH;
+    private static final String NAME = "built.wfd";
+    
+    /* marks a received null buffer */
+    private static final byte[] EMPTY = new byte[0];
+    
+    private SFDBuilder m_Builder;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_Builder = new SFDBuilder("test", LANG);
+    }
+    
+    private static TileMapParams params(int layer, int type, int importance, int lang, 
+            int detail, int lat, int lon) {
+        TileMapParams params = new TileMapParams();
+        params.setParams(9, false, layer, type, importance, lang, lat, lon, detail, null, "");
+        params.setTileID(params.getAsString());
+        return params;
+    }
+    
+    private static String map(int layer, int importance, int detail, int lat, int lon) {
+        return params(layer, TileMapParams.MAP, importance, LANG, detail, lat, lon).getAsString();
+    }
+    
+    private static String strings(int layer, int importance, int detail, int lat, int lon) {
+        return params(layer, TileMapParams.STRINGS, importance, LANG, detail, lat, lon).getAsString();
+    }
+    
+    private static byte[] data(int seed, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(seed + i);
+        }
+        return data;
+    }
+    
+    private static void assertData(String message, byte[] expected, byte[] data) {
+        assertNotNull(message, data);
+        assertEquals(message, expected.length, data.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(message, expected[i], data[i]);
+        }
+    }
+    
+    private SingleFileDBufRequester writeAndLoad(SFDBuilder builder) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int size = builder.write(out);
+        assertEquals(out.size(), size);
+        
+        SFDTestFile.Layer layer = new SFDTestFile.Layer(0);
+        layer.addFile(NAME, out.toByteArray());
+        SingleFileDBufRequester requester = new PreCacheLoader().addSingleFileCache(NAME, LANG, layer);
+        assertNotNull(requester);
+        assertEquals(SingleFileDBufRequester.IDLE, requester.getState());
+        return requester;
+    }
+    
+    /**
+     * Requests a param string and returns what was received. 
+     */
+    private static Hashtable request(SingleFileDBufRequester requester, TileMapParams params) {
+        Listener listener = new Listener();
+        assertTrue(params.getAsString(), requester.request(params, listener));
+        assertFalse(params.getAsString(), listener.m_Received.isEmpty());
+        return listener.m_Received;
+    }
+    
+    private static void assertString(SingleFileDBufRequester requester, String str, byte[] expected) {
+        Hashtable received = request(requester, new TileMapParams(str, str));
+        byte[] data = (byte[]) received.get(str);
+        if (expected == null) {
+            assertSame(str, EMPTY, data);
+        } else {
+            assertData(str, expected, data);
+        }
+    }
+    
+    /**
+     * Requests importance 0 of a tile and checks all importances up to 
+     * the length of the expected arrays. 
+     */
+    private static void assertTile(SingleFileDBufRequester requester, int layer, int detail, 
+            int lat, int lon, byte[][] maps, byte[][] strings) {
+        Hashtable received = request(requester, params(layer, TileMapParams.MAP, 0, LANG, detail, lat, lon));
+        for (int imp = 0; imp < maps.length; imp++) {
+            assertReceived(received, map(layer, imp, detail, lat, lon), maps[imp]);
+            assertReceived(received, strings(layer, imp, detail, lat, lon), strings[imp]);
+        }
+    }
+    
+    private static void assertReceived(Hashtable received, String str, byte[] expected) {
+        byte[] data = (byte[]) received.get(str);
+        if (expected == null) {
+            assertTrue(str, data == null || data == EMPTY);
+        } else {
+            assertData(str, expected, data);
+        }
+    }
+    
+    public void testStrings() throws Exception {
+        String[] strings = new String[40];
+        for (int i = 0; i < strings.length; i++) {
+            // added in reverse order
+            String nbr = "000" + (strings.length - i);
+            strings[i] = "Bicon_" + nbr.substring(nbr.length() - 3) + ".png";
+            assertTrue(m_Builder.add(strings[i], data(i, 10 + i)));
+        }
+        assertTrue(m_Builder.add("DXXX", data(100, 1000)));
+        assertTrue(m_Builder.add("bnight.png", data(101, 5)));
+        assertEquals(strings.length + 2, m_Builder.getNbrOfStrings());
+        assertEquals(0, m_Builder.getNbrOfTiles());
+        
+        SingleFileDBufRequester requester = writeAndLoad(m_Builder);
+        for (int i = 0; i < strings.length; i++) {
+            assertString(requester, strings[i], data(i, 10 + i));
+        }
+        assertString(requester, "DXXX", data(100, 1000));
+        assertString(requester, "bnight.png", data(101, 5));
+        assertString(requester, "Bmissing.png", null);
+        assertFalse(requester.request(new TileMapParams("dXXX", "dXXX"), new Listener()));
+        assertFalse(requester.request(params(0, TileMapParams.MAP, 0, LANG, 0, 0, 0), new Listener()));
+    }
+    
+    public void testTiles() throws Exception {
+        // layer 0 at detail 0 with holes, and at detail 2 but not detail 1
+        assertTrue(m_Builder.add(map(0, 0, 0, 0, 0), data(1, 100)));
+        assertTrue(m_Builder.add(strings(0, 0, 0, 0, 0), data(2, 50)));
+        assertTrue(m_Builder.add(map(0, 2, 0, 0, 0), data(3, 70)));
+        assertTrue(m_Builder.add(map(0, 0, 0, 0, 2), data(4, 10)));
+        assertTrue(m_Builder.add(strings(0, 1, 0, 2, 1), data(5, 20)));
+        assertTrue(m_Builder.add(map(0, 0, 2, -5, 7), data(6, 30)));
+        // another layer with a large tile index
+        assertTrue(m_Builder.add(map(3, 0, 1, 1000, -1000), data(7, 40)));
+        assertTrue(m_Builder.add(strings(3, 0, 1, 1000, -1000), data(8, 60)));
+        assertEquals(5, m_Builder.getNbrOfTiles());
+        
+        SingleFileDBufRequester requester = writeAndLoad(m_Builder);
+        assertTile(requester, 0, 0, 0, 0, 
+                new byte[][] { data(1, 100), null, data(3, 70) }, 
+                new byte[][] { data(2, 50), null, null });
+        assertTile(requester, 0, 0, 0, 2, 
+                new byte[][] { data(4, 10), null, null }, 
+                new byte[][] { null, null, null });
+        assertTile(requester, 0, 0, 2, 1, 
+                new byte[][] { null, null, null }, 
+                new byte[][] { null, data(5, 20), null });
+        assertTile(requester, 0, 2, -5, 7, 
+                new byte[][] { data(6, 30) }, 
+                new byte[][] { null });
+        assertTile(requester, 3, 1, 1000, -1000, 
+                new byte[][] { data(7, 40) }, 
+                new byte[][] { data(8, 60) });
+        
+        // a higher importance is read with the whole tile
+        Hashtable received = request(requester, params(0, TileMapParams.MAP, 2, LANG, 0, 0, 0));
+        assertReceived(received, map(0, 2, 0, 0, 0), data(3, 70));
+        
+        // a hole in the bounding box is an empty layer
+        received = request(requester, params(0, TileMapParams.MAP, 0, LANG, 0, 1, 1));
+        assertEquals(1, received.size());
+        assertReceived(received, map(0, 0, 0, 1, 1), null);
+        
+        // outside the bounding box, at a detail level without tiles and 
+        // in a layer without tiles
+        assertFalse(requester.request(params(0, TileMapParams.MAP, 0, LANG, 0, 3, 0), new Listener()));
+        assertFalse(requester.request(params(0, TileMapParams.MAP, 0, LANG, 1, 0, 0), new Listener()));
+        assertFalse(requester.request(params(2, TileMapParams.MAP, 0, LANG, 0, 0, 0), new Listener()));
+    }
+    
+    public void testSkippedParamStrings() {
+        TileMapParams geo = params(0, TileMapParams.MAP, 0, LANG, 0, 0, 0);
+        assertFalse(m_Builder.add(geo.cloneTileMapParams(TileMapParams.TRIANGLES).getAsString(), 
+                data(0, 10)));
+        assertFalse(m_Builder.add(
+                params(0, TileMapParams.STRINGS, 0, LangTypes.SWEDISH, 0, 0, 0).getAsString(), 
+                data(0, 10)));
+        assertFalse(m_Builder.add(map(0, SFDBuilder.MAX_IMPORTANCE + 1, 0, 0, 0), data(0, 10)));
+        assertFalse(m_Builder.add("Gnot a param string", data(0, 10)));
+        assertFalse(m_Builder.add("unknown", data(0, 10)));
+        assertFalse(m_Builder.add("Bicon.png", null));
+        assertEquals(0, m_Builder.getNbrOfTiles());
+        assertEquals(0, m_Builder.getNbrOfStrings());
+    }
+    
+    public void testEmptyFile() throws Exception {
+        SingleFileDBufRequester requester = writeAndLoad(m_Builder);
+        assertFalse(requester.request(new TileMapParams("Bicon.png", "Bicon.png"), new Listener()));
+        assertFalse(requester.request(params(0, TileMapParams.MAP, 0, LANG, 0, 0, 0), new Listener()));
+    }
+    
+    public void testDump() throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        SFDBuilder.writeDumpEntry(out, "Bicon.png", data(1, 10));
+        SFDBuilder.writeDumpEntry(out, map(0, 0, 5, 10, 20), data(2, 20));
+        SFDBuilder.writeDumpEntry(out, strings(0, 0, 5, 10, 20), data(3, 30));
+        SFDBuilder.writeDumpEntry(out, "unknown", data(4, 40));
+        out.close();
+        
+        assertEquals(3, m_Builder.addDump(new ByteArrayInputStream(bout.toByteArray())));
+        SingleFileDBufRequester requester = writeAndLoad(m_Builder);
+        assertString(requester, "Bicon.png", data(1, 10));
+        assertTile(requester, 0, 5, 10, 20, new byte[][] { data(2, 20) }, new byte[][] { data(3, 30) });
+    }
+    
+    private static void writeTile(CacheInterface cache, int layer, int detail, int lat, int lon, 
+            byte[] map, byte[] strings) {
+        TileMapParams mapParams = params(layer, TileMapParams.MAP, 0, LANG, detail, lat, lon);
+        TileMapParams stringParams = params(layer, TileMapParams.STRINGS, 0, LANG, detail, lat, lon);
+        stringParams.setTileID(mapParams.getTileID());
+        assertTrue(cache.writeDataToCache(new byte[][] { map, strings }, 
+                new TileMapParams[] { mapParams, stringParams }, mapParams, 
+                map.length + strings.length, 2, (short)0));
+    }
+    
+    private static void writeNonTile(CacheInterface cache, String name, byte[] data) {
+        TileMapParams params = new TileMapParams(name, name);
+        assertTrue(cache.writeDataToCache(new byte[][] { data }, new TileMapParams[] { params }, 
+                params, data.length, 1, (short)0));
+    }
+    
+    private void checkCache(CacheInterface cache) throws Exception {
+        writeTile(cache, 0, 2, 10, 10, data(1, 100), data(2, 50));
+        writeTile(cache, 0, 2, 11, 12, data(3, 100), data(4, 50));
+        writeNonTile(cache, "Bicon.png", data(5, 10));
+        
+        if (cache instanceof FileCache) {
+            assertEquals(3, ((FileCache) cache).getTileIDs().size());
+            assertEquals(5, m_Builder.addFromCache((FileCache) cache));
+        } else {
+            assertEquals(3, ((SecondaryCache) cache).getTileIDs().size());
+            assertEquals(5, m_Builder.addFromCache((SecondaryCache) cache));
+        }
+        assertEquals(2, m_Builder.getNbrOfTiles());
+        assertEquals(1, m_Builder.getNbrOfStrings());
+        
+        SingleFileDBufRequester requester = writeAndLoad(m_Builder);
+        assertTile(requester, 0, 2, 10, 10, new byte[][] { data(1, 100) }, new byte[][] { data(2, 50) });
+        assertTile(requester, 0, 2, 11, 12, new byte[][] { data(3, 100) }, new byte[][] { data(4, 50) });
+        assertString(requester, "Bicon.png", data(5, 10));
+    }
+    
+    public void testFromFileCache() throws Exception {
+        FileCache cache = new FileCache(new MemoryPersistenceLayer(), false);
+        cache.setMemCache(new MemCache());
+        cache.setLanguage(LANG);
+        assertTrue(cache.openCache());
+        checkCache(cache);
+    }
+    
+    public void testFromSecondaryCache() throws Exception {
+        SecondaryCache cache = new SecondaryCache(new MemoryPersistenceLayer(false, 8 * 1024));
+        cache.setMemCache(new MemCache());
+        cache.setLanguage(LANG);
+        assertTrue(cache.openCache());
+        checkCache(cache);
+    }
+    
+    public void testSort() {
+        String[] strings = new String[1000];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = "B" + ((i * 7919) % strings.length);
+        }
+        SFDBuilder.sort(strings);
+        for (int i = 1; i < strings.length; i++) {
+            assertTrue(strings[i - 1].compareTo(strings[i]) < 0);
+        }
+    }
+    
+    private static class Listener implements TileMapRequestListener {
+        
+        private final Hashtable m_Received = new Hashtable();
+        
+        public void requestReceived(String paramString, byte[] tiledata, boolean fromCache) {
+        }
+        
+        public void requestReceived(TileMapParams desc, BitBuffer buf, boolean fromCache) {
+            m_Received.put(desc.getAsString(), buf == null ? EMPTY : buf.getByteArray());
+        }
+        
+        public void requestFailed(String[] paramStrings) {
+        }
+    }
+}
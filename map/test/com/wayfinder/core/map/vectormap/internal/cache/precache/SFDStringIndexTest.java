@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache.precache;
+
+import java.util.Random;
+import java.util.Vector;
+
+import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.internal.control.TileMapRequestListener;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+
+import junit.framework.TestCase;
+
+public class SFDStringIndexTest extends TestCase {
+    
+    private static final int NBR_OF_STRINGS = 3 * SFDStringIndex.BUCKET_SIZE + 5;
+    
+    private static String string(int i) {
+        // sorted, with long shared prefixes
+        String nbr = "000" + (i * 2);
+        return "Bicon_" + nbr.substring(nbr.length() - 3) + ".png";
+    }
+    
+    private static String[] strings() {
+        String[] strings = new String[NBR_OF_STRINGS];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = string(i);
+        }
+        return strings;
+    }
+    
+    private static byte[] buffer(int i) {
+        byte[] buffer = new byte[10 + i];
+        for (int j = 0; j < buffer.length; j++) {
+            buffer[j] = (byte)(i + j);
+        }
+        return buffer;
+    }
+    
+    private static SFDStringIndex create(String[] strings) {
+        // null padded as in the files
+        StringBuffer data = new StringBuffer();
+        int[] offsets = new int[strings.length + 1];
+        int[] bufferOffsets = new int[strings.length + 1];
+        for (int i = 0; i < strings.length; i++) {
+            offsets[i] = data.length();
+            bufferOffsets[i] = 100 * i;
+            data.append(strings[i]).append("\0\0");
+        }
+        offsets[strings.length] = data.length();
+        bufferOffsets[strings.length] = 100 * strings.length;
+        return SFDStringIndex.create(data.toString().getBytes(), offsets, bufferOffsets);
+    }
+    
+    public void testIndexOf() {
+        SFDStringIndex index = create(strings());
+        assertNotNull(index);
+        assertEquals(NBR_OF_STRINGS, index.getNbrOfStrings());
+        for (int i = 0; i < NBR_OF_STRINGS; i++) {
+            assertEquals(i, index.indexOf(string(i)));
+            assertEquals(100 * i, index.getBufferOffset(i));
+            assertEquals(100, index.getBufferLength(i));
+        }
+        
+        assertEquals(-1, index.indexOf("A"));
+        assertEquals(-1, index.indexOf("Bicon_001.png"));
+        assertEquals(-1, index.indexOf("Bicon_"));
+        assertEquals(-1, index.indexOf(string(3) + "x"));
+        assertEquals(-1, index.indexOf("Bicon_999.png"));
+        assertEquals(-1, index.indexOf("C"));
+        assertEquals(-1, index.indexOf(""));
+    }
+    
+    public void testIsSmallerThanStrings() {
+        SFDStringIndex index = create(strings());
+        int size = 0;
+        for (int i = 0; i < NBR_OF_STRINGS; i++) {
+            size += string(i).length();
+        }
+        // the buffer offsets are 4 bytes each
+        int stringsSize = index.getNbrOfBytes() - 4 * (NBR_OF_STRINGS + 1);
+        assertTrue(stringsSize + " " + size, stringsSize < size * 3 / 4);
+    }
+    
+    public void testUnsortedStringsAreNotIndexed() {
+        assertNull(create(new String[] { "Ba", "Bc", "Bb" }));
+        assertNull(create(new String[] { "Ba", "Ba" }));
+        assertNull(create(new String[] { "Bab", "Ba" }));
+        assertNotNull(create(new String[] { "Ba", "Bab", "Bb" }));
+    }
+    
+    public void testRequest() throws Exception {
+        String[] strings = strings();
+        byte[][] buffers = new byte[strings.length][];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = buffer(i);
+        }
+        SFDTestFile.Layer layer = new SFDTestFile.Layer(0);
+        layer.addFile("test.wfd", SFDTestFile.create(strings, buffers));
+        SingleFileDBufRequester requester = 
+            new PreCacheLoader().addSingleFileCache("test.wfd", 0, layer);
+        assertNotNull(requester);
+        
+        Listener listener = new Listener();
+        for (int i = 0; i < strings.length; i++) {
+            int nbrOfReads = layer.getNbrOfReads();
+            assertTrue(requester.request(new TileMapParams(strings[i], strings[i]), listener));
+            assertEquals(1, layer.getNbrOfReads() - nbrOfReads);
+            assertEquals(i + 1, listener.m_Buffers.size());
+            byte[] received = ((BitBuffer) listener.m_Buffers.lastElement()).getByteArray();
+            assertEquals(buffers[i].length, received.length);
+            for (int j = 0; j < received.length; j++) {
+                assertEquals(buffers[i][j], received[j]);
+            }
+        }
+        
+        // not found is reported without reading from the file
+        int nbrOfReads = layer.getNbrOfReads();
+        assertTrue(requester.request(new TileMapParams("Bmissing.png", "Bmissing.png"), listener));
+        assertEquals(nbrOfReads, layer.getNbrOfReads());
+        assertNull(listener.m_Buffers.lastElement());
+        
+        // and the requester can still be used
+        assertTrue(requester.request(new TileMapParams(strings[0], strings[0]), listener));
+        assertNotNull(listener.m_Buffers.lastElement());
+    }
+    
+    /**
+     * With 2000 strings the search in the file takes about 20 reads per 
+     * lookup, with the index only the buffer is read. 
+     */
+    public void testSearchReads() throws Exception {
+        final int nbrOfStrings = 2000;
+        String[] strings = new String[nbrOfStrings];
+        byte[][] buffers = new byte[nbrOfStrings][];
+        for (int i = 0; i < nbrOfStrings; i++) {
+            String nbr = "00000" + i;
+            strings[i] = "Bpoi_" + nbr.substring(nbr.length() - 6) + ".png";
+            buffers[i] = buffer(i % 50);
+        }
+        SFDTestFile.Layer layer = new SFDTestFile.Layer(0);
+        layer.addFile("large.wfd", SFDTestFile.create(strings, buffers));
+        SearchListener listener = new SearchListener();
+        new SFDLoadableHeader().load("large.wfd", listener, layer);
+        assertNotNull(listener.m_Header);
+        
+        int nbrOfReads = layer.getNbrOfReads();
+        SFDStringIndex index = SFDStringIndex.load(listener.m_Header, listener.m_FileHandler);
+        assertNotNull(index);
+        assertEquals(3, layer.getNbrOfReads() - nbrOfReads);
+        
+        int fileReads = countSearchReads(layer, listener, strings, null);
+        int indexReads = countSearchReads(layer, listener, strings, index);
+        assertEquals(100, indexReads);
+        assertTrue(fileReads + " reads", fileReads > 10 * indexReads);
+    }
+    
+    /*
+     * Returns the number of reads for 100 random lookups of a string and 
+     * its buffer
+     */
+    private static int countSearchReads(SFDTestFile.Layer layer, 
+            SearchListener listener, String[] strings, SFDStringIndex index) {
+        SFDSearcher searcher = new SFDSearcher(
+                listener.m_Header, listener.m_FileHandler, listener, index);
+        listener.m_BufReader = new SFDBufReader(
+                listener.m_Header, listener.m_FileHandler, listener, index);
+        // the first search without the index reads the first and last strings
+        searcher.searchFor(strings[0]);
+        listener.m_NbrOfFound = 0;
+        
+        Random random = new Random(1);
+        int nbrOfReads = layer.getNbrOfReads();
+        for (int i = 0; i < 100; i++) {
+            searcher.searchFor(strings[random.nextInt(strings.length)]);
+        }
+        assertEquals(100, listener.m_NbrOfFound);
+        return layer.getNbrOfReads() - nbrOfReads;
+    }
+    
+    private static class SearchListener implements SFDLoadableHeaderListener, 
+            SFDSearcherListener, SFDBufReaderListener {
+        
+        private SFDLoadableHeader m_Header;
+        private FileHandler m_FileHandler;
+        private SFDBufReader m_BufReader;
+        private int m_NbrOfFound;
+        
+        public void loadDone(SFDLoadableHeader header, FileHandler fileHandler) {
+            m_Header = header;
+            m_FileHandler = fileHandler;
+        }
+        
+        public boolean readDone() {
+            return m_Header != null;
+        }
+        
+        public void searcherDone(SFDSearcher searcher, int strNbr) {
+            if (strNbr != Integer.MAX_VALUE) {
+                m_BufReader.start(strNbr);
+            }
+        }
+        
+        public void searcherDone() {
+        }
+        
+        public void bufferRead(BitBuffer buf) {
+            if (buf != null) {
+                m_NbrOfFound++;
+            }
+        }
+    }
+    
+    private static class Listener implements TileMapRequestListener {
+        
+        private final Vector m_Buffers = new Vector();
+        
+        public void requestReceived(String paramString, byte[] tiledata, boolean fromCache) {
+        }
+        
+        public void requestReceived(TileMapParams desc, BitBuffer buf, boolean fromCache) {
+            m_Buffers.addElement(buf);
+        }
+        
+        public void requestFailed(String[] paramStrings) {
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.cache.precache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+
+import com.wayfinder.pal.error.PermissionsException;
+import com.wayfinder.pal.persistence.MemoryFileConnection;
+import com.wayfinder.pal.persistence.MemoryPageFile;
+import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
+import com.wayfinder.pal.persistence.WFFileConnection;
+import com.wayfinder.pal.persistence.WFPageFile;
+
+/**
+ * Writes small pre-installed map files with strings and buffers, and tile 
+ * collections without tiles, and a persistence layer that counts the reads 
+ * from the files. 
+ */
+class SFDTestFile {
+    
+    private static final int INITIAL_HEADER_SIZE = 19;
+    
+    /**
+     * Creates a file. 
+     * 
+     * @param strings the sorted strings
+     * @param buffers the buffer of each string
+     * @return the file
+     */
+    static byte[] create(String[] strings, byte[][] buffers) throws IOException {
+        return create(strings, buffers, new int[0][]);
+    }
+    
+    /**
+     * Creates a file with tile collections. The collections only describe 
+     * the tiles, the tiles can't be read from the file. 
+     * 
+     * @param strings the sorted strings
+     * @param buffers the buffer of each string
+     * @param tileRanges a collection for each range of tiles of importance 
+     * 0, as {layer ID, detail level, start lat, end lat, start lon, end lon}
+     * @return the file
+     */
+    static byte[] create(String[] strings, byte[][] buffers, int[][] tileRanges) 
+            throws IOException {
+        final int n = strings.length;
+        StringBuffer initialChars = new StringBuffer();
+        int maxStringSize = 0;
+        int strDataSize = 0;
+        int bufDataSize = 0;
+        for (int i = 0; i < n; i++) {
+            if (initialChars.toString().indexOf(strings[i].charAt(0)) < 0) {
+                initialChars.append(strings[i].charAt(0));
+            }
+            // null terminated
+            maxStringSize = Math.max(maxStringSize, strings[i].length() + 1);
+            strDataSize += strings[i].length() + 1;
+            bufDataSize += buffers[i].length;
+        }
+        
+        final int headerSize = writeHeader(new DataOutputStream(new ByteArrayOutputStream()), 
+                0, initialChars.toString(), maxStringSize, n, 0, 0, 0, tileRanges);
+        final int strIdxStart = INITIAL_HEADER_SIZE + headerSize;
+        final int strDataStart = strIdxStart + (n + 1) * 4;
+        final int bufIdxStart = strDataStart + strDataSize;
+        final int bufDataStart = bufIdxStart + (n + 1) * 4;
+        final int fileSize = bufDataStart + bufDataSize;
+        
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(fileSize);
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeBytes("storkafinger");
+        out.writeByte(0);
+        out.writeByte(1); // version
+        out.writeByte(0); // encryption
+        out.writeInt(headerSize);
+        writeHeader(out, fileSize, initialChars.toString(), maxStringSize, n, 
+                strIdxStart, strDataStart, bufIdxStart, tileRanges);
+        
+        int offset = 0;
+        for (int i = 0; i < n; i++) {
+            out.writeInt(offset);
+            offset += strings[i].length() + 1;
+        }
+        out.writeInt(offset);
+        for (int i = 0; i < n; i++) {
+            out.writeBytes(strings[i]);
+            out.writeByte(0);
+        }
+        offset = bufDataStart;
+        for (int i = 0; i < n; i++) {
+            out.writeInt(offset);
+            offset += buffers[i].length;
+        }
+        out.writeInt(offset);
+        for (int i = 0; i < n; i++) {
+            out.write(buffers[i]);
+        }
+        out.flush();
+        return bout.toByteArray();
+    }
+    
+    private static int writeHeader(DataOutputStream out, int fileSize, String initialChars,
+            int maxStringSize, int nbrOfStrings, int strIdxStart, int strDataStart, 
+            int bufIdxStart, int[][] tileRanges) throws IOException {
+        out.writeInt(fileSize);
+        out.writeBytes("test");
+        out.writeByte(0);
+        out.writeInt(0); // creation time
+        out.writeByte(1); // null terminated
+        out.writeByte(maxStringSize);
+        out.writeByte(initialChars.length());
+        out.writeBytes(initialChars);
+        out.writeByte(0); // route IDs
+        out.writeInt(32);
+        out.writeInt(strIdxStart);
+        out.writeInt(nbrOfStrings);
+        out.writeInt(strDataStart);
+        out.writeInt(bufIdxStart);
+        out.writeInt(0); // buffer data start, not used
+        out.writeByte(0); // debug params
+        out.writeShort(tileRanges.length);
+        for (int i = 0; i < tileRanges.length; i++) {
+            int[] range = tileRanges[i];
+            // one layer with one detail level
+            out.writeShort(1);
+            out.writeShort(range[0]);
+            out.writeShort(0);
+            out.writeShort(1);
+            out.writeShort(range[1]);
+            out.writeShort(1);
+            out.writeInt(0); // offset, the tiles aren't in the file
+            out.writeInt(range[2]);
+            out.writeInt(range[3]);
+            out.writeInt(range[4]);
+            out.writeInt(range[5]);
+            // importance 0 of the layer
+            out.writeShort(1);
+            out.writeShort(range[0]);
+            out.writeInt(0);
+            out.writeInt(0);
+        }
+        out.flush();
+        return out.size();
+    }
+    
+    /**
+     * A persistence layer where each file name opens the same file until 
+     * the layer is discarded. 
+     */
+    static class Layer extends MemoryPersistenceLayer {
+        
+        private final Hashtable m_Files = new Hashtable();
+        private final Hashtable m_Data = new Hashtable();
+        private final long m_ReadLatency;
+        private final boolean m_PageFiles;
+        private int m_NbrOfReads;
+        
+        /**
+         * @param readLatency the time in ms that each read from a file 
+         * sleeps to simulate the file system of a device
+         */
+        Layer(long readLatency) {
+            this(readLatency, false);
+        }
+        
+        /**
+         * @param readLatency see {@link #Layer(long)}
+         * @param pageFiles true if the added files can be opened as page 
+         * files
+         */
+        Layer(long readLatency, boolean pageFiles) {
+            m_ReadLatency = readLatency;
+            m_PageFiles = pageFiles;
+        }
+        
+        void addFile(String name, final byte[] data) throws IOException {
+            m_Data.put(name, data);
+            MemoryFileConnection file = new MemoryFileConnection() {
+                public DataInputStream openDataInputStream() throws IOException {
+                    return new DataInputStream(new CountingInputStream(data));
+                }
+            };
+            DataOutputStream out = file.openDataOutputStream();
+            out.write(data);
+            out.close();
+            m_Files.put(name, file);
+        }
+        
+        public WFFileConnection openFile(String path) throws IOException, 
+                PermissionsException {
+            WFFileConnection file = (WFFileConnection) m_Files.get(path);
+            if (file == null) {
+                file = super.openFile(path);
+                file.delete();
+            }
+            return file;
+        }
+        
+        public WFPageFile openPageFile(String path, int maxSize) throws IOException, 
+                PermissionsException {
+            byte[] data = (byte[]) m_Data.get(path);
+            if (!m_PageFiles || data == null) {
+                return null;
+            }
+            MemoryPageFile file = new MemoryPageFile(maxSize) {
+                public void read(int offset, byte[] b, int bOffset, int length) 
+                        throws IOException {
+                    addRead();
+                    sleep();
+                    super.read(offset, b, bOffset, length);
+                }
+            };
+            file.write(0, data, 0, data.length);
+            return file;
+        }
+        
+        /**
+         * @return the number of reads from all files
+         */
+        synchronized int getNbrOfReads() {
+            return m_NbrOfReads;
+        }
+        
+        private synchronized void addRead() {
+            m_NbrOfReads++;
+        }
+        
+        private void sleep() {
+            if (m_ReadLatency > 0) {
+                try {
+                    Thread.sleep(m_ReadLatency);
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+        
+        private class CountingInputStream extends ByteArrayInputStream {
+            
+            CountingInputStream(byte[] data) {
+                super(data);
+            }
+            
+            public synchronized int read(byte[] b, int off, int len) {
+                addRead();
+                sleep();
+                return super.read(b, off, len);
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.control;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.util.Random;
+
+import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.internal.drawer.Utils;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStore;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStoreMock;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDescMock;
+
+import junit.framework.TestCase;
+
+public class LineSimplifierTest extends TestCase {
+    
+    private static final String TMFD_FILE = 
+        "./map/test/com/wayfinder/core/map/vectormap/internal/cache/tmfd";
+    
+    // scale index 0 is never simplified 
+    private static final int[] SCALE_LEVELS = { 1, 2, 10, 100, 1000 };
+    
+    private TileMapFormatDescMock m_tmfd;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_tmfd = new TileMapFormatDescMock();
+        m_tmfd.loadScaleLevelsTable(SCALE_LEVELS);
+    }
+    
+    private double getTolerance(int scaleIndex) {
+        return m_tmfd.getMinZoomLevelForScaleIndex(scaleIndex) * Utils.METER_TO_MC2SCALE * 0.5;
+    }
+    
+    
+    public void testStraightLine() {
+        int[][] lines = { { 0, 0, 100, 100, 200, 200, 300, 300, 400, 400 } };
+        TileFeatureStore store = TileFeatureStoreMock.createLines(lines);
+        assertEquals(6, new LineSimplifier().simplifyLines(store, m_tmfd));
+        
+        assertCoords(lines[0], store, 0, 0);
+        for (int s = 1; s < SCALE_LEVELS.length; s++) {
+            assertCoords(new int[] { 0, 0, 400, 400 }, store, 0, s);
+        }
+    }
+    
+    
+    public void testVertexKeptBelowItsDistance() {
+        // the middle vertex is 150 MC2 units from the line between the end 
+        // points, which is between the tolerance of scale index 2 and 3
+        assertTrue(getTolerance(2) < 150 && getTolerance(3) > 150);
+        int[][] lines = { { 0, 0, 500, 150, 1000, 0 } };
+        TileFeatureStore store = TileFeatureStoreMock.createLines(lines);
+        new LineSimplifier().simplifyLines(store, m_tmfd);
+        
+        for (int s = 0; s <= 2; s++) {
+            assertCoords(lines[0], store, 0, s);
+        }
+        for (int s = 3; s < SCALE_LEVELS.length; s++) {
+            assertCoords(new int[] { 0, 0, 1000, 0 }, store, 0, s);
+        }
+    }
+    
+    
+    public void testRandomLines() {
+        Random rnd = new Random(4711);
+        int[][] lines = new int[40][];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = createRandomWalk(rnd, 2 + rnd.nextInt(300));
+        }
+        TileFeatureStore store = TileFeatureStoreMock.createLines(lines);
+        new LineSimplifier().simplifyLines(store, m_tmfd);
+        
+        for (int i = 0; i < lines.length; i++) {
+            int prevLength = lines[i].length;
+            for (int s = 0; s < SCALE_LEVELS.length; s++) {
+                int[] coords = store.getCoords(i, s);
+                int offset = store.getCoordsOffset(i, s);
+                int length = store.getCoordsLength(i, s);
+                
+                // fewer vertices at higher scale indices and the end points
+                // are always kept
+                assertTrue(length <= prevLength);
+                assertTrue(length >= 4);
+                prevLength = length;
+                assertEquals(lines[i][0], coords[offset]);
+                assertEquals(lines[i][1], coords[offset + 1]);
+                assertEquals(lines[i][lines[i].length - 2], coords[offset + length - 2]);
+                assertEquals(lines[i][lines[i].length - 1], coords[offset + length - 1]);
+                
+                assertWithinTolerance(lines[i], coords, offset, length, getTolerance(s));
+            }
+        }
+    }
+    
+    
+    public void testOverviewReducesVertices() {
+        Random rnd = new Random(17);
+        int[][] lines = new int[20][];
+        int nbrCoords = 0;
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = createRandomWalk(rnd, 200);
+            nbrCoords += lines[i].length;
+        }
+        TileFeatureStore store = TileFeatureStoreMock.createLines(lines);
+        int removed = new LineSimplifier().simplifyLines(store, m_tmfd);
+        
+        int overview = 0;
+        for (int i = 0; i < lines.length; i++) {
+            overview += store.getCoordsLength(i, SCALE_LEVELS.length - 1);
+        }
+        assertEquals(nbrCoords - removed, overview);
+        assertTrue(overview * 10 < nbrCoords);
+    }
+    
+    
+    /**
+     * With the scale indices of the test tmfd about a quarter of the 
+     * vertices are left at scale index 4 and 6% at the last ones. 
+     */
+    public void testScaleIndicesOfTmfd() throws Exception {
+        DataInputStream din = new DataInputStream(new FileInputStream(TMFD_FILE));
+        byte[] data = new byte[din.available()];
+        din.readFully(data);
+        din.close();
+        TileMapFormatDesc tmfd = new TileMapFormatDesc();
+        assertTrue(tmfd.load(new BitBuffer(data), null));
+        
+        Random rnd = new Random(4711);
+        int[][] lines = new int[150][];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = createRandomWalk(rnd, 2 + rnd.nextInt(59));
+        }
+        TileFeatureStore store = TileFeatureStoreMock.createLines(lines);
+        new LineSimplifier().simplifyLines(store, tmfd);
+        
+        final int nbrScales = tmfd.getNbrOfScaleIndices();
+        assertTrue(nbrScales > 4);
+        int[] nbrCoords = new int[nbrScales];
+        for (int s = 0; s < nbrScales; s++) {
+            for (int i = 0; i < lines.length; i++) {
+                nbrCoords[s] += store.getCoordsLength(i, s);
+            }
+            if(s > 0) {
+                assertTrue(nbrCoords[s] <= nbrCoords[s - 1]);
+            }
+        }
+        assertTrue(nbrCoords[4] * 3 < nbrCoords[0]);
+        assertTrue(nbrCoords[nbrScales - 1] * 10 < nbrCoords[0]);
+    }
+    
+    
+    public void testPolygonsAndShortLinesNotSimplified() {
+        int[][] features = { 
+                { 0, 0, 100, 1, 200, 0, 100, 500 },
+                { 0, 0, 1000, 1000 } };
+        TileFeatureStore store = TileFeatureStoreMock.createPolygons(features);
+        assertEquals(0, new LineSimplifier().simplifyLines(store, m_tmfd));
+        assertCoords(features[0], store, 0, SCALE_LEVELS.length - 1);
+        
+        store = TileFeatureStoreMock.createLines(new int[][] { features[1] });
+        assertEquals(0, new LineSimplifier().simplifyLines(store, m_tmfd));
+        assertCoords(features[1], store, 0, SCALE_LEVELS.length - 1);
+        assertSame(store.getCoords(), store.getCoords(0, SCALE_LEVELS.length - 1));
+    }
+    
+    
+    public void testScaleIndexOutOfRange() {
+        int[][] lines = { { 0, 0, 100, 100, 200, 200 } };
+        TileFeatureStore store = TileFeatureStoreMock.createLines(lines);
+        new LineSimplifier().simplifyLines(store, m_tmfd);
+        assertCoords(lines[0], store, 0, -1);
+        assertCoords(lines[0], store, 0, SCALE_LEVELS.length);
+    }
+    
+    
+    public void testReuse() {
+        Random rnd = new Random(42);
+        int[][] lines = { createRandomWalk(rnd, 500), createRandomWalk(rnd, 50) };
+        LineSimplifier simplifier = new LineSimplifier();
+        TileFeatureStore first = TileFeatureStoreMock.createLines(lines);
+        simplifier.simplifyLines(first, m_tmfd);
+        simplifier.simplifyLines(TileFeatureStoreMock.createLines(new int[][] { lines[1] }), m_tmfd);
+        TileFeatureStore second = TileFeatureStoreMock.createLines(lines);
+        simplifier.simplifyLines(second, m_tmfd);
+        
+        for (int i = 0; i < lines.length; i++) {
+            for (int s = 0; s < SCALE_LEVELS.length; s++) {
+                int length = first.getCoordsLength(i, s);
+                assertEquals(length, second.getCoordsLength(i, s));
+                int[] expected = new int[length];
+                System.arraycopy(first.getCoords(i, s), first.getCoordsOffset(i, s), expected, 0, length);
+                assertCoords(expected, second, i, s);
+            }
+        }
+    }
+    
+    
+    /**
+     * Creates a line that moves up to 500 MC2 units in each step
+     */
+    static int[] createRandomWalk(Random rnd, int nbrVertices) {
+        int[] coords = new int[nbrVertices << 1];
+        int x = rnd.nextInt(100000);
+        int y = rnd.nextInt(100000);
+        for (int i = 0; i < coords.length; i += 2) {
+            coords[i] = x;
+            coords[i + 1] = y;
+            x += rnd.nextInt(501) - 100;
+            y += rnd.nextInt(501) - 250;
+        }
+        return coords;
+    }
+    
+    private static void assertCoords(int[] expected, TileFeatureStore store, int feature, int scaleIndex) {
+        int[] coords = store.getCoords(feature, scaleIndex);
+        int offset = store.getCoordsOffset(feature, scaleIndex);
+        assertEquals(expected.length, store.getCoordsLength(feature, scaleIndex));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("coordinate " + i, expected[i], coords[offset + i]);
+        }
+    }
+    
+    /**
+     * Checks that all vertices of the line are within the tolerance of 
+     * the simplified line.
+     */
+    private static void assertWithinTolerance(int[] line, int[] coords, int offset, int length, 
+            double tolerance) {
+        for (int v = 0; v < line.length; v += 2) {
+            double min = Double.MAX_VALUE;
+            for (int j = offset; j < offset + length - 2; j += 2) {
+                min = Math.min(min, getDistance(line[v], line[v + 1], 
+                        coords[j], coords[j + 1], coords[j + 2], coords[j + 3]));
+            }
+            assertTrue("vertex " + (v >> 1) + " is " + min + " from the line", min <= tolerance + 1e-6);
+        }
+    }
+    
+    private static double getDistance(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquare = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquare > 0) {
+            t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquare));
+        }
+        double px = x - (x1 + t * dx);
+        double py = y - (y1 + t * dy);
+        return Math.sqrt(px * px + py * py);
+    }
+}
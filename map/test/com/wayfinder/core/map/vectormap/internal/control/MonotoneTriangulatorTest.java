@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.control;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MonotoneTriangulatorTest extends TestCase {
+    
+    /**
+     * Creates a star shaped polygon, which is always simple. 
+     */
+    static int[] createStar(Random random, int nbrVertices, int radius) {
+        int[] coords = new int[nbrVertices*2];
+        for (int i = 0; i < nbrVertices; i++) {
+            double angle = (2 * Math.PI * i) / nbrVertices;
+            double r = radius * (0.3 + 0.7 * random.nextDouble());
+            coords[i*2] = (int) (Math.cos(angle) * r);
+            coords[i*2+1] = (int) (Math.sin(angle) * r);
+        }
+        return coords;
+    }
+    
+    /**
+     * Creates a comb with teeth pointing both up and down, that gives 
+     * many split and merge vertices. 
+     */
+    static int[] createComb(int nbrTeeth) {
+        int[] coords = new int[nbrTeeth*8];
+        int pos = 0;
+        // bottom side from left to right with teeth pointing up
+        for (int i = 0; i < nbrTeeth; i++) {
+            coords[pos++] = i*10;
+            coords[pos++] = 0;
+            coords[pos++] = i*10+5;
+            coords[pos++] = 40;
+        }
+        // top side from right to left with teeth pointing down
+        for (int i = nbrTeeth-1; i >= 0; i--) {
+            coords[pos++] = i*10+8;
+            coords[pos++] = 100;
+            coords[pos++] = i*10+2;
+            coords[pos++] = 60;
+        }
+        return coords;
+    }
+    
+    private static long getDoubleArea(int[] coords, int a, int b, int c) {
+        return (long)(coords[b*2] - coords[a*2]) * (coords[c*2+1] - coords[a*2+1])
+             - (long)(coords[b*2+1] - coords[a*2+1]) * (coords[c*2] - coords[a*2]);
+    }
+    
+    private static long getDoubleArea(int[] coords) {
+        long area = 0;
+        final int n = coords.length/2;
+        for (int i = 0, j = n-1; i < n; j = i++) {
+            area += (long)coords[j*2] * coords[i*2+1] - (long)coords[i*2] * coords[j*2+1];
+        }
+        return area;
+    }
+    
+    /**
+     * Checks that the triangles covers the polygon without overlapping, 
+     * i.e. all triangles has the same winding as the polygon and the sum 
+     * of their areas is the area of the polygon. 
+     */
+    private static void assertCovers(int[] coords, short[][] ibuff, int nbrTriangles) {
+        long polygonArea = getDoubleArea(coords);
+        long sum = 0;
+        for (int i = 0; i < nbrTriangles; i++) {
+            long area = getDoubleArea(coords, ibuff[i][0], ibuff[i][1], ibuff[i][2]);
+            if(area != 0) {
+                assertEquals("triangle " + i, polygonArea > 0, area > 0);
+            }
+            sum += area;
+        }
+        assertEquals(polygonArea, sum);
+    }
+    
+    private static short[][] triangulate(int[] coords) {
+        short[][] ibuff = new short[coords.length/2-2][3];
+        assertTrue(new MonotoneTriangulator().triangulate(coords, 0, coords.length, ibuff));
+        return ibuff;
+    }
+    
+    public void testSquare() {
+        int[] coords = { 0, 0, 10, 0, 10, 10, 0, 10 };
+        assertCovers(coords, triangulate(coords), 2);
+    }
+    
+    public void testConcave() {
+        int[] coords = { 0, 0, 40, 0, 40, 10, 10, 10, 10, 40, 0, 40 };
+        assertCovers(coords, triangulate(coords), 4);
+    }
+    
+    public void testClockwise() {
+        int[] coords = { 0, 40, 10, 40, 10, 10, 40, 10, 40, 0, 0, 0 };
+        assertCovers(coords, triangulate(coords), 4);
+    }
+    
+    public void testHorizontalAndVerticalEdges() {
+        // a staircase with split and merge vertices on the same y 
+        int[] coords = { 0, 0, 30, 0, 30, 30, 20, 30, 20, 10, 10, 10, 10, 30, 0, 30 };
+        assertCovers(coords, triangulate(coords), 6);
+    }
+    
+    public void testComb() {
+        int[] coords = createComb(50);
+        assertCovers(coords, triangulate(coords), coords.length/2-2);
+    }
+    
+    public void testStars() {
+        Random random = new Random(4711);
+        for (int i = 0; i < 50; i++) {
+            int[] coords = createStar(random, 3 + random.nextInt(2000), 100000);
+            assertCovers(coords, triangulate(coords), coords.length/2-2);
+        }
+    }
+    
+    public void testOffsetAndClosedRing() {
+        // the last vertex is the same as the first and has to be skipped
+        int[] coords = { 99, 99, 0, 0, 40, 0, 40, 10, 10, 10, 10, 40, 0, 40, 0, 0 };
+        short[][] ibuff = new short[5][3];
+        assertTrue(new MonotoneTriangulator().triangulate(coords, 2, 14, ibuff));
+        int[] polygon = { 0, 0, 40, 0, 40, 10, 10, 10, 10, 40, 0, 40 };
+        assertCovers(polygon, ibuff, 4);
+        // the unused triangle is left untouched
+        assertEquals(0, ibuff[4][0] + ibuff[4][1] + ibuff[4][2]);
+    }
+    
+    public void testDuplicatedVertices() {
+        int[] coords = { 0, 0, 10, 0, 10, 0, 10, 10, 0, 10, 0, 10 };
+        short[][] ibuff = new short[4][3];
+        assertTrue(new MonotoneTriangulator().triangulate(coords, 0, coords.length, ibuff));
+        assertCovers(coords, ibuff, 4);
+    }
+    
+    public void testSelfIntersecting() {
+        // bow tie
+        int[] coords = { 0, 0, 10, 10, 10, 0, 0, 10 };
+        short[][] ibuff = new short[2][3];
+        assertFalse(new MonotoneTriangulator().triangulate(coords, 0, coords.length, ibuff));
+    }
+    
+    public void testReuseBetweenPolygons() {
+        MonotoneTriangulator triangulator = new MonotoneTriangulator();
+        Random random = new Random(17);
+        int[] large = createStar(random, 500, 1000);
+        int[] small = { 0, 0, 40, 0, 40, 10, 10, 10, 10, 40, 0, 40 };
+        
+        short[][] ibuff = new short[large.length/2-2][3];
+        assertTrue(triangulator.triangulate(large, 0, large.length, ibuff));
+        assertCovers(large, ibuff, ibuff.length);
+        ibuff = new short[4][3];
+        assertTrue(triangulator.triangulate(small, 0, small.length, ibuff));
+        assertCovers(small, ibuff, ibuff.length);
+    }
+    
+    public void testSameCoverageAsEarClipping() {
+        int[] coords = createComb(10);
+        ConcavePolygon earClipped = new ConcavePolygon(coords, 0, coords.length);
+        assertTrue(earClipped.triangulate());
+        ConcavePolygon monotone = new ConcavePolygon(coords, 0, coords.length);
+        assertTrue(monotone.triangulate(new MonotoneTriangulator()));
+        
+        assertCovers(coords, earClipped.getIndexBuffer(), coords.length/2-2);
+        assertCovers(coords, monotone.getIndexBuffer(), coords.length/2-2);
+    }
+    
+    public void testFallbackToEarClipping() {
+        int[] coords = { 0, 0, 10, 10, 10, 0, 0, 10 };
+        ConcavePolygon cp = new ConcavePolygon(coords, 0, coords.length);
+        // ear clipping doesn't fail on a bow tie either, it's just wrong 
+        assertEquals(cp.triangulate(), cp.triangulate(new MonotoneTriangulator()));
+    }
+    
+    public void testIsClockwise() {
+        int[] ccw = { 0, 0, 40, 0, 40, 10, 10, 10, 10, 40, 0, 40 };
+        int[] cw = { 0, 40, 10, 40, 10, 10, 40, 10, 40, 0, 0, 0 };
+        assertFalse(new ConcavePolygon(ccw, 0, ccw.length).isClockwise());
+        assertTrue(new ConcavePolygon(cw, 0, cw.length).isClockwise());
+    }
+}
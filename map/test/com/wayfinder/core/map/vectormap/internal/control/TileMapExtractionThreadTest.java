@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.control;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Timer;
+import java.util.Vector;
+
+import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.internal.cache.CacheConfiguration;
+import com.wayfinder.core.map.vectormap.internal.cache.MemCache;
+import com.wayfinder.core.map.vectormap.internal.process.TileMap;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParamTypes;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.core.shared.util.LinkedList;
+import com.wayfinder.pal.concurrency.ConcurrencyLayer;
+import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that extraction with several workers hands the tiles over to the
+ * control thread in the order they were added. 
+ */
+public class TileMapExtractionThreadTest extends TestCase {
+    
+    private static final String FIXTURE_DIR = 
+        "./map/test/com/wayfinder/core/map/vectormap/internal/cache/";
+    
+    private static final long TIMEOUT = 10000;
+    
+    private TileMapFormatDesc m_tmfd;
+    private byte[] m_geoData;
+    private byte[] m_stringData;
+    
+    private static byte[] loadFixture(String name) throws IOException {
+        DataInputStream din = new DataInputStream(
+                new FileInputStream(FIXTURE_DIR + name));
+        try {
+            byte[] data = new byte[din.available()];
+            din.readFully(data);
+            return data;
+        } finally {
+            din.close();
+        }
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_tmfd = new TileMapFormatDesc();
+        m_tmfd.load(new BitBuffer(loadFixture("tmfd")), null);
+        m_geoData = loadFixture("data_tile_0");
+        m_stringData = loadFixture("data_tile_1");
+    }
+    
+    
+    public void testNbrOfWorkersForPlatform() {
+        assertEquals(1, TileMapExtractionThread.getNbrOfWorkersForPlatform(
+                new ThreadLayer(ConcurrencyLayer.THREAD_LIMIT_UNLIMITED), 1));
+        assertEquals(1, TileMapExtractionThread.getNbrOfWorkersForPlatform(
+                new ThreadLayer(ConcurrencyLayer.THREAD_LIMIT_UNLIMITED), 0));
+        assertEquals(1, TileMapExtractionThread.getNbrOfWorkersForPlatform(
+                new ThreadLayer(ConcurrencyLayer.THREAD_LIMIT_JTWI), 4));
+        assertEquals(1, TileMapExtractionThread.getNbrOfWorkersForPlatform(
+                new ThreadLayer(ConcurrencyLayer.THREAD_LIMIT_BLACKBERRY), 4));
+        assertEquals(4, TileMapExtractionThread.getNbrOfWorkersForPlatform(
+                new ThreadLayer(ConcurrencyLayer.THREAD_LIMIT_UNLIMITED), 4));
+    }
+    
+    
+    public void testSingleThreadKeepsOrder() throws Exception {
+        runOrderTest(1);
+    }
+    
+    
+    public void testWorkersKeepOrder() throws Exception {
+        runOrderTest(4);
+    }
+    
+    
+    private static TileMapParams geoParams() {
+        return geoParams(120);
+    }
+    
+    private static TileMapParams geoParams(int lat) {
+        TileMapParams params = new TileMapParams();
+        params.setParams(7, true, 0, TileMapParams.MAP, 0, 0, lat, -45, 2, null, "G");
+        return params;
+    }
+    
+    
+    public void testSecondExtractionUsesCachedTriangles() throws Exception {
+        RecordingControlThread control = new RecordingControlThread();
+        control.init(new ThreadLayer(ConcurrencyLayer.THREAD_LIMIT_UNLIMITED), false, 0, 1);
+        LinkedList cacheConfig = new LinkedList();
+        cacheConfig.add(new CacheConfiguration(CacheConfiguration.TYPE_NO_CACHE));
+        control.startCache(cacheConfig);
+        
+        TileMapLoader loader = control.getTileMapLoader();
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!loader.isCacheStarted() && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertTrue(loader.isCacheStarted());
+        
+        TileMapExtractionThread extraction = control.getTileMapExtraction();
+        extraction.setTileMapFormatDesc(m_tmfd);
+        TileMapParams params = geoParams();
+        extraction.addTileToExtraction(params, m_geoData);
+        control.waitForItems(1);
+        assertEquals(1, extraction.getNbrOfTilesTriangulated());
+        assertEquals(0, extraction.getNbrOfTilesWithCachedTriangles());
+        
+        // the triangles record is loaded into the memory cache with the tile,
+        // the fixture has no polygons so the record only holds the header
+        TileMap tileMap = (TileMap) control.m_tileMaps.elementAt(0);
+        assertNull(tileMap.getTriangleData());
+        byte[] triangles = new byte[] {
+                (byte)(m_tmfd.getCRC() >> 24), (byte)(m_tmfd.getCRC() >> 16), 
+                (byte)(m_tmfd.getCRC() >> 8), (byte)m_tmfd.getCRC(),
+                (byte)(tileMap.getCRC() >> 24), (byte)(tileMap.getCRC() >> 16), 
+                (byte)(tileMap.getCRC() >> 8), (byte)tileMap.getCRC(),
+                0, 0, 0, 42, 0, 0 };
+        loader.getMemCache().writeToCache(
+                TileMapParamTypes.getTrianglesParamString(params.getAsString()), triangles);
+        
+        extraction.addTileToExtraction(geoParams(), m_geoData);
+        control.waitForItems(2);
+        assertEquals(1, extraction.getNbrOfTilesTriangulated());
+        assertEquals(1, extraction.getNbrOfTilesWithCachedTriangles());
+        assertEquals(42, extraction.getTriangulationTimeSaved());
+    }
+    
+    
+    public void testFailedExtractionReleasesTiles() throws Exception {
+        runReleaseTest(1);
+    }
+    
+    
+    public void testFailedWorkerExtractionReleasesTiles() throws Exception {
+        runReleaseTest(4);
+    }
+    
+    
+    private void runReleaseTest(int nbrOfWorkers) throws Exception {
+        MemCache memCache = new MemCache(64 * 1024, true);
+        final int freeBytes = memCache.getNbrOfFreeSlabBytes();
+        
+        final TileMapParams failing = geoParams(123);
+        RecordingControlThread control = new RecordingControlThread() {
+            boolean isTileMapVisible(TileMapParams aParams) {
+                if(aParams == failing) {
+                    throw new IllegalStateException("extraction failed");
+                }
+                return true;
+            }
+        };
+        TileMapExtractionThread extraction = new TileMapExtractionThread(control, null);
+        extraction.setTileMapFormatDesc(m_tmfd);
+        
+        // all tiles are read in place from the cache and extracted as one 
+        // batch, the tiles after the failing one are dropped. With workers
+        // the error is thrown on the extraction thread when it waits for 
+        // the jobs in front of the CRC. 
+        for (int i = 0; i < 6; i++) {
+            if(i == 3) {
+                extraction.addTileToExtraction(new TileMapParams("C3", "C3"), 
+                        new byte[] { 0, 0, 0, 0, 3 });
+            }
+            TileMapParams params = (i == 2) ? failing : geoParams(120 + i);
+            String paramString = params.getAsString();
+            memCache.writeToCache(paramString, m_geoData);
+            BitBuffer buffer = memCache.getBufferFromCache(paramString);
+            assertNotNull(buffer);
+            memCache.removeFromCache(paramString);
+            extraction.addTileToExtraction(params, buffer, memCache);
+        }
+        assertTrue(memCache.getNbrOfFreeSlabBytes() < freeBytes);
+        
+        extraction.init(new ThreadLayer(ConcurrencyLayer.THREAD_LIMIT_UNLIMITED), 
+                true, nbrOfWorkers);
+        
+        // the chunks are freed when the buffers of the removed entries 
+        // are released
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (memCache.getNbrOfFreeSlabBytes() != freeBytes 
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(freeBytes, memCache.getNbrOfFreeSlabBytes());
+        assertEquals(0, extraction.getQueueSize());
+    }
+    
+    
+    private void runOrderTest(int nbrOfWorkers) throws Exception {
+        RecordingControlThread control = new RecordingControlThread();
+        TileMapExtractionThread extraction = new TileMapExtractionThread(control, null);
+        extraction.setTileMapFormatDesc(m_tmfd);
+        extraction.init(new ThreadLayer(ConcurrencyLayer.THREAD_LIMIT_UNLIMITED), 
+                true, nbrOfWorkers);
+        
+        Vector expected = new Vector();
+        for (int i = 0; i < 60; i++) {
+            TileMapParams params;
+            if(i % 20 == 10) {
+                // a tmfd crc update in the middle of the tiles
+                params = new TileMapParams("C" + i, "C" + i);
+                extraction.addTileToExtraction(params, new byte[] { 0, 0, 0, 0, (byte)i });
+                expected.addElement(params.getAsString());
+                continue;
+            } else if((i & 1) == 0) {
+                params = new TileMapParams("G+1aA7V0Y", "G+1aA7V0Y");
+                extraction.addTileToExtraction(params, m_geoData);
+            } else {
+                params = new TileMapParams("T+1aA7V0Y", "G+1aA7V0Y");
+                extraction.addTileToExtraction(params, m_stringData);
+            }
+            expected.addElement(params);
+        }
+        
+        Vector received = control.waitForItems(expected.size());
+        assertEquals(expected.size(), received.size());
+        for (int i = 0; i < expected.size(); i++) {
+            if(expected.elementAt(i) instanceof String) {
+                assertEquals("item " + i, expected.elementAt(i), received.elementAt(i));
+            } else {
+                assertSame("item " + i, expected.elementAt(i), received.elementAt(i));
+            }
+        }
+    }
+    
+    
+    /**
+     * Records everything handed over from the extraction thread
+     */
+    private static class RecordingControlThread extends TileMapControlThread {
+        
+        private final Vector m_items = new Vector();
+        private final Vector m_tileMaps = new Vector();
+        
+        RecordingControlThread() {
+            super(MemoryPersistenceLayer.getPersistenceLayer(), null);
+        }
+        
+        boolean isTileMapVisible(TileMapParams aParams) {
+            return true;
+        }
+        
+        long getGeoMapCRC(String aTileID, int importance) {
+            return 0;
+        }
+        
+        void addExtractImportance(TileMapParams tmp, TileMap aTilemap) {
+            assertNotNull(aTilemap);
+            synchronized (m_items) {
+                m_tileMaps.addElement(aTilemap);
+                m_items.addElement(tmp);
+                m_items.notifyAll();
+            }
+        }
+        
+        void addExtractedTileMapFormatDescCrc(long tmfdCRC, String paramString) {
+            assertEquals(Integer.parseInt(paramString.substring(1)), tmfdCRC);
+            synchronized (m_items) {
+                m_items.addElement(paramString);
+                m_items.notifyAll();
+            }
+        }
+        
+        Vector waitForItems(int count) throws InterruptedException {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            synchronized (m_items) {
+                while (m_items.size() < count) {
+                    long left = end - System.currentTimeMillis();
+                    if(left <= 0) {
+                        break;
+                    }
+                    m_items.wait(left);
+                }
+                return m_items;
+            }
+        }
+    }
+    
+    
+    private static class ThreadLayer implements ConcurrencyLayer {
+        
+        private final int m_maxThreads;
+        
+        ThreadLayer(int maxThreads) {
+            m_maxThreads = maxThreads;
+        }
+        
+        public int getCurrentNbrOfThreads() {
+            return Thread.activeCount();
+        }
+
+        public int getMaxNumberOfThreadsForPlatform() {
+            return m_maxThreads;
+        }
+
+        public Thread startNewDaemonThread(Runnable run, String threadName) {
+            Thread t = new Thread(run, threadName);
+            t.setDaemon(true);
+            t.start();
+            return t;
+        }
+
+        public Timer startNewDaemonTimer() {
+            return new Timer(true);
+        }
+    }
+}
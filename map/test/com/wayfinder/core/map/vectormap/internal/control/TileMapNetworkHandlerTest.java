@@ -0,0 +1,394 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.control;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Timer;
+import java.util.Vector;
+
+import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+import com.wayfinder.core.network.internal.InternalNetworkInterface;
+import com.wayfinder.core.network.internal.PostContent;
+import com.wayfinder.core.network.internal.ResponseCallback;
+import com.wayfinder.core.shared.error.CoreError;
+import com.wayfinder.core.shared.internal.threadpool.WorkScheduler;
+import com.wayfinder.pal.concurrency.ConcurrencyLayer;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the network handler keeps several tile requests in flight 
+ * and refills each slot when its request is done. 
+ */
+public class TileMapNetworkHandlerTest extends TestCase {
+    
+    private static final long TIMEOUT = 10000;
+    
+    private WorkScheduler m_scheduler;
+    private RecordingNetwork m_network;
+    private RecordingListener m_listener;
+    private TileMapNetworkHandler m_handler;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_scheduler = new WorkScheduler(new ThreadLayer(), 2);
+        m_network = new RecordingNetwork();
+        m_listener = new RecordingListener();
+        m_handler = new TileMapNetworkHandler(m_network, m_listener, null, m_scheduler);
+    }
+    
+    protected void tearDown() throws Exception {
+        m_scheduler.stopThreads();
+        super.tearDown();
+    }
+    
+    private void request(String[] paramStrings) {
+        for (int i = 0; i < paramStrings.length; i++) {
+            m_handler.request(paramStrings[i]);
+        }
+        m_handler.sendRequest();
+    }
+    
+    /*
+     * Reads back the param strings written by the request
+     */
+    private static Vector getParamStrings(TileMapRequest req) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        req.writeTo(out);
+        BitBuffer buffer = new BitBuffer(out.toByteArray());
+        buffer.nextInt();
+        buffer.nextInt();
+        Vector strings = new Vector();
+        while(buffer.getNbrBytesLeft() > 0) {
+            strings.addElement(buffer.nextString());
+        }
+        return strings;
+    }
+    
+    /*
+     * Requests sent at the same time may reach the network in any order, 
+     * returns the one of the first requests that starts with the string
+     */
+    private TileMapRequest findRequest(int nbrOfRequests, String first) 
+    throws IOException, InterruptedException {
+        m_network.waitForRequest(nbrOfRequests - 1);
+        for (int i = 0; i < nbrOfRequests; i++) {
+            TileMapRequest req = m_network.waitForRequest(i);
+            if(first.equals(getParamStrings(req).firstElement())) {
+                return req;
+            }
+        }
+        fail("no request for " + first);
+        return null;
+    }
+    
+    private static void assertStrings(String[] expected, Vector strings) {
+        assertEquals(expected.length, strings.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], strings.elementAt(i));
+        }
+    }
+    
+    /*
+     * Answers the request without any tiles, they are reported as failed
+     */
+    private static void respondEmpty(TileMapRequest req) throws IOException {
+        req.readResponse(new ByteArrayInputStream(new byte[0]), 0);
+    }
+    
+    
+    public void testDefaultNbrOfSlots() {
+        assertEquals(TileMapNetworkHandler.DEFAULT_NBR_OF_REQUESTS, 
+                m_handler.getNbrOfSlots());
+    }
+    
+    
+    public void testSecondRequestIsSentWhileFirstIsInFlight() throws Exception {
+        request(new String[] { "a", "b" });
+        TileMapRequest first = m_network.waitForRequest(0);
+        assertStrings(new String[] { "a", "b" }, getParamStrings(first));
+        
+        request(new String[] { "c" });
+        TileMapRequest second = m_network.waitForRequest(1);
+        assertStrings(new String[] { "c" }, getParamStrings(second));
+        
+        // both slots are busy
+        request(new String[] { "d" });
+        assertEquals(1, m_handler.getQueueSize());
+        assertEquals(2, m_network.getNbrOfRequests());
+        
+        // the slot is refilled as soon as its request is done
+        respondEmpty(second);
+        assertStrings(new String[] { "c" }, m_listener.m_failed);
+        TileMapRequest third = m_network.waitForRequest(2);
+        assertStrings(new String[] { "d" }, getParamStrings(third));
+    }
+    
+    
+    public void testSingleSlotWaitsForResponse() throws Exception {
+        m_handler.setRequestLimits(1, 0, 0);
+        request(new String[] { "a" });
+        TileMapRequest first = m_network.waitForRequest(0);
+        
+        request(new String[] { "b" });
+        assertEquals(1, m_network.getNbrOfRequests());
+        
+        respondEmpty(first);
+        assertStrings(new String[] { "b" }, getParamStrings(m_network.waitForRequest(1)));
+    }
+    
+    
+    public void testTileLimit() throws Exception {
+        m_handler.setRequestLimits(2, 2, 0);
+        request(new String[] { "a", "b", "c", "d", "e" });
+        assertStrings(new String[] { "a", "b" }, getParamStrings(findRequest(2, "a")));
+        assertStrings(new String[] { "c", "d" }, getParamStrings(findRequest(2, "c")));
+        assertEquals(1, m_handler.getQueueSize());
+    }
+    
+    
+    public void testByteLimit() throws Exception {
+        // each string takes its length and a terminating 0
+        m_handler.setRequestLimits(2, 0, 8);
+        request(new String[] { "aaa", "bbb", "c", "dddddddddd", "e" });
+        assertStrings(new String[] { "aaa", "bbb" }, getParamStrings(findRequest(2, "aaa")));
+        assertStrings(new String[] { "c" }, getParamStrings(findRequest(2, "c")));
+        
+        // a string larger than the limit is still sent
+        m_handler.setRequestLimits(3, 0, 8);
+        assertStrings(new String[] { "dddddddddd" }, getParamStrings(m_network.waitForRequest(2)));
+    }
+    
+    
+    public void testBackoffIsPerSlot() throws Exception {
+        request(new String[] { "a" });
+        TileMapRequest first = m_network.waitForRequest(0);
+        request(new String[] { "b" });
+        TileMapRequest second = m_network.waitForRequest(1);
+        
+        first.error(new CoreError("test"));
+        assertStrings(new String[] { "a" }, m_listener.m_failed);
+        assertEquals(1000, m_handler.getBackoffTime(0));
+        assertEquals(0, m_handler.getBackoffTime(1));
+        
+        first.error(new CoreError("test"));
+        assertEquals(2000, m_handler.getBackoffTime(0));
+        
+        // a reply only resets the backoff of its own slot
+        respondEmpty(second);
+        assertEquals(2000, m_handler.getBackoffTime(0));
+        
+        m_handler.resetExponentialBackoff();
+        assertEquals(0, m_handler.getBackoffTime(0));
+    }
+    
+    
+    public void testFailedSlotIsDelayed() throws Exception {
+        m_handler.setRequestLimits(1, 0, 0);
+        request(new String[] { "a" });
+        TileMapRequest first = m_network.waitForRequest(0);
+        
+        // the strings wait for the backoff of the slot
+        request(new String[] { "b" });
+        first.error(new CoreError("test"));
+        assertEquals(1, m_network.getNbrOfRequests());
+        assertEquals(1, m_handler.getQueueSize());
+        
+        // unless the backoff is reset
+        m_handler.resetExponentialBackoff();
+        assertStrings(new String[] { "b" }, getParamStrings(m_network.waitForRequest(1)));
+    }
+    
+    
+    public void testRemovedSlotReturnsStrings() throws Exception {
+        m_handler.setRequestLimits(2, 1, 0);
+        request(new String[] { "a", "b" });
+        TileMapRequest first = findRequest(2, "a");
+        TileMapRequest second = findRequest(2, "b");
+        second.error(new CoreError("test"));
+        
+        // slot 1 waits for its backoff with "c"
+        request(new String[] { "c", "d" });
+        assertEquals(2, m_handler.getQueueSize());
+        
+        m_handler.setRequestLimits(1, 0, 0);
+        assertEquals(1, m_handler.getNbrOfSlots());
+        assertEquals(2, m_handler.getQueueSize());
+        
+        respondEmpty(first);
+        assertStrings(new String[] { "c", "d" }, getParamStrings(m_network.waitForRequest(2)));
+    }
+    
+    
+    public void testLateReplyFromRemovedSlotIsIgnored() throws Exception {
+        request(new String[] { "a" });
+        m_network.waitForRequest(0);
+        request(new String[] { "b" });
+        TileMapRequest old = m_network.waitForRequest(1);
+        
+        // slot 1 is removed and added again while "b" is in flight
+        m_handler.setRequestLimits(1, 0, 0);
+        m_handler.setRequestLimits(2, 0, 0);
+        request(new String[] { "c" });
+        TileMapRequest third = m_network.waitForRequest(2);
+        assertStrings(new String[] { "c" }, getParamStrings(third));
+        
+        // the late replies doesn't touch the request of the new slot
+        old.error(new CoreError("test"));
+        assertEquals(0, m_handler.getBackoffTime(1));
+        respondEmpty(old);
+        request(new String[] { "d" });
+        assertEquals(3, m_network.getNbrOfRequests());
+        assertEquals(1, m_handler.getQueueSize());
+        
+        respondEmpty(third);
+        assertStrings(new String[] { "d" }, getParamStrings(m_network.waitForRequest(3)));
+    }
+    
+    
+    /**
+     * Records the post requests instead of sending them
+     */
+    private static class RecordingNetwork implements InternalNetworkInterface {
+        
+        private final Vector m_requests = new Vector();
+        
+        int getNbrOfRequests() {
+            synchronized (m_requests) {
+                return m_requests.size();
+            }
+        }
+        
+        TileMapRequest waitForRequest(int index) throws InterruptedException {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            synchronized (m_requests) {
+                while (m_requests.size() <= index) {
+                    long left = end - System.currentTimeMillis();
+                    if(left <= 0) {
+                        fail("request " + index + " was never sent");
+                    }
+                    m_requests.wait(left);
+                }
+                return (TileMapRequest) m_requests.elementAt(index);
+            }
+        }
+        
+        public void pendingPostRequest(String uri, ResponseCallback responseCallback, 
+                PostContent postContent) {
+            synchronized (m_requests) {
+                m_requests.addElement(responseCallback);
+                m_requests.notifyAll();
+            }
+        }
+        
+        public void pendingPostRequest(String uri, ResponseCallback responseCallback, 
+                PostContent postContent, int priority) {
+            pendingPostRequest(uri, responseCallback, postContent);
+        }
+        
+        public void pendingGetRequest(String uri, ResponseCallback responseCallback) {
+            fail("unexpected get request " + uri);
+        }
+        
+        public void pendingGetRequest(String uri, ResponseCallback responseCallback, 
+                int priority) {
+            fail("unexpected get request " + uri);
+        }
+        
+        public void pendingPostRequestClean(String uri, ResponseCallback responseCallback, 
+                PostContent postContent) {
+            fail("unexpected clean request " + uri);
+        }
+        
+        public void pendingPostRequestClean(String uri, ResponseCallback responseCallback, 
+                PostContent postContent, int priority) {
+            fail("unexpected clean request " + uri);
+        }
+        
+        public void pendingXmlRequest(ResponseCallback responseCallback, 
+                PostContent postContent, int priority) {
+            fail("unexpected xml request");
+        }
+        
+        public void shutdown() {
+        }
+    }
+    
+    
+    private static class RecordingListener implements TileMapRequestListener {
+        
+        private Vector m_failed = new Vector();
+        
+        public void requestReceived(String paramString, byte[] tiledata, 
+                boolean fromCache) {
+        }
+        
+        public void requestReceived(TileMapParams desc, BitBuffer buf, 
+                boolean fromCache) {
+        }
+        
+        public void requestFailed(String[] paramStrings) {
+            m_failed = new Vector();
+            for (int i = 0; i < paramStrings.length; i++) {
+                m_failed.addElement(paramStrings[i]);
+            }
+        }
+    }
+    
+    
+    private static class ThreadLayer implements ConcurrencyLayer {
+        
+        public int getCurrentNbrOfThreads() {
+            return Thread.activeCount();
+        }
+
+        public int getMaxNumberOfThreadsForPlatform() {
+            return ConcurrencyLayer.THREAD_LIMIT_UNLIMITED;
+        }
+
+        public Thread startNewDaemonThread(Runnable run, String threadName) {
+            Thread t = new Thread(run, threadName);
+            t.setDaemon(true);
+            t.start();
+            return t;
+        }
+
+        public Timer startNewDaemonTimer() {
+            return new Timer(true);
+        }
+    }
+}
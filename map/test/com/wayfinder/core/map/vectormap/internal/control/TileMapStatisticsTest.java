@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.control;
+
+import com.wayfinder.core.map.vectormap.MapStatistics;
+
+import junit.framework.TestCase;
+
+public class TileMapStatisticsTest extends TestCase {
+    
+    private TileMapStatistics m_Statistics;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_Statistics = new TileMapStatistics();
+    }
+    
+    public void testSnapshot() {
+        m_Statistics.addMiss(MapStatistics.TIER_MEMORY_CACHE);
+        m_Statistics.addMiss(MapStatistics.TIER_MEMORY_CACHE);
+        m_Statistics.addHit(MapStatistics.TIER_MEMORY_CACHE, 100);
+        m_Statistics.addHit(MapStatistics.TIER_PRE_INSTALLED, 0);
+        m_Statistics.addBytesRead(MapStatistics.TIER_PRE_INSTALLED, 50);
+        m_Statistics.addMiss(MapStatistics.TIER_NETWORK);
+        m_Statistics.addExtraction(10);
+        m_Statistics.addExtraction(20);
+        m_Statistics.addTriangulation(5);
+        
+        MapStatistics stats = m_Statistics.createSnapshot(300, 400, 2, 3);
+        assertEquals(1, stats.getNbrOfHits(MapStatistics.TIER_MEMORY_CACHE));
+        assertEquals(2, stats.getNbrOfMisses(MapStatistics.TIER_MEMORY_CACHE));
+        assertEquals(100, stats.getNbrOfBytesRead(MapStatistics.TIER_MEMORY_CACHE));
+        assertEquals(1, stats.getNbrOfHits(MapStatistics.TIER_PRE_INSTALLED));
+        assertEquals(50, stats.getNbrOfBytesRead(MapStatistics.TIER_PRE_INSTALLED));
+        assertEquals(300, stats.getNbrOfBytesRead(MapStatistics.TIER_PERSISTENT_CACHE));
+        assertEquals(400, stats.getNbrOfBytesWritten());
+        assertEquals(0, stats.getNbrOfHits(MapStatistics.TIER_NETWORK));
+        assertEquals(1, stats.getNbrOfMisses(MapStatistics.TIER_NETWORK));
+        assertEquals(2, stats.getNbrOfExtractedTiles());
+        assertEquals(30, stats.getExtractionTime());
+        assertEquals(1, stats.getNbrOfTriangulatedTiles());
+        assertEquals(5, stats.getTriangulationTime());
+        assertEquals(2, stats.getExtractionQueueSize());
+        assertEquals(3, stats.getNetworkQueueSize());
+        assertEquals(1f / 3, stats.getHitRatio(MapStatistics.TIER_MEMORY_CACHE), 0.0001f);
+        assertEquals(0f, stats.getHitRatio(MapStatistics.TIER_PERSISTENT_CACHE), 0f);
+    }
+    
+    public void testSnapshotIsNotChangedByLaterUpdates() {
+        m_Statistics.addHit(MapStatistics.TIER_NETWORK, 10);
+        MapStatistics stats = m_Statistics.createSnapshot(0, 0, 0, 0);
+        m_Statistics.addHit(MapStatistics.TIER_NETWORK, 10);
+        assertEquals(1, stats.getNbrOfHits(MapStatistics.TIER_NETWORK));
+        assertEquals(10, stats.getNbrOfBytesRead(MapStatistics.TIER_NETWORK));
+    }
+    
+    public void testReset() {
+        m_Statistics.addHit(MapStatistics.TIER_MEMORY_CACHE, 100);
+        m_Statistics.addMiss(MapStatistics.TIER_PERSISTENT_CACHE);
+        m_Statistics.addExtraction(10);
+        m_Statistics.addTriangulation(5);
+        m_Statistics.reset(300, 400);
+        
+        MapStatistics stats = m_Statistics.createSnapshot(350, 400, 0, 0);
+        for (int i = 0; i < MapStatistics.NBR_OF_TIERS; i++) {
+            assertEquals(0, stats.getNbrOfHits(i));
+            assertEquals(0, stats.getNbrOfMisses(i));
+        }
+        assertEquals(0, stats.getNbrOfBytesRead(MapStatistics.TIER_MEMORY_CACHE));
+        // the bytes of the persistent cache are counted from the reset
+        assertEquals(50, stats.getNbrOfBytesRead(MapStatistics.TIER_PERSISTENT_CACHE));
+        assertEquals(0, stats.getNbrOfBytesWritten());
+        assertEquals(0, stats.getNbrOfExtractedTiles());
+        assertEquals(0, stats.getExtractionTime());
+        assertEquals(0, stats.getNbrOfTriangulatedTiles());
+        assertEquals(0, stats.getTriangulationTime());
+        
+        // a new persistent cache starts from 0 again
+        stats = m_Statistics.createSnapshot(10, 20, 0, 0);
+        assertEquals(0, stats.getNbrOfBytesRead(MapStatistics.TIER_PERSISTENT_CACHE));
+        assertEquals(0, stats.getNbrOfBytesWritten());
+    }
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.control;
+
+import com.wayfinder.core.map.vectormap.MapInitialConfig;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStore;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStoreMock;
+import com.wayfinder.core.map.vectormap.internal.process.TileMap;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapParams;
+
+import junit.framework.TestCase;
+
+public class TriangulatedPolygonsTest extends TestCase {
+    
+    private static final long TMFD_CRC = 0xCAFEBABEL;
+    private static final long TILE_CRC = 4711;
+    
+    private static int[][] createPolygons() {
+        return new int[][] {
+                // closed concave polygon, the last vertex is skipped
+                { 0, 0, 4, 0, 4, 1, 1, 1, 1, 4, 0, 4, 0, 0 },
+                // square
+                { 10, 10, 20, 10, 20, 20, 10, 20 },
+                // too few coordinates to triangulate
+                { 1, 1, 2, 2 }
+        };
+    }
+    
+    private static TileFeatureStore createTriangulated() {
+        TileFeatureStore store = TileFeatureStoreMock.createPolygons(createPolygons());
+        TileMapParams params = new TileMapParams();
+        params.setParams(0, true, MapInitialConfig.LAYER_ID_MAP, TileMapParams.MAP, 0, 0, 0, 0, 0, null, "");
+        TileMap map = new TileMap();
+        map.setParams(params);
+        new TileMapExtractionThread(null, null).triangulatePolygons(store, map);
+        return store;
+    }
+    
+    public void testReadWrittenRecord() {
+        TileFeatureStore triangulated = createTriangulated();
+        byte[] data = TriangulatedPolygons.write(triangulated, TMFD_CRC, TILE_CRC, 12);
+        assertNotNull(data);
+        
+        TileFeatureStore loaded = TileFeatureStoreMock.createPolygons(createPolygons());
+        assertEquals(12, TriangulatedPolygons.read(data, loaded, TMFD_CRC, TILE_CRC));
+        
+        for (int i = 0; i < 2; i++) {
+            short[][] expected = triangulated.getConcavePolygon(i).getIndexBuffer();
+            short[][] actual = loaded.getConcavePolygon(i).getIndexBuffer();
+            assertEquals(expected.length, actual.length);
+            for (int j = 0; j < expected.length; j++) {
+                for (int k = 0; k < 3; k++) {
+                    assertEquals(expected[j][k], actual[j][k]);
+                }
+            }
+        }
+        // 6 vertices in the concave polygon
+        assertEquals(4, loaded.getConcavePolygon(0).getIndexBuffer().length);
+        assertNull(loaded.getConcavePolygon(2));
+    }
+    
+    public void testRejectsOtherCrc() {
+        byte[] data = TriangulatedPolygons.write(createTriangulated(), TMFD_CRC, TILE_CRC, 12);
+        
+        TileFeatureStore loaded = TileFeatureStoreMock.createPolygons(createPolygons());
+        assertEquals(-1, TriangulatedPolygons.read(data, loaded, TMFD_CRC+1, TILE_CRC));
+        assertEquals(-1, TriangulatedPolygons.read(data, loaded, TMFD_CRC, TILE_CRC+1));
+        assertNull(loaded.getConcavePolygon(0));
+        assertNull(loaded.getConcavePolygon(1));
+    }
+    
+    public void testRejectsOtherTile() {
+        byte[] data = TriangulatedPolygons.write(createTriangulated(), TMFD_CRC, TILE_CRC, 12);
+        
+        int[][] polygons = createPolygons();
+        // one vertex less in the square 
+        polygons[1] = new int[] { 10, 10, 20, 10, 20, 20 };
+        TileFeatureStore loaded = TileFeatureStoreMock.createPolygons(polygons);
+        assertEquals(-1, TriangulatedPolygons.read(data, loaded, TMFD_CRC, TILE_CRC));
+        assertNull(loaded.getConcavePolygon(0));
+        
+        // truncated record
+        byte[] truncated = new byte[data.length-1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        loaded = TileFeatureStoreMock.createPolygons(createPolygons());
+        assertEquals(-1, TriangulatedPolygons.read(truncated, loaded, TMFD_CRC, TILE_CRC));
+    }
+    
+    public void testNoRecordWithoutPolygons() {
+        TileFeatureStore store = TileFeatureStoreMock.createPolygons(new int[][] { { 1, 1, 2, 2 } });
+        assertNull(TriangulatedPolygons.write(store, TMFD_CRC, TILE_CRC, 0));
+    }
+}
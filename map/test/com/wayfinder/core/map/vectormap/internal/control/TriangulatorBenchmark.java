@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.control;
+
+import java.util.Random;
+
+/**
+ * Measures the time to triangulate polygons with ear clipping and with the
+ * {@link MonotoneTriangulator} and prints both.
+ * <p>
+ * The polygons are generated with a fixed seed. The star shaped polygons 
+ * has a noisy outline like lakes and parks, the combs has many split and 
+ * merge vertices. 
+ * <p>
+ * Not a unit test, run it through main().
+ */
+public class TriangulatorBenchmark {
+    
+    private static final int ROUNDS = 5;
+    
+    private static void run(String name, int[] coords, int repeat) {
+        // warm up
+        earClip(coords, 1);
+        monotone(coords, 1);
+        
+        long earClip = Long.MAX_VALUE;
+        long monotone = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            earClip = Math.min(earClip, earClip(coords, repeat));
+            monotone = Math.min(monotone, monotone(coords, repeat));
+        }
+        System.out.println(name + " (" + coords.length/2 + " vertices): ear clipping " 
+                + (earClip / (float) repeat) + " ms, monotone " 
+                + (monotone / (float) repeat) + " ms");
+    }
+    
+    private static long earClip(int[] coords, int repeat) {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < repeat; i++) {
+            new ConcavePolygon(coords, 0, coords.length).triangulate();
+        }
+        return System.currentTimeMillis() - start;
+    }
+    
+    private static long monotone(int[] coords, int repeat) {
+        MonotoneTriangulator triangulator = new MonotoneTriangulator();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < repeat; i++) {
+            new ConcavePolygon(coords, 0, coords.length).triangulate(triangulator);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(4711);
+        run("small park", MonotoneTriangulatorTest.createStar(random, 40, 2000), 2000);
+        run("lake", MonotoneTriangulatorTest.createStar(random, 400, 20000), 100);
+        run("large lake", MonotoneTriangulatorTest.createStar(random, 2000, 60000), 10);
+        run("coast line", MonotoneTriangulatorTest.createStar(random, 5000, 60000), 2);
+        run("comb", MonotoneTriangulatorTest.createComb(250), 10);
+    }
+}
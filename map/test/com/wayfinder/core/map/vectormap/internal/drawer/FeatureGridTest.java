@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.drawer;
+
+import java.util.Random;
+
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStore;
+import com.wayfinder.core.map.vectormap.internal.process.TileFeatureStoreMock;
+
+import junit.framework.TestCase;
+
+public class FeatureGridTest extends TestCase {
+    
+    private static final int SHIFT = 24;
+    private static final int INDEX_MASK = (1 << SHIFT) - 1;
+    private static final int TILE_SIZE = 100000;
+    
+    private TileFeatureStore[] m_stores;
+    private int[][] m_refs;
+    private int[] m_nbrRefs;
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        Random rnd = new Random(4711);
+        m_stores = new TileFeatureStore[2];
+        m_refs = new int[Utils.MAX_LEVEL + 1][];
+        m_nbrRefs = new int[Utils.MAX_LEVEL + 1];
+        for (int i = 0; i < m_refs.length; i++) {
+            m_refs[i] = new int[500];
+        }
+        
+        for (int imp = 0; imp < m_stores.length; imp++) {
+            int[][] lines = new int[300][];
+            for (int i = 0; i < lines.length; i++) {
+                // mostly small features and a few large ones
+                int size = (i % 50 == 0) ? TILE_SIZE : 1 + rnd.nextInt(TILE_SIZE / 20);
+                int x = rnd.nextInt(TILE_SIZE) - TILE_SIZE / 2;
+                int y = rnd.nextInt(TILE_SIZE) - TILE_SIZE / 2;
+                lines[i] = new int[] { x, y, x + size, y + rnd.nextInt(size) };
+            }
+            TileFeatureStore store = TileFeatureStoreMock.createLines(lines);
+            for (int i = 0; i < lines.length; i++) {
+                int[] c = lines[i];
+                store.setBoundingBox(i, c[2], c[0], Math.max(c[1], c[3]), Math.min(c[1], c[3]));
+                int level = (i % 3 == 0) ? 1 : 2;
+                m_refs[level][m_nbrRefs[level]++] = (imp << SHIFT) | i;
+            }
+            m_stores[imp] = store;
+        }
+        // a level too small to be indexed 
+        m_refs[3][m_nbrRefs[3]++] = 0;
+    }
+    
+    private FeatureGrid createGrid() {
+        return new FeatureGrid(m_refs, m_nbrRefs, m_stores, SHIFT, INDEX_MASK);
+    }
+    
+    
+    public void testQueryFindsAllFeaturesInsideCamera() {
+        FeatureGrid grid = createGrid();
+        Random rnd = new Random(17);
+        int[] mask = new int[32];
+        int nbrMarked = 0;
+        int nbrFeatures = 0;
+        for (int q = 0; q < 200; q++) {
+            int size = 1 + rnd.nextInt(TILE_SIZE / 4);
+            int x = rnd.nextInt(TILE_SIZE * 2) - TILE_SIZE;
+            int y = rnd.nextInt(TILE_SIZE * 2) - TILE_SIZE;
+            int[] camBox = { x, x + size, y, y + size };
+            
+            for (int level = 1; level <= 2; level++) {
+                int size2 = m_nbrRefs[level];
+                assertTrue(grid.query(level, size2, camBox, mask));
+                for (int i = 0; i < size2; i++) {
+                    boolean marked = (mask[i >> 5] & (1 << (i & 31))) != 0;
+                    if (isInside(m_refs[level][i], camBox)) {
+                        assertTrue("level " + level + " feature " + i, marked);
+                    }
+                    if (marked) {
+                        nbrMarked++;
+                    }
+                }
+                nbrFeatures += size2;
+            }
+        }
+        // most of the features are skipped with a small camera box
+        assertTrue(nbrMarked * 4 < nbrFeatures);
+    }
+    
+    
+    public void testCameraOutsideGrid() {
+        FeatureGrid grid = createGrid();
+        int[] mask = new int[32];
+        int[] camBox = { 10 * TILE_SIZE, 11 * TILE_SIZE, 0, TILE_SIZE };
+        assertTrue(grid.query(2, m_nbrRefs[2], camBox, mask));
+        for (int i = 0; i < mask.length; i++) {
+            assertEquals(0, mask[i]);
+        }
+    }
+    
+    
+    public void testVisitAll() {
+        FeatureGrid grid = createGrid();
+        int[] mask = new int[32];
+        int[] camBox = { -10 * TILE_SIZE, 10 * TILE_SIZE, -10 * TILE_SIZE, 10 * TILE_SIZE };
+        assertFalse(grid.query(1, m_nbrRefs[1], camBox, mask));
+        
+        // not indexed 
+        camBox = new int[] { 0, 1, 0, 1 };
+        assertFalse(grid.query(3, m_nbrRefs[3], camBox, mask));
+        assertFalse(grid.query(0, 0, camBox, mask));
+    }
+    
+    
+    public void testFeaturesAddedAfterBuild() {
+        FeatureGrid grid = createGrid();
+        int[] mask = new int[32];
+        int[] camBox = { 10 * TILE_SIZE, 11 * TILE_SIZE, 0, TILE_SIZE };
+        int size = m_nbrRefs[2];
+        assertTrue(grid.query(2, size + 3, camBox, mask));
+        for (int i = 0; i < size + 3; i++) {
+            assertEquals(i >= size, (mask[i >> 5] & (1 << (i & 31))) != 0);
+        }
+    }
+    
+    private boolean isInside(int ref, int[] camBox) {
+        int[] ce = m_stores[ref >>> SHIFT].getCoordExtremes();
+        int pos = (ref & INDEX_MASK) << 2;
+        return !(ce[pos] >= camBox[1] || ce[pos+1] <= camBox[0] 
+                 || ce[pos+2] >= camBox[3] || ce[pos+3] <= camBox[2]);
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.drawer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import com.wayfinder.core.map.util.ScreenInfo;
+
+/**
+ * Measures the bytes allocated and the time per frame for the camera matrix
+ * math of a frame during smooth zoom and panning, in 2D and 3D: the camera 
+ * update, a DPI matrix product, an inverse and the transform of the 
+ * vertices of a frame. Done once with the allocating helpers in 
+ * {@link Utils} and once with a reused {@link Matrix4}.
+ * <p>
+ * The allocated bytes are read from the HotSpot thread MX bean. 
+ * <p>
+ * Not a unit test, run it through main().
+ */
+public class Matrix4Benchmark {
+    
+    private static final int NBR_FRAMES = 20000;
+    private static final int NBR_POINTS = 5000;
+    
+    private final Camera m_camera = new Camera();
+    private final Matrix4 m_matrix = new Matrix4();
+    private final Matrix4 m_dpiMatrix = new Matrix4().setScale(2f);
+    private final int[] m_src = new int[NBR_POINTS << 1];
+    private final int[] m_dst = new int[NBR_POINTS << 1];
+    
+    // keeps the results alive
+    private float m_sink;
+    
+    private Matrix4Benchmark() {
+        m_camera.setScreenInfo(new ScreenInfo(480, 800, true));
+        Random rnd = new Random(4711);
+        for (int i = 0; i < m_src.length; i++) {
+            m_src[i] = 664000000 + rnd.nextInt(100000);
+        }
+    }
+    
+    private void frame(int frame, boolean reuse) {
+        final Camera camera = m_camera;
+        camera.setPosition(664050000 + frame, 150000000 - frame);
+        camera.setScale(2f + (frame & 255) / 64f);
+        camera.update();
+        final float[][] transform = camera.getTransform();
+        
+        if (reuse) {
+            m_matrix.multiply(m_dpiMatrix.getArray(), transform);
+            m_matrix.invert();
+            m_sink += m_matrix.getArray()[0][0];
+            if (camera.isIn3DMode()) {
+                Matrix4.transformPoints(transform, m_src, 0, m_dst, 0, NBR_POINTS);
+            } else {
+                Matrix4.transformPointsAffine(transform, m_src, 0, m_dst, 0, NBR_POINTS);
+            }
+        } else {
+            float[][] m = Utils.multiply(Utils.getDPIMatrix(2f), transform);
+            m_sink += m[0][0] + Utils.getUnityMatrix()[0][0];
+            // the old applyTransform() worked in place on a copy
+            System.arraycopy(m_src, 0, m_dst, 0, m_src.length);
+            applyTransformCopy(m_dst, m_dst.length, transform, camera.isIn3DMode());
+        }
+        m_sink += m_dst[frame % m_dst.length];
+    }
+    
+    private static void applyTransformCopy(int[] p, int length, float[][] t, boolean perspective) {
+        for (int index = 0; index < length; index += 2) {
+            int px = p[index];
+            int py = p[index+1];
+            float wInv = perspective ? 1 / (t[3][0]*px + t[3][1]*py + t[3][3]) : 1f;
+            p[index] = (int)((t[0][0]*px + t[0][1]*py + t[0][3]) * wInv);
+            p[index+1] = (int)((t[1][0]*px + t[1][1]*py + t[1][3]) * wInv);
+        }
+    }
+    
+    private void run(String name, boolean reuse, boolean in3D) {
+        m_camera.set3DMode(in3D);
+        // warm up
+        for (int i = 0; i < NBR_FRAMES; i++) {
+            frame(i, reuse);
+        }
+        
+        long bytesBefore = allocatedBytes();
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < NBR_FRAMES; i++) {
+            frame(i, reuse);
+        }
+        time = System.currentTimeMillis() - time;
+        long bytes = allocatedBytes() - bytesBefore;
+        
+        System.out.println(name + (in3D ? " 3D: " : " 2D: ") 
+                + (bytes / NBR_FRAMES) + " bytes/frame, " 
+                + (time * 1000 / NBR_FRAMES) + " us/frame");
+    }
+    
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        throw new IllegalStateException("allocated bytes not supported by the VM");
+    }
+    
+    public static void main(String[] args) {
+        Matrix4Benchmark bench = new Matrix4Benchmark();
+        for (int i = 0; i < 2; i++) {
+            bench.run("Utils  ", false, false);
+            bench.run("Matrix4", true, false);
+            bench.run("Utils  ", false, true);
+            bench.run("Matrix4", true, true);
+        }
+        System.out.println(NBR_POINTS + " points per frame, (" + bench.m_sink + ")");
+    }
+}
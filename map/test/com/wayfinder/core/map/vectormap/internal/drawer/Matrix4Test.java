@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.drawer;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class Matrix4Test extends TestCase {
+    
+    private static final float EPSILON = 1e-4f;
+    
+    
+    public void testMultiply() {
+        Random rnd = new Random(4711);
+        float[][] a = createRandomMatrix(rnd);
+        float[][] b = createRandomMatrix(rnd);
+        float[][] expected = multiplySlow(a, b);
+        
+        Matrix4 m = new Matrix4().multiply(a, b);
+        assertEquals(expected, m.getArray(), EPSILON);
+        
+        // in place from both sides
+        m.set(a).multiply(b);
+        assertEquals(expected, m.getArray(), EPSILON);
+        float[][] c = copy(b);
+        Matrix4.multiply(a, c, c);
+        assertEquals(expected, c, EPSILON);
+        
+        // with itself
+        m.set(a);
+        m.multiply(m.getArray(), m.getArray());
+        assertEquals(multiplySlow(a, a), m.getArray(), EPSILON);
+    }
+    
+    
+    public void testScale() {
+        float[][] a = createRandomMatrix(new Random(17));
+        Matrix4 m = new Matrix4().setScale(2f).multiply(a);
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals((i < 3 ? 2f : 1f) * a[i][j], m.getArray()[i][j], EPSILON);
+            }
+        }
+        
+        m.setIdentity().multiply(a);
+        assertEquals(a, m.getArray(), 0f);
+    }
+    
+    
+    public void testInvert() {
+        Random rnd = new Random(42);
+        for (int n = 0; n < 20; n++) {
+            float[][] a = createRandomMatrix(rnd);
+            Matrix4 m = new Matrix4().set(a);
+            assertTrue(m.invert());
+            m.multiply(a, m.getArray());
+            assertEquals(new Matrix4().getArray(), m.getArray(), EPSILON);
+        }
+        
+        // singular, the last row is zero
+        float[][] singular = createRandomMatrix(rnd);
+        singular[3] = new float[4];
+        float[][] before = copy(singular);
+        assertFalse(Matrix4.invert(singular));
+        assertEquals(before, singular, 0f);
+    }
+    
+    
+    public void testTransformPoints() {
+        Random rnd = new Random(7);
+        float[][] tr = createRandomMatrix(rnd);
+        tr[3][0] = 0.001f;
+        tr[3][1] = 0.002f;
+        tr[3][3] = 3f;
+        
+        int[] src = new int[20];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = rnd.nextInt(2000) - 1000;
+        }
+        
+        int[] dst = new int[src.length];
+        new Matrix4().set(tr).transformPoints(src, dst, src.length / 2);
+        int[] dstAffine = new int[src.length + 2];
+        Matrix4.transformPointsAffine(tr, src, 0, dstAffine, 2, src.length / 2);
+        for (int i = 0; i < src.length; i += 2) {
+            final int x = src[i];
+            final int y = src[i + 1];
+            float wInv = 1 / (tr[3][0]*x + tr[3][1]*y + tr[3][3]);
+            assertEquals((int)((tr[0][0]*x + tr[0][1]*y + tr[0][3]) * wInv), dst[i]);
+            assertEquals((int)((tr[1][0]*x + tr[1][1]*y + tr[1][3]) * wInv), dst[i + 1]);
+            assertEquals((int)(tr[0][0]*x + tr[0][1]*y + tr[0][3]), dstAffine[i + 2]);
+            assertEquals((int)(tr[1][0]*x + tr[1][1]*y + tr[1][3]), dstAffine[i + 3]);
+        }
+        
+        // in place, with an offset
+        int[] p = new int[src.length];
+        System.arraycopy(src, 0, p, 0, src.length);
+        Matrix4.transformPoints(tr, p, 4, p, 4, 3);
+        for (int i = 0; i < src.length; i++) {
+            assertEquals((i >= 4 && i < 10) ? dst[i] : src[i], p[i]);
+        }
+    }
+    
+    
+    private static float[][] createRandomMatrix(Random rnd) {
+        float[][] m = new float[4][4];
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                m[i][j] = rnd.nextFloat() * 2f - 1f;
+            }
+            // diagonally dominant, so it can be inverted
+            m[i][i] += 4f;
+        }
+        return m;
+    }
+    
+    private static float[][] multiplySlow(float[][] a, float[][] b) {
+        float[][] c = new float[4][4];
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                for (int k = 0; k < 4; k++) {
+                    c[i][j] += a[i][k] * b[k][j];
+                }
+            }
+        }
+        return c;
+    }
+    
+    private static float[][] copy(float[][] a) {
+        float[][] c = new float[4][4];
+        for (int i = 0; i < 4; i++) {
+            System.arraycopy(a[i], 0, c[i], 0, 4);
+        }
+        return c;
+    }
+    
+    private static void assertEquals(float[][] expected, float[][] actual, float delta) {
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals("[" + i + "][" + j + "]", expected[i][j], actual[i][j], delta);
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.drawer;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.MapInitialConfig;
+import com.wayfinder.core.map.vectormap.internal.process.TileMapFormatDesc;
+import com.wayfinder.pal.graphics.WFFont;
+import com.wayfinder.pal.graphics.WFGraphics;
+import com.wayfinder.pal.graphics.WFGraphicsFactory;
+import com.wayfinder.pal.graphics.WFImage;
+
+public class RenderManagerTest extends TestCase {
+    
+    private static final String TMFD_FILE = 
+        "./map/test/com/wayfinder/core/map/vectormap/internal/cache/tmfd";
+    
+    private static final int SCREEN_SIZE = 100;
+    
+    // the raster cache has room for four screens, i.e. one tile of this size
+    private static final int TILE_SIZE = 170;
+    
+    private TileMapFormatDesc m_tmfd;
+    private Camera m_camera;
+    private RecordingMapDrawer m_mapDrawer;
+    private RenderManager m_renderManager;
+    
+    protected void setUp() throws Exception {
+        DataInputStream din = new DataInputStream(new FileInputStream(TMFD_FILE));
+        byte[] data = new byte[din.available()];
+        din.readFully(data);
+        din.close();
+        m_tmfd = new TileMapFormatDesc();
+        assertTrue(m_tmfd.load(new BitBuffer(data), null));
+        
+        ImageFactory factory = new ImageFactory();
+        Utils.get().init(factory);
+        m_camera = new Camera();
+        m_renderManager = new RenderManager();
+        m_mapDrawer = new RecordingMapDrawer(m_renderManager);
+        m_renderManager.init(factory, m_camera, m_mapDrawer, null, null, null, null, 
+                null, null, new MapInitialConfig(0, 0, SCREEN_SIZE, SCREEN_SIZE, false));
+    }
+    
+    
+    /**
+     * The tiles that doesn't fit in the raster cache are drawn on the screen
+     * with the clip of the screen, not the clip of the last cached tile. 
+     */
+    public void testCacheFullInFrame() {
+        final int mapLayerNbr = m_tmfd.getLayerNbrFromID(RenderManager.ID_MAP_LAYER);
+        final long mc2UnitsPerTile = m_tmfd.getMc2UnitsPerTile(mapLayerNbr, 0);
+        
+        // four tiles meeting at the center of the screen
+        final int lat = 100;
+        final int lon = 200;
+        m_camera.setPosition(lat * mc2UnitsPerTile, lon * mc2UnitsPerTile);
+        m_camera.setScale(1f);
+        m_camera.update();
+        float[][] tr = m_camera.getTransform();
+        m_camera.setScale(getTileSize(tr, mc2UnitsPerTile) / TILE_SIZE);
+        m_camera.update();
+        assertEquals(TILE_SIZE, getTileSize(m_camera.getTransform(), mc2UnitsPerTile), 1f);
+        
+        Vector mapTiles = new Vector();
+        for (int i = 0; i < 4; i++) {
+            mapTiles.addElement(new TileMapWrapper(RenderManager.ID_MAP_LAYER, 0, 
+                    lat - (i >> 1), lon - (i & 1), "T" + i, 1, 1));
+        }
+        
+        Graphics g = new Graphics(SCREEN_SIZE, SCREEN_SIZE);
+        m_renderManager.drawMapTilesFromRasterCache(g, m_tmfd, mapTiles, mapLayerNbr, 
+                m_camera.getCameraBoundingBoxInternal(), 1, 0);
+        
+        // the first tile is cached, the rest are drawn on the screen
+        assertEquals(1, g.m_nbrImagesDrawn);
+        assertEquals(3, m_mapDrawer.m_screenClips.size());
+        for (int i = 0; i < m_mapDrawer.m_screenClips.size(); i++) {
+            int[] clip = (int[]) m_mapDrawer.m_screenClips.elementAt(i);
+            assertEquals(0, clip[0]);
+            assertEquals(0, clip[1]);
+            assertEquals(SCREEN_SIZE, clip[2]);
+            assertEquals(SCREEN_SIZE, clip[3]);
+        }
+        assertEquals(0, g.getClipX());
+        assertEquals(SCREEN_SIZE, g.getClipWidth());
+    }
+    
+    
+    private static float getTileSize(float[][] tr, long mc2UnitsPerTile) {
+        return Math.max(Math.abs(tr[0][0]), Math.abs(tr[0][1])) * mc2UnitsPerTile;
+    }
+    
+    
+    private static class RecordingMapDrawer extends MapDrawer {
+        
+        // the clips of the screen when tiles was drawn on it
+        final Vector m_screenClips = new Vector();
+        
+        RecordingMapDrawer(RenderManager renderManager) {
+            super(renderManager);
+        }
+        
+        void drawTileToRaster(TileMapWrapper tmw, WFGraphics imageGraphics, int imageX, int imageY, 
+                int[] tileBox, int startPass, Camera camera, int scaleIndex) {
+            if (!((Graphics) imageGraphics).m_isImage) {
+                m_screenClips.addElement(new int[] {
+                        imageGraphics.getClipX(), imageGraphics.getClipY(), 
+                        imageGraphics.getClipWidth(), imageGraphics.getClipHeight()});
+            }
+        }
+        
+        void drawTileOverlays(TileMapWrapper tmw, int[] camBox, Camera camera, int scaleIndex) {
+        }
+    }
+    
+    
+    private static class ImageFactory implements WFGraphicsFactory {
+        
+        public WFImage createWFImage(int width, int height) {
+            return new Image(width, height);
+        }
+
+        public WFImage createWFImage(byte[] buf, int offset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        public WFImage createWFImage(int width, int height, int color) {
+            throw new UnsupportedOperationException();
+        }
+
+        public WFImage createWFImage(String resourceName) {
+            throw new UnsupportedOperationException();
+        }
+
+        public WFImage createWFImage(int[] rgb, int width, int height, boolean processAlpha) {
+            throw new UnsupportedOperationException();
+        }
+
+        public WFFont getWFFont(int size, int style) {
+            return new Font();
+        }
+    }
+    
+    
+    private static class Image extends WFImage {
+        
+        private final Graphics m_graphics;
+        
+        Image(int width, int height) {
+            super(width, height);
+            m_graphics = new Graphics(width, height);
+            m_graphics.m_isImage = true;
+        }
+
+        protected void getNativeARGBData(int[] rgbData, int offset, int scanlength, 
+                int x, int y, int width, int height) {
+        }
+
+        public boolean hasNativeImage() {
+            return false;
+        }
+
+        public void drawNativeImage(WFGraphics g, int x, int y) {
+        }
+
+        public Object getNativeImage() {
+            return null;
+        }
+
+        public boolean isWritable() {
+            return true;
+        }
+
+        public WFGraphics getWFGraphics() {
+            return m_graphics;
+        }
+    }
+    
+    
+    private static class Font implements WFFont {
+
+        public int getStyle() {
+            return STYLE_PLAIN;
+        }
+
+        public int getFontHeight() {
+            return 10;
+        }
+
+        public int getStringWidth(String str) {
+            return 5 * str.length();
+        }
+    }
+    
+    
+    /*
+     * Keeps track of the clip and the number of drawn images
+     */
+    private static class Graphics implements WFGraphics {
+        
+        boolean m_isImage;
+        int m_nbrImagesDrawn;
+        private int m_clipX, m_clipY, m_clipWidth, m_clipHeight;
+        private int m_color;
+        
+        Graphics(int width, int height) {
+            m_clipWidth = width;
+            m_clipHeight = height;
+        }
+
+        public void setClip(int x, int y, int width, int height) {
+            m_clipX = x;
+            m_clipY = y;
+            m_clipWidth = width;
+            m_clipHeight = height;
+        }
+
+        public int getClipX() {
+            return m_clipX;
+        }
+
+        public int getClipY() {
+            return m_clipY;
+        }
+
+        public int getClipWidth() {
+            return m_clipWidth;
+        }
+
+        public int getClipHeight() {
+            return m_clipHeight;
+        }
+
+        public void drawImage(WFImage img, int x, int y, int anchor) {
+            m_nbrImagesDrawn++;
+        }
+
+        public void setColor(int color) {
+            m_color = color;
+        }
+
+        public int getColor() {
+            return m_color;
+        }
+
+        public void drawLine(int x1, int y1, int x2, int y2, int thickness) {
+        }
+
+        public void drawConnectedLine(int x, int y, int thickness) {
+        }
+
+        public boolean supportsPath() {
+            return false;
+        }
+
+        public void drawPath(int[] xCoords, int[] yCoords, int nbrCoords, int width) {
+        }
+
+        public void drawRect(int x, int y, int width, int height) {
+        }
+
+        public void fillRect(int x, int y, int width, int height) {
+        }
+
+        public void drawText(String str, int x, int y, int anchor) {
+        }
+
+        public void drawText(String s, int x, int y, int maxWidth, int anchor) {
+        }
+
+        public void drawText(String str, int x, int y, int maxWidth, int anchor, String suffix) {
+        }
+
+        public boolean supportRotatedTexts() {
+            return false;
+        }
+
+        public void drawRotatedText(String str, int x, int y, double tanTheta) {
+        }
+
+        public void drawRGB(int[] argbData, int offset, int scanlength, int x, int y, 
+                int width, int height, boolean processAlpha) {
+        }
+
+        public void setFont(WFFont aFont) {
+        }
+
+        public void fillTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
+        }
+
+        public boolean supportsPolygon() {
+            return false;
+        }
+
+        public void drawPolygon(int[] x, int[] y) {
+        }
+
+        public void fillPolygon(int[] x, int[] y, int length) {
+        }
+
+        public void allowAntialias(boolean allow) {
+        }
+    }
+}
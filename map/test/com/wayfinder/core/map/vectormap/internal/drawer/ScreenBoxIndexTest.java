@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.drawer;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ScreenBoxIndexTest extends TestCase {
+    
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 800;
+    
+    
+    public void testEmpty() {
+        ScreenBoxIndex index = new ScreenBoxIndex(32);
+        index.reset(WIDTH, HEIGHT);
+        assertEquals(0, index.size());
+        assertFalse(index.intersects(0, 0, WIDTH, HEIGHT, false));
+    }
+    
+    
+    public void testEdges() {
+        ScreenBoxIndex index = new ScreenBoxIndex(32);
+        index.reset(WIDTH, HEIGHT);
+        index.add(100, 100, 200, 150);
+        
+        // sharing an edge is only a collision if not strict
+        assertTrue(index.intersects(200, 120, 250, 130, false));
+        assertFalse(index.intersects(200, 120, 250, 130, true));
+        assertTrue(index.intersects(150, 150, 160, 170, false));
+        assertFalse(index.intersects(150, 150, 160, 170, true));
+        assertFalse(index.intersects(201, 120, 250, 130, false));
+        
+        // contained 
+        assertTrue(index.intersects(120, 110, 121, 111, true));
+    }
+    
+    
+    public void testOutsideScreen() {
+        ScreenBoxIndex index = new ScreenBoxIndex(32);
+        index.reset(WIDTH, HEIGHT);
+        index.add(-100, -100, -50, -50);
+        index.add(WIDTH + 10, HEIGHT + 10, WIDTH + 50, HEIGHT + 50);
+        
+        assertTrue(index.intersects(-60, -60, -40, -40, false));
+        assertFalse(index.intersects(-40, -40, 10, 10, false));
+        assertTrue(index.intersects(WIDTH + 40, HEIGHT + 40, WIDTH + 60, HEIGHT + 60, true));
+        assertFalse(index.intersects(WIDTH - 10, HEIGHT - 10, WIDTH + 5, HEIGHT + 5, false));
+    }
+    
+    
+    public void testSameAsLinearScan() {
+        Random rnd = new Random(4711);
+        ScreenBoxIndex index = new ScreenBoxIndex(32);
+        for (int frame = 0; frame < 20; frame++) {
+            index.reset(WIDTH, HEIGHT);
+            int[] boxes = new int[4 * 200];
+            int nbrBoxes = 0;
+            for (int i = 0; i < 400; i++) {
+                int x = rnd.nextInt(WIDTH + 100) - 50;
+                int y = rnd.nextInt(HEIGHT + 100) - 50;
+                int maxX = x + rnd.nextInt(80);
+                int maxY = y + rnd.nextInt(30);
+                boolean strict = rnd.nextBoolean();
+                
+                boolean expected = false;
+                for (int b = 0; b < nbrBoxes; b++) {
+                    int pos = b << 2;
+                    if (strict) {
+                        expected = maxX > boxes[pos] && x < boxes[pos+2] 
+                            && maxY > boxes[pos+1] && y < boxes[pos+3];
+                    } else {
+                        expected = !(maxX < boxes[pos] || x > boxes[pos+2] 
+                            || maxY < boxes[pos+1] || y > boxes[pos+3]);
+                    }
+                    if (expected) {
+                        break;
+                    }
+                }
+                assertEquals("frame " + frame + " box " + i, 
+                        expected, index.intersects(x, y, maxX, maxY, strict));
+                
+                if (!expected && nbrBoxes < 200) {
+                    index.add(x, y, maxX, maxY);
+                    int pos = nbrBoxes << 2;
+                    boxes[pos] = x;
+                    boxes[pos+1] = y;
+                    boxes[pos+2] = maxX;
+                    boxes[pos+3] = maxY;
+                    nbrBoxes++;
+                }
+            }
+            assertEquals(nbrBoxes, index.size());
+        }
+    }
+}
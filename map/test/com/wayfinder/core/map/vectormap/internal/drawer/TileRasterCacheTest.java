@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.drawer;
+
+import junit.framework.TestCase;
+
+import com.wayfinder.pal.graphics.WFFont;
+import com.wayfinder.pal.graphics.WFGraphics;
+import com.wayfinder.pal.graphics.WFGraphicsFactory;
+import com.wayfinder.pal.graphics.WFImage;
+
+public class TileRasterCacheTest extends TestCase {
+    
+    private static final Object TMFD = new Object();
+    
+    private ImageFactory m_factory;
+    private TileRasterCache m_cache;
+    
+    protected void setUp() throws Exception {
+        m_factory = new ImageFactory();
+        // room for four 100x100 images
+        m_cache = new TileRasterCache(m_factory, 40000);
+    }
+    
+    
+    public void testEvictLeastRecentlyDrawn() {
+        m_cache.beginFrame();
+        TileRasterCache.Entry e1 = m_cache.allocate("t1", 100, 100);
+        TileRasterCache.Entry e2 = m_cache.allocate("t2", 100, 100);
+        m_cache.beginFrame();
+        m_cache.lookup("t1");
+        m_cache.lookup("t2");
+        m_cache.markDrawn(e1);
+        m_cache.allocate("t3", 100, 100);
+        m_cache.allocate("t4", 100, 100);
+        assertEquals(4, m_cache.size());
+        assertEquals(40000, m_cache.getNbrPixels());
+        assertEquals(4, m_factory.m_nbrCreated);
+        
+        // t2 was drawn in an earlier frame than t1
+        m_cache.beginFrame();
+        m_cache.lookup("t1");
+        m_cache.lookup("t2");
+        m_cache.lookup("t3");
+        m_cache.lookup("t4");
+        assertNotNull(m_cache.allocate("t5", 100, 100));
+        assertNull(m_cache.lookup("t2"));
+        assertSame(e1, m_cache.lookup("t1"));
+        
+        // the image of the evicted entry is reused
+        assertEquals(4, m_factory.m_nbrCreated);
+        assertSame(e2.getImage(), m_cache.lookup("t5").getImage());
+        assertEquals(40000, m_cache.getNbrPixels());
+    }
+    
+    
+    public void testNoRoomInFrame() {
+        m_cache.beginFrame();
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(m_cache.allocate("t" + i, 100, 100));
+        }
+        // all entries are drawn in the current frame
+        assertNull(m_cache.allocate("t4", 100, 100));
+        assertEquals(4, m_cache.size());
+        
+        // an existing image that is too small is removed
+        assertNull(m_cache.allocate("t0", 120, 100));
+        assertNull(m_cache.lookup("t0"));
+        assertEquals(30000, m_cache.getNbrPixels());
+        
+        // a smaller image is fine
+        TileRasterCache.Entry entry = m_cache.allocate("t1", 90, 80);
+        assertEquals(90, entry.getWidth());
+        assertEquals(80, entry.getHeight());
+        assertEquals(100, entry.getImage().getWidth());
+    }
+    
+    
+    public void testEndFrameRemovesUnseen() {
+        m_cache.beginFrame();
+        m_cache.allocate("t1", 100, 100);
+        m_cache.allocate("t2", 100, 100);
+        m_cache.endFrame();
+        assertEquals(2, m_cache.size());
+        
+        m_cache.beginFrame();
+        m_cache.lookup("t1");
+        m_cache.endFrame();
+        assertEquals(1, m_cache.size());
+        assertNull(m_cache.lookup("t2"));
+        assertEquals(10000, m_cache.getNbrPixels());
+        
+        m_cache.clear();
+        assertEquals(0, m_cache.size());
+        assertEquals(0, m_cache.getNbrPixels());
+    }
+    
+    
+    public void testValidity() {
+        final long mc2UnitsPerTile = 10000;
+        float[][] tr = createTransform(0.5f, 0.25f, 100f);
+        
+        m_cache.beginFrame();
+        TileRasterCache.Entry entry = m_cache.allocate("t1", 100, 100);
+        assertFalse(entry.isValid(tr, mc2UnitsPerTile, TMFD, 3, 1));
+        entry.setRendered(tr, TMFD, 3, 1, 0.25f, 0.75f);
+        assertTrue(entry.isValid(tr, mc2UnitsPerTile, TMFD, 3, 1));
+        assertEquals(0.25f, entry.getFractionX(), 0f);
+        assertEquals(0.75f, entry.getFractionY(), 0f);
+        
+        // panning doesn't matter
+        assertTrue(entry.isValid(createTransform(0.5f, 0.25f, -3000f), mc2UnitsPerTile, TMFD, 3, 1));
+        // less than half a pixel over the tile
+        assertTrue(entry.isValid(createTransform(0.50004f, 0.25f, 100f), mc2UnitsPerTile, TMFD, 3, 1));
+        
+        // zoom, rotation, tmfd, importances and pass
+        assertFalse(entry.isValid(createTransform(0.5001f, 0.25f, 100f), mc2UnitsPerTile, TMFD, 3, 1));
+        assertFalse(entry.isValid(createTransform(0.5f, 0.2501f, 100f), mc2UnitsPerTile, TMFD, 3, 1));
+        assertFalse(entry.isValid(tr, mc2UnitsPerTile, new Object(), 3, 1));
+        assertFalse(entry.isValid(tr, mc2UnitsPerTile, TMFD, 7, 1));
+        assertFalse(entry.isValid(tr, mc2UnitsPerTile, TMFD, 3, 0));
+        
+        // reallocating invalidates the entry
+        assertSame(entry, m_cache.allocate("t1", 100, 100));
+        assertFalse(entry.isValid(tr, mc2UnitsPerTile, TMFD, 3, 1));
+    }
+    
+    
+    private static float[][] createTransform(float scale, float rotation, float translation) {
+        return new float[][] {
+                {scale, rotation, 0, translation},
+                {-rotation, scale, 0, translation},
+                {0, 0, 1, 0},
+                {0, 0, 0, 1}};
+    }
+    
+    
+    private static class ImageFactory implements WFGraphicsFactory {
+        
+        int m_nbrCreated;
+
+        public WFImage createWFImage(int width, int height) {
+            m_nbrCreated++;
+            return new Image(width, height);
+        }
+
+        public WFImage createWFImage(byte[] buf, int offset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        public WFImage createWFImage(int width, int height, int color) {
+            throw new UnsupportedOperationException();
+        }
+
+        public WFImage createWFImage(String resourceName) {
+            throw new UnsupportedOperationException();
+        }
+
+        public WFImage createWFImage(int[] rgb, int width, int height, boolean processAlpha) {
+            throw new UnsupportedOperationException();
+        }
+
+        public WFFont getWFFont(int size, int style) {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    
+    private static class Image extends WFImage {
+        
+        Image(int width, int height) {
+            super(width, height);
+        }
+
+        protected void getNativeARGBData(int[] rgbData, int offset, int scanlength, 
+                int x, int y, int width, int height) {
+        }
+
+        public boolean hasNativeImage() {
+            return false;
+        }
+
+        public void drawNativeImage(WFGraphics g, int x, int y) {
+        }
+
+        public Object getNativeImage() {
+            return null;
+        }
+
+        public boolean isWritable() {
+            return true;
+        }
+
+        public WFGraphics getWFGraphics() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.process;
+
+import java.util.Random;
+import java.util.Vector;
+
+import com.wayfinder.core.map.vectormap.internal.control.ConcavePolygon;
+
+/**
+ * Measures the heap used per decoded tile with one object per feature, the 
+ * way the features were stored before {@link TileFeatureStore}, and with 
+ * the {@link TileFeatureStore}, and prints both.
+ * <p>
+ * The tiles are generated with a fixed seed and contain a mix of roads, 
+ * areas and POIs similar to a detail level 0 map tile. 
+ * <p>
+ * Not a unit test, run it through main().
+ */
+public class TileFeatureStoreBenchmark {
+    
+    private static final int NBR_TILES = 200;
+    private static final int FEATURES_PER_TILE = 250;
+    
+    private static final SimpleArg COLOR = 
+        new SimpleArg(TileFeatureArg.SIMPLEARG, TileArgNames.COLOR, 24);
+    private static final SimpleArg WIDTH = 
+        new SimpleArg(TileFeatureArg.SIMPLEARG, TileArgNames.WIDTH, 8);
+    
+    private final int[][] m_primitiveTypes = new int[NBR_TILES][];
+    private final int[][][] m_coords = new int[NBR_TILES][][];
+    
+    private TileFeatureStoreBenchmark() {
+        Random rnd = new Random(4711);
+        for (int t = 0; t < NBR_TILES; t++) {
+            m_primitiveTypes[t] = new int[FEATURES_PER_TILE];
+            m_coords[t] = new int[FEATURES_PER_TILE][];
+            for (int f = 0; f < FEATURES_PER_TILE; f++) {
+                int r = rnd.nextInt(100);
+                int nbrPoints;
+                if (r < 55) {
+                    m_primitiveTypes[t][f] = TileFeature.LINE;
+                    nbrPoints = 2 + rnd.nextInt(29);
+                } else if (r < 80) {
+                    m_primitiveTypes[t][f] = TileFeature.POLYGON;
+                    nbrPoints = 3 + rnd.nextInt(38);
+                } else {
+                    m_primitiveTypes[t][f] = TileFeature.BITMAP;
+                    nbrPoints = 0;
+                }
+                int[] coords = new int[nbrPoints << 1];
+                for (int i = 0; i < coords.length; i++) {
+                    coords[i] = rnd.nextInt(1 << 16);
+                }
+                m_coords[t][f] = coords;
+            }
+        }
+    }
+    
+    /**
+     * Builds the tile the way TileMap.initData() used to, one object 
+     * with its own arrays per feature held in a Vector. 
+     */
+    private Object buildPerFeature(int tile) {
+        Vector features = new Vector();
+        for (int f = 0; f < FEATURES_PER_TILE; f++) {
+            PerFeatureData data = new PerFeatureData(m_primitiveTypes[tile][f], f, 1);
+            if (m_primitiveTypes[tile][f] != TileFeature.BITMAP) {
+                // a copy, the coordinates came from the CoordsArg that is purged
+                int[] src = m_coords[tile][f];
+                int[] coords = new int[src.length];
+                System.arraycopy(src, 0, coords, 0, src.length);
+                data.m_coords = coords;
+                data.m_color = COLOR;
+                data.m_widthArgs = WIDTH;
+            }
+            features.addElement(data);
+        }
+        return features;
+    }
+    
+    private Object buildStore(int tile) {
+        int nbrCoordValues = 0;
+        for (int f = 0; f < FEATURES_PER_TILE; f++) {
+            nbrCoordValues += m_coords[tile][f].length;
+        }
+        TileFeatureStore store = new TileFeatureStore(FEATURES_PER_TILE, nbrCoordValues);
+        for (int f = 0; f < FEATURES_PER_TILE; f++) {
+            store.setPrimitiveType(f, m_primitiveTypes[tile][f]);
+            store.setFeatureType(f, 1);
+            if (m_primitiveTypes[tile][f] != TileFeature.BITMAP) {
+                int[] src = m_coords[tile][f];
+                store.setCoords(f, src, src.length);
+                store.setColor(f, COLOR);
+                store.setWidth(f, WIDTH);
+            }
+        }
+        return store;
+    }
+    
+    private long heapPerTile(boolean perFeature) {
+        Object[] tiles = new Object[NBR_TILES];
+        long before = usedMemory();
+        for (int t = 0; t < NBR_TILES; t++) {
+            tiles[t] = perFeature ? buildPerFeature(t) : buildStore(t);
+        }
+        long after = usedMemory();
+        if (tiles[NBR_TILES - 1] == null) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / NBR_TILES;
+    }
+    
+    private static long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                // measure anyway
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+    
+    public static void main(String[] args) {
+        TileFeatureStoreBenchmark bench = new TileFeatureStoreBenchmark();
+        
+        // warm up, the first round also loads the classes
+        bench.heapPerTile(true);
+        bench.heapPerTile(false);
+        
+        long perFeature = bench.heapPerTile(true);
+        long store = bench.heapPerTile(false);
+        System.out.println(FEATURES_PER_TILE + " features per tile");
+        System.out.println("object per feature: " + perFeature + " bytes per tile");
+        System.out.println("TileFeatureStore:   " + store + " bytes per tile");
+    }
+    
+    
+    /**
+     * The fields of a feature before TileFeatureStore. 
+     */
+    private static class PerFeatureData {
+        
+        private int m_featureIndex;
+        private int m_level;
+        private int m_featureType;
+        private int[] m_importanceAndPrimitiveType = new int[2];
+        private String m_text;
+        private TextPlacementInfo m_textPlacementInfo;
+        private int[] m_coordExtremes = new int[4];
+        private int m_time;
+        private int m_id = -1;
+        private short m_duration = 0;
+        private int m_maxScale = -1;
+        private int m_bitmapIndex; 
+        private int[] m_latlon = new int[2];
+        private SimpleArg m_color;
+        private int[] m_coords;
+        private ConcavePolygon m_concavePolygon;
+        private SimpleArg m_borderColor = null;
+        private SimpleArg m_widthArgs = null;
+        private SimpleArg m_widthMetersArgs = null;
+        
+        PerFeatureData(int primitiveType, int featureIndex, int featureType) {
+            m_importanceAndPrimitiveType[1] = primitiveType;
+            m_featureIndex = featureIndex;
+            m_featureType = featureType;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.process;
+
+/**
+ * Creates {@link TileFeatureStore}s for tests outside the process package.
+ */
+public class TileFeatureStoreMock {
+    
+    private TileFeatureStoreMock() {
+    }
+    
+    /**
+     * Creates a store with one polygon feature for each array of 
+     * coordinates.
+     * 
+     * @param polygons the coordinates (x1,y1,x2,y2,...) of each polygon
+     * @return the store
+     */
+    public static TileFeatureStore createPolygons(int[][] polygons) {
+        int nbrCoords = 0;
+        for (int i = 0; i < polygons.length; i++) {
+            nbrCoords += polygons[i].length;
+        }
+        TileFeatureStore store = new TileFeatureStore(polygons.length, nbrCoords);
+        for (int i = 0; i < polygons.length; i++) {
+            store.setPrimitiveType(i, TileFeature.POLYGON);
+            store.setCoords(i, polygons[i], polygons[i].length);
+        }
+        return store;
+    }
+    
+    /**
+     * Creates a store with one line feature for each array of coordinates.
+     * 
+     * @param lines the coordinates (x1,y1,x2,y2,...) of each line
+     * @return the store
+     */
+    public static TileFeatureStore createLines(int[][] lines) {
+        TileFeatureStore store = createPolygons(lines);
+        for (int i = 0; i < lines.length; i++) {
+            store.setPrimitiveType(i, TileFeature.LINE);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.core.map.vectormap.internal.process;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import com.wayfinder.core.map.util.BitBuffer;
+import com.wayfinder.core.map.vectormap.internal.control.TileMapControlThread;
+import com.wayfinder.core.map.vectormap.internal.drawer.TileMapWrapper;
+import com.wayfinder.core.map.vectormap.internal.drawer.Utils;
+import com.wayfinder.pal.persistence.MemoryPersistenceLayer;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the per tile feature layout built by {@link TileMap#initData(TileMapFormatDesc)}
+ * and how the features are handed out per draw level by the {@link TileMapWrapper}. 
+ */
+public class TileFeatureStoreTest extends TestCase {
+    
+    private static final String FIXTURE_DIR = 
+        "./map/test/com/wayfinder/core/map/vectormap/internal/cache/";
+    
+    private TileMapFormatDesc m_tmfd;
+    private TileMap m_map;
+    private TileFeatureStore m_store;
+    
+    protected void setUp() throws Exception {
+        // sets up the static bitmap name table used by initData()
+        new TileMapControlThread(MemoryPersistenceLayer.getPersistenceLayer(), null);
+        
+        m_tmfd = new TileMapFormatDesc();
+        assertTrue(m_tmfd.load(new BitBuffer(loadFixture("tmfd")), null));
+        m_map = loadTileMap("data_tile_0", TileMapParams.MAP);
+        m_store = m_map.initData(m_tmfd);
+    }
+    
+    public void testInitData() {
+        assertSame(m_store, m_map.getFeatureStore());
+        
+        // the fixture tile only contains POIs
+        assertEquals(9, m_store.getNbrFeatures());
+        assertEquals(0, m_store.getCoords().length);
+        int[] extremes = m_store.getCoordExtremes();
+        for (int i = 0; i < m_store.getNbrFeatures(); i++) {
+            assertEquals(TileFeature.BITMAP, m_store.getPrimitiveType(i));
+            assertEquals(0, m_store.getCoordsLength(i));
+            assertEquals(extremes[i << 2], m_store.getLatitude(i));
+            assertEquals(extremes[(i << 2) + 2], m_store.getLongitude(i));
+        }
+    }
+    
+    public void testCoordsArePacked() {
+        TileFeatureStore store = new TileFeatureStore(3, 10);
+        store.setPrimitiveType(0, TileFeature.LINE);
+        store.setCoords(0, new int[] { 1, 2, 3, 4, 99 }, 4);
+        store.setPrimitiveType(1, TileFeature.BITMAP);
+        store.setBoundingBox(1, 7, 7, 8, 8);
+        store.setPrimitiveType(2, TileFeature.POLYGON);
+        store.setCoords(2, new int[] { 5, 6, 7, 8, 9, 10 }, 6);
+        
+        assertEquals(0, store.getCoordsOffset(0));
+        assertEquals(4, store.getCoordsLength(0));
+        assertEquals(0, store.getCoordsLength(1));
+        assertEquals(4, store.getCoordsOffset(2));
+        assertEquals(6, store.getCoordsLength(2));
+        int[] expected = new int[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        int[] coords = store.getCoords();
+        assertEquals(expected.length, coords.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], coords[i]);
+        }
+        assertEquals(7, store.getLatitude(1));
+        assertEquals(8, store.getLongitude(1));
+    }
+    
+    public void testDefaultValues() {
+        TileFeatureStore store = new TileFeatureStore(2, 0);
+        assertEquals(-1, store.getMaxScale(0));
+        assertEquals(-1, store.getPoiUniqueID(0));
+        assertEquals(0, store.getDuration(0));
+        assertEquals(TileFeatureStore.NO_BORDER_COLOR, store.getColor(0, 0));
+        assertEquals(TileFeatureStore.NO_BORDER_COLOR, store.getBorderColor(0, 0));
+        assertEquals(0xFF, store.getWidthMeters(0, 0));
+        
+        store.setMaxScale(1, 100);
+        store.setId(1, 5);
+        assertEquals(-1, store.getMaxScale(0));
+        assertEquals(100, store.getMaxScale(1));
+        assertEquals(-1, store.getPoiUniqueID(0));
+        assertEquals(5, store.getPoiUniqueID(1));
+    }
+    
+    public void testWrapperReferencesAllFeatures() throws IOException {
+        TileMapParams params = m_map.getTileMapParams();
+        TileMapWrapper wrapper = new TileMapWrapper(params.getLayerID(), 
+                params.getDetailLevel(), params.getTileIndexLat(), 
+                params.getTileIndexLon(), params.getTileID(), 
+                m_map.getNumberOfImportance(), m_map.getMaxNbrOfImportance());
+        int importance = params.getImportance();
+        wrapper.addTileMap(m_map, importance, false);
+        assertEquals(importance, m_store.getImportance());
+        
+        boolean[] seen = new boolean[m_store.getNbrFeatures()];
+        int nbrRefs = 0;
+        for (int level = 0; level <= Utils.MAX_LEVEL; level++) {
+            int[] refs = wrapper.getFeatureRefs(level);
+            for (int i = 0; i < wrapper.getNbrFeatures(level); i++) {
+                assertSame(m_store, wrapper.getFeatureStore(refs[i]));
+                assertEquals(importance, TileMapWrapper.getImportance(refs[i]));
+                int feature = TileMapWrapper.getFeatureIndex(refs[i]);
+                assertEquals(level, m_store.getLevel(feature));
+                assertFalse(seen[feature]);
+                seen[feature] = true;
+                nbrRefs++;
+            }
+        }
+        assertEquals(seen.length, nbrRefs);
+        
+        // the string tile sets the texts on the features of the same importance
+        TileMap strings = loadTileMap("data_tile_1", TileMapParams.STRINGS);
+        wrapper.addTileMap(strings, importance, true);
+        int[] strIdx = strings.getStrIdxByFeatureIdx();
+        String[] str = strings.getStringArray();
+        assertEquals(m_store.getNbrFeatures(), strIdx.length);
+        for (int i = 0; i < m_store.getNbrFeatures(); i++) {
+            assertSame(str[strIdx[i]], m_store.getText(i));
+        }
+    }
+    
+    private TileMap loadTileMap(String fixture, int mapOrStrings) throws IOException {
+        TileMapParams params = new TileMapParams();
+        params.setParams(0, true, 0, mapOrStrings, 0, 0, 0, 0, 0, null, "G+1aA7V0Y");
+        TileMap map = new TileMap();
+        map.setParams(params);
+        assertTrue(map.load(new BitBuffer(loadFixture(fixture)), m_tmfd, false));
+        return map;
+    }
+    
+    private static byte[] loadFixture(String name) throws IOException {
+        DataInputStream din = new DataInputStream(
+                new FileInputStream(FIXTURE_DIR + name));
+        try {
+            byte[] data = new byte[din.available()];
+            din.readFully(data);
+            return data;
+        } finally {
+            din.close();
+        }
+    }
+}
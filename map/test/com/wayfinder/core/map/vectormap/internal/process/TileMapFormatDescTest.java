@@ -50,4 +50,19 @@ public class TileMapFormatDescTest extends TestCase {
             assertEquals(expectedScaleIndeces[i], tmfd.getScaleIndexFromZoomLevel(zoomLevel));
         }
     }
+    
+    public void testMinZoomLevelForScaleIndex() {
+        int[] scaleLevelsTable = {1, 2, 3, 4, 5, 6, 7, 8, 12, 30, 60, 100, 600, 1000, 20000, 65535};
+        
+        TileMapFormatDescMock tmfd = new TileMapFormatDescMock();
+        tmfd.loadScaleLevelsTable(scaleLevelsTable);
+        
+        assertEquals(scaleLevelsTable.length, tmfd.getNbrOfScaleIndices());
+        assertEquals(0, tmfd.getMinZoomLevelForScaleIndex(0));
+        for (int i=1; i<scaleLevelsTable.length; i++) {
+            int minZoomLevel = tmfd.getMinZoomLevelForScaleIndex(i);
+            assertEquals(i, tmfd.getScaleIndexFromZoomLevel(minZoomLevel));
+            assertEquals(i - 1, tmfd.getScaleIndexFromZoomLevel(minZoomLevel - 0.5f));
+        }
+    }
 }
@@ -30,6 +30,8 @@
  ******************************************************************************/
 package com.wayfinder.core.map.vectormap.internal.process;
 
+import com.wayfinder.core.shared.internal.settings.language.LangTypes;
+
 import junit.framework.TestCase;
 
 public class TileMapParamsTest extends TestCase {
@@ -47,5 +49,48 @@ public class TileMapParamsTest extends TestCase {
         }
         
     }
+    
+    public void testTrianglesParamString() {
+        TileMapParams geo = new TileMapParams();
+        geo.setParams(0, true, 0, TileMapParams.MAP, 3, LangTypes.ENGLISH, 
+                      1234, -567, 2, null, "");
+        TileMapParams triangles = geo.cloneTileMapParams(TileMapParams.TRIANGLES);
+        
+        String str = triangles.getAsString();
+        assertEquals(TileMapParams.TRIANGLES, triangles.getTileMapType());
+        assertEquals(TileMapParamTypes.getTrianglesParamString(geo.getAsString()), str);
+        assertTrue(TileMapParamTypes.isTriangles(str));
+        assertFalse(TileMapParamTypes.isMap(str));
+        TileMapParams.assertParamStringCorrect(str);
+    }
+    
+    public void testParseParamString() {
+        TileMapParams strings = new TileMapParams();
+        strings.setParams(9, true, 3, TileMapParams.STRINGS, 2, LangTypes.ENGLISH, 
+                          1234, -567, 4, null, "");
+        String str = strings.getAsString();
+        
+        TileMapParams parsed = TileMapParams.parseParamString(str);
+        assertEquals(str, parsed.getAsString());
+        assertEquals(str, parsed.getTileID());
+        assertEquals(TileMapParams.STRINGS, parsed.getTileMapType());
+        assertEquals(9, parsed.getServerPrefix());
+        assertTrue(parsed.useGZip());
+        assertEquals(3, parsed.getLayerID());
+        assertEquals(2, parsed.getImportance());
+        assertEquals(LangTypes.ENGLISH, parsed.getLanguageType());
+        assertEquals(1234, parsed.getTileIndexLat());
+        assertEquals(-567, parsed.getTileIndexLon());
+        assertEquals(4, parsed.getDetailLevel());
+        
+        String[] invalid = new String[] { "", "Bworld.png", "G", "G~~~~" };
+        for (int i = 0; i < invalid.length; i++) {
+            try {
+                TileMapParams.parseParamString(invalid[i]);
+                fail(invalid[i]);
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
 
 }
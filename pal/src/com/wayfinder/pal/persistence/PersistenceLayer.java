@@ -55,6 +55,22 @@ public interface PersistenceLayer {
      */
     public WFFileConnection openFile(String path) throws IOException, PermissionsException;
     
+    /**
+     * Open a page file with random access reads and writes, used by the map 
+     * cache. The file is created if it doesn't exist. 
+     * <p>
+     * Platforms that can't provide random access, or memory mapping, to 
+     * files should return null and the map cache will use 
+     * {@link #openFile(String)} instead. 
+     * 
+     * @param path the full path to the file. 
+     * @param maxSize the maximum number of bytes in the file. 
+     * @return the page file or null if not supported by the platform. 
+     * @throws IOException if the file can't be opened. 
+     * @throws PermissionsException if the operation is not allowed
+     */
+    public WFPageFile openPageFile(String path, int maxSize) throws IOException, PermissionsException;
+    
     /**
      * Obtain an InputStream from a resource file. Temporarily used to load data
      * for dummy implementation of RouteModule 
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ * Copyright, Wayfinder Systems AB, 2010
+ */
+
+package com.wayfinder.pal.persistence;
+
+import java.io.IOException;
+
+/**
+ * A file with random access reads and writes, used for the page files of 
+ * the map cache. See {@link PersistenceLayer#openPageFile(String, int)}. 
+ * <p>
+ * A page file can't be larger than the maximum size it was opened with. 
+ * On platforms that supports it the file should be memory mapped up to the 
+ * maximum size when opened, so reads and writes are copies to and from the 
+ * mapped memory instead of streams that must be opened and skipped to the 
+ * offset. 
+ * <p>
+ * The content and length of the file on disc must be the same as if it 
+ * was written with a {@link WFFileConnection}, at least after 
+ * {@link #flush()}, so the cache can be read through either. 
+ * <p>
+ * Several threads may read from the file at the same time. The file is 
+ * never written, cleared or flushed while it's read. 
+ */
+public interface WFPageFile {
+    
+    /**
+     * Return the number of bytes in the file. 
+     * 
+     * @return the number of bytes in the file. 
+     */
+    public int size();
+    
+    /**
+     * Return the maximum number of bytes in the file.
+     * 
+     * @return the maximum number of bytes in the file.
+     */
+    public int getMaxSize();
+    
+    /**
+     * Reads bytes from the file. 
+     * 
+     * @param offset the offset in the file of the first byte to read.
+     * @param data the buffer to read into.
+     * @param dataOffset the offset in the buffer of the first byte. 
+     * @param length the number of bytes to read.
+     * @throws IOException if the bytes are outside the file or an I/O 
+     * error occurs. 
+     */
+    public void read(int offset, byte []data, int dataOffset, int length) throws IOException;
+    
+    /**
+     * Writes bytes to the file. The file grows if the bytes are written 
+     * after its end. 
+     * 
+     * @param offset the offset in the file of the first byte to write, at 
+     * most {@link #size()}.
+     * @param data the buffer with the bytes.
+     * @param dataOffset the offset in the buffer of the first byte. 
+     * @param length the number of bytes to write.
+     * @throws IOException if the offset is after the end of the file, the 
+     * file would be larger than {@link #getMaxSize()} or an I/O error 
+     * occurs.
+     */
+    public void write(int offset, byte []data, int dataOffset, int length) throws IOException;
+    
+    /**
+     * Removes all bytes from the file. 
+     * 
+     * @throws IOException if an I/O error occurs.
+     */
+    public void clear() throws IOException;
+    
+    /**
+     * Writes any changes that are held in memory to the file.  
+     * 
+     * @throws IOException if an I/O error occurs.
+     */
+    public void flush() throws IOException;
+    
+    /**
+     * Flushes and closes the file. 
+     * 
+     * @throws IOException if an I/O error occurs.
+     */
+    public void close() throws IOException;
+}
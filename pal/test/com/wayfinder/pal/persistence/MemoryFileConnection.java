@@ -99,9 +99,12 @@ public class MemoryFileConnection implements WFFileConnection {
      */
     public DataInputStream openDataInputStream() throws IOException {
         if (m_baos != null) {
-            m_buffer = m_baos.toByteArray();
-            m_bais = new ByteArrayInputStream(m_buffer);
-            return new DataInputStream(m_bais);
+            // local copies since the caches open streams from several threads
+            byte[] buffer = m_baos.toByteArray();
+            ByteArrayInputStream bais = new ByteArrayInputStream(buffer);
+            m_buffer = buffer;
+            m_bais = bais;
+            return new DataInputStream(bais);
         }
         return null;
     }
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.pal.persistence;
+
+import java.io.IOException;
+
+/**
+ * WFPageFile implementation to be used for JUnit tests, the file is kept
+ * in a byte array. 
+ */
+public class MemoryPageFile implements WFPageFile {
+    
+    private final byte[] m_buffer;
+    private int m_size;
+    private boolean m_closed;
+    
+    public MemoryPageFile(int maxSize) {
+        m_buffer = new byte[maxSize];
+    }
+    
+    /**
+     * @return a copy of the content of the file
+     */
+    public byte[] toByteArray() {
+        byte[] data = new byte[m_size];
+        System.arraycopy(m_buffer, 0, data, 0, m_size);
+        return data;
+    }
+    
+    /**
+     * @return true if the file has been closed
+     */
+    public boolean isClosed() {
+        return m_closed;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.WFPageFile#size()
+     */
+    public int size() {
+        return m_size;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.WFPageFile#getMaxSize()
+     */
+    public int getMaxSize() {
+        return m_buffer.length;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.WFPageFile#read(int, byte[], int, int)
+     */
+    public void read(int offset, byte[] data, int dataOffset, int length)
+            throws IOException {
+        if (offset < 0 || length < 0 || offset + length > m_size) {
+            throw new IOException("Read outside the file, offset= " + offset 
+                    + " length= " + length + " size= " + m_size);
+        }
+        System.arraycopy(m_buffer, offset, data, dataOffset, length);
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.WFPageFile#write(int, byte[], int, int)
+     */
+    public void write(int offset, byte[] data, int dataOffset, int length)
+            throws IOException {
+        if (offset < 0 || length < 0 || offset > m_size 
+                || offset + length > m_buffer.length) {
+            throw new IOException("Write outside the file, offset= " + offset 
+                    + " length= " + length + " size= " + m_size);
+        }
+        System.arraycopy(data, dataOffset, m_buffer, offset, length);
+        m_size = Math.max(m_size, offset + length);
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.WFPageFile#clear()
+     */
+    public void clear() throws IOException {
+        m_size = 0;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.WFPageFile#flush()
+     */
+    public void flush() throws IOException {
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.WFPageFile#close()
+     */
+    public void close() throws IOException {
+        m_closed = true;
+    }
+}
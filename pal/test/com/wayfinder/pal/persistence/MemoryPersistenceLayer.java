@@ -35,6 +35,7 @@ package com.wayfinder.pal.persistence;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Hashtable;
 
 import com.wayfinder.pal.error.PermissionsException;
 
@@ -48,9 +49,38 @@ import com.wayfinder.pal.error.PermissionsException;
  */
 public class MemoryPersistenceLayer implements PersistenceLayer {
     
+    private final boolean m_pageFiles;
+    private final Hashtable m_openPageFiles = new Hashtable();
+    private final int m_secondaryCachePageSize;
+    private final Hashtable m_secondaryCacheStorages = new Hashtable();
+    
     public static PersistenceLayer getPersistenceLayer() {
         return new MemoryPersistenceLayer();
     }
+    
+    public MemoryPersistenceLayer() {
+        this(false);
+    }
+    
+    /**
+     * @param pageFiles true if {@link #openPageFile(String, int)} should 
+     * return a {@link MemoryPageFile}, false to return null as on platforms 
+     * that doesn't support page files
+     */
+    public MemoryPersistenceLayer(boolean pageFiles) {
+        this(pageFiles, 0);
+    }
+    
+    /**
+     * @param pageFiles see {@link #MemoryPersistenceLayer(boolean)}
+     * @param secondaryCachePageSize the max page size of the 
+     * {@link MemorySecondaryCacheStorage} returned by 
+     * {@link #openSecondaryCacheStorage(String)}, or 0 to return null
+     */
+    public MemoryPersistenceLayer(boolean pageFiles, int secondaryCachePageSize) {
+        m_pageFiles = pageFiles;
+        m_secondaryCachePageSize = secondaryCachePageSize;
+    }
 
     /* (non-Javadoc)
      * @see com.wayfinder.pal.persistence.PersistenceLayer#getBaseFileDirectory()
@@ -85,13 +115,41 @@ public class MemoryPersistenceLayer implements PersistenceLayer {
         return new MemoryFileConnection();
     }
 
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.PersistenceLayer#openPageFile(java.lang.String, int)
+     */
+    public WFPageFile openPageFile(String path, int maxSize)
+            throws IOException, PermissionsException {
+        if (!m_pageFiles) {
+            return null;
+        }
+        // the same file is returned when opened again, until it's closed
+        MemoryPageFile file = (MemoryPageFile) m_openPageFiles.get(path);
+        if (file == null || file.isClosed()) {
+            file = new MemoryPageFile(maxSize);
+            m_openPageFiles.put(path, file);
+        }
+        return file;
+    }
+
     /* (non-Javadoc)
      * @see com.wayfinder.pal.persistence.PersistenceLayer#openSecondaryCacheStorage(java.lang.String)
      */
     public SecondaryCacheStorage openSecondaryCacheStorage(String name)
             throws IOException, PermissionsException {
-        // 
-        return null;
+        if (m_secondaryCachePageSize <= 0) {
+            return null;
+        }
+        // the same storage is returned when opened again, like a record store
+        synchronized (m_secondaryCacheStorages) {
+            SecondaryCacheStorage storage = 
+                (SecondaryCacheStorage) m_secondaryCacheStorages.get(name);
+            if (storage == null) {
+                storage = new MemorySecondaryCacheStorage(m_secondaryCachePageSize);
+                m_secondaryCacheStorages.put(name, storage);
+            }
+            return storage;
+        }
     }
 
     /* (non-Javadoc)
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 1999-2010, Vodafone Group Services
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without 
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright 
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above 
+ *       copyright notice, this list of conditions and the following 
+ *       disclaimer in the documentation and/or other materials provided 
+ *       with the distribution.
+ *     * Neither the name of Vodafone Group Services nor the names of its 
+ *       contributors may be used to endorse or promote products derived 
+ *       from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING 
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+ * OF SUCH DAMAGE.
+ ******************************************************************************/
+/*
+ *    Copyright, Wayfinder Systems AB, 2010
+ */
+package com.wayfinder.pal.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * SecondaryCacheStorage implementation to be used in JUnit tests, the 
+ * content is kept in a byte array. 
+ */
+public class MemorySecondaryCacheStorage implements SecondaryCacheStorage {
+    
+    private final int m_maxPageSize;
+    private byte[] m_data = new byte[0];
+    
+    public MemorySecondaryCacheStorage(int maxPageSize) {
+        m_maxPageSize = maxPageSize;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.SecondaryCacheStorage#getMaxPageSize()
+     */
+    public int getMaxPageSize() {
+        return m_maxPageSize;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.SecondaryCacheStorage#getDataInputStream()
+     */
+    public synchronized DataInputStream getDataInputStream() throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(m_data));
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.SecondaryCacheStorage#writeToStorage(byte[], int, int)
+     */
+    public synchronized boolean writeToStorage(byte[] data, int offset, int length)
+            throws IOException {
+        if (length > m_maxPageSize) {
+            throw new IOException("Too large, length= " + length 
+                    + " max= " + m_maxPageSize);
+        }
+        byte[] copy = new byte[length];
+        System.arraycopy(data, offset, copy, 0, length);
+        m_data = copy;
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.SecondaryCacheStorage#close()
+     */
+    public boolean close() {
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.SecondaryCacheStorage#size()
+     */
+    public synchronized int size() {
+        return m_data.length;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wayfinder.pal.persistence.SecondaryCacheStorage#delete()
+     */
+    public synchronized boolean delete() {
+        m_data = new byte[0];
+        return true;
+    }
+}
@@ -54,7 +54,7 @@ import com.wayfinder.core.shared.util.WFUtil;
  *
  * <p>If the terminating null of the last string is missing, the string
  * will be returned anyway and getNextOffset() will return
- * m_buf.length + 1.</p>
+ * m_buf.length + 1, or end + 1 if the parser was created with an end.</p>
  *
  * <p><i>This class is not thread safe. Use client-side locking.</i></p>
  */
@@ -73,7 +73,20 @@ public class UTF8CStringBufferParser {
      * @param buf - the buffer with data to parse.
      */
     public UTF8CStringBufferParser(byte[] buf) {
+        this(buf, buf.length);
+    }
+
+
+    /**
+     * <p>Creates a new parser that only parses the bytes before end, as if
+     * the buffer ended there.</p>
+     * 
+     * @param buf - the buffer with data to parse.
+     * @param end - the index after the last byte to parse.
+     */
+    public UTF8CStringBufferParser(byte[] buf, int end) {
         m_buf = buf;
+        m_end = end;
     }
 
 
@@ -82,6 +95,11 @@ public class UTF8CStringBufferParser {
      */
     protected byte[] m_buf;
     
+    /**
+     * the index after the last byte to decode.
+     */
+    protected int m_end;
+    
     /**
      * @see UTF8CStringBufferParser#getLastNbrBytes()
      */
@@ -150,7 +168,7 @@ public class UTF8CStringBufferParser {
     public String getNextString(int off) {
         int p = off;
         try {
-            while (m_buf[p] != 0) {
+            while (p < m_end && m_buf[p] != 0) {
                 ++p;
             }
         }
@@ -109,4 +109,12 @@ public class UTF8CStringBufferParserTest extends TestCase {
         // no trailing \0, but getLastNbrBytes() errs in this case...
         assertEquals(buf.length + 1, m_csparser.getLastNbrBytes());
     }
+    
+    public void testEnd() {
+        byte[] buf = new byte[]{'a', 0, 'b', 'c', 'd', 0};
+        UTF8CStringBufferParser csparser = new UTF8CStringBufferParser(buf, 4);
+        assertEquals("a", csparser.getNextString());
+        assertEquals("bc", csparser.getNextString());
+        assertEquals(5, csparser.getNextOffset());
+    }
 }